@@ -0,0 +1,87 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests the cancellation of a classification (see
+ * {@link NormalisedOntology#setCancellationToken(CancellationToken)}). A token
+ * is cancelled explicitly with {@link #cancel()} or when its deadline passes.
+ * The workers check the token after every context they process, so the
+ * classification stops shortly after the cancellation.
+ */
+public final class CancellationToken {
+
+    private volatile boolean cancelled = false;
+
+    private final boolean hasDeadline;
+
+    /**
+     * The deadline, as given by {@link System#nanoTime()}.
+     */
+    private final long deadline;
+
+    /**
+     * Creates a token without a deadline.
+     */
+    public CancellationToken() {
+        this.hasDeadline = false;
+        this.deadline = 0;
+    }
+
+    private CancellationToken(long deadline) {
+        this.hasDeadline = true;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Creates a token that is cancelled once the timeout has elapsed.
+     * 
+     * @param timeout
+     * @param unit
+     * @return
+     */
+    public static CancellationToken withTimeout(long timeout, TimeUnit unit) {
+        return new CancellationToken(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Cancels the token.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns true if the token has been cancelled or its deadline has
+     * passed.
+     * 
+     * @return
+     */
+    public boolean isCancelled() {
+        return cancelled || isTimedOut();
+    }
+
+    /**
+     * Returns true if the deadline of the token has passed.
+     * 
+     * @return
+     */
+    public boolean isTimedOut() {
+        return hasDeadline && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Throws a {@link ClassificationCancelledException} if the token has been
+     * cancelled.
+     */
+    public void throwIfCancelled() {
+        if (isCancelled()) {
+            throw new ClassificationCancelledException(!cancelled);
+        }
+    }
+
+}
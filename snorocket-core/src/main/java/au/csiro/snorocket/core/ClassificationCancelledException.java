@@ -0,0 +1,37 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Thrown when a classification is stopped because its
+ * {@link CancellationToken} was cancelled or timed out.
+ */
+public class ClassificationCancelledException extends CancellationException {
+
+    /**
+     * Serialisation version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private final boolean timedOut;
+
+    public ClassificationCancelledException(boolean timedOut) {
+        super(timedOut ? "The classification timed out" : "The classification was cancelled");
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * Returns true if the classification was stopped because the deadline of
+     * its token passed, and false if it was cancelled explicitly.
+     * 
+     * @return
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+}
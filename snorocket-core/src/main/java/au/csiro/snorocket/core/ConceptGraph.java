@@ -0,0 +1,337 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import au.csiro.snorocket.core.axioms.IConjunctionQueueEntry;
+import au.csiro.snorocket.core.axioms.NF1a;
+import au.csiro.snorocket.core.axioms.NF1b;
+import au.csiro.snorocket.core.axioms.NF2;
+import au.csiro.snorocket.core.util.IConceptSet;
+import au.csiro.snorocket.core.util.IntIterator;
+import au.csiro.snorocket.core.util.RoaringConceptSet;
+
+/**
+ * A graph over the concepts of a normalised ontology, used to compute the
+ * {@link ConceptOrdering}s and the told subsumers of the concepts. The edges
+ * are stored in a compressed sparse row layout. Top and bottom are related to most concepts, so they are left out
+ * of the graph and always keep their ids.
+ */
+final class ConceptGraph {
+
+    private static final int TOP = IFactory.TOP_CONCEPT;
+
+    private static final int BOTTOM = IFactory.BOTTOM_CONCEPT;
+
+    private final int numConcepts;
+
+    /**
+     * The targets of the edges of concept a are at positions
+     * [start[a], start[a + 1]).
+     */
+    private final int[] start;
+
+    private final int[] targets;
+
+    /**
+     * The number of edges that end in each concept.
+     */
+    private final int[] inDegree;
+
+    /**
+     * Builds the graph of the told hierarchy, with an edge from every told
+     * parent to its child.
+     *
+     * @param ontology
+     * @return
+     */
+    static ConceptGraph toldHierarchy(NormalisedOntology ontology) {
+        final EdgeList edges = new EdgeList();
+        for (final IntIterator itr = ontology.getOntologyNF1().keyIterator(); itr.hasNext();) {
+            final int a = itr.next();
+            for (final Iterator<IConjunctionQueueEntry> it = ontology.getOntologyNF1().get(a).iterator(); it
+                    .hasNext();) {
+                final IConjunctionQueueEntry entry = it.next();
+                if (entry instanceof NF1a) {
+                    edges.add(entry.getB(), a);
+                }
+            }
+        }
+        return new ConceptGraph(ontology.getFactory().getTotalConcepts(), edges, false);
+    }
+
+    /**
+     * Builds an undirected graph that connects the left and right hand sides
+     * of the NF1 and NF2 terms.
+     *
+     * @param ontology
+     * @return
+     */
+    static ConceptGraph conceptUsage(NormalisedOntology ontology) {
+        final EdgeList edges = new EdgeList();
+        for (final IntIterator itr = ontology.getOntologyNF1().keyIterator(); itr.hasNext();) {
+            final int a = itr.next();
+            for (final Iterator<IConjunctionQueueEntry> it = ontology.getOntologyNF1().get(a).iterator(); it
+                    .hasNext();) {
+                final IConjunctionQueueEntry entry = it.next();
+                if (entry instanceof NF1a) {
+                    edges.add(a, entry.getB());
+                } else if (entry instanceof NF1b) {
+                    final NF1b nf1b = (NF1b) entry;
+                    edges.add(nf1b.lhsA1(), nf1b.b());
+                    edges.add(nf1b.lhsA2(), nf1b.b());
+                }
+            }
+        }
+        for (final IntIterator itr = ontology.getOntologyNF2().keyIterator(); itr.hasNext();) {
+            for (final Iterator<NF2> it = ontology.getOntologyNF2().get(itr.next()).iterator(); it.hasNext();) {
+                final NF2 nf2 = it.next();
+                edges.add(nf2.lhsA, nf2.rhsB);
+            }
+        }
+        return new ConceptGraph(ontology.getFactory().getTotalConcepts(), edges, true);
+    }
+
+    private ConceptGraph(int numConcepts, EdgeList edges, boolean undirected) {
+        this.numConcepts = numConcepts;
+        start = new int[numConcepts + 1];
+        inDegree = new int[numConcepts];
+        for (int i = 0; i < edges.size; i += 2) {
+            start[edges.ends[i] + 1]++;
+            inDegree[edges.ends[i + 1]]++;
+            if (undirected) {
+                start[edges.ends[i + 1] + 1]++;
+                inDegree[edges.ends[i]]++;
+            }
+        }
+        for (int a = 0; a < numConcepts; a++) {
+            start[a + 1] += start[a];
+        }
+        targets = new int[start[numConcepts]];
+        final int[] pos = Arrays.copyOf(start, numConcepts);
+        for (int i = 0; i < edges.size; i += 2) {
+            targets[pos[edges.ends[i]]++] = edges.ends[i + 1];
+            if (undirected) {
+                targets[pos[edges.ends[i + 1]]++] = edges.ends[i];
+            }
+        }
+    }
+
+    /**
+     * Traverses the graph starting at the concepts without incoming edges,
+     * in id order. Concepts that are only reachable from cycles are visited
+     * afterwards, also in id order.
+     *
+     * @param depthFirst
+     *            true for a depth first traversal, false for a breadth first
+     *            one
+     * @return the new ids
+     */
+    int[] traverse(boolean depthFirst) {
+        final boolean[] visited = newVisited();
+        final int[] order = new int[numConcepts];
+        int size = 0;
+        final int[] stack = depthFirst ? new int[numConcepts + targets.length] : null;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int root = 0; root < numConcepts; root++) {
+                if (visited[root] || (pass == 0 && inDegree[root] > 0))
+                    continue;
+                if (depthFirst) {
+                    // Children are pushed in reverse, so they are visited in
+                    // the order of the edges
+                    int top = 0;
+                    stack[top++] = root;
+                    while (top > 0) {
+                        final int a = stack[--top];
+                        if (visited[a])
+                            continue;
+                        visited[a] = true;
+                        order[size++] = a;
+                        for (int i = start[a + 1] - 1; i >= start[a]; i--) {
+                            if (!visited[targets[i]]) {
+                                stack[top++] = targets[i];
+                            }
+                        }
+                    }
+                } else {
+                    // The order is also the queue
+                    int head = size;
+                    visited[root] = true;
+                    order[size++] = root;
+                    while (head < size) {
+                        final int a = order[head++];
+                        for (int i = start[a]; i < start[a + 1]; i++) {
+                            final int b = targets[i];
+                            if (!visited[b]) {
+                                visited[b] = true;
+                                order[size++] = b;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return toIds(order, size);
+    }
+
+    /**
+     * Computes the reverse Cuthill-McKee ordering. Each connected component
+     * is traversed breadth first starting at a concept of minimum degree, and
+     * the neighbours of every concept are visited in increasing order of
+     * degree. The resulting order is then reversed.
+     *
+     * @return the new ids
+     */
+    int[] reverseCuthillMcKee() {
+        final boolean[] visited = newVisited();
+        final int[] order = new int[numConcepts];
+        int size = 0;
+
+        final long[] byDegree = new long[numConcepts];
+        for (int a = 0; a < numConcepts; a++) {
+            byDegree[a] = ((long) degree(a) << 32) | a;
+        }
+        Arrays.sort(byDegree);
+
+        long[] neighbours = new long[16];
+        for (long key : byDegree) {
+            final int root = (int) key;
+            if (visited[root])
+                continue;
+            int head = size;
+            visited[root] = true;
+            order[size++] = root;
+            while (head < size) {
+                final int a = order[head++];
+                int n = 0;
+                for (int i = start[a]; i < start[a + 1]; i++) {
+                    final int b = targets[i];
+                    if (!visited[b]) {
+                        visited[b] = true;
+                        if (n == neighbours.length) {
+                            neighbours = Arrays.copyOf(neighbours, n * 2);
+                        }
+                        neighbours[n++] = ((long) degree(b) << 32) | b;
+                    }
+                }
+                Arrays.sort(neighbours, 0, n);
+                for (int i = 0; i < n; i++) {
+                    order[size++] = (int) neighbours[i];
+                }
+            }
+        }
+
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            final int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return toIds(order, size);
+    }
+
+    /**
+     * Receives the ancestors of the concepts computed by
+     * {@link ConceptGraph#propagateAncestors(AncestorVisitor)}.
+     */
+    interface AncestorVisitor {
+
+        /**
+         * Called once the ancestors of a concept are known. The set must not
+         * be modified or kept after the call returns.
+         *
+         * @param concept
+         * @param ancestors
+         */
+        void visit(int concept, IConceptSet ancestors);
+    }
+
+    /**
+     * Computes the transitive closure of the graph in topological order. The
+     * ancestors of a concept are the union of its parents and their
+     * ancestors, which is computed with bitmap unions. The set of a concept
+     * is released as soon as all its children have been visited. Concepts in
+     * cycles, and their descendants, are not visited.
+     *
+     * @param visitor
+     */
+    void propagateAncestors(AncestorVisitor visitor) {
+        final IConceptSet[] ancestors = new IConceptSet[numConcepts];
+        final int[] remaining = Arrays.copyOf(inDegree, numConcepts);
+        final int[] queue = new int[numConcepts];
+        int head = 0;
+        int tail = 0;
+        for (int a = 0; a < numConcepts; a++) {
+            if (a != TOP && a != BOTTOM && remaining[a] == 0) {
+                queue[tail++] = a;
+            }
+        }
+
+        final IConceptSet empty = new RoaringConceptSet();
+        while (head < tail) {
+            final int a = queue[head++];
+            final IConceptSet aAncestors = null == ancestors[a] ? empty : ancestors[a];
+            visitor.visit(a, aAncestors);
+            for (int i = start[a]; i < start[a + 1]; i++) {
+                final int b = targets[i];
+                IConceptSet bAncestors = ancestors[b];
+                if (null == bAncestors) {
+                    bAncestors = new RoaringConceptSet();
+                    ancestors[b] = bAncestors;
+                }
+                bAncestors.add(a);
+                bAncestors.addAll(aAncestors);
+                if (--remaining[b] == 0) {
+                    queue[tail++] = b;
+                }
+            }
+            ancestors[a] = null;
+        }
+    }
+
+    private int degree(int a) {
+        return start[a + 1] - start[a];
+    }
+
+    private boolean[] newVisited() {
+        final boolean[] visited = new boolean[numConcepts];
+        visited[TOP] = true;
+        visited[BOTTOM] = true;
+        return visited;
+    }
+
+    private int[] toIds(int[] order, int size) {
+        assert size == numConcepts - 2;
+        final int[] newIds = new int[numConcepts];
+        newIds[TOP] = TOP;
+        newIds[BOTTOM] = BOTTOM;
+        for (int i = 0; i < size; i++) {
+            newIds[order[i]] = i + 2;
+        }
+        return newIds;
+    }
+
+    /**
+     * A list of edges between concepts other than top and bottom.
+     */
+    private static final class EdgeList {
+
+        private int[] ends = new int[64];
+
+        private int size = 0;
+
+        void add(int a, int b) {
+            if (a == b || a == TOP || a == BOTTOM || b == TOP || b == BOTTOM)
+                return;
+            if (size == ends.length) {
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            ends[size++] = a;
+            ends[size++] = b;
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+/**
+ * Computes new ids for the concepts of a normalised ontology (see
+ * {@link NormalisedOntology#setConceptOrdering(ConceptOrdering)}). The ids
+ * are assigned in the order the concepts are first seen when the axioms are
+ * loaded, so related concepts can end up far apart. Giving them close ids
+ * makes the sets of subsumers more compact and the contexts that are
+ * processed together closer in memory.
+ */
+public interface ConceptOrdering {
+
+    /**
+     * Breadth first traversal of the told hierarchy, i.e. the NF1 terms of
+     * the form A [ B, starting at the concepts without told parents.
+     */
+    public static ConceptOrdering TOLD_BFS = new ConceptOrdering() {
+
+        public int[] computeIds(NormalisedOntology ontology) {
+            return ConceptGraph.toldHierarchy(ontology).traverse(false);
+        }
+    };
+
+    /**
+     * Depth first traversal of the told hierarchy, so every concept is
+     * followed by its descendants.
+     */
+    public static ConceptOrdering TOLD_DFS = new ConceptOrdering() {
+
+        public int[] computeIds(NormalisedOntology ontology) {
+            return ConceptGraph.toldHierarchy(ontology).traverse(true);
+        }
+    };
+
+    /**
+     * Reverse Cuthill-McKee ordering of the graph that connects the concepts
+     * that appear in the same NF1 or NF2 term. This reduces the bandwidth of
+     * the graph, i.e. the difference between the ids of related concepts.
+     */
+    public static ConceptOrdering RCM = new ConceptOrdering() {
+
+        public int[] computeIds(NormalisedOntology ontology) {
+            return ConceptGraph.conceptUsage(ontology).reverseCuthillMcKee();
+        }
+    };
+
+    /**
+     * Returns the new id of every concept, indexed by the current id. Top and
+     * bottom keep their ids.
+     *
+     * @param ontology
+     * @return
+     */
+    public int[] computeIds(NormalisedOntology ontology);
+
+}
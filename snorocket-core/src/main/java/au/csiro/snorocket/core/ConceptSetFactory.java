@@ -22,8 +22,59 @@
 package au.csiro.snorocket.core;
 
 import au.csiro.snorocket.core.util.IConceptSet;
+import au.csiro.snorocket.core.util.RoaringConceptSet;
+import au.csiro.snorocket.core.util.SparseConceptSet;
 
 public interface ConceptSetFactory {
+
+    /**
+     * Creates {@link SparseConceptSet}s.
+     */
+    public static ConceptSetFactory SPARSE = new ConceptSetFactory() {
+
+        public IConceptSet createConceptSet() {
+            return new SparseConceptSet();
+        }
+
+        public IConceptSet createConceptSet(final int size) {
+            return new SparseConceptSet(Math.max(1, size));
+        }
+
+        public IConceptSet createConceptSet(final IConceptSet initial) {
+            final IConceptSet result;
+            if (null == initial) {
+                result = createConceptSet();
+            } else {
+                result = createConceptSet(initial.size() + 1);
+                result.addAll(initial);
+            }
+            return result;
+        }
+    };
+
+    /**
+     * Creates {@link RoaringConceptSet}s, which use much less memory for large
+     * sets of related concepts.
+     */
+    public static ConceptSetFactory ROARING = new ConceptSetFactory() {
+
+        public IConceptSet createConceptSet() {
+            return new RoaringConceptSet();
+        }
+
+        public IConceptSet createConceptSet(final int size) {
+            return new RoaringConceptSet();
+        }
+
+        public IConceptSet createConceptSet(final IConceptSet initial) {
+            final IConceptSet result = createConceptSet();
+            if (null != initial) {
+                result.addAll(initial);
+            }
+            return result;
+        }
+    };
+
     /**
      * With no size specified, may assume a sparse ConceptSet implementation is
      * suitable.
@@ -21,17 +21,37 @@
 
 package au.csiro.snorocket.core;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import au.csiro.ontology.model.NamedConcept;
+import au.csiro.snorocket.core.model.AbstractConcept;
+import au.csiro.snorocket.core.model.Concept;
+import au.csiro.snorocket.core.model.Conjunction;
+import au.csiro.snorocket.core.model.Datatype;
+import au.csiro.snorocket.core.model.Existential;
+import au.csiro.snorocket.core.util.ConceptIdDictionary;
 import au.csiro.snorocket.core.util.IConceptSet;
+import au.csiro.snorocket.core.util.RoaringConceptSet;
 import au.csiro.snorocket.core.util.RoleSet;
-import au.csiro.snorocket.core.util.SparseConceptSet;
 
+/**
+ * The default {@link IFactory}. It is thread safe, so the axioms can be
+ * normalised in parallel: the ids are looked up in concurrent maps and only
+ * the allocation of a new id takes a lock. The arrays used to look up the
+ * keys are replaced when they grow, and a key is always stored before its id
+ * is published in the map.
+ * 
+ * <p>
+ * The ids of the named concepts, which are strings, are kept in a
+ * {@link ConceptIdDictionary} instead of the map and the array, so large
+ * terminologies do not need an object per concept id.
+ * </p>
+ */
 final public class CoreFactory implements IFactory {
     
     /**
@@ -50,31 +70,55 @@ final public class CoreFactory implements IFactory {
     final private int roleBase;
     final private int featureBase;
 
-    private Object[] concepts = new Object[SIZE_ESTIMATE];
-    final private Map<Object, Integer> conceptMap = new HashMap<Object, Integer>();
-    final private IConceptSet virtualConcepts = new SparseConceptSet(SIZE_ESTIMATE);
+    /**
+     * The keys of the concepts that are not named, i.e. the virtual concepts.
+     * The other entries are null.
+     */
+    private volatile Object[] concepts = new Object[SIZE_ESTIMATE];
+    final private Map<Object, Integer> conceptMap = new ConcurrentHashMap<Object, Integer>();
+    /**
+     * The keys of the named concepts.
+     */
+    final private ConceptIdDictionary conceptNames = new ConceptIdDictionary();
+    /**
+     * The virtual concepts get increasing ids as they are created, which a
+     * bitmap appends cheaply.
+     */
+    private volatile IConceptSet virtualConcepts = new RoaringConceptSet();
 
-    private Object[] roles = new Object[128];
-    final private Map<Object, Integer> roleMap = new HashMap<Object, Integer>();
+    private volatile Object[] roles = new Object[128];
+    final private Map<Object, Integer> roleMap = new ConcurrentHashMap<Object, Integer>();
     final private RoleSet virtualRoles = new RoleSet();
 
-    private String[] features = new String[128];
-    final private Map<String, Integer> featureNameMap = new HashMap<String, Integer>();
+    private volatile String[] features = new String[128];
+    final private Map<String, Integer> featureNameMap = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * The canonical instances of the complex concepts (see
+     * {@link #intern(AbstractConcept)}), or null once the axioms have been
+     * loaded (see {@link #clearInterned()}). Not serialised - the keys of the
+     * virtual concepts keep sharing their parts when they are serialised, and
+     * the table is refilled as new concepts are interned.
+     */
+    private transient volatile ConcurrentMap<AbstractConcept, AbstractConcept> canonical;
 
     /**
-     * Index of the next available Concept.
+     * Index of the next available Concept. Only modified while holding the
+     * lock of the factory.
      */
-    private int conceptIdCounter = 0;
+    private volatile int conceptIdCounter = 0;
 
     /**
-     * Index of the next available Role.
+     * Index of the next available Role. Only modified while holding the lock
+     * of the factory.
      */
-    private int roleIdCounter = 0;
+    private volatile int roleIdCounter = 0;
 
     /**
-     * Index of the next available Feature.
+     * Index of the next available Feature. Only modified while holding the
+     * lock of the factory.
      */
-    private int featureIdCounter = 0;
+    private volatile int featureIdCounter = 0;
     
     /**
      * Creates a new factory.
@@ -118,7 +162,8 @@ final public class CoreFactory implements IFactory {
 
     public Object lookupConceptId(final int id) {
         assert id >= conceptBase && id <= conceptIdCounter + conceptBase;
-        return concepts[id - conceptBase];
+        final Object key = concepts[id - conceptBase];
+        return null != key ? key : conceptNames.lookup(id - conceptBase);
     }
 
     public Object lookupRoleId(final int id) {
@@ -135,7 +180,7 @@ final public class CoreFactory implements IFactory {
     }
 
     public boolean conceptExists(Object key) {
-        return conceptMap.containsKey(key);
+        return findConcept(key) >= 0;
     }
 
     public boolean roleExists(Object key) {
@@ -151,59 +196,136 @@ final public class CoreFactory implements IFactory {
             throw new IllegalArgumentException("Concept key must not be null");
         }
 
-        Integer result = conceptMap.get(key);
-        if (null == result) {
-            if (conceptIdCounter == concepts.length) {
-                final Object[] newConcepts = new Object[conceptIdCounter * 2];
-                System.arraycopy(concepts, 0, newConcepts, 0, conceptIdCounter);
-                concepts = newConcepts;
-                if (log.isTraceEnabled())
-                    log.trace("Resizing concepts array to: " + concepts.length);
-            }
-            concepts[conceptIdCounter] = key;
-            result = conceptIdCounter++;
-            conceptMap.put(key, result);
+        int result = findConcept(key);
+        if (result < 0) {
+            result = newConcept(key);
         }
         return result + conceptBase;
     }
 
+    /**
+     * Returns the id of a concept without the base, or -1 if the concept does
+     * not exist.
+     * 
+     * @param key
+     * @return
+     */
+    private int findConcept(Object key) {
+        if (key instanceof String) {
+            return conceptNames.get((String) key);
+        } else {
+            final Integer result = conceptMap.get(key);
+            return null == result ? -1 : result;
+        }
+    }
+
+    private synchronized int newConcept(Object key) {
+        final int existing = findConcept(key);
+        if (existing >= 0) {
+            return existing;
+        }
+        Object[] array = concepts;
+        if (conceptIdCounter == array.length) {
+            array = new Object[conceptIdCounter * 2];
+            System.arraycopy(concepts, 0, array, 0, conceptIdCounter);
+            if (log.isTraceEnabled())
+                log.trace("Resizing concepts array to: " + array.length);
+        }
+        final int result = conceptIdCounter;
+        if (key instanceof String) {
+            concepts = array;
+            conceptIdCounter++;
+            conceptNames.put((String) key, result);
+        } else {
+            array[result] = key;
+            concepts = array;
+            conceptIdCounter++;
+            conceptMap.put(key, result);
+        }
+        return result;
+    }
+
     public int getRole(Object key) {
         Integer result = roleMap.get(key);
         if (null == result) {
-            if (roleIdCounter == roles.length) {
-                final Object[] newRoles = new Object[roleIdCounter * 2];
-                System.arraycopy(roles, 0, newRoles, 0, roleIdCounter);
-                roles = newRoles;
-                if (log.isTraceEnabled()) {
-                    log.trace("role resize to: " + roles.length);
-                }
-            }
-            roles[roleIdCounter] = key;
-            result = roleIdCounter++;
-            roleMap.put(key, result);
+            result = newRole(key);
         }
         return result + roleBase;
     }
 
+    private synchronized int newRole(Object key) {
+        final Integer existing = roleMap.get(key);
+        if (null != existing) {
+            return existing;
+        }
+        Object[] array = roles;
+        if (roleIdCounter == array.length) {
+            array = new Object[roleIdCounter * 2];
+            System.arraycopy(roles, 0, array, 0, roleIdCounter);
+            if (log.isTraceEnabled()) {
+                log.trace("role resize to: " + array.length);
+            }
+        }
+        array[roleIdCounter] = key;
+        roles = array;
+        final int result = roleIdCounter++;
+        roleMap.put(key, result);
+        return result;
+    }
+
     public int getFeature(String key) {
         Integer result = featureNameMap.get(key);
         if (null == result) {
-            if (featureIdCounter == features.length) {
-                final String[] newFeatures = new String[featureIdCounter * 2];
-                System.arraycopy(features, 0, newFeatures, 0, featureIdCounter);
-                features = newFeatures;
-                if (log.isTraceEnabled()) {
-                    log.trace("feature resize to: " + features.length);
-                }
-            }
-            features[featureIdCounter] = key;
-            result = featureIdCounter++;
-            featureNameMap.put(key, result);
+            result = newFeature(key);
         }
         return result + featureBase;
     }
+
+    private synchronized int newFeature(String key) {
+        final Integer existing = featureNameMap.get(key);
+        if (null != existing) {
+            return existing;
+        }
+        String[] array = features;
+        if (featureIdCounter == array.length) {
+            array = new String[featureIdCounter * 2];
+            System.arraycopy(features, 0, array, 0, featureIdCounter);
+            if (log.isTraceEnabled()) {
+                log.trace("feature resize to: " + array.length);
+            }
+        }
+        array[featureIdCounter] = key;
+        features = array;
+        final int result = featureIdCounter++;
+        featureNameMap.put(key, result);
+        return result;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public <T extends AbstractConcept> T intern(T concept) {
+        if (!(concept instanceof Existential || concept instanceof Conjunction || concept instanceof Datatype)) {
+            return concept;
+        }
+        ConcurrentMap<AbstractConcept, AbstractConcept> table = canonical;
+        if (null == table) {
+            table = newCanonicalTable();
+        }
+        final AbstractConcept res = table.putIfAbsent(concept, concept);
+        return null == res ? concept : (T) res;
+    }
+
+    public synchronized void clearInterned() {
+        canonical = null;
+    }
+
+    private synchronized ConcurrentMap<AbstractConcept, AbstractConcept> newCanonicalTable() {
+        if (null == canonical) {
+            canonical = new ConcurrentHashMap<AbstractConcept, AbstractConcept>();
+        }
+        return canonical;
+    }
     
-    public void setVirtualConcept(int id, boolean isVirtual) {
+    public synchronized void setVirtualConcept(int id, boolean isVirtual) {
         if (isVirtual) {
             virtualConcepts.add(id - conceptBase);
         } else {
@@ -211,4 +333,61 @@ final public class CoreFactory implements IFactory {
         }
     }
 
+    public synchronized void renumberConcepts(final int[] newIds) {
+        assert newIds.length == conceptIdCounter;
+        assert newIds[TOP_CONCEPT] == TOP_CONCEPT && newIds[BOTTOM_CONCEPT] == BOTTOM_CONCEPT;
+
+        final Object[] newConcepts = new Object[concepts.length];
+        final IConceptSet newVirtualConcepts = new RoaringConceptSet();
+        final int[] remap = new int[conceptIdCounter];
+        conceptMap.clear();
+        // The old canonical instances refer to the old ids
+        canonical = null;
+        for (int i = 0; i < conceptIdCounter; i++) {
+            final int newId = newIds[i + conceptBase] - conceptBase;
+            remap[i] = newId;
+            if (null != concepts[i]) {
+                final Object key = remapKey(concepts[i], newIds);
+                newConcepts[newId] = key;
+                conceptMap.put(key, newId);
+            }
+            if (virtualConcepts.contains(i)) {
+                newVirtualConcepts.add(newId);
+            }
+        }
+        conceptNames.renumber(remap);
+        concepts = newConcepts;
+        virtualConcepts = newVirtualConcepts;
+        // Only needed while the keys were remapped
+        canonical = null;
+    }
+
+    /**
+     * Replaces the concept ids in the key of a virtual concept. Keys of named
+     * concepts are returned unchanged. The new keys are interned.
+     * 
+     * @param key
+     * @param newIds
+     * @return
+     */
+    private Object remapKey(final Object key, final int[] newIds) {
+        if (key instanceof Concept) {
+            return new Concept(newIds[((Concept) key).hashCode()]);
+        } else if (key instanceof Existential) {
+            final Existential e = (Existential) key;
+            return intern(new Existential(e.getRole(), (AbstractConcept) remapKey(e.getConcept(), newIds)));
+        } else if (key instanceof Conjunction) {
+            final AbstractConcept[] conjuncts = ((Conjunction) key).getConcepts();
+            final AbstractConcept[] res = new AbstractConcept[conjuncts.length];
+            for (int i = 0; i < conjuncts.length; i++) {
+                res[i] = (AbstractConcept) remapKey(conjuncts[i], newIds);
+            }
+            return intern(new Conjunction(res));
+        } else if (key instanceof Datatype) {
+            return intern((Datatype) key);
+        } else {
+            return key;
+        }
+    }
+
 }
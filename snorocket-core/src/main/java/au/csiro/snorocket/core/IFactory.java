@@ -23,9 +23,13 @@ package au.csiro.snorocket.core;
 
 import java.io.Serializable;
 
+import au.csiro.snorocket.core.model.AbstractConcept;
+
 /**
  * Interface for the factory used to create concepts, roles and features
- * internally.
+ * internally. Implementations must be thread safe, because the axioms can be
+ * normalised in parallel (see
+ * {@link NormalisedOntology#setParallelNormalisation(boolean)}).
  * 
  * @author Alejandro Metke
  */
@@ -158,5 +162,40 @@ public interface IFactory extends Serializable {
      * @param isVirtual
      */
     public void setVirtualConcept(int id, boolean isVirtual);
+    
+    /**
+     * Changes the internal ids of the concepts. The concept with id i gets
+     * the id newIds[i]. The keys of the virtual concepts refer to other
+     * concepts by id, so they are changed accordingly. Top and bottom must
+     * keep their ids.
+     * 
+     * @param newIds
+     *            a permutation of the concept ids
+     */
+    void renumberConcepts(int[] newIds);
+    
+    /**
+     * Returns the canonical instance of a complex concept, i.e. an
+     * {@link au.csiro.snorocket.core.model.Existential}, a
+     * {@link au.csiro.snorocket.core.model.Conjunction} or a
+     * {@link au.csiro.snorocket.core.model.Datatype}. The first instance
+     * of every distinct concept becomes the canonical one. The parts of the
+     * concept should already be canonical, so equal concepts share their
+     * parts and are compared by reference. Other concepts are returned
+     * unchanged.
+     * 
+     * @param concept
+     * @return
+     */
+    <T extends AbstractConcept> T intern(T concept);
+    
+    /**
+     * Forgets the canonical instances returned by
+     * {@link #intern(AbstractConcept)}, so the concepts that are not keys of
+     * virtual concepts can be garbage collected. Called once the axioms have
+     * been loaded. Concepts interned afterwards are equal to the earlier
+     * ones but not the same instances.
+     */
+    void clearInterned();
 
 }
@@ -0,0 +1,162 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import java.io.Serializable;
+
+/**
+ * A FIFO queue of primitive longs backed by a growable ring buffer. Used to
+ * store queue entries made of two ints, e.g. (Bi, B) or (r, B), packed into a
+ * single long (see {@link #pack(int, int)}), so adding and removing entries
+ * does not allocate any objects. This class is not thread safe.
+ */
+public final class LongQueue implements Serializable {
+
+    /**
+     * Serialisation version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private static final int DEFAULT_ALLOC_SIZE = 8;
+    private static final long[] EMPTY = {};
+
+    /**
+     * The buffer. Its length is always zero or a power of two.
+     */
+    private long[] items = EMPTY;
+
+    /**
+     * Index of the first entry.
+     */
+    private int head = 0;
+
+    /**
+     * Number of entries in the queue.
+     */
+    private int size = 0;
+
+    /**
+     * Packs two ints into a long.
+     *
+     * @param first
+     * @param second
+     * @return
+     */
+    public static long pack(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the first int of a packed entry.
+     *
+     * @param entry
+     * @return
+     */
+    public static int first(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    /**
+     * Returns the second int of a packed entry.
+     *
+     * @param entry
+     * @return
+     */
+    public static int second(long entry) {
+        return (int) entry;
+    }
+
+    public void add(long entry) {
+        if (size == items.length) {
+            grow(size + 1);
+        }
+        items[(head + size) & (items.length - 1)] = entry;
+        size++;
+    }
+
+    public void add(int first, int second) {
+        add(pack(first, second));
+    }
+
+    /**
+     * Moves all the entries of another queue to the end of this queue.
+     *
+     * @param queue
+     */
+    public void drainFrom(LongQueue queue) {
+        final int n = queue.size;
+        if (n == 0)
+            return;
+        if (size + n > items.length) {
+            grow(size + n);
+        }
+        final int mask = items.length - 1;
+        final int srcMask = queue.items.length - 1;
+        for (int i = 0; i < n; i++) {
+            items[(head + size + i) & mask] = queue.items[(queue.head + i) & srcMask];
+        }
+        size += n;
+        queue.head = 0;
+        queue.size = 0;
+    }
+
+    /**
+     * Removes and returns the first entry of the queue. The queue must not be
+     * empty.
+     *
+     * @return
+     */
+    public long remove() {
+        final long entry = items[head];
+        head = (head + 1) & (items.length - 1);
+        size--;
+        return entry;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    /**
+     * Discards all the entries of the queue.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+        release();
+    }
+
+    /**
+     * Releases the buffer if the queue is empty and the buffer has grown past
+     * its initial size. Called when a context is deactivated so that idle
+     * contexts do not hold on to memory, while small buffers are kept to avoid
+     * reallocating them every time a context is reactivated.
+     */
+    public void release() {
+        if (0 == size && items.length > DEFAULT_ALLOC_SIZE) {
+            items = EMPTY;
+            head = 0;
+        }
+    }
+
+    private void grow(int minSize) {
+        int newSize = items.length == 0 ? DEFAULT_ALLOC_SIZE : items.length << 1;
+        while (newSize < minSize) {
+            newSize <<= 1;
+        }
+        final long[] newItems = new long[newSize];
+        final int mask = items.length - 1;
+        for (int i = 0; i < size; i++) {
+            newItems[i] = items[(head + i) & mask];
+        }
+        items = newItems;
+        head = 0;
+    }
+
+}
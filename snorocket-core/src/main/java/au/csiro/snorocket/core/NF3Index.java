@@ -0,0 +1,454 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import au.csiro.snorocket.core.axioms.NF3;
+
+/**
+ * Index of the NF3 terms of the form r.A [ B, indexed by A and then by r.
+ *
+ * <p>
+ * The terms are stored in read-only {@link Block}s that use a compressed
+ * sparse row layout: for every concept A the block has a slice of roles and
+ * for every role a slice of right hand sides, all of them in flat int arrays.
+ * Looking up the terms of a concept does not allocate or box anything.
+ * </p>
+ *
+ * <p>
+ * New terms are kept in a pending list until {@link #freeze()} is called.
+ * The first freeze builds the base block. Terms added afterwards (e.g. in an
+ * incremental classification) go into a smaller overlay block, which is
+ * merged into the base block when it gets too large. Readers have to look at
+ * every block returned by {@link #getBlocks()}.
+ * </p>
+ *
+ * <p>
+ * This class is not thread safe. Terms must not be added while the index is
+ * being read by the saturation threads.
+ * </p>
+ */
+public class NF3Index implements Serializable {
+
+    /**
+     * Serialisation version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The overlay is merged into the base block when it has more than
+     * 1/MERGE_RATIO of the terms in the base block.
+     */
+    private static final int MERGE_RATIO = 8;
+
+    /**
+     * Minimum number of pending terms that triggers a freeze when looking up
+     * a term.
+     */
+    private static final int MIN_PENDING = 64;
+
+    private static final Block EMPTY_BLOCK = new Block(0, new int[1], new int[0], new int[1], new int[0]);
+
+    private Block base = EMPTY_BLOCK;
+
+    private Block overlay = EMPTY_BLOCK;
+
+    private Block[] blocks = { EMPTY_BLOCK, EMPTY_BLOCK };
+
+    /**
+     * Terms added since the last freeze, stored as (r, A, B) triples.
+     */
+    private int[] pending = new int[3 * 16];
+
+    private int numPending = 0;
+
+    /**
+     * A read-only set of NF3 terms. The roles of concept A are at positions
+     * [start(A), end(A)) and, for a role at position i, the right hand sides
+     * are at positions [fillerStart(i), fillerEnd(i)). Roles and right hand
+     * sides are sorted and do not contain duplicates.
+     */
+    public static final class Block implements Serializable {
+
+        /**
+         * Serialisation version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        private final int firstConcept;
+
+        private final int[] rowStart;
+
+        private final int[] roles;
+
+        private final int[] fillerStart;
+
+        private final int[] fillers;
+
+        private Block(int firstConcept, int[] rowStart, int[] roles, int[] fillerStart, int[] fillers) {
+            this.firstConcept = firstConcept;
+            this.rowStart = rowStart;
+            this.roles = roles;
+            this.fillerStart = fillerStart;
+            this.fillers = fillers;
+        }
+
+        /**
+         * Returns the position of the first role of concept a.
+         *
+         * @param a
+         * @return
+         */
+        public int start(int a) {
+            final int row = a - firstConcept;
+            return (row < 0 || row >= rowStart.length - 1) ? 0 : rowStart[row];
+        }
+
+        /**
+         * Returns the position after the last role of concept a.
+         *
+         * @param a
+         * @return
+         */
+        public int end(int a) {
+            final int row = a - firstConcept;
+            return (row < 0 || row >= rowStart.length - 1) ? 0 : rowStart[row + 1];
+        }
+
+        /**
+         * Returns the position of role r in the slice of concept a, or -1 if
+         * there are no terms r.a [ B in this block.
+         *
+         * @param a
+         * @param r
+         * @return
+         */
+        public int indexOf(int a, int r) {
+            final int row = a - firstConcept;
+            if (row < 0 || row >= rowStart.length - 1)
+                return -1;
+            final int from = rowStart[row];
+            final int to = rowStart[row + 1];
+            if (from == to)
+                return -1;
+            final int i = Arrays.binarySearch(roles, from, to, r);
+            return i < 0 ? -1 : i;
+        }
+
+        public int role(int i) {
+            return roles[i];
+        }
+
+        public int fillerStart(int i) {
+            return fillerStart[i];
+        }
+
+        public int fillerEnd(int i) {
+            return fillerStart[i + 1];
+        }
+
+        public int filler(int j) {
+            return fillers[j];
+        }
+
+        /**
+         * Returns the number of terms in this block.
+         *
+         * @return
+         */
+        public int size() {
+            return fillers.length;
+        }
+
+        /**
+         * Returns the first concept covered by this block.
+         *
+         * @return
+         */
+        int firstConcept() {
+            return firstConcept;
+        }
+
+        /**
+         * Returns the last concept covered by this block.
+         *
+         * @return
+         */
+        int lastConcept() {
+            return firstConcept + rowStart.length - 2;
+        }
+
+        boolean contains(int r, int a, int b) {
+            final int i = indexOf(a, r);
+            return i >= 0 && Arrays.binarySearch(fillers, fillerStart[i], fillerStart[i + 1], b) >= 0;
+        }
+
+        /**
+         * Appends the terms in this block to an array of (r, A, B) triples.
+         *
+         * @param triples
+         * @param n
+         *            the number of triples in the array
+         * @return the array, which might have been reallocated
+         */
+        int[] appendTo(int[] triples, int n) {
+            int[] res = ensureCapacity(triples, n + size());
+            int pos = 3 * n;
+            for (int row = 0; row < rowStart.length - 1; row++) {
+                final int a = firstConcept + row;
+                for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+                    for (int j = fillerStart[i]; j < fillerStart[i + 1]; j++) {
+                        res[pos++] = roles[i];
+                        res[pos++] = a;
+                        res[pos++] = fillers[j];
+                    }
+                }
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Adds a term. The term is not visible through {@link #getBlocks()} until
+     * the index is frozen.
+     *
+     * @param nf3
+     */
+    public void add(NF3 nf3) {
+        add(nf3.lhsR, nf3.lhsA, nf3.rhsB);
+    }
+
+    /**
+     * Adds a term r.a [ b.
+     *
+     * @param r
+     * @param a
+     * @param b
+     */
+    public void add(int r, int a, int b) {
+        pending = ensureCapacity(pending, numPending + 1);
+        final int pos = 3 * numPending++;
+        pending[pos] = r;
+        pending[pos + 1] = a;
+        pending[pos + 2] = b;
+    }
+
+    /**
+     * Returns true if the index contains the term r.a [ b, including terms
+     * that have not been frozen yet. Might freeze the index.
+     *
+     * @param r
+     * @param a
+     * @param b
+     * @return
+     */
+    public boolean contains(int r, int a, int b) {
+        // Pending terms are searched linearly, so they are frozen once there
+        // are too many of them. The threshold grows with the overlay to
+        // amortise the cost of rebuilding it.
+        if (numPending > Math.max(MIN_PENDING, overlay.size())) {
+            freeze();
+        }
+        if (base.contains(r, a, b) || overlay.contains(r, a, b))
+            return true;
+        for (int i = 0; i < 3 * numPending; i += 3) {
+            if (pending[i] == r && pending[i + 1] == a && pending[i + 2] == b)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Makes the terms added since the last call visible to readers. The
+     * pending terms are added to the overlay block, or merged together with
+     * the overlay into a new base block if the overlay would become too large.
+     */
+    public void freeze() {
+        if (numPending == 0)
+            return;
+
+        int[] triples = pending;
+        int n = numPending;
+        triples = overlay.appendTo(triples, n);
+        n += overlay.size();
+        if (n * MERGE_RATIO > base.size()) {
+            triples = base.appendTo(triples, n);
+            n += base.size();
+            base = build(triples, n);
+            overlay = EMPTY_BLOCK;
+        } else {
+            overlay = build(triples, n);
+        }
+        blocks = overlay.size() == 0 ? new Block[] { base } : new Block[] { base, overlay };
+
+        pending = new int[3 * 16];
+        numPending = 0;
+    }
+
+    /**
+     * Removes all the terms.
+     */
+    public void clear() {
+        base = EMPTY_BLOCK;
+        overlay = EMPTY_BLOCK;
+        blocks = new Block[] { EMPTY_BLOCK, EMPTY_BLOCK };
+        pending = new int[3 * 16];
+        numPending = 0;
+    }
+
+    /**
+     * Returns the blocks that make up the frozen part of the index.
+     *
+     * @return
+     */
+    public Block[] getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Returns the number of terms in the index. Terms that have been added
+     * more than once and have not been frozen yet are counted more than once.
+     *
+     * @return
+     */
+    public int size() {
+        return base.size() + overlay.size() + numPending;
+    }
+
+    /**
+     * Returns true if there are no terms in the index.
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of concepts A with at least one term r.A [ B in the
+     * frozen part of the index.
+     *
+     * @return
+     */
+    public int countConcepts() {
+        int count = 0;
+        final int first = Math.min(base.firstConcept(), overlay.firstConcept());
+        final int last = Math.max(base.lastConcept(), overlay.lastConcept());
+        for (int a = first; a <= last; a++) {
+            if (base.start(a) < base.end(a) || overlay.start(a) < overlay.end(a)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns all the terms in the index. Used when the terms need to be
+     * processed individually, e.g. to export them.
+     *
+     * @return
+     */
+    public List<NF3> getTerms() {
+        int[] triples = base.appendTo(new int[0], 0);
+        int n = base.size();
+        triples = overlay.appendTo(triples, n);
+        n += overlay.size();
+        triples = ensureCapacity(triples, n + numPending);
+        System.arraycopy(pending, 0, triples, 3 * n, 3 * numPending);
+        n += numPending;
+
+        final List<NF3> res = new ArrayList<NF3>(n);
+        for (int i = 0; i < 3 * n; i += 3) {
+            res.add(NF3.getInstance(triples[i], triples[i + 1], triples[i + 2]));
+        }
+        return res;
+    }
+
+    private static int[] ensureCapacity(int[] triples, int n) {
+        if (3 * n <= triples.length)
+            return triples;
+        int newLength = Math.max(triples.length, 3 * 16);
+        while (newLength < 3 * n) {
+            newLength <<= 1;
+        }
+        return Arrays.copyOf(triples, newLength);
+    }
+
+    /**
+     * Builds a block from an array of (r, A, B) triples. The triples are
+     * bucketed by concept and each bucket is sorted by role and right hand
+     * side.
+     *
+     * @param triples
+     * @param n
+     * @return
+     */
+    private static Block build(int[] triples, int n) {
+        if (n == 0)
+            return EMPTY_BLOCK;
+
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (int i = 1; i < 3 * n; i += 3) {
+            first = Math.min(first, triples[i]);
+            last = Math.max(last, triples[i]);
+        }
+        final int numRows = last - first + 1;
+
+        // Bucket the (r, B) pairs by concept
+        final int[] bucketStart = new int[numRows + 1];
+        for (int i = 1; i < 3 * n; i += 3) {
+            bucketStart[triples[i] - first + 1]++;
+        }
+        for (int row = 0; row < numRows; row++) {
+            bucketStart[row + 1] += bucketStart[row];
+        }
+        final int[] pos = Arrays.copyOf(bucketStart, numRows);
+        final long[] keys = new long[n];
+        for (int i = 0; i < 3 * n; i += 3) {
+            keys[pos[triples[i + 1] - first]++] = LongQueue.pack(triples[i], triples[i + 2]);
+        }
+
+        // Sort each bucket and remove duplicates
+        final int[] rowStart = new int[numRows + 1];
+        final int[] roles = new int[n];
+        final int[] fillerStart = new int[n + 1];
+        final int[] fillers = new int[n];
+        int numRoles = 0;
+        int numFillers = 0;
+        for (int row = 0; row < numRows; row++) {
+            rowStart[row] = numRoles;
+            final int from = bucketStart[row];
+            final int to = bucketStart[row + 1];
+            Arrays.sort(keys, from, to);
+            long prevKey = -1;
+            int prevRole = -1;
+            for (int k = from; k < to; k++) {
+                final long key = keys[k];
+                if (key == prevKey)
+                    continue;
+                prevKey = key;
+                final int r = LongQueue.first(key);
+                if (r != prevRole) {
+                    prevRole = r;
+                    roles[numRoles] = r;
+                    fillerStart[numRoles] = numFillers;
+                    numRoles++;
+                }
+                fillers[numFillers++] = LongQueue.second(key);
+            }
+        }
+        rowStart[numRows] = numRoles;
+        fillerStart[numRoles] = numFillers;
+
+        return new Block(first, rowStart, Arrays.copyOf(roles, numRoles), Arrays.copyOf(fillerStart, numRoles + 1),
+                Arrays.copyOf(fillers, numFillers));
+    }
+
+}
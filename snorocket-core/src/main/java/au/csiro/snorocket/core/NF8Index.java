@@ -0,0 +1,508 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import au.csiro.ontology.model.Operator;
+import au.csiro.snorocket.core.axioms.NF8;
+import au.csiro.snorocket.core.model.AbstractLiteral;
+import au.csiro.snorocket.core.model.Datatype;
+import au.csiro.snorocket.core.util.FeatureMap;
+import au.csiro.snorocket.core.util.IntIterator;
+
+/**
+ * Index of the NF8 terms of the form f.(o, v) [ B, used to find the terms
+ * whose left hand side is matched by the datatype of an NF7 term.
+ *
+ * <p>
+ * The terms are indexed by feature, then by the type of the literal and then
+ * by operator. Each list is sorted by literal, so the terms that match a
+ * datatype are found with a binary search instead of evaluating
+ * {@link #matches(Datatype, Datatype)} against every term of the feature.
+ * For instance, the terms f.(&gt;, v) [ B matched by f.(=, x) are the prefix
+ * of the &gt; list with v &lt; x. The few combinations of operators that do
+ * not map to a range of the sorted list are still evaluated one by one, so
+ * the results are always the same as those of
+ * {@link #matches(Datatype, Datatype)}. Literals of different types are never
+ * compared.
+ * </p>
+ *
+ * <p>
+ * New terms are kept in a pending list, which is scanned linearly, until
+ * {@link #freeze()} is called. This class is not thread safe. Terms must not
+ * be added while the index is being read by the saturation threads.
+ * </p>
+ */
+public class NF8Index implements Serializable {
+
+    /**
+     * Serialisation version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private static final int NUM_OPERATORS = Operator.values().length;
+
+    private static final int EQ = Operator.EQUALS.ordinal();
+    private static final int GT = Operator.GREATER_THAN.ordinal();
+    private static final int GTE = Operator.GREATER_THAN_EQUALS.ordinal();
+    private static final int LT = Operator.LESS_THAN.ordinal();
+    private static final int LTE = Operator.LESS_THAN_EQUALS.ordinal();
+
+    private static final Comparator<NF8> LITERAL_ORDER = new Comparator<NF8>() {
+        public int compare(NF8 o1, NF8 o2) {
+            return o1.lhsD.getLiteral().compareTo(o2.lhsD.getLiteral());
+        }
+    };
+
+    /**
+     * The terms of a feature with literals of the same type. The terms with
+     * operator o are in byOperator[o.ordinal()], sorted by literal.
+     */
+    private static final class Group implements Serializable {
+
+        /**
+         * Serialisation version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        private final Class<? extends AbstractLiteral> literalType;
+
+        private final NF8[][] byOperator = new NF8[NUM_OPERATORS][];
+
+        private Group(Class<? extends AbstractLiteral> literalType) {
+            this.literalType = literalType;
+        }
+    }
+
+    private final FeatureMap<Group[]> groups = new FeatureMap<Group[]>(10);
+
+    private List<NF8> pending = new ArrayList<NF8>();
+
+    private int size = 0;
+
+    public void add(NF8 nf8) {
+        pending.add(nf8);
+        size++;
+    }
+
+    /**
+     * Moves the pending terms into the sorted lists. Only the features of the
+     * pending terms are rebuilt.
+     */
+    public void freeze() {
+        if (pending.isEmpty())
+            return;
+
+        final FeatureMap<List<NF8>> byFeature = new FeatureMap<List<NF8>>(10);
+        for (NF8 nf8 : pending) {
+            final int f = nf8.lhsD.getFeature();
+            List<NF8> terms = byFeature.get(f);
+            if (null == terms) {
+                terms = new ArrayList<NF8>();
+                final Group[] old = groups.get(f);
+                if (null != old) {
+                    for (Group group : old) {
+                        for (NF8[] sorted : group.byOperator) {
+                            terms.addAll(Arrays.asList(sorted));
+                        }
+                    }
+                }
+                byFeature.put(f, terms);
+            }
+            terms.add(nf8);
+        }
+
+        for (int f = byFeature.keySet().nextSetBit(0); f >= 0; f = byFeature.keySet().nextSetBit(f + 1)) {
+            groups.put(f, build(byFeature.get(f)));
+        }
+        pending = new ArrayList<NF8>();
+    }
+
+    private static Group[] build(List<NF8> terms) {
+        final List<Group> res = new ArrayList<Group>();
+        final List<List<NF8>> lists = new ArrayList<List<NF8>>();
+        for (NF8 nf8 : terms) {
+            final Class<? extends AbstractLiteral> type = nf8.lhsD.getLiteral().getClass();
+            int i = 0;
+            while (i < res.size() && res.get(i).literalType != type) {
+                i++;
+            }
+            if (i == res.size()) {
+                res.add(new Group(type));
+                for (int o = 0; o < NUM_OPERATORS; o++) {
+                    lists.add(new ArrayList<NF8>());
+                }
+            }
+            lists.get(i * NUM_OPERATORS + nf8.lhsD.getOperator().ordinal()).add(nf8);
+        }
+
+        for (int i = 0; i < res.size(); i++) {
+            final Group group = res.get(i);
+            for (int o = 0; o < NUM_OPERATORS; o++) {
+                final NF8[] sorted = lists.get(i * NUM_OPERATORS + o).toArray(new NF8[0]);
+                Arrays.sort(sorted, LITERAL_ORDER);
+                group.byOperator[o] = sorted;
+            }
+        }
+        return res.toArray(new Group[res.size()]);
+    }
+
+    /**
+     * Removes all the terms.
+     */
+    public void clear() {
+        groups.clear();
+        pending = new ArrayList<NF8>();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of terms in the index, including the pending ones.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns all the terms of a feature.
+     *
+     * @param feature
+     * @return
+     */
+    public List<NF8> getTerms(int feature) {
+        final List<NF8> res = new ArrayList<NF8>();
+        final Group[] featureGroups = groups.get(feature);
+        if (null != featureGroups) {
+            for (Group group : featureGroups) {
+                for (NF8[] sorted : group.byOperator) {
+                    res.addAll(Arrays.asList(sorted));
+                }
+            }
+        }
+        for (NF8 nf8 : pending) {
+            if (nf8.lhsD.getFeature() == feature) {
+                res.add(nf8);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns the right hand sides of the terms f.(o, v) [ B whose left hand
+     * side is matched by d, i.e. the terms for which
+     * {@link #matches(Datatype, Datatype)} returns true. The same concept can
+     * be returned more than once if it is the right hand side of several
+     * terms.
+     *
+     * @param d
+     *            Data type from an NF7 entry.
+     * @return
+     */
+    public IntIterator match(Datatype d) {
+        final MatchIterator res = new MatchIterator(d);
+        final Group[] featureGroups = groups.get(d.getFeature());
+        if (null != featureGroups) {
+            final AbstractLiteral x = d.getLiteral();
+            for (Group group : featureGroups) {
+                if (group.literalType == x.getClass()) {
+                    addRanges(res, group, d.getOperator().ordinal(), x);
+                    break;
+                }
+            }
+        }
+        if (!pending.isEmpty()) {
+            final NF8[] terms = pending.toArray(new NF8[pending.size()]);
+            res.addRange(terms, 0, terms.length, true);
+        }
+        return res;
+    }
+
+    /**
+     * Adds the slices of the sorted lists of a group that match a datatype
+     * with operator q and literal x. Each case mirrors a branch of
+     * {@link #matches(Datatype, Datatype)}.
+     */
+    private static void addRanges(MatchIterator res, Group group, int q, AbstractLiteral x) {
+        final NF8[] eq = group.byOperator[EQ];
+        final NF8[] gt = group.byOperator[GT];
+        final NF8[] gte = group.byOperator[GTE];
+        final NF8[] lt = group.byOperator[LT];
+        final NF8[] lte = group.byOperator[LTE];
+
+        if (q == EQ) {
+            // Literals that compare as equal are not necessarily equal, e.g.
+            // 1.0 and 1.00
+            res.addRange(eq, lowerBound(eq, x), upperBound(eq, x), true);
+            res.addRange(gt, 0, lowerBound(gt, x), false);
+            res.addRange(gte, 0, upperBound(gte, x), false);
+            res.addRange(lt, upperBound(lt, x), lt.length, false);
+            res.addRange(lte, lowerBound(lte, x), lte.length, false);
+        } else if (q == GT) {
+            res.addRange(gt, 0, upperBound(gt, x), false);
+            // Not a range of the list because the test is compare >= -1
+            res.addRange(gte, 0, gte.length, true);
+        } else if (q == GTE) {
+            res.addRange(gt, 0, lowerBound(gt, x), false);
+            res.addRange(gte, 0, upperBound(gte, x), false);
+        } else if (q == LT) {
+            res.addRange(lt, lowerBound(lt, x), lt.length, false);
+            // Not a range of the list because the test is compare <= 1
+            res.addRange(lte, 0, lte.length, true);
+        } else if (q == LTE) {
+            res.addRange(lt, upperBound(lt, x), lt.length, false);
+            res.addRange(lte, lowerBound(lte, x), lte.length, false);
+        }
+    }
+
+    /**
+     * Returns the position of the first term with a literal &gt;= x.
+     */
+    private static int lowerBound(NF8[] sorted, AbstractLiteral x) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (x.compareTo(sorted[mid].lhsD.getLiteral()) > 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the position of the first term with a literal &gt; x.
+     */
+    private static int upperBound(NF8[] sorted, AbstractLiteral x) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (x.compareTo(sorted[mid].lhsD.getLiteral()) >= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Iterates over the right hand sides of a few slices of sorted lists.
+     * The terms in filtered slices are checked one by one. The pending terms
+     * are a filtered slice that can include other features and literal
+     * types.
+     */
+    private static final class MatchIterator implements IntIterator {
+
+        private static final int MAX_RANGES = 6;
+
+        private final Datatype query;
+
+        private final NF8[][] terms = new NF8[MAX_RANGES][];
+        private final int[] starts = new int[MAX_RANGES];
+        private final int[] ends = new int[MAX_RANGES];
+        private final boolean[] filtered = new boolean[MAX_RANGES];
+        private int numRanges = 0;
+
+        private int range = -1;
+        private int pos = 0;
+        private int end = 0;
+
+        private MatchIterator(Datatype query) {
+            this.query = query;
+        }
+
+        private void addRange(NF8[] sorted, int start, int end, boolean filter) {
+            if (start < end) {
+                terms[numRanges] = sorted;
+                starts[numRanges] = start;
+                ends[numRanges] = end;
+                filtered[numRanges] = filter;
+                numRanges++;
+            }
+        }
+
+        /**
+         * Moves to the next matching term, if there is one.
+         */
+        private boolean advance() {
+            while (true) {
+                if (pos < end) {
+                    final Datatype d = terms[range][pos].lhsD;
+                    if (!filtered[range] || (d.getFeature() == query.getFeature()
+                            && d.getLiteral().getClass() == query.getLiteral().getClass() && matches(query, d))) {
+                        return true;
+                    }
+                    pos++;
+                } else if (range + 1 < numRanges) {
+                    range++;
+                    pos = starts[range];
+                    end = ends[range];
+                } else {
+                    return false;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return advance();
+        }
+
+        public int next() {
+            return advance() ? terms[range][pos++].rhsB : -1;
+        }
+    }
+
+    /**
+     * Evaluates the equivalence of two {@link Datatype}s. This method assumes
+     * that the literals both have the same matching literal types.
+     *
+     * @param d1
+     *            Data type from an NF7 entry.
+     * @param d2
+     *            Data type from an NF8 entry.
+     * @return boolean
+     */
+    public static boolean matches(Datatype d1, Datatype d2) {
+        assert (d1.getFeature() == d2.getFeature());
+
+        AbstractLiteral lhsLit = d1.getLiteral();
+        AbstractLiteral rhsLit = d2.getLiteral();
+
+        Operator lhsOp = d1.getOperator();
+        Operator rhsOp = d2.getOperator();
+
+        if (rhsOp == Operator.EQUALS) {
+            // If the rhs operator is =, then the expression will only match
+            // if the lhs operator is also = and the literal values are the
+            // same.
+            if(lhsOp != Operator.EQUALS) {
+                return false;
+            } else {
+                return d1.getLiteral().equals(d2.getLiteral());
+            }
+        } else if (rhsOp == Operator.GREATER_THAN) {
+            if (lhsOp == Operator.LESS_THAN
+                    || lhsOp == Operator.LESS_THAN_EQUALS) {
+                return false;
+            } else if (lhsOp == Operator.EQUALS) {
+                if (compareLiterals(lhsLit, rhsLit) > 0) {
+                    return true;
+                } else {
+                    return false;
+                }
+            } else if (lhsOp == Operator.GREATER_THAN) {
+                if (compareLiterals(lhsLit, rhsLit) >= 0) {
+                    return true;
+                } else {
+                    return false;
+                }
+            } else if (lhsOp == Operator.GREATER_THAN_EQUALS) {
+                if (compareLiterals(lhsLit, rhsLit) > 0) {
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        } else if (rhsOp == Operator.GREATER_THAN_EQUALS) {
+            if (lhsOp == Operator.LESS_THAN
+                    || lhsOp == Operator.LESS_THAN_EQUALS) {
+                return false;
+            } else if (lhsOp == Operator.EQUALS) {
+                if (compareLiterals(lhsLit, rhsLit) >= 0) {
+                    return true;
+                } else {
+                    return false;
+                }
+            } else if (lhsOp == Operator.GREATER_THAN) {
+                if (compareLiterals(lhsLit, rhsLit) >= -1) {
+                    return true;
+                } else {
+                    return false;
+                }
+            } else if (lhsOp == Operator.GREATER_THAN_EQUALS) {
+                if (compareLiterals(lhsLit, rhsLit) >= 0) {
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        } else if (rhsOp == Operator.LESS_THAN) {
+            if (lhsOp == Operator.GREATER_THAN
+                    || lhsOp == Operator.GREATER_THAN_EQUALS) {
+                return false;
+            } else if (lhsOp == Operator.EQUALS) {
+                if (compareLiterals(lhsLit, rhsLit) < 0) {
+                    return true;
+                } else {
+                    return false;
+                }
+            } else if (lhsOp == Operator.LESS_THAN) {
+                if (compareLiterals(lhsLit, rhsLit) <= 0) {
+                    return true;
+                } else {
+                    return false;
+                }
+            } else if (lhsOp == Operator.LESS_THAN_EQUALS) {
+                if (compareLiterals(lhsLit, rhsLit) < 0) {
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        } else if (rhsOp == Operator.LESS_THAN_EQUALS) {
+            if (lhsOp == Operator.GREATER_THAN
+                    || lhsOp == Operator.GREATER_THAN_EQUALS) {
+                return false;
+            } else if (lhsOp == Operator.EQUALS) {
+                if (compareLiterals(lhsLit, rhsLit) <= 0) {
+                    return true;
+                } else {
+                    return false;
+                }
+            } else if (lhsOp == Operator.LESS_THAN) {
+                if (compareLiterals(lhsLit, rhsLit) <= 1) {
+                    return true;
+                } else {
+                    return false;
+                }
+            } else if (lhsOp == Operator.LESS_THAN_EQUALS) {
+                if (compareLiterals(lhsLit, rhsLit) <= 0) {
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        }
+
+        return d1.getLiteral().equals(d2.getLiteral());
+    }
+
+    /**
+     * Return 0 if both literals are equals. Returns an int > 0 if l1 is greater than l2 and an int < 0 if l1 is less
+     * than l2.
+     *
+     * @param l1
+     * @param l2
+     * @return
+     */
+    private static int compareLiterals(AbstractLiteral l1, AbstractLiteral l2) {
+        return l1.compareTo(l2);
+    }
+
+}
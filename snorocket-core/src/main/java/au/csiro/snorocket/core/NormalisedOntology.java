@@ -21,11 +21,20 @@
 
 package au.csiro.snorocket.core;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
 import java.math.BigDecimal;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -38,10 +47,18 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,7 +73,6 @@ import au.csiro.ontology.model.NamedFeature;
 import au.csiro.ontology.model.NamedRole;
 import au.csiro.ontology.model.Role;
 import au.csiro.ontology.model.RoleInclusion;
-import au.csiro.ontology.util.Statistics;
 import au.csiro.snorocket.core.axioms.GCI;
 import au.csiro.snorocket.core.axioms.IConjunctionQueueEntry;
 import au.csiro.snorocket.core.axioms.IRoleQueueEntry;
@@ -74,9 +90,13 @@ import au.csiro.snorocket.core.axioms.NormalFormGCI;
 import au.csiro.snorocket.core.axioms.RI;
 import au.csiro.snorocket.core.concurrent.CR;
 import au.csiro.snorocket.core.concurrent.Context;
+import au.csiro.snorocket.core.concurrent.ContextMap;
+import au.csiro.snorocket.core.concurrent.SaturationScheduler;
+import au.csiro.snorocket.core.concurrent.SaturationStatistics;
 import au.csiro.snorocket.core.concurrent.TaxonomyWorker1;
 import au.csiro.snorocket.core.concurrent.TaxonomyWorker2;
 import au.csiro.snorocket.core.concurrent.Worker;
+import au.csiro.snorocket.core.jfr.ReasonerEvents;
 import au.csiro.snorocket.core.model.AbstractConcept;
 import au.csiro.snorocket.core.model.AbstractLiteral;
 import au.csiro.snorocket.core.model.Conjunction;
@@ -89,7 +109,6 @@ import au.csiro.snorocket.core.model.StringLiteral;
 import au.csiro.snorocket.core.util.AxiomSet;
 import au.csiro.snorocket.core.util.DenseConceptMap;
 import au.csiro.snorocket.core.util.FastConceptHashSet;
-import au.csiro.snorocket.core.util.FastConceptMap;
 import au.csiro.snorocket.core.util.FeatureMap;
 import au.csiro.snorocket.core.util.FeatureSet;
 import au.csiro.snorocket.core.util.IConceptMap;
@@ -128,6 +147,25 @@ public class NormalisedOntology implements Serializable {
 		}
 	};
 
+    /**
+     * The number of axioms normalised by a worker at a time when the
+     * normalisation runs in parallel.
+     */
+    private final static int NORMALISATION_CHUNK = 2048;
+
+    private final static MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    /**
+     * Measures the CPU time of the threads that run the phases, or null if
+     * the JVM does not support it.
+     */
+    private final static ThreadMXBean THREADS;
+
+    static {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        THREADS = threads.isCurrentThreadCpuTimeSupported() ? threads : null;
+    }
+
     final protected IFactory factory;
 
     /**
@@ -157,9 +195,9 @@ public class NormalisedOntology implements Serializable {
      * <li>Unknown usage profile for Role maps</li>
      * </ul>
      * 
-     * These terms are of the form r.A [ b and indexed by A.
+     * These terms are of the form r.A [ b and indexed by A (and then by r).
      */
-    final protected IConceptMap<ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>>> ontologyNF3;
+    final protected NF3Index ontologyNF3;
 
     /**
      * The set of NF4 terms in the ontology
@@ -171,6 +209,18 @@ public class NormalisedOntology implements Serializable {
      */
     final protected IMonotonicCollection<NF5> ontologyNF5;
 
+    /**
+     * The NF5 terms in the ontology indexed by their left role, i.e. the
+     * terms r o s [ t indexed by r.
+     */
+    final protected IConceptMap<MonotonicCollection<NF5>> ontologyNF5ByR;
+
+    /**
+     * The NF5 terms in the ontology indexed by their right role, i.e. the
+     * terms r o s [ t indexed by s.
+     */
+    final protected IConceptMap<MonotonicCollection<NF5>> ontologyNF5ByS;
+
     /**
      * The set of reflexive roles in the ontology
      */
@@ -190,25 +240,33 @@ public class NormalisedOntology implements Serializable {
      */
     final protected FeatureMap<MonotonicCollection<NF8>> ontologyNF8;
 
+    /**
+     * The NF8 terms indexed by feature, literal type and operator, used to
+     * find the terms matched by the datatype of an NF7 term.
+     */
+    final protected NF8Index ontologyNF8Index = new NF8Index();
+
     /**
      * The set of functional data properties
      */
     final protected IConceptSet functionalFeatures = new SparseConceptSet();
-    
+
     /**
      * The queue of contexts to process.
      */
-    private final Queue<Context> todo = new ConcurrentLinkedQueue<Context>();
+    private final SaturationScheduler todo = new SaturationScheduler();
 
     /**
      * The map of contexts by concept id.
      */
-    private final IConceptMap<Context> contextIndex;
+    private final ContextMap contextIndex;
 
     /**
-     * The global role closure.
+     * The reflexive transitive closure of the role hierarchy, indexed by role
+     * id. The closure of a role r contains r and all its super roles. Roles in
+     * the same cycle share the same {@link RoleSet}.
      */
-    private final Map<Integer, RoleSet> roleClosureCache;
+    private RoleSet[] roleClosures = new RoleSet[0];
 
     /**
      * A set of new contexts added in an incremental classification.
@@ -220,6 +278,98 @@ public class NormalisedOntology implements Serializable {
      */
     private int numThreads = Runtime.getRuntime().availableProcessors();
     
+    /**
+     * The executor that runs the workers of every phase of the reasoning. If
+     * null, a pool of numThreads threads is created for each phase. Not
+     * serialised.
+     */
+    private transient Executor executor = null;
+    
+    /**
+     * Receives the progress of the reasoning. Not serialised.
+     */
+    private transient volatile ReasonerListener listener = null;
+    
+    /**
+     * The time between reports of the progress of the saturation, in
+     * milliseconds.
+     */
+    private transient long progressInterval = 1000;
+    
+    /**
+     * Stops the saturation and the taxonomy construction when cancelled. Not
+     * serialised.
+     */
+    private transient volatile CancellationToken cancellationToken = null;
+    
+    /**
+     * The flight recorder event of the current phase, if enabled.
+     */
+    private transient Object phaseEvent = null;
+    
+    /**
+     * The current phase and its start time in milliseconds, or null if no
+     * phase is running.
+     */
+    private transient String phase = null;
+    private transient long phaseStart;
+    
+    /**
+     * The metrics of the phases. Recording a phase reads the used heap and
+     * the CPU time of its threads, which is cheap enough to always do. Not
+     * serialised - a deserialised ontology starts with empty metrics.
+     */
+    private transient volatile ReasonerMetrics metrics = new ReasonerMetrics(this);
+    
+    /**
+     * The state of the current phase: the start time in nanoseconds, the
+     * used heap and CPU time of the calling thread when it started, and the
+     * workers run so far and their CPU time.
+     */
+    private transient long phaseNanos;
+    private transient long phaseMemory;
+    private transient long phaseCpuTime;
+    private transient int phaseWorkers;
+    private transient long phaseWorkerCpuTime;
+    
+    /**
+     * Creates the sets of subsumers of the contexts. The sets are read by
+     * other threads while they are being modified, so they must be thread
+     * safe. Not serialised - a loaded ontology uses the default.
+     */
+    private transient ConceptSetFactory conceptSetFactory = ConceptSetFactory.SPARSE;
+    
+    /**
+     * If true, only the contexts of the named concepts are created up front.
+     * The contexts of the virtual concepts introduced by the normalisation
+     * are created when they are first reached through an existential.
+     */
+    private boolean lazyContexts = false;
+    
+    /**
+     * Set while the saturation runs. Contexts created on demand outside the
+     * saturation need a saturation of their own.
+     */
+    private transient volatile boolean saturating = false;
+    
+    /**
+     * If set, the concepts are renumbered with this ordering before the
+     * first classification. Not serialised.
+     */
+    private transient ConceptOrdering conceptOrdering = null;
+    
+    /**
+     * If true, the contexts start with their told subsumers, computed in bulk
+     * before the saturation.
+     */
+    private boolean toldSeeding = false;
+    
+    /**
+     * If true, the axioms are split in chunks that are normalised in
+     * parallel.
+     */
+    private boolean parallelNormalisation = false;
+    
     private boolean hasBeenIncrementallyClassified = false;
     
     private transient Map<String, Node> conceptNodeIndex;
@@ -254,7 +404,7 @@ public class NormalisedOntology implements Serializable {
         return ontologyNF2;
     }
 
-    public IConceptMap<ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>>> getOntologyNF3() {
+    public NF3Index getOntologyNF3() {
         return ontologyNF3;
     }
 
@@ -266,6 +416,14 @@ public class NormalisedOntology implements Serializable {
         return ontologyNF5;
     }
 
+    public IConceptMap<MonotonicCollection<NF5>> getOntologyNF5ByR() {
+        return ontologyNF5ByR;
+    }
+
+    public IConceptMap<MonotonicCollection<NF5>> getOntologyNF5ByS() {
+        return ontologyNF5ByS;
+    }
+
     public IConceptSet getReflexiveRoles() {
         return reflexiveRoles;
     }
@@ -278,11 +436,15 @@ public class NormalisedOntology implements Serializable {
         return ontologyNF8;
     }
 
+    public NF8Index getOntologyNF8Index() {
+        return ontologyNF8Index;
+    }
+
     public IConceptSet getFunctionalFeatures() {
     	return functionalFeatures;
     }
     
-    public Queue<Context> getTodo() {
+    public SaturationScheduler getTodo() {
         return todo;
     }
 
@@ -290,8 +452,24 @@ public class NormalisedOntology implements Serializable {
         return contextIndex;
     }
 
-    public Map<Integer, RoleSet> getRoleClosureCache() {
-        return roleClosureCache;
+    /**
+     * Returns the closure of a role, i.e. the role itself and all its super
+     * roles. The returned set should not be modified.
+     * 
+     * @param r
+     * @return
+     */
+    public RoleSet getRoleClosure(int r) {
+        final RoleSet[] closures = roleClosures;
+        if (r < closures.length) {
+            return closures[r];
+        } else {
+            // The role was created after the closure was computed so it can
+            // not have any super roles
+            final RoleSet res = new RoleSet();
+            res.add(r);
+            return res;
+        }
     }
 
     public Set<Context> getAffectedContexts() {
@@ -329,7 +507,7 @@ public class NormalisedOntology implements Serializable {
             factory,
             new DenseConceptMap<MonotonicCollection<IConjunctionQueueEntry>>(CONCEPT_COUNT_ESTIMATE),
             new SparseConceptMap<MonotonicCollection<NF2>>(CONCEPT_COUNT_ESTIMATE, "ontologyNF2"),
-            new SparseConceptMap<ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>>>(CONCEPT_COUNT_ESTIMATE, "ontologyNF3"),
+            new NF3Index(),
             new MonotonicCollection<NF4>(15), new MonotonicCollection<NF5>(1), 
             new SparseConceptMap<MonotonicCollection<NF7>>(10, "ontologyNF7"),
             new FeatureMap<MonotonicCollection<NF8>>(10)
@@ -351,22 +529,35 @@ public class NormalisedOntology implements Serializable {
             final IFactory factory,
             final IConceptMap<MonotonicCollection<IConjunctionQueueEntry>> nf1q,
             final IConceptMap<MonotonicCollection<NF2>> nf2q,
-            final IConceptMap<ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>>> nf3q,
+            final NF3Index nf3q,
             final IMonotonicCollection<NF4> nf4q,
             final IMonotonicCollection<NF5> nf5q,
             final IConceptMap<MonotonicCollection<NF7>> nf7q,
             final FeatureMap<MonotonicCollection<NF8>> nf8q) {
         this.factory = factory;
-        contextIndex = new FastConceptMap<Context>(factory.getTotalConcepts(), "");
-        roleClosureCache = new ConcurrentHashMap<Integer, RoleSet>(factory.getTotalRoles());
+        contextIndex = new ContextMap(factory.getTotalConcepts());
 
         this.ontologyNF1 = nf1q;
         this.ontologyNF2 = nf2q;
         this.ontologyNF3 = nf3q;
         this.ontologyNF4 = nf4q;
         this.ontologyNF5 = nf5q;
+        this.ontologyNF5ByR = new DenseConceptMap<MonotonicCollection<NF5>>(factory.getTotalRoles());
+        this.ontologyNF5ByS = new DenseConceptMap<MonotonicCollection<NF5>>(factory.getTotalRoles());
+        for (final NF5 nf5 : nf5q) {
+            addTerms(ontologyNF5ByR, nf5.getR(), nf5);
+            addTerms(ontologyNF5ByS, nf5.getS(), nf5);
+        }
         this.ontologyNF7 = nf7q;
         this.ontologyNF8 = nf8q;
+        final FeatureSet features = nf8q.keySet();
+        for (int f = features.nextSetBit(0); f >= 0; f = features.nextSetBit(f + 1)) {
+            for (final NF8 nf8 : nf8q.get(f)) {
+                ontologyNF8Index.add(nf8);
+            }
+        }
+
+        computeRoleClosures();
     }
 
     /**
@@ -375,18 +566,190 @@ public class NormalisedOntology implements Serializable {
      * @param inclusions
      */
     public void loadAxioms(final Set<? extends Axiom> inclusions) {
-        long start = System.currentTimeMillis();
-        if(log.isInfoEnabled())
-            log.info("Loading " + inclusions.size() + " axioms");
-        Set<Inclusion> normInclusions = normalise(inclusions);
-        if(log.isInfoEnabled()) log.info("Processing " + normInclusions.size() + " normalised axioms");
-        Statistics.INSTANCE.setTime("normalisation", System.currentTimeMillis() - start);
-        start = System.currentTimeMillis();
-        for (Inclusion i : normInclusions) {
-            addTerm(i.getNormalForm());
+        try {
+            phaseStarted("normalisation");
+            final long start = System.currentTimeMillis();
+            if(log.isInfoEnabled())
+                log.info("Loading " + inclusions.size() + " axioms");
+            final Set<Inclusion> normInclusions;
+            if (isNormalisedInParallel(inclusions)) {
+                normInclusions = normaliseParallel(inclusions);
+                for (Inclusion i : normInclusions) {
+                    addTerm(i.getNormalForm());
+                }
+            } else {
+                // The normal forms are indexed as soon as they are found
+                normInclusions = new HashSet<Inclusion>();
+                normalise(inclusions.iterator(), normInclusions, true);
+            }
+            finishLoading(normInclusions, start);
+        } finally {
+            phaseFailed();
         }
+    }
+
+    /**
+     * Normalises and loads the axioms returned by an iterator. Each axiom is
+     * normalised and indexed as soon as it is read, so the axioms do not need
+     * to be kept in memory. Only the inclusions in normal form are kept, to
+     * discard duplicates. Null axioms are ignored.
+     * 
+     * @param axioms
+     */
+    public void loadAxioms(final Iterator<? extends Axiom> axioms) {
+        try {
+            phaseStarted("normalisation");
+            final long start = System.currentTimeMillis();
+            final Set<Inclusion> normInclusions = new HashSet<Inclusion>();
+            final int numAxioms = normalise(axioms, normInclusions, true);
+            if(log.isInfoEnabled()) log.info("Loaded " + numAxioms + " axioms");
+            finishLoading(normInclusions, start);
+        } finally {
+            phaseFailed();
+        }
+    }
+
+    private void finishLoading(final Set<Inclusion> normInclusions, long start) {
+        // The concepts that are not keys of virtual concepts are no longer
+        // needed
+        factory.clearInterned();
+        traceNormalised(normInclusions);
+        if(log.isInfoEnabled()) log.info("Processed " + normInclusions.size() + " normalised axioms");
+        phaseFinished("normalisation", start);
+        phaseStarted("indexing");
+        start = System.currentTimeMillis();
+        computeRoleClosures();
         
-        Statistics.INSTANCE.setTime("indexing", System.currentTimeMillis() - start);
+        phaseFinished("indexing", start);
+    }
+
+    /**
+     * Computes the closure of every role from the NF4 axioms (r [ s). The
+     * strongly connected components of the role hierarchy are found using
+     * Tarjan's algorithm, which produces them in reverse topological order,
+     * so the closure of each component can be calculated from the (already
+     * complete) closures of its successors. This deals with cycles in the role
+     * hierarchy, which would otherwise never terminate.
+     */
+    protected void computeRoleClosures() {
+        final int n = factory.getTotalRoles();
+
+        // Adjacency lists r -> s, for every r [ s
+        final int[] start = new int[n + 1];
+        for (final NF4 nf4 : ontologyNF4) {
+            start[nf4.getR() + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            start[i + 1] += start[i];
+        }
+        final int[] edges = new int[start[n]];
+        final int[] pos = Arrays.copyOf(start, n);
+        for (final NF4 nf4 : ontologyNF4) {
+            edges[pos[nf4.getR()]++] = nf4.getS();
+        }
+
+        final RoleSet[] closures = new RoleSet[n];
+        final int[] index = new int[n];
+        Arrays.fill(index, -1);
+        final int[] low = new int[n];
+        final boolean[] onStack = new boolean[n];
+        final int[] stack = new int[n];
+        int sp = 0;
+        // Explicit call stack for the depth first search - the role hierarchy
+        // can be deep
+        final int[] calls = new int[n];
+        final int[] nextEdge = new int[n];
+        int counter = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0)
+                continue;
+
+            int csp = 0;
+            index[root] = low[root] = counter++;
+            stack[sp++] = root;
+            onStack[root] = true;
+            nextEdge[root] = start[root];
+            calls[csp++] = root;
+
+            while (csp > 0) {
+                final int v = calls[csp - 1];
+                if (nextEdge[v] < start[v + 1]) {
+                    final int w = edges[nextEdge[v]++];
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        nextEdge[w] = start[w];
+                        calls[csp++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                } else {
+                    csp--;
+                    if (csp > 0) {
+                        final int u = calls[csp - 1];
+                        low[u] = Math.min(low[u], low[v]);
+                    }
+                    if (low[v] == index[v]) {
+                        // v is the root of a component - its members are on
+                        // top of the stack
+                        final int top = sp;
+                        final RoleSet closure = new RoleSet();
+                        int w;
+                        do {
+                            w = stack[--sp];
+                            onStack[w] = false;
+                            closure.add(w);
+                        } while (w != v);
+
+                        // Successors outside the component are complete,
+                        // successors inside it have no closure yet
+                        for (int i = sp; i < top; i++) {
+                            final int m = stack[i];
+                            for (int e = start[m]; e < start[m + 1]; e++) {
+                                final RoleSet succ = closures[edges[e]];
+                                if (null != succ) {
+                                    closure.addAll(succ);
+                                }
+                            }
+                        }
+                        for (int i = sp; i < top; i++) {
+                            closures[stack[i]] = closure;
+                        }
+                    }
+                }
+            }
+        }
+
+        roleClosures = closures;
+    }
+
+    /**
+     * Updates the role closures after a new NF4 axiom (r [ s) has been added.
+     * Every role that has r in its closure now also has every role in the
+     * closure of s.
+     * 
+     * @param nf4
+     */
+    protected void updateRoleClosures(NF4 nf4) {
+        final int n = factory.getTotalRoles();
+        if (roleClosures.length < n) {
+            final RoleSet[] closures = Arrays.copyOf(roleClosures, n);
+            for (int i = roleClosures.length; i < n; i++) {
+                closures[i] = new RoleSet();
+                closures[i].add(i);
+            }
+            roleClosures = closures;
+        }
+
+        final int r = nf4.getR();
+        final RoleSet sClosure = roleClosures[nf4.getS()];
+        for (final RoleSet closure : roleClosures) {
+            if (closure.contains(r)) {
+                closure.addAll(sClosure);
+            }
+        }
     }
     
     /**
@@ -418,8 +781,8 @@ public class NormalisedOntology implements Serializable {
                 
                 // The problem is likely to be in this method call!
                 if(!containsExistentialInNF3s(nf2.rhsR, nf2.rhsB, nf2.lhsA)) {
-                    NF3 nnf = NF3.getInstance(nf2.rhsR, nf2.rhsB, factory.getConcept(new Existential(nf2.rhsR, 
-                            new au.csiro.snorocket.core.model.Concept(nf2.rhsB))));
+                    NF3 nnf = NF3.getInstance(nf2.rhsR, nf2.rhsB, factory.getConcept(factory.intern(new Existential(nf2.rhsR, 
+                            new au.csiro.snorocket.core.model.Concept(nf2.rhsB)))));
                     //as.addAxiom(nnf); // Needed for incremental
                     addTerm(nnf);
                     numNf3++;
@@ -457,6 +820,7 @@ public class NormalisedOntology implements Serializable {
         }
         
         log.info("Added "+numNf3+" NF3 axioms and "+numNf8+" NF8 axioms.");
+        computeRoleClosures();
         
         // FIXME: there seems to be an issue with incremental classification and these axioms. For now these will be
         // excluded because there is no need for these for SNOMED CT and AMT.    
@@ -485,7 +849,7 @@ public class NormalisedOntology implements Serializable {
                 ac2 = (AbstractConcept) a2;
             }
             
-            Conjunction con = new Conjunction(new AbstractConcept[] { ac1, ac2 });
+            Conjunction con = factory.intern(new Conjunction(new AbstractConcept[] { ac1, ac2 }));
             int nid = factory.getConcept(con);
             NF1a nf1a1 = NF1a.getInstance(nid, nf1b.lhsA1());
             NF1a nf1a2 = NF1a.getInstance(nid, nf1b.lhsA2());
@@ -512,16 +876,7 @@ public class NormalisedOntology implements Serializable {
     }
     
     private boolean containsExistentialInNF3s(int r, int a, int b) {
-        ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>> nf3Map = ontologyNF3.get(a);
-        if(nf3Map == null) return false;
-        Collection<IConjunctionQueueEntry> nf3s = nf3Map.get(r);
-        if(nf3s == null) return false;
-        
-        for(IConjunctionQueueEntry nf3 : nf3s) {
-            if(b == nf3.getB()) return true;
-        }
-        
-        return false;
+        return ontologyNF3.contains(r, a, b);
     }
     
     private boolean containsDatatypeInNF8s(Datatype d) {
@@ -535,43 +890,41 @@ public class NormalisedOntology implements Serializable {
     }
     
     /**
-     * Transforms a {@link Set} of {@link AbstractAxiom}s into a {@link Set} of {@link Inclusion}s.
+     * Transforms an {@link Axiom} into an {@link Inclusion}.
      * 
-     * @param axioms The axioms in the ontology model format.
-     * @return The axioms in the internal model format.
+     * @param aa The axiom in the ontology model format.
+     * @return The axiom in the internal model format, or null if the axiom
+     *         only declares a functional feature.
      */
-    private Set<Inclusion> transformAxiom(final Set<? extends Axiom> axioms) {
-        Set<Inclusion> res = new HashSet<Inclusion>();
-        
-        for(Axiom aa : axioms) {
-            if(aa instanceof ConceptInclusion) {
-                ConceptInclusion ci = (ConceptInclusion)aa;
-                Concept lhs = ci.getLhs();
-                Concept rhs = ci.getRhs();
-                res.add(new GCI(transformConcept(lhs), transformConcept(rhs)));
-            } else if(aa instanceof RoleInclusion) {
-                RoleInclusion ri = (RoleInclusion)aa;
-                Role[] lh = ri.getLhs();
-                NamedRole[] lhs = new NamedRole[lh.length];
-                for(int i = 0; i < lh.length; i++) {
-                    lhs[i] = (NamedRole) lh[i];
-                }
-                NamedRole rhs = (NamedRole) ri.getRhs();
-                int[] lhsInt = new int[lhs.length];
-                for(int i = 0; i < lhsInt.length; i++) {
-                    lhsInt[i] = factory.getRole(lhs[i].getId());
-                }
-                res.add(new RI(lhsInt, factory.getRole(rhs.getId())));
-            } else if (aa instanceof FunctionalFeature) {
-            	FunctionalFeature ff = (FunctionalFeature) aa;
-            	int featureInt = factory.getFeature(((NamedFeature) ff.getFeature()).getId());
-            	functionalFeatures.add(featureInt);
-            } else {
-            	throw new InternalError("Unknown Axiom type discovered: " + aa);
-            }
+    private Inclusion transformAxiom(final Axiom aa) {
+        if(aa instanceof ConceptInclusion) {
+            ConceptInclusion ci = (ConceptInclusion)aa;
+            Concept lhs = ci.getLhs();
+            Concept rhs = ci.getRhs();
+            return new GCI(transformConcept(lhs), transformConcept(rhs));
+        } else if(aa instanceof RoleInclusion) {
+            RoleInclusion ri = (RoleInclusion)aa;
+            Role[] lh = ri.getLhs();
+            NamedRole[] lhs = new NamedRole[lh.length];
+            for(int i = 0; i < lh.length; i++) {
+                lhs[i] = (NamedRole) lh[i];
+            }
+            NamedRole rhs = (NamedRole) ri.getRhs();
+            int[] lhsInt = new int[lhs.length];
+            for(int i = 0; i < lhsInt.length; i++) {
+                lhsInt[i] = factory.getRole(lhs[i].getId());
+            }
+            return new RI(lhsInt, factory.getRole(rhs.getId()));
+        } else if (aa instanceof FunctionalFeature) {
+        	FunctionalFeature ff = (FunctionalFeature) aa;
+        	int featureInt = factory.getFeature(((NamedFeature) ff.getFeature()).getId());
+        	synchronized (functionalFeatures) {
+        	    functionalFeatures.add(featureInt);
+        	}
+        	return null;
+        } else {
+        	throw new InternalError("Unknown Axiom type discovered: " + aa);
         }
-        
-        return res;
     }
     
     /**
@@ -595,15 +948,15 @@ public class NormalisedOntology implements Serializable {
             for(int i = 0; i < modelCons.length; i++) {
                 cons[i] = transformConcept(modelCons[i]);
             }
-            return new Conjunction(cons);
+            return factory.intern(new Conjunction(cons));
         } else if(c instanceof au.csiro.ontology.model.Datatype) {
             au.csiro.ontology.model.Datatype dt = (au.csiro.ontology.model.Datatype) c;
-            return new Datatype(factory.getFeature(((NamedFeature) dt.getFeature()).getId()), dt.getOperator(),
-                    transformLiteral(dt.getLiteral()));
+            return factory.intern(new Datatype(factory.getFeature(((NamedFeature) dt.getFeature()).getId()),
+                    dt.getOperator(), transformLiteral(dt.getLiteral())));
         } else if(c instanceof au.csiro.ontology.model.Existential) {
             au.csiro.ontology.model.Existential e = (au.csiro.ontology.model.Existential) c;
-            return new Existential(factory.getRole(((NamedRole) e.getRole()).getId()), 
-                    transformConcept(e.getConcept())); 
+            return factory.intern(new Existential(factory.getRole(((NamedRole) e.getRole()).getId()), 
+                    transformConcept(e.getConcept()))); 
         } else {
             throw new RuntimeException("Unexpected AbstractConcept "+c.getClass().getName());
         }
@@ -635,56 +988,111 @@ public class NormalisedOntology implements Serializable {
      * Returns a set of Inclusions in normal form suitable for classifying.
      */
     public Set<Inclusion> normalise(final Set<? extends Axiom> inclusions) {
-        
-        // Exhaustively apply NF1 to NF4
-        Set<Inclusion> newIs = transformAxiom(inclusions);
-        Set<Inclusion> oldIs = new HashSet<Inclusion>(newIs.size());
-        final Set<Inclusion> done = new HashSet<Inclusion>(newIs.size());
-
-        do {
-            final Set<Inclusion> tmp = oldIs;
-            oldIs = newIs;
-            newIs = tmp;
-            newIs.clear();
-
-            for (Inclusion i : oldIs) {
-                Inclusion[] s = i.normalise1(factory);
-                if (null != s) {
-                    for (int j = 0; j < s.length; j++) {
-                        if (null != s[j]) {
-                            newIs.add(s[j]);
-                        }
+        final Set<Inclusion> done;
+        if (isNormalisedInParallel(inclusions)) {
+            done = normaliseParallel(inclusions);
+        } else {
+            done = new HashSet<Inclusion>();
+            normalise(inclusions.iterator(), done, false);
+        }
+        traceNormalised(done);
+        return done;
+    }
+    
+    private boolean isNormalisedInParallel(final Set<? extends Axiom> inclusions) {
+        return parallelNormalisation && numThreads > 1 && inclusions.size() > NORMALISATION_CHUNK;
+    }
+    
+    /**
+     * Splits the axioms in chunks and normalises them with numThreads
+     * workers. The rules only look at a single inclusion, so the chunks are
+     * independent and the only shared state is the factory, which is thread
+     * safe. The ids of the new concepts and roles depend on the order in
+     * which the workers reach them.
+     * 
+     * @param inclusions
+     * @return
+     */
+    private Set<Inclusion> normaliseParallel(final Set<? extends Axiom> inclusions) {
+        final List<Axiom> axioms = Arrays.asList(inclusions.toArray(new Axiom[inclusions.size()]));
+        final AtomicInteger next = new AtomicInteger();
+        final List<Set<Inclusion>> results = new ArrayList<Set<Inclusion>>(numThreads);
+        final List<Runnable> workers = new ArrayList<Runnable>(numThreads);
+        for (int j = 0; j < numThreads; j++) {
+            final Set<Inclusion> res = new HashSet<Inclusion>();
+            results.add(res);
+            workers.add(new Runnable() {
+                public void run() {
+                    int start;
+                    while ((start = next.getAndAdd(NORMALISATION_CHUNK)) < axioms.size()) {
+                        final int end = Math.min(start + NORMALISATION_CHUNK, axioms.size());
+                        normalise(axioms.subList(start, end).iterator(), res, false);
                     }
-                } else {
-                    done.add(i);
                 }
+            });
+        }
+        runWorkers(workers);
+        
+        int size = 0;
+        for (Set<Inclusion> res : results) {
+            size += res.size();
+        }
+        final Set<Inclusion> done = new HashSet<Inclusion>(size);
+        for (Set<Inclusion> res : results) {
+            done.addAll(res);
+        }
+        return done;
+    }
+    
+    /**
+     * Normalises the axioms one at a time. The inclusions produced by the
+     * rules are pushed onto a worklist and processed until they are in
+     * normal form, first with the NF1 to NF4 rules and then with the NF5 to
+     * NF7 rules, so only the inclusions derived from the current axiom are
+     * kept.
+     * 
+     * @param axioms
+     * @param done
+     *            receives the inclusions in normal form
+     * @param index
+     *            if true, the normal form of every new inclusion is added to
+     *            the ontology
+     * @return the number of axioms read
+     */
+    private int normalise(final Iterator<? extends Axiom> axioms, final Set<Inclusion> done,
+            final boolean index) {
+        final Deque<Inclusion> worklist1 = new ArrayDeque<Inclusion>();
+        final Deque<Inclusion> worklist2 = new ArrayDeque<Inclusion>();
+        int numAxioms = 0;
+        while (axioms.hasNext()) {
+            final Axiom axiom = axioms.next();
+            if (null == axiom) {
+                continue;
             }
-        } while (!newIs.isEmpty());
-
-        newIs.addAll(done);
-        done.clear();
-
-        // Then exhaustively apply NF5 to NF7
-        do {
-            final Set<Inclusion> tmp = oldIs;
-            oldIs = newIs;
-            newIs = tmp;
-            newIs.clear();
-
-            for (Inclusion i : oldIs) {
-                Inclusion[] s = i.normalise2(factory);
-                if (null != s) {
-                    for (int j = 0; j < s.length; j++) {
-                        if (null != s[j]) {
-                            newIs.add(s[j]);
-                        }
+            numAxioms++;
+            final Inclusion inclusion = transformAxiom(axiom);
+            if (null == inclusion) {
+                continue;
+            }
+            worklist1.push(inclusion);
+            while (!worklist1.isEmpty()) {
+                final Inclusion i = worklist1.pop();
+                if (i.normalise1(factory, worklist1)) {
+                    continue;
+                }
+                worklist2.push(i);
+                while (!worklist2.isEmpty()) {
+                    final Inclusion j = worklist2.pop();
+                    if (!j.normalise2(factory, worklist2) && done.add(j) && index) {
+                        addTerm(j.getNormalForm());
                     }
-                } else {
-                    done.add(i);
                 }
             }
-        } while (!newIs.isEmpty());
-        
+        }
+        return numAxioms;
+    }
+    
+    private void traceNormalised(final Set<Inclusion> done) {
         if(log.isTraceEnabled()) {
             log.trace("Normalised axioms:");
             for(Inclusion inc : done) {
@@ -708,8 +1116,6 @@ public class NormalisedOntology implements Serializable {
                 log.trace(sb.toString());
             }
         }
-        
-        return done;
     }
     
     /**
@@ -788,11 +1194,14 @@ public class NormalisedOntology implements Serializable {
             addTerms(ontologyNF2, nf2);
         } else if (term instanceof NF3) {
             final NF3 nf3 = (NF3) term;
-            addTerms(ontologyNF3, nf3);
+            ontologyNF3.add(nf3);
         } else if (term instanceof NF4) {
             ontologyNF4.add((NF4) term);
         } else if (term instanceof NF5) {
-            ontologyNF5.add((NF5) term);
+            final NF5 nf5 = (NF5) term;
+            ontologyNF5.add(nf5);
+            addTerms(ontologyNF5ByR, nf5.getR(), nf5);
+            addTerms(ontologyNF5ByS, nf5.getS(), nf5);
         } else if (term instanceof NF6) {
             reflexiveRoles.add(((NF6) term).getR());
         } else if (term instanceof NF7) {
@@ -801,6 +1210,7 @@ public class NormalisedOntology implements Serializable {
         } else if (term instanceof NF8) {
             final NF8 nf8 = (NF8) term;
             addTerms(ontologyNF8, nf8);
+            ontologyNF8Index.add(nf8);
         } else {
             throw new IllegalArgumentException("Type of " + term
                     + " must be one of NF1 through NF8");
@@ -840,30 +1250,19 @@ public class NormalisedOntology implements Serializable {
 
     /**
      * 
-     * @param queue
-     * @param nf3
+     * @param entries
+     * @param role
+     * @param nf5
      */
-    protected void addTerms(final IConceptMap<ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>>> queue,
-            final NF3 nf3) {
-        ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>> map = queue.get(nf3.lhsA);
-        Collection<IConjunctionQueueEntry> entry;
-        if (null == map) {
-            map = new ConcurrentHashMap<Integer, Collection<IConjunctionQueueEntry>>(
-                    factory.getTotalRoles());
-            queue.put(nf3.lhsA, map);
-            entry = null;
-        } else {
-            entry = map.get(nf3.lhsR);
-        }
-        if (null == entry) {
-            entry = new HashSet<IConjunctionQueueEntry>();
-            entry.add(nf3.getQueueEntry());
-            map.put(nf3.lhsR, entry);
-        } else {
-            entry.add(nf3.getQueueEntry());
+    protected void addTerms(final IConceptMap<MonotonicCollection<NF5>> entries, final int role, final NF5 nf5) {
+        MonotonicCollection<NF5> set = entries.get(role);
+        if (null == set) {
+            set = new MonotonicCollection<NF5>(2);
+            entries.put(role, set);
         }
+        set.add(nf5);
     }
-    
+
     protected void addTerms(final IConceptMap<MonotonicCollection<NF7>> entries, final NF7 nf7) {
         MonotonicCollection<NF7> set = entries.get(nf7.lhsA);
         if (null == set) {
@@ -892,14 +1291,50 @@ public class NormalisedOntology implements Serializable {
      * @param incAxioms
      */
     public void loadIncremental(Set<Axiom> incAxioms) {
-        
-        // Normalise
-        Set<Inclusion> norm = normalise(incAxioms);
-        
+        try {
+            // Normalise
+            phaseStarted("normalisation");
+            final long start = System.currentTimeMillis();
+            Set<Inclusion> norm = normalise(incAxioms);
+            phaseFinished("normalisation", start);
+
+            addIncremental(norm);
+        } finally {
+            phaseFailed();
+        }
+    }
+
+    /**
+     * Loads the axioms returned by an iterator after the ontology has been
+     * classified. The axioms are normalised as they are read, without keeping
+     * them in memory. Null axioms are ignored.
+     * 
+     * @param incAxioms
+     */
+    public void loadIncremental(Iterator<? extends Axiom> incAxioms) {
+        try {
+            phaseStarted("normalisation");
+            final long start = System.currentTimeMillis();
+            final Set<Inclusion> norm = new HashSet<Inclusion>();
+            normalise(incAxioms, norm, false);
+            traceNormalised(norm);
+            phaseFinished("normalisation", start);
+
+            addIncremental(norm);
+        } finally {
+            phaseFailed();
+        }
+    }
+
+    private void addIncremental(Set<Inclusion> norm) {
+        factory.clearInterned();
         for(Inclusion inc : norm) {
             NormalFormGCI nf = inc.getNormalForm();
             as.addAxiom(nf);
             addTerm(nf);
+            if (nf instanceof NF4) {
+                updateRoleClosures((NF4) nf);
+            }
         }
     }
 
@@ -909,100 +1344,100 @@ public class NormalisedOntology implements Serializable {
      * @return
      */
     public void classifyIncremental() {
-        if(as.isEmpty()) return;
-        
-        // Clear any state from previous incremental classifications
-        newContexts.clear();
-        affectedContexts.clear();
+        try {
+            if(as.isEmpty()) return;
 
-        int numNewConcepts = 0;
+            phaseStarted("incremental classification");
+            final long start = System.currentTimeMillis();
 
-        // Determine which contexts are affected
-        for (NF1a i : as.getNf1aAxioms()) {
-            numNewConcepts = processInclusion(numNewConcepts, i);
-        }
-        
-        for (NF1b i : as.getNf1bAxioms()) {
-            numNewConcepts = processInclusion(numNewConcepts, i);
-        }
-        
-        for (NF2 i : as.getNf2Axioms()) {
-            numNewConcepts = processInclusion(numNewConcepts, i);
-        }
-        
-        for (NF3 i : as.getNf3Axioms()) {
-            numNewConcepts = processInclusion(numNewConcepts, i);
-        }
-        
-        for (NF4 i : as.getNf4Axioms()) {
-            numNewConcepts = processInclusion(numNewConcepts, i);
-        }
-        
-        for (NF5 i : as.getNf5Axioms()) {
-            numNewConcepts = processInclusion(numNewConcepts, i);
-        }
-        
-        for (NF6 i : as.getNf6Axioms()) {
-            numNewConcepts = processInclusion(numNewConcepts, i);
-        }
-        
-        for (NF7 i : as.getNf7Axioms()) {
-            numNewConcepts = processInclusion(numNewConcepts, i);
-        }
-        
-        for (NF8 i : as.getNf8Axioms()) {
-            numNewConcepts = processInclusion(numNewConcepts, i);
-        }
-        
-        if(log.isInfoEnabled()) log.info("Added " + numNewConcepts + " new concepts to the ontology");
+            // Clear any state from previous incremental classifications
+            newContexts.clear();
+            affectedContexts.clear();
 
-        // TODO: this is potentially slow
-        IConceptMap<IConceptSet> subsumptions = getSubsumptions();
+            // Make the new NF3 and NF8 terms visible to the contexts
+            ontologyNF3.freeze();
+            ontologyNF8Index.freeze();
 
-        rePrimeNF1(as, subsumptions);
-        rePrimeNF2(as, subsumptions);
-        rePrimeNF3(as, subsumptions);
-        rePrimeNF4(as, subsumptions);
-        rePrimeNF5(as, subsumptions);
-        rePrimeNF6(as, subsumptions);
-        rePrimeNF7(as, subsumptions);
-        rePrimeNF8(as, subsumptions);
+            // Make room for the new concepts, including the virtual concepts
+            // that only get a context in lazy mode if the saturation reaches them
+            contextIndex.grow(factory.getTotalConcepts());
 
-        // Classify
-        if(log.isInfoEnabled())
-            log.info("Classifying incrementally with " + numThreads + " threads");
-        
-        if(log.isInfoEnabled())
-            log.info("Running saturation");
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads, THREAD_FACTORY);
-        for (int j = 0; j < numThreads; j++) {
-            Runnable worker = new Worker(todo);
-            executor.execute(worker);
-        }
+            int numNewConcepts = 0;
 
-        executor.shutdown();
-        while (!executor.isTerminated()) {
-            try {
-                executor.awaitTermination(100, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            // Determine which contexts are affected
+            for (NF1a i : as.getNf1aAxioms()) {
+                numNewConcepts = processInclusion(numNewConcepts, i);
             }
-        }
 
-        assert (todo.isEmpty());
+            for (NF1b i : as.getNf1bAxioms()) {
+                numNewConcepts = processInclusion(numNewConcepts, i);
+            }
 
-        // Stop tracking changes in reactivated contexts
-        for (Context ctx : affectedContexts) {
-            ctx.endTracking();
-        }
+            for (NF2 i : as.getNf2Axioms()) {
+                numNewConcepts = processInclusion(numNewConcepts, i);
+            }
 
-        affectedContexts.removeAll(newContexts);
-        
-        hasBeenIncrementallyClassified = true;
-        as.clear();
-        
-        if(log.isTraceEnabled())
-            log.trace("Processed " + contextIndex.size() + " contexts");
+            for (NF3 i : as.getNf3Axioms()) {
+                numNewConcepts = processInclusion(numNewConcepts, i);
+            }
+
+            for (NF4 i : as.getNf4Axioms()) {
+                numNewConcepts = processInclusion(numNewConcepts, i);
+            }
+
+            for (NF5 i : as.getNf5Axioms()) {
+                numNewConcepts = processInclusion(numNewConcepts, i);
+            }
+
+            for (NF6 i : as.getNf6Axioms()) {
+                numNewConcepts = processInclusion(numNewConcepts, i);
+            }
+
+            for (NF7 i : as.getNf7Axioms()) {
+                numNewConcepts = processInclusion(numNewConcepts, i);
+            }
+
+            for (NF8 i : as.getNf8Axioms()) {
+                numNewConcepts = processInclusion(numNewConcepts, i);
+            }
+
+            if(log.isInfoEnabled()) log.info("Added " + numNewConcepts + " new concepts to the ontology");
+
+            // TODO: this is potentially slow
+            IConceptMap<IConceptSet> subsumptions = getSubsumptions();
+
+            rePrimeNF1(as, subsumptions);
+            rePrimeNF2(as, subsumptions);
+            rePrimeNF3(as, subsumptions);
+            rePrimeNF4(as, subsumptions);
+            rePrimeNF5(as, subsumptions);
+            rePrimeNF6(as, subsumptions);
+            rePrimeNF7(as, subsumptions);
+            rePrimeNF8(as, subsumptions);
+
+            // Classify
+            if(log.isInfoEnabled())
+                log.info("Classifying incrementally with " + numThreads + " threads");
+
+            saturate();
+
+            // Stop tracking changes in reactivated contexts
+            for (Context ctx : affectedContexts) {
+                ctx.endTracking();
+            }
+
+            affectedContexts.removeAll(newContexts);
+
+            hasBeenIncrementallyClassified = true;
+            as.clear();
+
+            if(log.isTraceEnabled())
+                log.trace("Processed " + contextIndex.size() + " contexts");
+
+            phaseFinished("incremental classification", start);
+        } finally {
+            phaseFailed();
+        }
     }
 
     protected int processInclusion(int numNewConcepts, NormalFormGCI nf) {
@@ -1011,6 +1446,9 @@ public class NormalisedOntology implements Serializable {
 
         for (int j = 0; j < cids.length; j++) {
             int cid = cids[j];
+            if (lazyContexts && factory.isVirtualConcept(cid)) {
+                continue;
+            }
             if (!contextIndex.containsKey(cid)) {
                 Context c = new Context(cid, this);
                 contextIndex.put(cid, c);
@@ -1140,49 +1578,49 @@ public class NormalisedOntology implements Serializable {
         // NF3. r.X [ Y
         // Q(A) += {-> Y}, for all (A,B) in R(r) and X in S(B)
 
-        int size = as.getNf3Axioms().size();
-        if (size == 0)
-            return;
-        IConceptMap<ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>>> deltaNF3 = 
-                new SparseConceptMap<ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>>>(size);
-        for (NF3 nf3 : as.getNf3Axioms()) {
-            addTerms(deltaNF3, nf3);
-        }
-
-        for (final IntIterator xItr = deltaNF3.keyIterator(); xItr.hasNext();) {
-            final int x = xItr.next();
-            final ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>> entries = deltaNF3
-                    .get(x);
-
-            for (Entry<Integer, Collection<IConjunctionQueueEntry>> entrySet : entries.entrySet()) {
-                int r = entrySet.getKey();
-                for (final IConjunctionQueueEntry entry : entrySet.getValue()) {
-                    for (final IntIterator aItr = subsumptions.keyIterator(); aItr
-                            .hasNext();) {
-                        final int a = aItr.next();
-                        boolean addIt = false;
-
-                        // Get all of a's successors with role r
-                        Context aCtx = contextIndex.get(a);
-                        IConceptSet cs = aCtx.getSucc().lookupConcept(r);
-                        for (final IntIterator bItr = cs.iterator(); bItr
-                                .hasNext();) {
-                            final int b = bItr.next();
-
-                            if (subsumptions.get(b).contains(x)) {
-                                addIt = true;
-                                break;
-                            }
-                        }
+        // The contexts only look up the subsumers that are known to appear
+        // in NF3 terms, so the ones in the new terms have to be added first
+        if (!as.getNf3Axioms().isEmpty()) {
+            for (final IntIterator aItr = subsumptions.keyIterator(); aItr.hasNext();) {
+                final int a = aItr.next();
+                final IConceptSet Sa = subsumptions.get(a);
+                final Context aCtx = contextIndex.get(a);
+                for (final NF3 nf3 : as.getNf3Axioms()) {
+                    if (Sa.contains(nf3.lhsA)) {
+                        aCtx.addNF3Subsumer(nf3.lhsR, nf3.lhsA);
+                    }
+                }
+            }
+        }
 
-                        if (addIt) {
-                            aCtx.addConceptQueueEntry(entry);
-                            affectedContexts.add(aCtx);
-                            aCtx.startTracking();
-                            if (aCtx.activate()) {
-                                todo.add(aCtx);
-                            }
-                        }
+        for (final NF3 nf3 : as.getNf3Axioms()) {
+            final int x = nf3.lhsA;
+            final int r = nf3.lhsR;
+            final IConjunctionQueueEntry entry = nf3.getQueueEntry();
+            for (final IntIterator aItr = subsumptions.keyIterator(); aItr
+                    .hasNext();) {
+                final int a = aItr.next();
+                boolean addIt = false;
+
+                // Get all of a's successors with role r
+                Context aCtx = contextIndex.get(a);
+                IConceptSet cs = aCtx.getSucc().lookupConcept(r);
+                for (final IntIterator bItr = cs.iterator(); bItr
+                        .hasNext();) {
+                    final int b = bItr.next();
+
+                    if (subsumptions.get(b).contains(x)) {
+                        addIt = true;
+                        break;
+                    }
+                }
+
+                if (addIt) {
+                    aCtx.addConceptQueueEntry(entry);
+                    affectedContexts.add(aCtx);
+                    aCtx.startTracking();
+                    if (aCtx.activate()) {
+                        todo.add(aCtx);
                     }
                 }
             }
@@ -1381,7 +1819,12 @@ public class NormalisedOntology implements Serializable {
     }
 
     /**
-     * TODO: check this!
+     * These axioms are of the form f.(o, v) [ A. The NF7 axioms on the same
+     * features are fed again to the contexts that have their left hand side
+     * in their subsumptions, so the contexts match the new axioms. Like in
+     * {@link #rePrimeNF7(AxiomSet, IConceptMap)}, only the existing contexts
+     * are visited, so virtual concepts without a context in lazy mode are
+     * skipped.
      * 
      * @param as
      * @param subsumptions
@@ -1390,20 +1833,22 @@ public class NormalisedOntology implements Serializable {
         int size = as.getNf8Axioms().size();
         if (size == 0) return;
         
-        FeatureMap<MonotonicCollection<NF8>> deltaNF8 = new FeatureMap<MonotonicCollection<NF8>>(size);
+        final FeatureSet features = new FeatureSet();
         for (NF8 nf8 : as.getNf8Axioms()) {
-            addTerms(deltaNF8, nf8);
+            features.add(nf8.lhsD.getFeature());
         }
 
-        FeatureSet fs = deltaNF8.keySet();
-        for (int fid = fs.nextSetBit(0); fid >= 0; fid = fs.nextSetBit(fid+1)) {
-            for (IntIterator it = ontologyNF7.keyIterator(); it.hasNext();) {
-                int a = it.next();
-                Context aCtx = contextIndex.get(a);
+        for (final IntIterator aItr = subsumptions.keyIterator(); aItr.hasNext();) {
+            final int a = aItr.next();
+            final Context aCtx = contextIndex.get(a);
 
-                for (Iterator<NF7> i = ontologyNF7.get(a).iterator(); i.hasNext();) {
-                    NF7 nf7 = i.next();
-                    if (nf7.rhsD.getFeature() == fid) {
+            for (final IntIterator xItr = subsumptions.get(a).iterator(); xItr.hasNext();) {
+                final MonotonicCollection<NF7> nf7s = ontologyNF7.get(xItr.next());
+                if (null == nf7s) {
+                    continue;
+                }
+                for (final NF7 nf7 : nf7s) {
+                    if (features.contains(nf7.rhsD.getFeature())) {
                         aCtx.addFeatureQueueEntry(nf7);
                         affectedContexts.add(aCtx);
                         aCtx.startTracking();
@@ -1412,7 +1857,7 @@ public class NormalisedOntology implements Serializable {
                         }
                     }
                 }
-            } 
+            }
         }
     }
 
@@ -1420,49 +1865,80 @@ public class NormalisedOntology implements Serializable {
      * Starts the concurrent classification process.
      */
     public void classify() {
-        long start = System.currentTimeMillis();
-        if(log.isInfoEnabled())
-            log.info("Classifying with " + numThreads + " threads");
-
-        // Create contexts for init concepts in the ontology
-        int numConcepts = factory.getTotalConcepts();
-        for (int i = 0; i < numConcepts; i++) {
-            Context c = new Context(i, this);
-            contextIndex.put(i, c);
-            if (c.activate()) {
-                todo.add(c);
-            }
-            if(log.isTraceEnabled()) {
-                log.trace("Added context " + i);
+        try {
+            phaseStarted("classification");
+            long start = System.currentTimeMillis();
+            if(log.isInfoEnabled())
+                log.info("Classifying with " + numThreads + " threads");
+
+            if (null != conceptOrdering) {
+                renumberConcepts(conceptOrdering.computeIds(this));
+            }
+
+            // Terms might have been added directly, so the role closures are
+            // recalculated and the NF3 and NF8 indexes are frozen before the
+            // saturation starts
+            computeRoleClosures();
+            ontologyNF3.freeze();
+            ontologyNF8Index.freeze();
+
+            // Create contexts for init concepts in the ontology. In lazy mode the
+            // virtual concepts get their contexts when they are reached.
+            int numConcepts = factory.getTotalConcepts();
+            contextIndex.grow(numConcepts);
+            final Context[] seeded = toldSeeding ? createSeededContexts(numConcepts) : null;
+            final CancellationToken token = cancellationToken;
+            for (int i = 0; i < numConcepts; i++) {
+                if (null != token && (i & 0x3ff) == 0 && token.isCancelled()) {
+                    discardContexts();
+                    token.throwIfCancelled();
+                }
+                if (lazyContexts && factory.isVirtualConcept(i)) {
+                    continue;
+                }
+                Context c = null != seeded && null != seeded[i] ? seeded[i] : new Context(i, this);
+                contextIndex.put(i, c);
+                if (c.activate()) {
+                    todo.add(c);
+                }
+                if(log.isTraceEnabled()) {
+                    log.trace("Added context " + i);
+                }
             }
-        }
-        
-        if(log.isInfoEnabled())
-            log.info("Running saturation");
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads, THREAD_FACTORY);
-        for (int j = 0; j < numThreads; j++) {
-            Runnable worker = new Worker(todo);
-            executor.execute(worker);
-        }
 
-        executor.shutdown();
-        while (!executor.isTerminated()) {
-            try {
-                executor.awaitTermination(100, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+            saturate();
 
-        assert (todo.isEmpty());
+            if (log.isTraceEnabled()) {
+                log.trace("Processed " + contextIndex.size() + " contexts");
+            }
 
-        if (log.isTraceEnabled()) {
-            log.trace("Processed " + contextIndex.size() + " contexts");
+            hasBeenIncrementallyClassified = false;
+            phaseFinished("classification", start);
+        } finally {
+            phaseFailed();
         }
-        
-        hasBeenIncrementallyClassified = false;
-        Statistics.INSTANCE.setTime("classification",
-                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Creates the contexts of the concepts with their told subsumers. The
+     * concepts in told cycles are left out and get their contexts as usual.
+     * 
+     * @param numConcepts
+     * @return the contexts indexed by concept
+     */
+    private Context[] createSeededContexts(int numConcepts) {
+        long start = System.currentTimeMillis();
+        final Context[] res = new Context[numConcepts];
+        ConceptGraph.toldHierarchy(this).propagateAncestors(new ConceptGraph.AncestorVisitor() {
+            public void visit(int concept, IConceptSet ancestors) {
+                if (!lazyContexts || !factory.isVirtualConcept(concept)) {
+                    res[concept] = new Context(concept, NormalisedOntology.this, ancestors);
+                }
+            }
+        });
+        if (log.isInfoEnabled())
+            log.info("Seeded told subsumers in " + (System.currentTimeMillis() - start) + "ms");
+        return res;
     }
 
     public IConceptMap<IConceptSet> getSubsumptions() {
@@ -1571,7 +2047,7 @@ public class NormalisedOntology implements Serializable {
         System.err.println("ontologyNF2: #keys=" + count2 + ", #Concepts="
                 + factory.getTotalConcepts() + " ratio="
                 + ((double) count2 / factory.getTotalConcepts()));
-        int count3 = countKeys(ontologyNF3);
+        int count3 = ontologyNF3.countConcepts();
         System.err.println("ontologyNF3QueueEntries: #keys=" + count3
                 + ", #Concepts=" + factory.getTotalConcepts() + " ratio="
                 + ((double) count3 / factory.getTotalConcepts()));
@@ -1643,25 +2119,14 @@ public class NormalisedOntology implements Serializable {
         }
         
         // These terms are of the form r.A [ b and indexed by A.
-        for(IntIterator it = ontologyNF3.keyIterator(); it.hasNext(); ) {
-            int a = it.next();
-            ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>> mc = 
-                    ontologyNF3.get(a);
-            for (Entry<Integer, Collection<IConjunctionQueueEntry>> entry : mc.entrySet()) {
-                int i = entry.getKey();
-                Collection<IConjunctionQueueEntry> cc = entry.getValue();
-                for(Iterator<IConjunctionQueueEntry> it2 = cc.iterator(); 
-                        it2.hasNext(); ) {
-                    IConjunctionQueueEntry nf3 = it2.next();
-                    Object oa = factory.lookupConceptId(a);
-                    String r = factory.lookupRoleId(i).toString();
-                    Object ob = factory.lookupConceptId(nf3.getB());
-                    res.add(new ConceptInclusion(
-                        new au.csiro.ontology.model.Existential(new NamedRole(r), transform(ob)),
-                        transform(oa)  
-                    ));
-                }
-            }
+        for(NF3 nf3 : ontologyNF3.getTerms()) {
+            Object oa = factory.lookupConceptId(nf3.lhsA);
+            String r = factory.lookupRoleId(nf3.lhsR).toString();
+            Object ob = factory.lookupConceptId(nf3.getB());
+            res.add(new ConceptInclusion(
+                new au.csiro.ontology.model.Existential(new NamedRole(r), transform(ob)),
+                transform(oa)  
+            ));
         }
         
         for(Iterator<NF4> it = ontologyNF4.iterator(); it.hasNext(); ) {
@@ -1790,8 +2255,348 @@ public class NormalisedOntology implements Serializable {
         this.numThreads = numThreads;
     }
     
+    /**
+     * Sets the executor used to run the workers of the saturation and the
+     * taxonomy construction, e.g. a {@link ForkJoinPool} shared with the rest
+     * of the application. Each phase submits numThreads workers to the
+     * executor and waits for them. The executor is not shut down. If null,
+     * which is the default, a new pool is created for every phase.
+     * 
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+    
+    public Executor getExecutor() {
+        return executor;
+    }
+    
+    /**
+     * Sets the listener that receives the start and end of the phases of the
+     * reasoning and the progress of the saturation, or null to remove it.
+     * 
+     * @param listener
+     */
+    public void setListener(ReasonerListener listener) {
+        this.listener = listener;
+    }
+    
+    public ReasonerListener getListener() {
+        return listener;
+    }
+    
+    /**
+     * Sets the time between the reports of the progress of the saturation
+     * sent to the listener. Defaults to one second.
+     * 
+     * @param progressInterval
+     *            the interval in milliseconds
+     */
+    public void setProgressInterval(long progressInterval) {
+        if (progressInterval <= 0) {
+            throw new IllegalArgumentException("The progress interval must be positive: " + progressInterval);
+        }
+        this.progressInterval = progressInterval;
+    }
+    
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+    
+    /**
+     * Sets the token that stops the classification and the construction of
+     * the taxonomy, or null to remove it. A cancelled classification throws a
+     * {@link ClassificationCancelledException} and discards all the derived
+     * subsumptions, including those of previous classifications, so the next
+     * classification must be a full one. A cancelled construction of the
+     * taxonomy leaves the subsumptions intact and can be retried.
+     * 
+     * @param cancellationToken
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+    
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+    
+    /**
+     * Sets the factory used to create the sets of subsumers of new contexts.
+     * Defaults to {@link ConceptSetFactory#SPARSE}.
+     * 
+     * @param conceptSetFactory
+     */
+    public void setConceptSetFactory(ConceptSetFactory conceptSetFactory) {
+        this.conceptSetFactory = conceptSetFactory;
+    }
+    
+    /**
+     * Returns the number of entries taken from the concept queues of the
+     * contexts, i.e. the number of times a subsumer was considered.
+     * 
+     * @return
+     */
+    public long getProcessedConceptEntries() {
+        long res = 0;
+        for (IntIterator it = contextIndex.keyIterator(); it.hasNext();) {
+            res += contextIndex.get(it.next()).getProcessedConceptEntries();
+        }
+        return res;
+    }
+    
+    /**
+     * Returns a snapshot of the counters of the rules applied in all the
+     * saturations run so far. Can be called while a saturation runs, e.g.
+     * from another thread.
+     * 
+     * @return
+     */
+    public SaturationStatistics getSaturationStatistics() {
+        return todo.getStatistics();
+    }
+    
+    /**
+     * Returns the metrics of the reasoning done on this ontology.
+     * 
+     * @return
+     */
+    public ReasonerMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        metrics = new ReasonerMetrics(this);
+    }
+    
+    /**
+     * Returns true while a saturation runs.
+     * 
+     * @return
+     */
+    public boolean isSaturating() {
+        return saturating;
+    }
+    
+    /**
+     * Returns the number of contexts that are waiting to be processed or
+     * being processed.
+     * 
+     * @return
+     */
+    public int getPendingContexts() {
+        return todo.size();
+    }
+    
+    /**
+     * Returns the number of contexts created so far.
+     * 
+     * @return
+     */
+    public int getNumContexts() {
+        return contextIndex.size();
+    }
+    
+    /**
+     * Returns the number of NF3 index lookups that the contexts did not do
+     * because the subsumers of their successors did not appear in NF3 terms
+     * with the role of the edge.
+     * 
+     * @return
+     */
+    public long getSkippedNF3Lookups() {
+        long res = 0;
+        for (IntIterator it = contextIndex.keyIterator(); it.hasNext();) {
+            res += contextIndex.get(it.next()).getSkippedNF3Lookups();
+        }
+        return res;
+    }
+    
+    /**
+     * Sets whether the contexts of virtual concepts are only created when
+     * they are reached from the context of another concept. This saves the
+     * saturation of the virtual concepts that are only used on the left hand
+     * side of axioms, which are not needed to compute the taxonomy of the
+     * named concepts. Defaults to false.
+     * 
+     * @param lazyContexts
+     */
+    public void setLazyContexts(boolean lazyContexts) {
+        this.lazyContexts = lazyContexts;
+    }
+    
+    public boolean isLazyContexts() {
+        return lazyContexts;
+    }
+    
+    /**
+     * Sets the ordering used to renumber the concepts before the first
+     * classification, or null to keep the ids assigned when the axioms were
+     * loaded. Defaults to null.
+     * 
+     * @param conceptOrdering
+     */
+    public void setConceptOrdering(ConceptOrdering conceptOrdering) {
+        this.conceptOrdering = conceptOrdering;
+    }
+    
+    public ConceptOrdering getConceptOrdering() {
+        return conceptOrdering;
+    }
+    
+    /**
+     * Sets whether the transitive closure of the told hierarchy, i.e. the
+     * NF1 terms of the form A [ B, is computed before the saturation and
+     * used to initialise the subsumers of the contexts. Defaults to false.
+     * 
+     * @param toldSeeding
+     */
+    public void setToldSeeding(boolean toldSeeding) {
+        this.toldSeeding = toldSeeding;
+    }
+    
+    public boolean isToldSeeding() {
+        return toldSeeding;
+    }
+    
+    /**
+     * Sets whether large sets of axioms are normalised in parallel, in
+     * chunks of {@value #NORMALISATION_CHUNK} axioms, using numThreads
+     * workers. The normal forms are equivalent to the sequential ones, but
+     * the ids of the concepts and roles are assigned in a different order.
+     * Defaults to false.
+     * 
+     * @param parallelNormalisation
+     */
+    public void setParallelNormalisation(boolean parallelNormalisation) {
+        this.parallelNormalisation = parallelNormalisation;
+    }
+    
+    public boolean isParallelNormalisation() {
+        return parallelNormalisation;
+    }
+    
+    /**
+     * Changes the ids of the concepts. The concept with id i gets the id
+     * newIds[i], both in the normalised terms and in the factory, so the
+     * concepts can still be looked up by their keys. Can only be done before
+     * the contexts are created, i.e. before the ontology is classified.
+     * 
+     * @param newIds
+     *            a permutation of the concept ids where top and bottom keep
+     *            their ids
+     */
+    public void renumberConcepts(final int[] newIds) {
+        if (contextIndex.size() > 0) {
+            throw new IllegalStateException("The concepts can only be renumbered before the classification");
+        }
+        final int numConcepts = factory.getTotalConcepts();
+        if (newIds.length != numConcepts || newIds[IFactory.TOP_CONCEPT] != IFactory.TOP_CONCEPT
+                || newIds[IFactory.BOTTOM_CONCEPT] != IFactory.BOTTOM_CONCEPT) {
+            throw new IllegalArgumentException("Invalid concept ids");
+        }
+        final boolean[] used = new boolean[numConcepts];
+        for (int id : newIds) {
+            if (id < 0 || id >= numConcepts || used[id]) {
+                throw new IllegalArgumentException("Invalid concept ids");
+            }
+            used[id] = true;
+        }
+
+        long start = System.currentTimeMillis();
+        final List<NormalFormGCI> terms = new ArrayList<NormalFormGCI>();
+        for (IntIterator it = ontologyNF1.keyIterator(); it.hasNext();) {
+            for (Iterator<IConjunctionQueueEntry> i = ontologyNF1.get(it.next()).iterator(); i.hasNext();) {
+                final IConjunctionQueueEntry entry = i.next();
+                // The second entry of an NF1b term is not the term itself
+                if (entry instanceof NF1a) {
+                    final NF1a nf1 = (NF1a) entry;
+                    terms.add(NF1a.getInstance(newIds[nf1.lhsA()], newIds[nf1.b()]));
+                } else if (entry instanceof NF1b) {
+                    final NF1b nf1 = (NF1b) entry;
+                    terms.add(NF1b.getInstance(newIds[nf1.lhsA1()], newIds[nf1.lhsA2()], newIds[nf1.b()]));
+                }
+            }
+        }
+        for (IntIterator it = ontologyNF2.keyIterator(); it.hasNext();) {
+            for (Iterator<NF2> i = ontologyNF2.get(it.next()).iterator(); i.hasNext();) {
+                final NF2 nf2 = i.next();
+                terms.add(NF2.getInstance(newIds[nf2.lhsA], nf2.rhsR, newIds[nf2.rhsB]));
+            }
+        }
+        for (NF3 nf3 : ontologyNF3.getTerms()) {
+            terms.add(NF3.getInstance(nf3.lhsR, newIds[nf3.lhsA], newIds[nf3.rhsB]));
+        }
+        for (IntIterator it = ontologyNF7.keyIterator(); it.hasNext();) {
+            for (Iterator<NF7> i = ontologyNF7.get(it.next()).iterator(); i.hasNext();) {
+                final NF7 nf7 = i.next();
+                terms.add(NF7.getInstance(newIds[nf7.lhsA], nf7.rhsD));
+            }
+        }
+        final FeatureSet features = ontologyNF8.keySet();
+        for (int f = features.nextSetBit(0); f >= 0; f = features.nextSetBit(f + 1)) {
+            for (Iterator<NF8> i = ontologyNF8.get(f).iterator(); i.hasNext();) {
+                final NF8 nf8 = i.next();
+                terms.add(NF8.getInstance(nf8.lhsD, newIds[nf8.rhsB]));
+            }
+        }
+
+        // NF4, NF5 and NF6 terms only refer to roles
+        ontologyNF1.clear();
+        ontologyNF2.clear();
+        ontologyNF3.clear();
+        ontologyNF7.clear();
+        ontologyNF8.clear();
+        ontologyNF8Index.clear();
+        factory.renumberConcepts(newIds);
+        for (NormalFormGCI term : terms) {
+            addTerm(term);
+        }
+
+        if (log.isInfoEnabled())
+            log.info("Renumbered " + numConcepts + " concepts in " + (System.currentTimeMillis() - start) + "ms");
+    }
+    
+    /**
+     * Returns the context of a concept, creating it if it does not exist. A
+     * context created during the saturation is saturated with the rest of
+     * the contexts. Otherwise it is saturated before returning.
+     * 
+     * @param concept
+     * @return
+     */
+    public Context getContext(int concept) {
+        Context ctx = contextIndex.get(concept);
+        if (ctx != null) {
+            return ctx;
+        }
+        ctx = new Context(concept, this);
+        final Context current = contextIndex.putIfAbsent(concept, ctx);
+        if (current != null) {
+            return current;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Added context " + concept);
+        }
+        if (ctx.activate()) {
+            todo.add(ctx);
+        }
+        if (!saturating) {
+            saturate();
+        }
+        return ctx;
+    }
+    
+    public ConceptSetFactory getConceptSetFactory() {
+        return conceptSetFactory != null ? conceptSetFactory : ConceptSetFactory.SPARSE;
+    }
+    
     protected void buildTaxonomyConcurrent() {
+        phaseStarted("taxonomy 1");
         long start = System.currentTimeMillis();
+        final CancellationToken token = cancellationToken;
         
         // Part 1 - creates equivalent and direct sets
         Queue<Integer> todo = new ConcurrentLinkedQueue<Integer>();
@@ -1804,23 +2609,17 @@ public class NormalisedOntology implements Serializable {
         final ConcurrentMap<Integer, IConceptSet> direc = 
                 new ConcurrentHashMap<Integer, IConceptSet>();
         
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads, THREAD_FACTORY);
+        List<Runnable> workers = new ArrayList<Runnable>(numThreads);
         for (int j = 0; j < numThreads; j++) {
-            Runnable worker = new TaxonomyWorker1(contextIndex, 
-                    equiv, direc, factory, todo);
-            executor.execute(worker);
-        }
-
-        executor.shutdown();
-        while (!executor.isTerminated()) {
-            try {
-                executor.awaitTermination(100, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            workers.add(new TaxonomyWorker1(contextIndex, 
+                    equiv, direc, factory, todo, token));
         }
+        runWorkers(workers);
         
-        assert (todo.isEmpty());
+        if (!todo.isEmpty()) {
+            conceptNodeIndex = null;
+            token.throwIfCancelled();
+        }
         
         int bottomConcept = CoreFactory.BOTTOM_CONCEPT;
         if (!equiv.containsKey(bottomConcept)) {
@@ -1832,8 +2631,8 @@ public class NormalisedOntology implements Serializable {
             TaxonomyWorker1.addToSet(equiv, topConcept, topConcept);
         }
         
-        Statistics.INSTANCE.setTime("taxonomy 1",
-                System.currentTimeMillis() - start);
+        phaseFinished("taxonomy 1", start);
+        phaseStarted("taxonomy 2");
         start = System.currentTimeMillis();
         
         // Part 2 - Creates a node per equivalent concepts
@@ -1876,32 +2675,26 @@ public class NormalisedOntology implements Serializable {
             bottom.getEquivalentConcepts().add(au.csiro.ontology.model.NamedConcept.BOTTOM);
         }
         
-        Statistics.INSTANCE.setTime("taxonomy 2",
-                System.currentTimeMillis() - start);
+        phaseFinished("taxonomy 2", start);
+        phaseStarted("taxonomy 3");
         start = System.currentTimeMillis();
         
         // Step 3 - Connects nodes
         Queue<Node> todo2 = new ConcurrentLinkedQueue<Node>(nodeSet);
-        executor = Executors.newFixedThreadPool(numThreads, THREAD_FACTORY);
+        workers = new ArrayList<Runnable>(numThreads);
         for (int j = 0; j < numThreads; j++) {
-            Runnable worker = new TaxonomyWorker2(factory, 
-                    conceptNodeIndex, direc, todo2, nodeSet);
-            executor.execute(worker);
+            workers.add(new TaxonomyWorker2(factory, 
+                    conceptNodeIndex, direc, todo2, nodeSet, token));
         }
+        runWorkers(workers);
 
-        executor.shutdown();
-        while (!executor.isTerminated()) {
-            try {
-                executor.awaitTermination(100, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        if (!todo2.isEmpty()) {
+            conceptNodeIndex = null;
+            token.throwIfCancelled();
         }
-
-        assert (todo2.isEmpty());
         
-        Statistics.INSTANCE.setTime("taxonomy 3",
-                System.currentTimeMillis() - start);
+        phaseFinished("taxonomy 3", start);
+        phaseStarted("taxonomy connect bottom");
         start = System.currentTimeMillis();
         
         // Connect bottom
@@ -1911,8 +2704,8 @@ public class NormalisedOntology implements Serializable {
             n.getChildren().add(bottom);
         }
         
-        Statistics.INSTANCE.setTime("taxonomy connect bottom",
-                System.currentTimeMillis() - start);
+        phaseFinished("taxonomy connect bottom", start);
+        phaseStarted("taxonomy connect top");
         start = System.currentTimeMillis();
         
         // Connect top
@@ -1929,7 +2722,7 @@ public class NormalisedOntology implements Serializable {
         }
 
         // TODO: deal with special case where only top and bottom are present.
-        Statistics.INSTANCE.setTime("taxonomy connect top", System.currentTimeMillis() - start);
+        phaseFinished("taxonomy connect top", start);
     }
     
     private void addToSet(IConceptMap<IConceptSet> map, int key, int val) {
@@ -1941,6 +2734,262 @@ public class NormalisedOntology implements Serializable {
         set.add(val);
     }
     
+    /**
+     * Processes the active contexts until there is no work left. Each thread
+     * runs a {@link Worker} that steals contexts from the other workers when
+     * it runs out of contexts of its own.
+     */
+    private void saturate() {
+        if(log.isInfoEnabled())
+            log.info("Running saturation");
+        final CancellationToken token = cancellationToken;
+        saturating = true;
+        contextIndex.setSaturating(true);
+        try {
+            final List<Worker> workers = Arrays.asList(todo.createWorkers(numThreads, token));
+            final ReasonerListener l = listener;
+            runWorkers(workers, null == l ? null : new Runnable() {
+                public void run() {
+                    l.saturationProgress(todo.getProcessed(), todo.size());
+                }
+            });
+        } finally {
+            contextIndex.setSaturating(false);
+            saturating = false;
+        }
+        if (!todo.isEmpty()) {
+            // The workers stopped before the saturation was complete
+            if(log.isInfoEnabled())
+                log.info("Saturation cancelled, discarding the contexts");
+            discardContexts();
+            token.throwIfCancelled();
+        }
+
+        if(log.isDebugEnabled()) {
+            log.debug("Processed " + getProcessedConceptEntries() + " concept queue entries");
+            log.debug("Skipped " + getSkippedNF3Lookups() + " NF3 lookups");
+            for (Worker worker : todo.getWorkers()) {
+                log.debug("Worker " + worker.getIndex() + ": processed " + worker.getProcessed() + 
+                        " contexts (" + worker.getSteals() + " stolen), busy " + 
+                        (worker.getBusyTime() / 1000000) + "ms, idle " + (worker.getIdleTime() / 1000000) + "ms");
+            }
+        }
+    }
+
+    /**
+     * Discards the contexts and the taxonomy after a cancelled saturation.
+     * The terms added incrementally are already in the ontology, so a full
+     * classification takes them into account.
+     */
+    private void discardContexts() {
+        todo.clear();
+        contextIndex.clear();
+        newContexts.clear();
+        affectedContexts.clear();
+        as.clear();
+        hasBeenIncrementallyClassified = false;
+        conceptNodeIndex = null;
+    }
+
+    /**
+     * Runs the workers of a phase and waits until all of them have finished.
+     * The workers run in the executor set with {@link #setExecutor(Executor)}
+     * or, if there is none, in a pool created for the phase. The calling
+     * thread runs the first worker and then every worker that the executor
+     * has not started yet, so the phase finishes even if the executor has no
+     * free thread, e.g. when the classification itself runs in the same
+     * small pool. If a worker fails, the exception is thrown once the rest of
+     * the workers have finished.
+     * 
+     * @param workers
+     */
+    private void runWorkers(List<? extends Runnable> workers) {
+        runWorkers(workers, null);
+    }
+
+    /**
+     * Runs the workers of a phase and, while waiting for them, runs the
+     * progress task every {@link #getProgressInterval()} milliseconds. With
+     * a progress task every worker is given to the executor, and the calling
+     * thread only runs the ones that are still waiting after an interval.
+     * 
+     * @param workers
+     * @param progress
+     *            the progress task, or null
+     */
+    private void runWorkers(List<? extends Runnable> workers, final Runnable progress) {
+        final CountDownLatch latch = new CountDownLatch(workers.size());
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final int first = null == progress ? 1 : 0;
+        final ExecutorService pool = null == executor && workers.size() > first ? 
+                Executors.newFixedThreadPool(workers.size() - first, THREAD_FACTORY) : null;
+        final Executor exec = null == pool ? executor : pool;
+        final AtomicLong cpuTime = new AtomicLong();
+        final Thread caller = Thread.currentThread();
+        final List<Runnable> tasks = new ArrayList<Runnable>(workers.size());
+        for (final Runnable worker : workers) {
+            // Started at most once, by the executor or by the calling thread
+            final AtomicBoolean started = new AtomicBoolean();
+            tasks.add(new Runnable() {
+                public void run() {
+                    if (!started.compareAndSet(false, true)) {
+                        return;
+                    }
+                    final long cpu = threadCpuTime();
+                    try {
+                        worker.run();
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        // The calling thread is measured by the phase
+                        if (Thread.currentThread() != caller) {
+                            cpuTime.addAndGet(threadCpuTime() - cpu);
+                        }
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        try {
+            for (int i = first; i < tasks.size(); i++) {
+                try {
+                    exec.execute(tasks.get(i));
+                } catch (RejectedExecutionException e) {
+                    // Run by the calling thread
+                }
+            }
+            if (null == progress) {
+                runAll(tasks);
+            }
+        } finally {
+            if (null != pool) {
+                pool.shutdown();
+            }
+        }
+
+        // A thread of a ForkJoinPool that waits for the workers is
+        // compensated with a spare thread, so the workers can run even if the
+        // phase was started from the same pool
+        boolean interrupted = false;
+        while (latch.getCount() > 0) {
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    public boolean block() throws InterruptedException {
+                        if (null == progress) {
+                            latch.await();
+                            return true;
+                        }
+                        if (!latch.await(progressInterval, TimeUnit.MILLISECONDS)) {
+                            progress.run();
+                            runAll(tasks);
+                        }
+                        return latch.getCount() == 0;
+                    }
+
+                    public boolean isReleasable() {
+                        return latch.getCount() == 0;
+                    }
+                });
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        phaseWorkers = Math.max(phaseWorkers, workers.size());
+        phaseWorkerCpuTime += cpuTime.get();
+
+        final Throwable t = failure.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (null != t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Runs the workers that have not been started yet in the calling thread.
+     */
+    private static void runAll(List<Runnable> tasks) {
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    private void phaseStarted(String phase) {
+        this.phase = phase;
+        phaseStart = System.currentTimeMillis();
+        phaseEvent = ReasonerEvents.beginPhase();
+        phaseWorkers = 0;
+        phaseWorkerCpuTime = 0;
+        phaseMemory = MEMORY.getHeapMemoryUsage().getUsed();
+        phaseCpuTime = threadCpuTime();
+        phaseNanos = System.nanoTime();
+        final ReasonerListener l = listener;
+        if (null != l) {
+            l.phaseStarted(phase);
+        }
+    }
+
+    /**
+     * Records the metrics of a phase and notifies the listener. The CPU time
+     * of a phase is the time of the calling thread plus the time of the
+     * workers it ran.
+     * 
+     * @param phase
+     * @param start
+     *            the start time of the phase in milliseconds
+     */
+    private void phaseFinished(String phase, long start) {
+        final long time = System.currentTimeMillis() - start;
+        final long nanos = System.nanoTime() - phaseNanos;
+        final long memoryDelta = MEMORY.getHeapMemoryUsage().getUsed() - phaseMemory;
+        final int threads = Math.max(phaseWorkers, 1);
+        final long cpuTime = null == THREADS ? -1 : threadCpuTime() - phaseCpuTime + phaseWorkerCpuTime;
+        metrics.record(phase, time, memoryDelta, threads, nanos * threads, cpuTime);
+        ReasonerEvents.endPhase(phaseEvent, phase, true);
+        phaseEvent = null;
+        this.phase = null;
+        final ReasonerListener l = listener;
+        if (null != l) {
+            l.phaseFinished(phase, time);
+        }
+    }
+
+    /**
+     * Ends the current phase if it did not finish, e.g. because the reasoning
+     * was cancelled or a worker failed. The flight recorder event is
+     * committed as not completed and the listener is notified, but no metrics
+     * are recorded. Does nothing if there is no current phase.
+     */
+    private void phaseFailed() {
+        final String failed = phase;
+        if (null == failed) {
+            return;
+        }
+        final long time = System.currentTimeMillis() - phaseStart;
+        ReasonerEvents.endPhase(phaseEvent, failed, false);
+        phaseEvent = null;
+        phase = null;
+        final ReasonerListener l = listener;
+        if (null != l) {
+            l.phaseFailed(failed, time);
+        }
+    }
+
+    /**
+     * Returns the CPU time of the current thread in nanoseconds, or 0 if the
+     * JVM does not measure it.
+     * 
+     * @return
+     */
+    private static long threadCpuTime() {
+        return null == THREADS ? 0 : THREADS.getCurrentThreadCpuTime();
+    }
+
     public void getFullTaxonomy(IConceptMap<IConceptSet> equiv, IConceptMap<IConceptSet> direc) {
         final IConceptMap<IConceptSet> subsumptions = getSubsumptions();
 
@@ -2000,114 +3049,66 @@ public class NormalisedOntology implements Serializable {
      * @return
      */
     public void buildTaxonomy() {
-        
-        // Determine if a full or incremental calculation is required
-        if(!hasBeenIncrementallyClassified) {
-            buildTaxonomyConcurrent();
-            //buildTaxonomySequential();
-        } else {
-            final IConceptMap<IConceptSet> newConceptSubs = getNewSubsumptions();
-            final IConceptMap<IConceptSet> affectedConceptSubs = getAffectedSubsumptions();
-            
-            // 1. Keep only the subsumptions that involve real atomic concepts
-            IConceptMap<IConceptSet> allNew = new SparseConceptMap<IConceptSet>(newConceptSubs.size());
-
-            IConceptMap<IConceptSet> allAffected = new SparseConceptMap<IConceptSet>(newConceptSubs.size());
-
-            for (IntIterator itr = newConceptSubs.keyIterator(); itr.hasNext();) {
-                final int x = itr.next();
-                if (!factory.isVirtualConcept(x)) {
-                    IConceptSet set = new SparseConceptHashSet();
-                    allNew.put(x, set);
-                    for (IntIterator it = newConceptSubs.get(x).iterator(); it.hasNext();) {
-                        int next = it.next();
-                        if (!factory.isVirtualConcept(next)) {
-                            set.add(next);
+        try {
+            // Determine if a full or incremental calculation is required
+            if(!hasBeenIncrementallyClassified) {
+                buildTaxonomyConcurrent();
+                //buildTaxonomySequential();
+            } else {
+                phaseStarted("incremental taxonomy");
+                final long start = System.currentTimeMillis();
+                final IConceptMap<IConceptSet> newConceptSubs = getNewSubsumptions();
+                final IConceptMap<IConceptSet> affectedConceptSubs = getAffectedSubsumptions();
+
+                // 1. Keep only the subsumptions that involve real atomic concepts
+                IConceptMap<IConceptSet> allNew = new SparseConceptMap<IConceptSet>(newConceptSubs.size());
+
+                IConceptMap<IConceptSet> allAffected = new SparseConceptMap<IConceptSet>(newConceptSubs.size());
+
+                for (IntIterator itr = newConceptSubs.keyIterator(); itr.hasNext();) {
+                    final int x = itr.next();
+                    if (!factory.isVirtualConcept(x)) {
+                        IConceptSet set = new SparseConceptHashSet();
+                        allNew.put(x, set);
+                        for (IntIterator it = newConceptSubs.get(x).iterator(); it.hasNext();) {
+                            int next = it.next();
+                            if (!factory.isVirtualConcept(next)) {
+                                set.add(next);
+                            }
                         }
                     }
                 }
-            }
 
-            for (IntIterator itr = affectedConceptSubs.keyIterator(); itr.hasNext();) {
-                final int x = itr.next();
-                if (!factory.isVirtualConcept(x)) {
-                    IConceptSet set = new SparseConceptHashSet();
-                    allAffected.put(x, set);
-                    for (IntIterator it = affectedConceptSubs.get(x).iterator(); it.hasNext();) {
-                        int next = it.next();
-                        if (!factory.isVirtualConcept(next)) {
-                            set.add(next);
+                for (IntIterator itr = affectedConceptSubs.keyIterator(); itr.hasNext();) {
+                    final int x = itr.next();
+                    if (!factory.isVirtualConcept(x)) {
+                        IConceptSet set = new SparseConceptHashSet();
+                        allAffected.put(x, set);
+                        for (IntIterator it = affectedConceptSubs.get(x).iterator(); it.hasNext();) {
+                            int next = it.next();
+                            if (!factory.isVirtualConcept(next)) {
+                                set.add(next);
+                            }
                         }
                     }
                 }
-            }
-            
-            // 2. Create nodes for new concepts and connect to node hierarchy
-            // a. First create the nodes and add to index
-            for (IntIterator itr = allNew.keyIterator(); itr.hasNext();) {
-                final String key = factory.lookupConceptId(itr.next()).toString();
-                Node cn = new Node();
-                cn.getEquivalentConcepts().add(key);
-                conceptNodeIndex.put(key, cn);
-            }
-
-            // b. Now connect the nodes disregarding redundant connections
-            Node bottomNode = conceptNodeIndex.get(au.csiro.ontology.model.NamedConcept.BOTTOM);
-            for (IntIterator itr = allNew.keyIterator(); itr.hasNext();) {
-                int id = itr.next();
-                final String key = factory.lookupConceptId(id).toString();
-                Node cn = conceptNodeIndex.get(key);
-                IConceptSet parents = allNew.get(id);
-                for (IntIterator itr2 = parents.iterator(); itr2.hasNext();) {
-                    // Create a connection to each parent
-                    int parentId = itr2.next();
-                    if (parentId == id)
-                        continue;
-                    Node parent = conceptNodeIndex.get(factory.lookupConceptId(parentId));
-                    cn.getParents().add(parent);
-                    parent.getChildren().add(cn);
-                    // All nodes that get new children and are connected to BOTTOM
-                    // must be disconnected
-                    if (parent.getChildren().contains(bottomNode)) {
-                        parent.getChildren().remove(bottomNode);
-                        bottomNode.getParents().remove(parent);
-                    }
+
+                // 2. Create nodes for new concepts and connect to node hierarchy
+                // a. First create the nodes and add to index
+                for (IntIterator itr = allNew.keyIterator(); itr.hasNext();) {
+                    final String key = factory.lookupConceptId(itr.next()).toString();
+                    Node cn = new Node();
+                    cn.getEquivalentConcepts().add(key);
+                    conceptNodeIndex.put(key, cn);
                 }
-            }
-            
-            Set<Integer> toRemoveFromAffected = new HashSet<Integer>();
-            for (IntIterator itr = allAffected.keyIterator(); itr.hasNext();) {
-                final int id = itr.next();
-                final String key = factory.lookupConceptId(id).toString();
-                Node cn = conceptNodeIndex.get(key);
-                IConceptSet parents = allAffected.get(id);
-                
-                if(parents.contains(IFactory.BOTTOM_CONCEPT)) {
-                    // Special case - bottom is parent
-                    
-                    // a. add equivalents to bottom node
-                    bottomNode.getEquivalentConcepts().addAll(cn.getEquivalentConcepts());
-                    
-                    Set<Node> tempParents = cn.getParents();
-                    Set<Node> tempChildren = cn.getChildren();
-                    
-                    // b. reconnect parents to children
-                    for(Node parent : tempParents) {
-                        parent.getChildren().remove(cn);
-                        parent.getChildren().addAll(tempChildren);
-                    }
-                    
-                    for(Node child : tempChildren) {
-                        child.getParents().remove(cn);
-                        child.getParents().addAll(tempParents);
-                    }
-                    
-                    for(String k : cn.getEquivalentConcepts()) {
-                        conceptNodeIndex.remove(k);
-                        conceptNodeIndex.put(key, bottomNode);
-                    }
-                    toRemoveFromAffected.add(id);
-                } else {
+
+                // b. Now connect the nodes disregarding redundant connections
+                Node bottomNode = conceptNodeIndex.get(au.csiro.ontology.model.NamedConcept.BOTTOM);
+                for (IntIterator itr = allNew.keyIterator(); itr.hasNext();) {
+                    int id = itr.next();
+                    final String key = factory.lookupConceptId(id).toString();
+                    Node cn = conceptNodeIndex.get(key);
+                    IConceptSet parents = allNew.get(id);
                     for (IntIterator itr2 = parents.iterator(); itr2.hasNext();) {
                         // Create a connection to each parent
                         int parentId = itr2.next();
@@ -2116,177 +3117,231 @@ public class NormalisedOntology implements Serializable {
                         Node parent = conceptNodeIndex.get(factory.lookupConceptId(parentId));
                         cn.getParents().add(parent);
                         parent.getChildren().add(cn);
-                        // All nodes that get new children and are connected to BOTTOM must be disconnected
+                        // All nodes that get new children and are connected to BOTTOM
+                        // must be disconnected
                         if (parent.getChildren().contains(bottomNode)) {
                             parent.getChildren().remove(bottomNode);
                             bottomNode.getParents().remove(parent);
                         }
                     }
                 }
-            }
-            
-            for(Integer i : toRemoveFromAffected) {
-                allAffected.remove(i.intValue());
-                allNew.remove(i.intValue());
-            }
 
-            // 3. Connect new nodes without parents to TOP
-            Node topNode = conceptNodeIndex.get(au.csiro.ontology.model.NamedConcept.TOP);
+                Set<Integer> toRemoveFromAffected = new HashSet<Integer>();
+                for (IntIterator itr = allAffected.keyIterator(); itr.hasNext();) {
+                    final int id = itr.next();
+                    final String key = factory.lookupConceptId(id).toString();
+                    Node cn = conceptNodeIndex.get(key);
+                    IConceptSet parents = allAffected.get(id);
 
-            for (IntIterator itr = allNew.keyIterator(); itr.hasNext();) {
-                final String key = factory.lookupConceptId(itr.next()).toString();
-                Node cn = conceptNodeIndex.get(key);
-                if (cn.getParents().isEmpty()) {
-                    cn.getParents().add(topNode);
-                    topNode.getChildren().add(cn);
-                }
-            }
+                    if(parents.contains(IFactory.BOTTOM_CONCEPT)) {
+                        // Special case - bottom is parent
 
-            // 4. Fix connections for new and affected concepts
-            // a. Check for equivalents
-            Set<Pair> pairsToMerge = new HashSet<Pair>();
-            for (IntIterator itr = allNew.keyIterator(); itr.hasNext();) {
-                final String key = factory.lookupConceptId(itr.next()).toString();
-                Node cn = conceptNodeIndex.get(key);
-                for (Node parent : cn.getParents()) {
-                    if (parent.getParents().contains(cn)) {
-                        pairsToMerge.add(new Pair(cn, parent));
-                    }
-                }
-            }
-            for (IntIterator itr = allAffected.keyIterator(); itr.hasNext();) {
-                final String key = factory.lookupConceptId(itr.next()).toString();
-                Node cn = conceptNodeIndex.get(key);
-                for (Node parent : cn.getParents()) {
-                    if (parent.getParents().contains(cn)) {
-                        pairsToMerge.add(new Pair(cn, parent));
-                    }
-                }
-            }
+                        // a. add equivalents to bottom node
+                        bottomNode.getEquivalentConcepts().addAll(cn.getEquivalentConcepts());
 
-            Set<Node> affectedByMerge = new HashSet<Node>();
+                        Set<Node> tempParents = cn.getParents();
+                        Set<Node> tempChildren = cn.getChildren();
 
-            // Merge equivalents
-            for (Pair p : pairsToMerge) {
-                Node cn1 = p.getA();
-                Node cn2 = p.getB();
+                        // b. reconnect parents to children
+                        for(Node parent : tempParents) {
+                            parent.getChildren().remove(cn);
+                            parent.getChildren().addAll(tempChildren);
+                        }
+
+                        for(Node child : tempChildren) {
+                            child.getParents().remove(cn);
+                            child.getParents().addAll(tempParents);
+                        }
 
-                affectedByMerge.addAll(cn1.getChildren());
-                affectedByMerge.addAll(cn2.getChildren());
+                        for(String k : cn.getEquivalentConcepts()) {
+                            conceptNodeIndex.remove(k);
+                            conceptNodeIndex.put(key, bottomNode);
+                        }
+                        toRemoveFromAffected.add(id);
+                    } else {
+                        for (IntIterator itr2 = parents.iterator(); itr2.hasNext();) {
+                            // Create a connection to each parent
+                            int parentId = itr2.next();
+                            if (parentId == id)
+                                continue;
+                            Node parent = conceptNodeIndex.get(factory.lookupConceptId(parentId));
+                            cn.getParents().add(parent);
+                            parent.getChildren().add(cn);
+                            // All nodes that get new children and are connected to BOTTOM must be disconnected
+                            if (parent.getChildren().contains(bottomNode)) {
+                                parent.getChildren().remove(bottomNode);
+                                bottomNode.getParents().remove(parent);
+                            }
+                        }
+                    }
+                }
 
-                // Merge into cn1 - remove cn2 from index and replace with cn1
-                for (String n : cn2.getEquivalentConcepts()) {
-                    conceptNodeIndex.put(n, cn1);
+                for(Integer i : toRemoveFromAffected) {
+                    allAffected.remove(i.intValue());
+                    allNew.remove(i.intValue());
                 }
 
-                cn1.getEquivalentConcepts().addAll(cn2.getEquivalentConcepts());
+                // 3. Connect new nodes without parents to TOP
+                Node topNode = conceptNodeIndex.get(au.csiro.ontology.model.NamedConcept.TOP);
 
-                // Remove relationships between merged concepts
-                cn1.getParents().remove(cn2);
-                cn2.getChildren().remove(cn1);
-                cn2.getParents().remove(cn1);
-                cn1.getChildren().remove(cn2);
+                for (IntIterator itr = allNew.keyIterator(); itr.hasNext();) {
+                    final String key = factory.lookupConceptId(itr.next()).toString();
+                    Node cn = conceptNodeIndex.get(key);
+                    if (cn.getParents().isEmpty()) {
+                        cn.getParents().add(topNode);
+                        topNode.getChildren().add(cn);
+                    }
+                }
 
-                // Taxonomy is bidirectional
-                cn1.getParents().addAll(cn2.getParents());
-                for (Node parent : cn2.getParents()) {
-                    parent.getChildren().remove(cn2);
-                    parent.getChildren().add(cn1);
+                // 4. Fix connections for new and affected concepts
+                // a. Check for equivalents
+                Set<Pair> pairsToMerge = new HashSet<Pair>();
+                for (IntIterator itr = allNew.keyIterator(); itr.hasNext();) {
+                    final String key = factory.lookupConceptId(itr.next()).toString();
+                    Node cn = conceptNodeIndex.get(key);
+                    for (Node parent : cn.getParents()) {
+                        if (parent.getParents().contains(cn)) {
+                            pairsToMerge.add(new Pair(cn, parent));
+                        }
+                    }
                 }
-                cn1.getChildren().addAll(cn2.getChildren());
-                for (Node child : cn2.getChildren()) {
-                    child.getParents().remove(cn2);
-                    child.getParents().add(cn1);
+                for (IntIterator itr = allAffected.keyIterator(); itr.hasNext();) {
+                    final String key = factory.lookupConceptId(itr.next()).toString();
+                    Node cn = conceptNodeIndex.get(key);
+                    for (Node parent : cn.getParents()) {
+                        if (parent.getParents().contains(cn)) {
+                            pairsToMerge.add(new Pair(cn, parent));
+                        }
+                    }
                 }
 
-                cn2 = null; // nothing should reference cn2 now
-            }
+                Set<Node> affectedByMerge = new HashSet<Node>();
 
-            // b. Fix all new and affected nodes
-            Set<Node> all = new HashSet<Node>();
-            for (IntIterator it = allNew.keyIterator(); it.hasNext();) {
-                all.add(conceptNodeIndex.get(factory.lookupConceptId(it.next())));
-            }
+                // Merge equivalents
+                for (Pair p : pairsToMerge) {
+                    Node cn1 = p.getA();
+                    Node cn2 = p.getB();
 
-            for (IntIterator it = allAffected.keyIterator(); it.hasNext();) {
-                all.add(conceptNodeIndex.get(factory.lookupConceptId(it.next())));
-            }
+                    affectedByMerge.addAll(cn1.getChildren());
+                    affectedByMerge.addAll(cn2.getChildren());
 
-            for (Node cn : affectedByMerge) {
-                all.add(cn);
-            }
+                    // Merge into cn1 - remove cn2 from index and replace with cn1
+                    for (String n : cn2.getEquivalentConcepts()) {
+                        conceptNodeIndex.put(n, cn1);
+                    }
+
+                    cn1.getEquivalentConcepts().addAll(cn2.getEquivalentConcepts());
+
+                    // Remove relationships between merged concepts
+                    cn1.getParents().remove(cn2);
+                    cn2.getChildren().remove(cn1);
+                    cn2.getParents().remove(cn1);
+                    cn1.getChildren().remove(cn2);
+
+                    // Taxonomy is bidirectional
+                    cn1.getParents().addAll(cn2.getParents());
+                    for (Node parent : cn2.getParents()) {
+                        parent.getChildren().remove(cn2);
+                        parent.getChildren().add(cn1);
+                    }
+                    cn1.getChildren().addAll(cn2.getChildren());
+                    for (Node child : cn2.getChildren()) {
+                        child.getParents().remove(cn2);
+                        child.getParents().add(cn1);
+                    }
 
-            // Add also the children of the affected nodes
-            Set<Node> childrenToAdd = new HashSet<Node>();
-            for (Node cn : all) {
-                for (Node ccn : cn.getChildren()) {
-                    if (ccn.equals(bottomNode))
-                        continue;
-                    childrenToAdd.add(ccn);
+                    cn2 = null; // nothing should reference cn2 now
                 }
-            }
-            all.addAll(childrenToAdd);
 
-            // Find redundant relationships
-            for (Node cn : all) {
-                Set<Node> ps = cn.getParents();
+                // b. Fix all new and affected nodes
+                Set<Node> all = new HashSet<Node>();
+                for (IntIterator it = allNew.keyIterator(); it.hasNext();) {
+                    all.add(conceptNodeIndex.get(factory.lookupConceptId(it.next())));
+                }
 
-                Object[] parents = ps.toArray(new Object[ps.size()]);
-                Set<Node> toRemove = new HashSet<Node>();
-                for (int i = 0; i < parents.length; i++) {
-                    for (int j = i + 1; j < parents.length; j++) {
-                        if (isChild((Node)parents[j], (Node)parents[i])) {
-                            toRemove.add((Node)parents[i]);
-                            continue;
-                        }
-                        if (isChild((Node)parents[i], (Node)parents[j])) {
-                            toRemove.add((Node)parents[j]);
+                for (IntIterator it = allAffected.keyIterator(); it.hasNext();) {
+                    all.add(conceptNodeIndex.get(factory.lookupConceptId(it.next())));
+                }
+
+                for (Node cn : affectedByMerge) {
+                    all.add(cn);
+                }
+
+                // Add also the children of the affected nodes
+                Set<Node> childrenToAdd = new HashSet<Node>();
+                for (Node cn : all) {
+                    for (Node ccn : cn.getChildren()) {
+                        if (ccn.equals(bottomNode))
                             continue;
-                        }
+                        childrenToAdd.add(ccn);
                     }
                 }
-                for (Node tr : toRemove) {
-                    cn.getParents().remove(tr);
-                    tr.getChildren().remove(cn);
+                all.addAll(childrenToAdd);
+
+                // Find redundant relationships
+                for (Node cn : all) {
+                    Set<Node> ps = cn.getParents();
+
+                    Object[] parents = ps.toArray(new Object[ps.size()]);
+                    Set<Node> toRemove = new HashSet<Node>();
+                    for (int i = 0; i < parents.length; i++) {
+                        for (int j = i + 1; j < parents.length; j++) {
+                            if (isChild((Node)parents[j], (Node)parents[i])) {
+                                toRemove.add((Node)parents[i]);
+                                continue;
+                            }
+                            if (isChild((Node)parents[i], (Node)parents[j])) {
+                                toRemove.add((Node)parents[j]);
+                                continue;
+                            }
+                        }
+                    }
+                    for (Node tr : toRemove) {
+                        cn.getParents().remove(tr);
+                        tr.getChildren().remove(cn);
+                    }
                 }
-            }
 
-            // 5. Connect bottom to new and affected concepts with no children
-            for (IntIterator itr = allNew.keyIterator(); itr.hasNext();) {
-                final int key = itr.next();
-                Node cn = conceptNodeIndex.get(factory.lookupConceptId(key));
-                if (cn.getChildren().isEmpty()) {
-                    cn.getChildren().add(bottomNode);
-                    bottomNode.getParents().add(cn);
+                // 5. Connect bottom to new and affected concepts with no children
+                for (IntIterator itr = allNew.keyIterator(); itr.hasNext();) {
+                    final int key = itr.next();
+                    Node cn = conceptNodeIndex.get(factory.lookupConceptId(key));
+                    if (cn.getChildren().isEmpty()) {
+                        cn.getChildren().add(bottomNode);
+                        bottomNode.getParents().add(cn);
+                    }
                 }
-            }
-            for (IntIterator itr = allAffected.keyIterator(); itr.hasNext();) {
-                final int key = itr.next();
-                Node cn = conceptNodeIndex.get(factory.lookupConceptId(key));
-                if (cn.getChildren().isEmpty()) {
-                    cn.getChildren().add(bottomNode);
-                    bottomNode.getParents().add(cn);
+                for (IntIterator itr = allAffected.keyIterator(); itr.hasNext();) {
+                    final int key = itr.next();
+                    Node cn = conceptNodeIndex.get(factory.lookupConceptId(key));
+                    if (cn.getChildren().isEmpty()) {
+                        cn.getChildren().add(bottomNode);
+                        bottomNode.getParents().add(cn);
+                    }
                 }
-            }
 
-            // 6. Connect the top node to new and affected concepts with no parents
-            for (IntIterator itr = allNew.keyIterator(); itr.hasNext();) {
-                final int key = itr.next();
-                Node cn = conceptNodeIndex.get(factory.lookupConceptId(key));
-                if (cn.getParents().isEmpty()) {
-                    cn.getParents().add(topNode);
-                    topNode.getChildren().add(cn);
+                // 6. Connect the top node to new and affected concepts with no parents
+                for (IntIterator itr = allNew.keyIterator(); itr.hasNext();) {
+                    final int key = itr.next();
+                    Node cn = conceptNodeIndex.get(factory.lookupConceptId(key));
+                    if (cn.getParents().isEmpty()) {
+                        cn.getParents().add(topNode);
+                        topNode.getChildren().add(cn);
+                    }
                 }
-            }
-            for (IntIterator itr = allAffected.keyIterator(); itr.hasNext();) {
-                final int key = itr.next();
-                Node cn = conceptNodeIndex.get(factory.lookupConceptId(key));
-                if (cn.getParents().isEmpty()) {
-                    cn.getParents().add(topNode);
-                    topNode.getChildren().add(cn);
+                for (IntIterator itr = allAffected.keyIterator(); itr.hasNext();) {
+                    final int key = itr.next();
+                    Node cn = conceptNodeIndex.get(factory.lookupConceptId(key));
+                    if (cn.getParents().isEmpty()) {
+                        cn.getParents().add(topNode);
+                        topNode.getChildren().add(cn);
+                    }
                 }
-            }
-        }  
+                phaseFinished("incremental taxonomy", start);
+            }  
+        } finally {
+            phaseFailed();
+        }
     }
     
     /**
@@ -2517,25 +3572,15 @@ public class NormalisedOntology implements Serializable {
             }
         }
         
-        for(IntIterator it = ontologyNF3.keyIterator(); it.hasNext(); ) {
-            int aId = it.next();
-            ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>> entries = ontologyNF3.get(aId);
-            for(Entry<Integer, Collection<IConjunctionQueueEntry>> entrySet : entries.entrySet()) {
-                Integer rId = entrySet.getKey();
-                
-                // These terms are of the form r.A [ b and indexed by A (and then by r)
-                
-                for(IConjunctionQueueEntry entry : entrySet.getValue()) {
-                    int bId = entry.getB();
-                    Object r = factory.lookupRoleId(rId.intValue());
-                    String rs = (r instanceof String) ? (String) r :  "[" + r.toString() + "]";
-                    Object a = factory.lookupConceptId(aId);
-                    String as = (a instanceof String) ? (String) a : "[" + a.toString() + "]";
-                    Object b = factory.lookupConceptId(bId);
-                    String bs = (b instanceof String) ? (String) b :  "[" + b.toString() + "]";
-                    System.out.println("NF3: " + rs + "." + as + " [ " + bs);
-                }
-            }
+        // These terms are of the form r.A [ b and indexed by A (and then by r)
+        for(NF3 nf3 : ontologyNF3.getTerms()) {
+            Object r = factory.lookupRoleId(nf3.lhsR);
+            String rs = (r instanceof String) ? (String) r :  "[" + r.toString() + "]";
+            Object a = factory.lookupConceptId(nf3.lhsA);
+            String as = (a instanceof String) ? (String) a : "[" + a.toString() + "]";
+            Object b = factory.lookupConceptId(nf3.rhsB);
+            String bs = (b instanceof String) ? (String) b :  "[" + b.toString() + "]";
+            System.out.println("NF3: " + rs + "." + as + " [ " + bs);
         }
         
         for(Iterator<NF4> it = ontologyNF4.iterator(); it.hasNext(); ) {
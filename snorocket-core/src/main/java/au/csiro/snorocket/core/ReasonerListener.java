@@ -0,0 +1,60 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+/**
+ * Receives the progress of the reasoning (see
+ * {@link NormalisedOntology#setListener(ReasonerListener)}). The phases are
+ * the ones recorded in the {@link ReasonerMetrics}, e.g. "normalisation",
+ * "classification" or "taxonomy 1".
+ *
+ * <p>
+ * The methods are called from the thread running the reasoning, which is not
+ * the caller's thread when the asynchronous methods of
+ * {@link SnorocketReasoner} are used, so implementations must be thread safe
+ * and should return quickly.
+ * </p>
+ */
+public interface ReasonerListener {
+
+    /**
+     * Called when a phase starts.
+     *
+     * @param phase
+     */
+    public void phaseStarted(String phase);
+
+    /**
+     * Called when a phase finishes.
+     *
+     * @param phase
+     * @param time
+     *            the duration of the phase in milliseconds
+     */
+    public void phaseFinished(String phase, long time);
+
+    /**
+     * Called instead of {@link #phaseFinished(String, long)} when a phase
+     * stops early, because the reasoning was cancelled or failed. Does
+     * nothing by default.
+     *
+     * @param phase
+     * @param time
+     *            the time until the phase stopped in milliseconds
+     */
+    public default void phaseFailed(String phase, long time) {
+    }
+
+    /**
+     * Called periodically while the saturation runs.
+     *
+     * @param processedContexts
+     *            the number of contexts processed so far in this saturation
+     * @param pendingContexts
+     *            the number of contexts that are queued or being processed
+     */
+    public void saturationProgress(int processedContexts, int pendingContexts);
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import java.util.Map;
+
+import au.csiro.snorocket.core.concurrent.SaturationCounter;
+
+/**
+ * Exposes the state of a reasoner through JMX (see
+ * {@link SnorocketReasoner#registerMBean(String)}).
+ */
+public interface ReasonerMXBean {
+
+    /**
+     * Returns the values of the {@link SaturationCounter}s, indexed by name.
+     *
+     * @return
+     */
+    public Map<String, Long> getSaturationCounters();
+
+    /**
+     * Returns true while a saturation runs.
+     *
+     * @return
+     */
+    public boolean isSaturating();
+
+    /**
+     * Returns the number of contexts that are waiting to be processed or
+     * being processed.
+     *
+     * @return
+     */
+    public int getPendingContexts();
+
+    /**
+     * Returns the number of contexts created so far.
+     *
+     * @return
+     */
+    public int getContexts();
+
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import au.csiro.snorocket.core.concurrent.SaturationCounter;
+import au.csiro.snorocket.core.concurrent.SaturationStatistics;
+
+/**
+ * The metrics of the reasoning done on a {@link NormalisedOntology}. For
+ * every phase, e.g. "normalisation", "classification" or "taxonomy 1", it
+ * keeps the time, the change in the used heap and how busy the threads that
+ * ran the phase were. The counters of the saturation rules are read from the
+ * ontology when the metrics are queried.
+ *
+ * <p>
+ * Unlike the global {@link au.csiro.ontology.util.Statistics}, the metrics
+ * belong to a single ontology, so reasoners that run concurrently in the same
+ * JVM do not overwrite each other's times. The methods can be called from
+ * any thread, also while the reasoning runs.
+ * </p>
+ *
+ * <p>
+ * Every phase is recorded, whether the metrics are queried or not. Recording
+ * a phase reads the used heap and the CPU time of the threads that ran it,
+ * a few calls to the management beans per phase and worker.
+ * </p>
+ */
+public final class ReasonerMetrics {
+
+    private final NormalisedOntology ontology;
+
+    /**
+     * The phases, in the order in which they first ran. Guarded by this.
+     */
+    private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+
+    ReasonerMetrics(NormalisedOntology ontology) {
+        this.ontology = ontology;
+    }
+
+    /**
+     * Records a run of a phase.
+     *
+     * @param name
+     * @param time
+     *            the duration in milliseconds
+     * @param memoryDelta
+     *            the change in the used heap in bytes
+     * @param threads
+     *            the number of threads that ran the phase
+     * @param capacity
+     *            the wall time of the phase multiplied by the number of
+     *            threads, in nanoseconds
+     * @param cpuTime
+     *            the CPU time used by the threads in nanoseconds, or -1 if
+     *            the JVM does not measure it
+     */
+    synchronized void record(String name, long time, long memoryDelta, int threads, long capacity,
+            long cpuTime) {
+        Phase phase = phases.get(name);
+        if (phase == null) {
+            phase = new Phase();
+            phases.put(name, phase);
+        }
+        phase.runs++;
+        phase.time += time;
+        phase.lastTime = time;
+        phase.memoryDelta = memoryDelta;
+        phase.threads = threads;
+        if (cpuTime >= 0) {
+            phase.capacity += capacity;
+            phase.cpuTime += cpuTime;
+        }
+    }
+
+    /**
+     * Returns the metrics of the phases that have run, in the order in which
+     * they first ran.
+     *
+     * @return
+     */
+    public synchronized List<PhaseMetrics> getPhases() {
+        final List<PhaseMetrics> res = new ArrayList<PhaseMetrics>(phases.size());
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            res.add(new PhaseMetrics(entry.getKey(), entry.getValue()));
+        }
+        return Collections.unmodifiableList(res);
+    }
+
+    /**
+     * Returns the metrics of a phase, or null if the phase has not run.
+     *
+     * @param name
+     * @return
+     */
+    public synchronized PhaseMetrics getPhase(String name) {
+        final Phase phase = phases.get(name);
+        return phase == null ? null : new PhaseMetrics(name, phase);
+    }
+
+    /**
+     * Returns the total time of all the runs of all the phases in
+     * milliseconds.
+     *
+     * @return
+     */
+    public synchronized long getTotalTime() {
+        long res = 0;
+        for (Phase phase : phases.values()) {
+            res += phase.time;
+        }
+        return res;
+    }
+
+    /**
+     * Returns a snapshot of the counters of the saturation rules.
+     *
+     * @return
+     */
+    public SaturationStatistics getSaturationStatistics() {
+        return ontology.getSaturationStatistics();
+    }
+
+    /**
+     * Forgets the phases recorded so far. The saturation counters are kept.
+     */
+    public synchronized void reset() {
+        phases.clear();
+    }
+
+    /**
+     * Returns the metrics as a JSON object with the phases, the total time,
+     * the number of contexts and the saturation counters.
+     *
+     * @return
+     */
+    public String toJson() {
+        final List<PhaseMetrics> snapshot = getPhases();
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\"phases\":[");
+        long total = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            final PhaseMetrics phase = snapshot.get(i);
+            total += phase.getTime();
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"name\":");
+            appendString(sb, phase.getName());
+            sb.append(",\"runs\":").append(phase.getRuns());
+            sb.append(",\"time\":").append(phase.getTime());
+            sb.append(",\"lastTime\":").append(phase.getLastTime());
+            sb.append(",\"memoryDelta\":").append(phase.getMemoryDelta());
+            sb.append(",\"threads\":").append(phase.getThreads());
+            sb.append(",\"cpuTime\":").append(phase.getCpuTime());
+            sb.append(",\"utilisation\":");
+            final double utilisation = phase.getUtilisation();
+            if (Double.isNaN(utilisation)) {
+                sb.append("null");
+            } else {
+                sb.append(utilisation);
+            }
+            sb.append('}');
+        }
+        sb.append("],\"totalTime\":").append(total);
+        sb.append(",\"contexts\":").append(ontology.getNumContexts());
+        sb.append(",\"saturation\":{");
+        final SaturationStatistics stats = getSaturationStatistics();
+        for (SaturationCounter counter : SaturationCounter.values()) {
+            if (counter.ordinal() > 0) {
+                sb.append(',');
+            }
+            appendString(sb, counter.name());
+            sb.append(':').append(stats.get(counter));
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    private static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Returns one line per phase with the time of its last run.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (PhaseMetrics phase : getPhases()) {
+            sb.append(phase.getName());
+            sb.append(": ");
+            sb.append(phase.getLastTime());
+            sb.append("ms\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The accumulated runs of a phase. Guarded by the metrics.
+     */
+    private static final class Phase {
+        int runs;
+        long time;
+        long lastTime;
+        long memoryDelta;
+        int threads;
+        long capacity;
+        long cpuTime;
+    }
+
+    /**
+     * A snapshot of the metrics of a phase.
+     */
+    public static final class PhaseMetrics {
+
+        private final String name;
+        private final int runs;
+        private final long time;
+        private final long lastTime;
+        private final long memoryDelta;
+        private final int threads;
+        private final long capacity;
+        private final long cpuTime;
+
+        private PhaseMetrics(String name, Phase phase) {
+            this.name = name;
+            this.runs = phase.runs;
+            this.time = phase.time;
+            this.lastTime = phase.lastTime;
+            this.memoryDelta = phase.memoryDelta;
+            this.threads = phase.threads;
+            this.capacity = phase.capacity;
+            this.cpuTime = phase.cpuTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the number of times the phase has run.
+         *
+         * @return
+         */
+        public int getRuns() {
+            return runs;
+        }
+
+        /**
+         * Returns the total time of all the runs in milliseconds.
+         *
+         * @return
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the time of the last run in milliseconds.
+         *
+         * @return
+         */
+        public long getLastTime() {
+            return lastTime;
+        }
+
+        /**
+         * Returns the change in the used heap during the last run, in
+         * bytes. It can be negative if the garbage collector ran.
+         *
+         * @return
+         */
+        public long getMemoryDelta() {
+            return memoryDelta;
+        }
+
+        /**
+         * Returns the number of threads that ran the last run. Phases that
+         * do not use workers run in a single thread.
+         *
+         * @return
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Returns the CPU time used by the threads of all the runs in
+         * milliseconds.
+         *
+         * @return
+         */
+        public long getCpuTime() {
+            return cpuTime / 1000000;
+        }
+
+        /**
+         * Returns the fraction of the time that the threads of the phase
+         * were running on a CPU, between 0 and 1, or NaN if it was not
+         * measured, e.g. because the JVM does not support the CPU time of
+         * threads.
+         *
+         * @return
+         */
+        public double getUtilisation() {
+            return capacity == 0 ? Double.NaN : (double) cpuTime / capacity;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + time + "ms";
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import au.csiro.snorocket.core.concurrent.SaturationCounter;
+
+/**
+ * The {@link ReasonerMXBean} of a {@link NormalisedOntology}.
+ */
+class ReasonerMonitor implements ReasonerMXBean {
+
+    private final NormalisedOntology ontology;
+
+    ReasonerMonitor(NormalisedOntology ontology) {
+        this.ontology = ontology;
+    }
+
+    public Map<String, Long> getSaturationCounters() {
+        final Map<String, Long> res = new LinkedHashMap<String, Long>();
+        for (Entry<SaturationCounter, Long> entry : ontology.getSaturationStatistics().toMap().entrySet()) {
+            res.put(entry.getKey().name(), entry.getValue());
+        }
+        return res;
+    }
+
+    public boolean isSaturating() {
+        return ontology.isSaturating();
+    }
+
+    public int getPendingContexts() {
+        return ontology.getPendingContexts();
+    }
+
+    public int getContexts() {
+        return ontology.getNumContexts();
+    }
+
+}
@@ -26,6 +26,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -33,6 +34,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,6 +63,7 @@ import au.csiro.ontology.model.NamedRole;
 import au.csiro.ontology.model.Operator;
 import au.csiro.snorocket.core.concurrent.CR;
 import au.csiro.snorocket.core.concurrent.Context;
+import au.csiro.snorocket.core.concurrent.SaturationStatistics;
 import au.csiro.snorocket.core.model.AbstractConcept;
 import au.csiro.snorocket.core.model.AbstractLiteral;
 import au.csiro.snorocket.core.model.BigIntegerLiteral;
@@ -84,12 +94,28 @@ final public class SnorocketReasoner implements IReasoner, Serializable {
 
     private final static Logger log = LoggerFactory.getLogger(SnorocketReasoner.class);
 
+    /**
+     * @deprecated the axioms returned by an iterator are no longer buffered,
+     *             see {@link #loadAxioms(Iterator)}.
+     */
+    @Deprecated
     public static final int BUFFER_SIZE = 10;
 
     private NormalisedOntology no = null;
     private IFactory factory = null;
     private boolean isClassified = false;
 
+    /**
+     * The last operation started by one of the asynchronous methods. Each
+     * operation starts when the previous one has finished.
+     */
+    private transient CompletableFuture<?> lastAsync = null;
+
+    /**
+     * The name the MXBean of this reasoner is registered with, if any.
+     */
+    private transient ObjectName mbeanName = null;
+
     /**
      * Loads a saved instance of a {@link SnorocketReasoner} from an input
      * stream.
@@ -524,14 +550,12 @@ final public class SnorocketReasoner implements IReasoner, Serializable {
     final static class Builder {
         final private NormalisedOntology no;
         final private IFactory factory;
-        final private Map<Integer, RoleSet> rc;
 
         final private Set<Existential> items = new HashSet<>();
 
         private Builder(NormalisedOntology no) {
             this.no = no;
             this.factory = no.factory;
-            this.rc = no.getRoleClosureCache();
         }
 
         static Concept build(NormalisedOntology no, Concept... concepts) {
@@ -593,7 +617,7 @@ final public class SnorocketReasoner implements IReasoner, Serializable {
                 final int arId = factory.getRole(((NamedRole) ((Existential) a).getRole()).getId());
                 final int brId = factory.getRole(((NamedRole) ((Existential) b).getRole()).getId());
 
-                if (rc.get(brId).contains(arId)) {
+                if (no.getRoleClosure(brId).contains(arId)) {
                     return subsumesOrEqual(((Existential) a).getConcept(), ((Existential) b).getConcept());
                 }
             } else if (a instanceof Conjunction && b instanceof Conjunction) {
@@ -643,7 +667,7 @@ final public class SnorocketReasoner implements IReasoner, Serializable {
                 final int cInt = factory.getConcept(((NamedConcept) concept).getId());
                 final IConceptSet cAncestorSet = getAncestors(no, cInt);
                 final int rInt = factory.getRole(role.getId());
-                final RoleSet rSet = rc.get(rInt);
+                final RoleSet rSet = no.getRoleClosure(rInt);
 
                 for (Existential candidate: items) {
                     final Concept value = candidate.getConcept();
@@ -655,7 +679,7 @@ final public class SnorocketReasoner implements IReasoner, Serializable {
                     final int dInt = factory.getConcept(((NamedConcept) value).getId());
                     final IConceptSet dAncestorSet = getAncestors(no, dInt);
                     final int sInt = factory.getRole(((NamedRole) candidate.getRole()).getId());
-                    final RoleSet sSet = rc.get(sInt);
+                    final RoleSet sSet = no.getRoleClosure(sInt);
 
                     if (rInt == sInt && cInt == dInt) {
                         subsumed = true;
@@ -728,40 +752,101 @@ final public class SnorocketReasoner implements IReasoner, Serializable {
         }
     }
 
+    /**
+     * Loads the axioms returned by an iterator. Each axiom is normalised and
+     * indexed as soon as it is read, so the axioms are not copied and the
+     * memory used while loading depends only on the size of the normalised
+     * ontology. Null axioms are ignored. The axioms are always normalised in
+     * the calling thread.
+     */
     @Override
     public void loadAxioms(Iterator<Axiom> axioms) {
-        Set<Axiom> axiomSet = new HashSet<>();
-        while(axioms.hasNext()) {
-            Axiom axiom = axioms.next();
-            if(axiom == null) continue;
-            axiomSet.add(axiom);
-            if(axiomSet.size() == BUFFER_SIZE) {
-                loadAxioms(axiomSet);
-                axiomSet.clear();
-            }
-        }
-
-        if(!axiomSet.isEmpty()) {
-            loadAxioms(axiomSet);
+        if(!isClassified) {
+            no.loadAxioms(axioms);
+        } else {
+            no.loadIncremental(axioms);
         }
     }
 
+    /**
+     * Loads the stated axioms of an ontology. They are streamed with
+     * {@link #loadAxioms(Iterator)}, unless they are already a {@link Set}.
+     */
     @Override
     public void loadAxioms(Ontology ont) {
-        loadAxioms(new HashSet<>(ont.getStatedAxioms()));
+        final Collection<Axiom> axioms = ont.getStatedAxioms();
+        if(axioms instanceof Set) {
+            loadAxioms((Set<Axiom>) axioms);
+        } else {
+            loadAxioms(axioms.iterator());
+        }
     }
 
     @Override
     public IReasoner classify() {
-        if(!isClassified) {
-            no.classify();
-            isClassified = true;
-        } else {
-            no.classifyIncremental();
+        try {
+            if(!isClassified) {
+                no.classify();
+                isClassified = true;
+            } else {
+                no.classifyIncremental();
+            }
+        } catch(ClassificationCancelledException e) {
+            // The derived subsumptions have been discarded
+            isClassified = false;
+            throw e;
         }
         return this;
     }
 
+    /**
+     * Runs {@link #classify()} in the executor set with
+     * {@link #setExecutor(Executor)} or, if there is none, in the common
+     * {@link ForkJoinPool}. The operations started with the asynchronous
+     * methods run one after the other, in the order they were requested,
+     * so the result of {@link #getClassifiedOntologyAsync()} can be requested
+     * straight away. The reasoner must not be used in other ways until the
+     * returned future has completed.
+     *
+     * @return a future that completes with this reasoner, or exceptionally if
+     *         the classification fails
+     */
+    public CompletableFuture<IReasoner> classifyAsync() {
+        return runAsync(new Supplier<IReasoner>() {
+            public IReasoner get() {
+                return classify();
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #getClassifiedOntology()} asynchronously, in the same way as
+     * {@link #classifyAsync()}.
+     *
+     * @return a future that completes with the classified ontology
+     */
+    public CompletableFuture<Ontology> getClassifiedOntologyAsync() {
+        return runAsync(new Supplier<Ontology>() {
+            public Ontology get() {
+                return getClassifiedOntology();
+            }
+        });
+    }
+
+    private synchronized <T> CompletableFuture<T> runAsync(final Supplier<T> task) {
+        final Executor executor = null != no.getExecutor() ? no.getExecutor() : ForkJoinPool.commonPool();
+        final CompletableFuture<?> previous = null != lastAsync ? lastAsync :
+            CompletableFuture.completedFuture(null);
+        // The operation runs whether the previous one failed or not
+        final CompletableFuture<T> res = previous.handleAsync(new BiFunction<Object, Throwable, T>() {
+            public T apply(Object value, Throwable t) {
+                return task.get();
+            }
+        }, executor);
+        lastAsync = res;
+        return res;
+    }
+
     /**
      * Sets the number of threads to use in the saturation phase.
      *
@@ -771,4 +856,171 @@ final public class SnorocketReasoner implements IReasoner, Serializable {
         no.setNumThreads(numThreads);
     }
 
+    /**
+     * Sets the executor that runs the workers of the classification, so a
+     * long-lived pool can be reused across classifications instead of
+     * creating new threads every time. The executor is not shut down by the
+     * reasoner.
+     *
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        no.setExecutor(executor);
+    }
+
+    /**
+     * Sets the listener that receives the phases of the reasoning, with their
+     * times, and the progress of the saturation.
+     *
+     * @param listener
+     */
+    public void setListener(ReasonerListener listener) {
+        no.setListener(listener);
+    }
+
+    /**
+     * Returns a snapshot of the counters of the rules applied by the
+     * saturation, e.g. to find out which rules dominate the classification
+     * of an ontology. The counters are kept for the life of the reasoner,
+     * including the incremental classifications.
+     *
+     * @return
+     */
+    public SaturationStatistics getSaturationStatistics() {
+        return no.getSaturationStatistics();
+    }
+
+    /**
+     * Returns the metrics of the reasoning done by this reasoner: the time,
+     * memory and thread utilisation of every phase and the counters of the
+     * saturation rules. Reasoners running in the same JVM keep separate
+     * metrics.
+     *
+     * @return
+     */
+    public ReasonerMetrics getMetrics() {
+        return no.getMetrics();
+    }
+
+    /**
+     * Registers a {@link ReasonerMXBean} for this reasoner in the platform
+     * MBean server, so its counters can be watched with tools like JConsole.
+     *
+     * @param name
+     *            the object name, e.g. "au.csiro.snorocket:type=Reasoner"
+     * @return the registered name
+     */
+    public synchronized ObjectName registerMBean(String name) {
+        if (mbeanName != null) {
+            throw new IllegalStateException("The reasoner is already registered as " + mbeanName);
+        }
+        try {
+            final ObjectName on = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new ReasonerMonitor(no), on);
+            mbeanName = on;
+            return on;
+        } catch (JMException e) {
+            log.error("Problem registering the reasoner MBean." + e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Unregisters the MXBean registered with {@link #registerMBean(String)},
+     * if any.
+     */
+    public synchronized void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (JMException e) {
+            log.error("Problem unregistering the reasoner MBean." + e);
+            throw new RuntimeException(e);
+        } finally {
+            mbeanName = null;
+        }
+    }
+
+    /**
+     * Sets the token used to cancel the classification, e.g. one created with
+     * {@link CancellationToken#withTimeout(long, java.util.concurrent.TimeUnit)}
+     * to classify with a deadline. A cancelled classification throws a
+     * {@link ClassificationCancelledException} and leaves the reasoner
+     * unclassified, so the next call to {@link #classify()} runs a full
+     * classification that includes all the axioms loaded so far.
+     *
+     * @param cancellationToken
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        no.setCancellationToken(cancellationToken);
+    }
+
+    /**
+     * Sets the time between the reports of the progress of the saturation,
+     * in milliseconds.
+     *
+     * @param progressInterval
+     */
+    public void setProgressInterval(long progressInterval) {
+        no.setProgressInterval(progressInterval);
+    }
+
+    /**
+     * Sets the factory used to create the sets of subsumers of the concepts
+     * in the saturation phase, e.g. {@link ConceptSetFactory#ROARING}.
+     *
+     * @param conceptSetFactory
+     */
+    public void setConceptSetFactory(ConceptSetFactory conceptSetFactory) {
+        no.setConceptSetFactory(conceptSetFactory);
+    }
+
+    /**
+     * Sets whether the contexts of the virtual concepts introduced by the
+     * normalisation are only created when they are reached from other
+     * contexts. This is enough to compute the taxonomy of the named concepts.
+     *
+     * @param lazyContexts
+     */
+    public void setLazyContexts(boolean lazyContexts) {
+        no.setLazyContexts(lazyContexts);
+    }
+
+    /**
+     * Sets the ordering used to renumber the concepts before the first
+     * classification, e.g. {@link ConceptOrdering#TOLD_DFS}. Related
+     * concepts get close ids, which can make the saturation faster on large
+     * ontologies.
+     *
+     * @param conceptOrdering
+     */
+    public void setConceptOrdering(ConceptOrdering conceptOrdering) {
+        no.setConceptOrdering(conceptOrdering);
+    }
+
+    /**
+     * Sets whether the subsumers of the concepts are initialised with the
+     * transitive closure of the told hierarchy before the saturation. This
+     * saves most of the work on ontologies where the concepts have many told
+     * ancestors, like SNOMED CT.
+     *
+     * @param toldSeeding
+     */
+    public void setToldSeeding(boolean toldSeeding) {
+        no.setToldSeeding(toldSeeding);
+    }
+
+    /**
+     * Sets whether large sets of axioms are normalised in parallel with the
+     * threads set in {@link #setNumThreads(int)}. Must be called before the
+     * axioms are loaded.
+     *
+     * @param parallelNormalisation
+     */
+    public void setParallelNormalisation(boolean parallelNormalisation) {
+        no.setParallelNormalisation(parallelNormalisation);
+    }
+
 }
@@ -21,6 +21,8 @@
 
 package au.csiro.snorocket.core.axioms;
 
+import java.util.Deque;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -93,36 +95,27 @@ public class GCI extends Inclusion {
         return rhs;
     }
 
-    public Inclusion[] normalise1(final IFactory factory) {
-        final Inclusion[] result = { null, null };
-
-        if (rule2(factory, result) || rule3(factory, result) || rule4(result)) {
-            return result;
-        }
-
-        return null;
+    @Override
+    public boolean normalise1(final IFactory factory, final Deque<Inclusion> worklist) {
+        return rule2(factory, worklist) || rule3(factory, worklist) || rule4(worklist);
     }
 
-    public Inclusion[] normalise2(final IFactory factory) {
-        final Inclusion[] result = { null, null, null, null, null, null, null,
-                null };
-
+    @Override
+    public boolean normalise2(final IFactory factory, final Deque<Inclusion> worklist) {
         if (isRule7Applicable()) {
-            return rule7(result);
-        } else if (rule6(factory, result) || rule5(factory, result)) {
-            return result;
+            rule7(worklist);
+            return true;
         }
-
-        return null;
+        return rule6(factory, worklist) || rule5(factory, worklist);
     }
 
     /**
      * C &#8851; D' &#8849; E &rarr; {D' &#8849; A, C &#8851; A &#8849; E}
      * 
-     * @param gcis
+     * @param worklist
      * @return
      */
-    boolean rule2(final IFactory factory, final Inclusion[] gcis) {
+    boolean rule2(final IFactory factory, final Deque<Inclusion> worklist) {
         boolean result = false;
 
         if (lhs instanceof Conjunction) {
@@ -131,24 +124,24 @@ public class GCI extends Inclusion {
 
             if (concepts.length == 1) {
                 // unwrap redundant conjuncts
-                gcis[0] = new GCI(concepts[0], rhs);
+                worklist.push(new GCI(concepts[0], rhs));
                 result = true;
             } else if (concepts.length == 0) {
                 log.warn("Empty conjunct detected in: " + this);
-                gcis[0] = new GCI(IFactory.TOP_CONCEPT, rhs);
+                worklist.push(new GCI(IFactory.TOP_CONCEPT, rhs));
                 result = true;
             } else {
                 // Swap out any non-Concept concepts (ie Existentials)
                 for (int i = 0; !result && i < concepts.length; i++) {
                     if (!(concepts[i] instanceof Concept)) {
                         final Concept a = getA(factory, concepts[i]);
-                        gcis[0] = new GCI(concepts[i], a);
+                        worklist.push(new GCI(concepts[i], a));
 
                         final AbstractConcept[] newConcepts = new AbstractConcept[concepts.length];
                         System.arraycopy(concepts, 0, newConcepts, 0,
                                 concepts.length);
                         newConcepts[i] = a;
-                        gcis[1] = new GCI(new Conjunction(newConcepts), rhs);
+                        worklist.push(new GCI(factory.intern(new Conjunction(newConcepts)), rhs));
                         result = true;
                     }
                 }
@@ -161,13 +154,13 @@ public class GCI extends Inclusion {
                         final AbstractConcept[] newConcepts = new AbstractConcept[concepts.length - 1];
                         System.arraycopy(concepts, 1, newConcepts, 0,
                                 concepts.length - 1);
-                        final AbstractConcept d = new Conjunction(newConcepts);
+                        final AbstractConcept d = factory.intern(new Conjunction(newConcepts));
                         final Concept a = getA(factory, d);
-                        final AbstractConcept cAndA = new Conjunction(
-                                new AbstractConcept[] { concepts[0], a });
+                        final AbstractConcept cAndA = factory.intern(new Conjunction(
+                                new AbstractConcept[] { concepts[0], a }));
 
-                        gcis[0] = new GCI(cAndA, rhs);
-                        gcis[1] = new GCI(d, a);
+                        worklist.push(new GCI(cAndA, rhs));
+                        worklist.push(new GCI(d, a));
                     } else if (concepts.length < 2) {
                         throw new AssertionError(
                                 "Conjunctions of fewer than "
@@ -184,10 +177,10 @@ public class GCI extends Inclusion {
     /**
      * &#8707;r.C' &#8849; D &rarr; {C' &#8849; A, &#8707;r.A &#8849; D}
      * 
-     * @param gcis
+     * @param worklist
      * @return
      */
-    boolean rule3(final IFactory factory, final Inclusion[] gcis) {
+    boolean rule3(final IFactory factory, final Deque<Inclusion> worklist) {
         boolean result = false;
 
         if (lhs instanceof Existential) {
@@ -196,9 +189,9 @@ public class GCI extends Inclusion {
             if (!(cHat instanceof Concept)) {
                 result = true;
                 Concept a = getA(factory, cHat);
-                gcis[0] = new GCI(cHat, a);
-                gcis[1] = new GCI(new Existential(existential.getRole(), a),
-                        rhs);
+                worklist.push(new GCI(cHat, a));
+                worklist.push(new GCI(factory.intern(new Existential(existential.getRole(), a)),
+                        rhs));
             }
         }
 
@@ -211,10 +204,10 @@ public class GCI extends Inclusion {
      * This rule matches &#8869; (bottom), but there is no &#x22A5; in our
      * Ontologies (AFAIK) so it's redundant.
      * 
-     * @param gcis
+     * @param worklist
      * @return
      */
-    boolean rule4(Inclusion[] gcis) {
+    boolean rule4(Deque<Inclusion> worklist) {
         boolean result = false;
         return result;
     }
@@ -222,17 +215,17 @@ public class GCI extends Inclusion {
     /**
      * C' &#8849; D' &rarr; {C' &#8849; A, A &#8849; D'}
      * 
-     * @param gcis
+     * @param worklist
      * @return
      */
-    boolean rule5(final IFactory factory, final Inclusion[] gcis) {
+    boolean rule5(final IFactory factory, final Deque<Inclusion> worklist) {
         boolean result = false;
 
         if (!(lhs instanceof Concept) && !(rhs instanceof Concept)) {
             result = true;
             Concept a = getA(factory, lhs);
-            gcis[0] = new GCI(lhs, a);
-            gcis[1] = new GCI(a, rhs);
+            worklist.push(new GCI(lhs, a));
+            worklist.push(new GCI(a, rhs));
         }
 
         return result;
@@ -241,10 +234,10 @@ public class GCI extends Inclusion {
     /**
      * B &#8849; &#8707;r.C' &rarr; {B &#8849; &#8707;r.A, A &#8849; C'}
      * 
-     * @param gcis
+     * @param worklist
      * @return
      */
-    boolean rule6(final IFactory factory, final Inclusion[] gcis) {
+    boolean rule6(final IFactory factory, final Deque<Inclusion> worklist) {
         boolean result = false;
 
         if (rhs instanceof Existential) {
@@ -253,9 +246,9 @@ public class GCI extends Inclusion {
             if (!(cHat instanceof Concept)) {
                 result = true;
                 Concept a = getA(factory, cHat);
-                gcis[0] = new GCI(lhs,
-                        new Existential(existential.getRole(), a));
-                gcis[1] = new GCI(a, cHat);
+                worklist.push(new GCI(lhs,
+                        factory.intern(new Existential(existential.getRole(), a))));
+                worklist.push(new GCI(a, cHat));
             }
         }
 
@@ -278,24 +271,17 @@ public class GCI extends Inclusion {
     /**
      * B &#8849; C &#8851; D &rarr; {B &#8849; C, B &#8849; D}
      * 
-     * @param gcis
-     * @return
+     * @param worklist
      */
-    Inclusion[] rule7(Inclusion[] gcis) {
+    void rule7(final Deque<Inclusion> worklist) {
         assert isRule7Applicable();
 
         final Conjunction conjunction = (Conjunction) rhs;
         final AbstractConcept[] concepts = conjunction.getConcepts();
 
-        if (concepts.length > gcis.length) {
-            gcis = new Inclusion[concepts.length];
-        }
-
         for (int i = 0; i < concepts.length; i++) {
-            gcis[i] = new GCI(lhs, concepts[i]);
+            worklist.push(new GCI(lhs, concepts[i]));
         }
-
-        return gcis;
     }
 
     @Override
@@ -22,6 +22,8 @@
 package au.csiro.snorocket.core.axioms;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 import au.csiro.snorocket.core.IFactory;
 
@@ -42,18 +44,46 @@ abstract public class Inclusion implements Serializable {
      * Envelope).
      * 
      * @param factory
-     * @return
+     * @return the new inclusions, or null if no rule applies
      */
-    abstract public Inclusion[] normalise1(IFactory factory);
+    public Inclusion[] normalise1(IFactory factory) {
+        final Deque<Inclusion> res = new ArrayDeque<Inclusion>();
+        return normalise1(factory, res) ? res.toArray(new Inclusion[res.size()]) : null;
+    }
 
     /**
      * Runs the second phase in the normalisation process (see Pushing the EL
      * Envelope).
      * 
      * @param factory
-     * @return
+     * @return the new inclusions, or null if no rule applies
      */
-    abstract public Inclusion[] normalise2(IFactory factory);
+    public Inclusion[] normalise2(IFactory factory) {
+        final Deque<Inclusion> res = new ArrayDeque<Inclusion>();
+        return normalise2(factory, res) ? res.toArray(new Inclusion[res.size()]) : null;
+    }
+
+    /**
+     * Runs the first phase in the normalisation process and pushes the
+     * resulting inclusions onto a worklist.
+     * 
+     * @param factory
+     * @param worklist
+     * @return true if a rule was applied, false if the inclusion is in normal
+     *         form for this phase
+     */
+    abstract public boolean normalise1(IFactory factory, Deque<Inclusion> worklist);
+
+    /**
+     * Runs the second phase in the normalisation process and pushes the
+     * resulting inclusions onto a worklist.
+     * 
+     * @param factory
+     * @param worklist
+     * @return true if a rule was applied, false if the inclusion is in normal
+     *         form
+     */
+    abstract public boolean normalise2(IFactory factory, Deque<Inclusion> worklist);
 
     @Override
     abstract public int hashCode();
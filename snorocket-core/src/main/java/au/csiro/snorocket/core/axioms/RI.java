@@ -22,6 +22,7 @@
 package au.csiro.snorocket.core.axioms;
 
 import java.util.Arrays;
+import java.util.Deque;
 
 import au.csiro.snorocket.core.IFactory;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -70,21 +71,13 @@ public class RI extends Inclusion {
     }
 
     @Override
-    public Inclusion[] normalise1(final IFactory factory) {
-        Inclusion[] result = { null, null };
-
-        if (rule1(factory, result)) {
-
-        } else {
-            result = null;
-        }
-
-        return result;
+    public boolean normalise1(final IFactory factory, final Deque<Inclusion> worklist) {
+        return rule1(factory, worklist);
     }
 
     @Override
-    public Inclusion[] normalise2(final IFactory factory) {
-        return null;
+    public boolean normalise2(final IFactory factory, final Deque<Inclusion> worklist) {
+        return false;
     }
 
     /**
@@ -92,10 +85,10 @@ public class RI extends Inclusion {
      * {r<sub>1</sub> &#8728; &#133; &#8728; r<sub>k-1</sub> &#8849; u, u
      * &#8728; r<sub>k</sub> &#8849; s}
      * 
-     * @param gcis
+     * @param worklist
      * @return
      */
-    boolean rule1(final IFactory factory, final Inclusion[] gcis) {
+    boolean rule1(final IFactory factory, final Deque<Inclusion> worklist) {
         boolean result = false;
 
         // TODO: make this "binarisation" more efficient by doing it for all
@@ -111,8 +104,8 @@ public class RI extends Inclusion {
 
             int[] newLhs2 = { u, lhs[k] };
 
-            gcis[0] = new RI(newLhs1, u);
-            gcis[1] = new RI(newLhs2, rhs);
+            worklist.push(new RI(newLhs1, u));
+            worklist.push(new RI(newLhs2, rhs));
         }
 
         return result;
@@ -23,15 +23,17 @@ package au.csiro.snorocket.core.concurrent;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import au.csiro.snorocket.core.util.AppendOnlyConceptSet;
 import au.csiro.snorocket.core.util.IConceptSet;
-import au.csiro.snorocket.core.util.ReadonlyConceptSet;
-import au.csiro.snorocket.core.util.SparseConceptSet;
 
 /**
- * Concurrent version of R.
+ * Concurrent version of R. The concepts associated by each role are kept in
+ * an {@link AppendOnlyConceptSet}, so they can be read without locking while
+ * other threads store new links. A lock is only taken the first time a role is
+ * used.
  * 
  * @author Alejandro Metke
  * 
@@ -42,14 +44,15 @@ public final class CR implements Serializable {
      */
     private static final long serialVersionUID = 1L;
     
-    private IConceptSet[] data;
+    private volatile AtomicReferenceArray<AppendOnlyConceptSet> data;
 
     public CR(final int roles) {
-        this.data = new IConceptSet[roles];
+        this.data = new AtomicReferenceArray<AppendOnlyConceptSet>(roles);
     }
 
     public boolean containsRole(int role) {
-        return data[role] != null;
+        final AtomicReferenceArray<AppendOnlyConceptSet> d = data;
+        return role < d.length() && d.get(role) != null;
     }
 
     /**
@@ -58,51 +61,79 @@ public final class CR implements Serializable {
      * @return
      */
     protected IConceptSet getConcept(int r) {
-        if (r >= data.length) {
+        final AtomicReferenceArray<AppendOnlyConceptSet> d = data;
+        if (r < d.length()) {
+            final AppendOnlyConceptSet set = d.get(r);
+            if (null != set) {
+                return set;
+            }
+        }
+        return createConcept(r);
+    }
+
+    /**
+     * Creates the set for role r if it does not exist yet. The sets are only
+     * created (and the array resized) while holding the lock, so a set can
+     * never be lost when two threads use a new role at the same time.
+     * 
+     * @param r
+     * @return
+     */
+    private synchronized IConceptSet createConcept(int r) {
+        if (r >= data.length()) {
             resizeRoles(r + 1);
         }
-        if (null == data[r]) {
-            data[r] = new SparseConceptSet();
+        AppendOnlyConceptSet set = data.get(r);
+        if (null == set) {
+            set = new AppendOnlyConceptSet();
+            data.set(r, set);
         }
-        return data[r];
+        return set;
     }
 
     /**
      * Returns the set of concepts associated to the concept in a
-     * {@link Context} by role r.
+     * {@link Context} by role r. The set is backed by this object, so it
+     * reflects links stored after this call, and must not be modified.
      * 
      * @param r
      *            The role
      * @return The set of concepts associated to the concept in the context.
      */
     public IConceptSet lookupConcept(int r) {
-        if (r >= data.length) {
+        final AtomicReferenceArray<AppendOnlyConceptSet> d = data;
+        if (r >= d.length()) {
             return IConceptSet.EMPTY_SET;
         }
 
-        if (null == data[r]) {
+        final AppendOnlyConceptSet set = d.get(r);
+        if (null == set) {
             return IConceptSet.EMPTY_SET;
         } else {
-            return new ReadonlyConceptSet(data[r]);
+            return set;
         }
     }
 
-    public void clear() {
-        Arrays.fill(data, null);
+    public synchronized void clear() {
+        data = new AtomicReferenceArray<AppendOnlyConceptSet>(data.length());
     }
 
     private void resizeRoles(int maxRole) {
-        final IConceptSet[] oldData = data;
-
-        data = new IConceptSet[maxRole];
-        System.arraycopy(oldData, 0, data, 0, oldData.length);
+        final AtomicReferenceArray<AppendOnlyConceptSet> oldData = data;
+        final AtomicReferenceArray<AppendOnlyConceptSet> newData = 
+                new AtomicReferenceArray<AppendOnlyConceptSet>(maxRole);
+        for (int i = 0; i < oldData.length(); i++) {
+            newData.set(i, oldData.get(i));
+        }
+        data = newData;
     }
 
     public String toString() {
         final StringBuilder sb = new StringBuilder();
 
-        for (int index = 0; index < data.length; index++) {
-            IConceptSet cs = data[index];
+        final AtomicReferenceArray<AppendOnlyConceptSet> d = data;
+        for (int index = 0; index < d.length(); index++) {
+            IConceptSet cs = d.get(index);
             if (null != cs) {
                 sb.append(index + "." + cs.toString());
             }
@@ -117,7 +148,7 @@ public final class CR implements Serializable {
      * @param r
      * @param B
      */
-    synchronized void store(int r, int B) {
+    void store(int r, int B) {
         getConcept(r).add(B);
     }
     
@@ -126,9 +157,10 @@ public final class CR implements Serializable {
      * @return
      */
     public int[] getRoles() {
+        final AtomicReferenceArray<AppendOnlyConceptSet> d = data;
         List<Integer> roles = new ArrayList<Integer>();
-        for(int i = 0; i < data.length; i++) {
-            if(data[i] != null) {
+        for(int i = 0; i < d.length(); i++) {
+            if(d.get(i) != null) {
                 roles.add(i);
             }
         }
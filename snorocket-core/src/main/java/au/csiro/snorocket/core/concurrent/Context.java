@@ -2,38 +2,34 @@ package au.csiro.snorocket.core.concurrent;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import au.csiro.ontology.model.Operator;
 import au.csiro.snorocket.core.CoreFactory;
 import au.csiro.snorocket.core.IFactory;
 import au.csiro.snorocket.core.IQueue;
+import au.csiro.snorocket.core.LongQueue;
+import au.csiro.snorocket.core.NF3Index;
+import au.csiro.snorocket.core.NF8Index;
 import au.csiro.snorocket.core.NormalisedOntology;
 import au.csiro.snorocket.core.QueueImpl;
 import au.csiro.snorocket.core.axioms.IConjunctionQueueEntry;
 import au.csiro.snorocket.core.axioms.IFeatureQueueEntry;
 import au.csiro.snorocket.core.axioms.IRoleQueueEntry;
 import au.csiro.snorocket.core.axioms.NF2;
-import au.csiro.snorocket.core.axioms.NF4;
 import au.csiro.snorocket.core.axioms.NF5;
 import au.csiro.snorocket.core.axioms.NF7;
-import au.csiro.snorocket.core.axioms.NF8;
-import au.csiro.snorocket.core.model.AbstractLiteral;
+import au.csiro.snorocket.core.jfr.ReasonerEvents;
 import au.csiro.snorocket.core.model.Datatype;
 import au.csiro.snorocket.core.util.FeatureMap;
 import au.csiro.snorocket.core.util.IConceptMap;
 import au.csiro.snorocket.core.util.IConceptSet;
-import au.csiro.snorocket.core.util.IMonotonicCollection;
 import au.csiro.snorocket.core.util.IntIterator;
 import au.csiro.snorocket.core.util.MonotonicCollection;
 import au.csiro.snorocket.core.util.RoleSet;
@@ -52,6 +48,22 @@ public class Context implements Serializable {
      */
     private static final long serialVersionUID = 1L;
 
+    // Positions of the SaturationCounters in the counters array
+    private static final int ACTIVATIONS = SaturationCounter.ACTIVATIONS.ordinal();
+    private static final int REACTIVATIONS = SaturationCounter.REACTIVATIONS.ordinal();
+    private static final int CONCEPT_ENTRIES = SaturationCounter.CONCEPT_ENTRIES.ordinal();
+    private static final int SUBSUMPTIONS = SaturationCounter.SUBSUMPTIONS.ordinal();
+    private static final int NF1_CONJUNCTIONS = SaturationCounter.NF1_CONJUNCTIONS.ordinal();
+    private static final int NF2_EDGES = SaturationCounter.NF2_EDGES.ordinal();
+    private static final int NF3_PROPAGATIONS = SaturationCounter.NF3_PROPAGATIONS.ordinal();
+    private static final int NF4_ROLE_CLOSURE = SaturationCounter.NF4_ROLE_CLOSURE.ordinal();
+    private static final int NF5_CHAIN_EDGES = SaturationCounter.NF5_CHAIN_EDGES.ordinal();
+    private static final int NF6_REFLEXIVE_EDGES = SaturationCounter.NF6_REFLEXIVE_EDGES.ordinal();
+    private static final int NF7_FEATURES = SaturationCounter.NF7_FEATURES.ordinal();
+    private static final int NF8_MATCHES = SaturationCounter.NF8_MATCHES.ordinal();
+    private static final int EXTERNAL_EDGES = SaturationCounter.EXTERNAL_EDGES.ordinal();
+    private static final int CONCEPT_QUEUE_HIGH_WATER = SaturationCounter.CONCEPT_QUEUE_HIGH_WATER.ordinal();
+
     /**
      * The internal concept id.
      */
@@ -63,14 +75,27 @@ public class Context implements Serializable {
     private final AtomicBoolean active = new AtomicBoolean(false);
 
     /**
-     * Queue (List) of ConjunctionQueueEntries indicating work to be done for this concept.
+     * Value returned when polling an empty external queue. Packed entries are made of non-negative ids so they can
+     * never take this value.
      */
-    private final Queue<IConjunctionQueueEntry> conceptQueue = new ConcurrentLinkedQueue<IConjunctionQueueEntry>();
+    private static final long NO_ENTRY = -1L;
 
     /**
-     * Queue (List) of RoleQueueEntries indicating work to be done for this concept.
+     * Queue of conjunction queue entries (Bi, B), packed into longs, indicating work to be done for this concept.
+     * Only used by the thread processing this context.
      */
-    private final IQueue<IRoleQueueEntry> roleQueue = new QueueImpl<IRoleQueueEntry>(IRoleQueueEntry.class);
+    private final LongQueue conceptQueue = new LongQueue();
+
+    /**
+     * Queue of conjunction queue entries (Bi, B) added by other contexts. Access is guarded by the queue's lock. The
+     * entries are moved to the concept queue when this context is processed.
+     */
+    private final LongQueue externalConceptQueue = new LongQueue();
+
+    /**
+     * Queue of role queue entries (r, B), packed into longs, indicating work to be done for this concept.
+     */
+    private final LongQueue roleQueue = new LongQueue();
 
     /**
      * Queue (List) of FeatureQueueEntries indicating work to be done for this concept. Queue entries of the form
@@ -79,20 +104,70 @@ public class Context implements Serializable {
     private final IQueue<IFeatureQueueEntry> featureQueue = new QueueImpl<IFeatureQueueEntry>(IFeatureQueueEntry.class);
 
     /**
-     * Queue used to process entries from other contexts that trigger calls to processNewEdge.
+     * Queue used to process entries (r, B) from other contexts that trigger calls to processNewEdge. Access is guarded
+     * by the queue's lock.
+     */
+    private final LongQueue externalQueue = new LongQueue();
+
+    /**
+     * Pairs of ints, packed into longs, collected while applying the NF5 rules in processRole. Used as a stack: each
+     * call only looks at the pairs it added and removes them before returning.
      */
-    private final Queue<IRoleQueueEntry> externalQueue = new ConcurrentLinkedQueue<IRoleQueueEntry>();
+    private long[] work = new long[16];
+
+    /**
+     * Number of pairs in the work stack.
+     */
+    private int workSize = 0;
 
     /**
      * Keeps track of the parents of this concept.
      */
     private final IConceptSet s;
 
+    /**
+     * Set once bottom is in s. The subsumptions of an unsatisfiable concept
+     * do not matter, so from then on the queues of this context are discarded
+     * and no more edges are generated. Read by the contexts that add edges to
+     * this one.
+     */
+    private volatile boolean bottom = false;
+
     /**
      * Keeps track of the concepts that are linked this concept through some role.
      */
     private final CR pred;
 
+    /**
+     * The subsumers A of this concept that appear in NF3 terms r.A [ B,
+     * indexed by r. When an edge to this concept with role r is added only
+     * these subsumers can match an NF3 term, so the rest of s is not looked
+     * up in the NF3 index.
+     */
+    private final RoleConceptList nf3Subsumers;
+
+    /**
+     * The number of NF3 index lookups saved by looking at nf3Subsumers
+     * instead of s when processing edges from this context.
+     */
+    private long skippedNF3Lookups = 0;
+
+    /**
+     * The number of entries taken from the concept queue.
+     */
+    private long processedConceptEntries = 0;
+
+    /**
+     * The counters of the worker processing this context. Only set while the
+     * context is being processed.
+     */
+    private transient long[] counters;
+
+    /**
+     * Set once the context has been processed, to count the reactivations.
+     */
+    private boolean processed = false;
+
     /**
      * Keeps track of the concepts that this concept is liked to through some role.
      */
@@ -111,7 +186,7 @@ public class Context implements Serializable {
     /**
      * Reference to the parent context queue. Used to add this context back to the queue when reactivated.
      */
-    private Queue<Context> parentTodo;
+    private SaturationScheduler parentTodo;
 
     /**
      * Reference to the parent context index. Used to add queue entries to other contexts.
@@ -119,9 +194,9 @@ public class Context implements Serializable {
     private IConceptMap<Context> contextIndex;
 
     /**
-     * Reference to the global role closure cache.
+     * Reference to the ontology. Used to look up the precomputed role closures.
      */
-    private Map<Integer, RoleSet> roleClosureCache;
+    private NormalisedOntology ontology;
 
     /**
      * Reference to the global factory.
@@ -145,19 +220,19 @@ public class Context implements Serializable {
     /**
      * The set of NF3 terms in the ontology.
      *
-     * These terms are of the form r.A [ b and indexed by A.
+     * These terms are of the form r.A [ b and indexed by A (and then by r).
      */
-    private IConceptMap<ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>>> ontologyNF3;
+    private NF3Index ontologyNF3;
 
     /**
-     * The set of NF4 terms in the ontology
+     * The NF5 terms in the ontology of the form r o s [ t indexed by r.
      */
-    private IMonotonicCollection<NF4> ontologyNF4;
+    private IConceptMap<MonotonicCollection<NF5>> ontologyNF5ByR;
 
     /**
-     * The set of NF5 terms in the ontology
+     * The NF5 terms in the ontology of the form r o s [ t indexed by s.
      */
-    private IMonotonicCollection<NF5> ontologyNF5;
+    private IConceptMap<MonotonicCollection<NF5>> ontologyNF5ByS;
 
     /**
      * The set of reflexive roles in the ontology
@@ -174,9 +249,10 @@ public class Context implements Serializable {
     /**
      * The set of NF8 terms in the ontology.
      *
-     * These terms are of the form f.(o, v) [ A. These are indexed by f.
+     * These terms are of the form f.(o, v) [ A. These are indexed by f, the
+     * type of the literal and o.
      */
-    private FeatureMap<MonotonicCollection<NF8>> ontologyNF8;
+    private NF8Index ontologyNF8;
 
     /**
      * The set of functional data properties
@@ -184,9 +260,9 @@ public class Context implements Serializable {
     private IConceptSet functionalFeatures;
 
     /**
-     * The set of datatypes asserted for a given (functional) feature
+     * The datatypes asserted for a given (functional) feature
      */
-    private FeatureMap<Set<Datatype>> functionalFeatureValues = new FeatureMap<>(2);
+    private FeatureMap<FeatureValues> functionalFeatureValues = new FeatureMap<>(2);
 
     /**
      * The map of global affected contexts used in incremental classification.
@@ -204,13 +280,13 @@ public class Context implements Serializable {
         ontologyNF1 = ont.getOntologyNF1();
         ontologyNF2 = ont.getOntologyNF2();
         ontologyNF3 = ont.getOntologyNF3();
-        ontologyNF4 = ont.getOntologyNF4();
-        ontologyNF5 = ont.getOntologyNF5();
+        ontologyNF5ByR = ont.getOntologyNF5ByR();
+        ontologyNF5ByS = ont.getOntologyNF5ByS();
         reflexiveRoles = ont.getReflexiveRoles();
         ontologyNF7 = ont.getOntologyNF7();
-        ontologyNF8 = ont.getOntologyNF8();
+        ontologyNF8 = ont.getOntologyNF8Index();
         functionalFeatures = ont.getFunctionalFeatures();
-        roleClosureCache = ont.getRoleClosureCache();
+        ontology = ont;
         factory = ont.getFactory();
         affectedContexts = ont.getAffectedContexts();
     }
@@ -221,45 +297,242 @@ public class Context implements Serializable {
      * @param concept
      */
     public Context(int concept, NormalisedOntology ont) {
+        this(concept, ont, null);
+    }
+
+    /**
+     * Creates a context that starts with the told subsumers of the concept,
+     * i.e. the concepts reachable through NF1 terms of the form A [ B. These
+     * are computed in bulk before the saturation, so the context does not
+     * have to derive them one queue entry at a time. The rest of the rules
+     * are applied to the told subsumers as if they had been derived.
+     *
+     * @param concept
+     * @param ont
+     * @param toldSubsumers
+     *            the told subsumers, not including the concept itself, or
+     *            null
+     */
+    public Context(int concept, NormalisedOntology ont, IConceptSet toldSubsumers) {
         init(ont);
         this.concept = concept;
-        s = new SparseConceptSet();
+        s = ont.getConceptSetFactory().createConceptSet();
         s.add(concept);
         s.add(IFactory.TOP_CONCEPT);
+        bottom = concept == IFactory.BOTTOM_CONCEPT;
 
         pred = new CR(factory.getTotalRoles());
         succ = new CR(factory.getTotalRoles());
+        nf3Subsumers = new RoleConceptList(factory.getTotalRoles());
+        addNF3Subsumer(concept);
+        addNF3Subsumer(IFactory.TOP_CONCEPT);
+
+        if (null != toldSubsumers) {
+            s.addAll(toldSubsumers);
+        }
 
         // Prime queues for this context
         primeQueue();
+        if (null != toldSubsumers) {
+            for (final IntIterator itr = toldSubsumers.iterator(); itr.hasNext();) {
+                primeQueue(itr.next());
+            }
+        }
     }
 
     public int getConcept() {
         return concept;
     }
 
+    /**
+     * Adds a subsumer to nf3Subsumers for every role r in the NF3 terms
+     * r.b [ B.
+     *
+     * @param b
+     */
+    private void addNF3Subsumer(int b) {
+        for (final NF3Index.Block block : ontologyNF3.getBlocks()) {
+            for (int i = block.start(b), end = block.end(b); i < end; i++) {
+                nf3Subsumers.add(block.role(i), b);
+            }
+        }
+    }
+
+    /**
+     * Records that a subsumer of this concept appears in an NF3 term r.a [ B
+     * added in an incremental classification. Should only be called while
+     * the context is not being processed.
+     *
+     * @param r
+     * @param a
+     */
+    public void addNF3Subsumer(int r, int a) {
+        nf3Subsumers.add(r, a);
+    }
+
+    /**
+     * Returns the subsumers A of this concept that appear in NF3 terms
+     * r.A [ B. The same subsumer might be returned more than once.
+     *
+     * @param r
+     * @return
+     */
+    public IntIterator getNF3Subsumers(int r) {
+        return nf3Subsumers.iterator(r);
+    }
+
+    /**
+     * Returns the number of NF3 index lookups that were not done because the
+     * subsumers of the successors of this context did not appear in NF3
+     * terms with the role of the edge.
+     *
+     * @return
+     */
+    public long getSkippedNF3Lookups() {
+        return skippedNF3Lookups;
+    }
+
+    /**
+     * Returns the number of entries taken from the concept queue of this
+     * context.
+     *
+     * @return
+     */
+    public long getProcessedConceptEntries() {
+        return processedConceptEntries;
+    }
+
     private void addToConceptQueue(
             MonotonicCollection<IConjunctionQueueEntry> entries) {
-        Iterator<IConjunctionQueueEntry> it = entries.iterator();
-        while (it.hasNext()) {
-            conceptQueue.add(it.next());
+        // The backing array is an Object[] at runtime
+        final Object[] data = entries.data;
+        for (int i = 0, n = entries.size(); i < n; i++) {
+            final IConjunctionQueueEntry entry = (IConjunctionQueueEntry) data[i];
+            conceptQueue.add(entry.getBi(), entry.getB());
+        }
+    }
+
+    /**
+     * Adds the entries (TOP, B) for the right hand sides B of the NF3 terms at position i of a block.
+     *
+     * @param block
+     * @param i
+     */
+    private void addToConceptQueue(NF3Index.Block block, int i) {
+        for (int j = block.fillerStart(i), end = block.fillerEnd(i); j < end; j++) {
+            conceptQueue.add(IFactory.TOP_CONCEPT, block.filler(j));
+        }
+    }
+
+    /**
+     * Adds the entries whose right hand side is not in s yet. Most of the
+     * entries of the told subsumers point to other told subsumers.
+     *
+     * @param entries
+     */
+    private void addNewToConceptQueue(MonotonicCollection<IConjunctionQueueEntry> entries) {
+        final Object[] data = entries.data;
+        for (int i = 0, n = entries.size(); i < n; i++) {
+            final IConjunctionQueueEntry entry = (IConjunctionQueueEntry) data[i];
+            if (!s.contains(entry.getB())) {
+                conceptQueue.add(entry.getBi(), entry.getB());
+            }
+        }
+    }
+
+    private void addToConceptQueue(Collection<IConjunctionQueueEntry> entries) {
+        for (final IConjunctionQueueEntry entry : entries) {
+            conceptQueue.add(entry.getBi(), entry.getB());
+        }
+    }
+
+    private void addToRoleQueue(MonotonicCollection<? extends IRoleQueueEntry> entries) {
+        final Object[] data = entries.data;
+        for (int i = 0, n = entries.size(); i < n; i++) {
+            final IRoleQueueEntry entry = (IRoleQueueEntry) data[i];
+            roleQueue.add(entry.getR(), entry.getB());
+        }
+    }
+
+    private void pushWork(int first, int second) {
+        counters[NF5_CHAIN_EDGES]++;
+        if (workSize == work.length) {
+            work = Arrays.copyOf(work, workSize << 1);
+        }
+        work[workSize++] = LongQueue.pack(first, second);
+    }
+
+    /**
+     * Moves the entries added by other contexts to the concept queue.
+     */
+    private void pollExternalConceptQueue() {
+        synchronized (externalConceptQueue) {
+            conceptQueue.drainFrom(externalConceptQueue);
+        }
+    }
+
+    /**
+     * Removes the next entry from the external queue or returns {@link #NO_ENTRY} if the queue is empty.
+     *
+     * @return
+     */
+    private long pollExternalQueue() {
+        synchronized (externalQueue) {
+            return externalQueue.isEmpty() ? NO_ENTRY : externalQueue.remove();
         }
     }
 
+    private boolean externalQueuesEmpty() {
+        synchronized (externalConceptQueue) {
+            if (!externalConceptQueue.isEmpty())
+                return false;
+            externalConceptQueue.release();
+        }
+        synchronized (externalQueue) {
+            if (!externalQueue.isEmpty())
+                return false;
+            externalQueue.release();
+        }
+        return true;
+    }
+
     private void primeQueue() {
         final MonotonicCollection<IConjunctionQueueEntry> nf1e = ontologyNF1.get(concept);
         if (nf1e != null)
-            addToConceptQueue(nf1e);
+            addNewToConceptQueue(nf1e);
 
         final MonotonicCollection<NF2> nf2e = ontologyNF2.get(concept);
         if (nf2e != null)
-            roleQueue.addAll(nf2e);
+            addToRoleQueue(nf2e);
 
         final MonotonicCollection<NF7> nf7e = ontologyNF7.get(concept);
         if (nf7e != null)
             featureQueue.addAll(nf7e);
     }
 
+    /**
+     * Applies the rules for a told subsumer b that was added to s before the
+     * saturation, like {@link #processNewSubsumption(int)}. There are no
+     * predecessors yet, so the NF3 terms only need to be recorded.
+     *
+     * @param b
+     */
+    private void primeQueue(int b) {
+        final MonotonicCollection<IConjunctionQueueEntry> nf1e = ontologyNF1.get(b);
+        if (nf1e != null)
+            addNewToConceptQueue(nf1e);
+
+        final MonotonicCollection<NF2> nf2e = ontologyNF2.get(b);
+        if (nf2e != null)
+            addToRoleQueue(nf2e);
+
+        addNF3Subsumer(b);
+
+        final MonotonicCollection<NF7> nf7e = ontologyNF7.get(b);
+        if (nf7e != null)
+            featureQueue.addAll(nf7e);
+    }
+
     /**
      * Adds queue entries for this concept based on the new axioms added in an incremental classification.
      *
@@ -274,7 +547,7 @@ public class Context implements Serializable {
         if (conceptEntries != null)
             addToConceptQueue(conceptEntries);
         if (roleEntries != null)
-            roleQueue.addAll(roleEntries);
+            addToRoleQueue(roleEntries);
         if (featureEntries != null)
             featureQueue.addAll(featureEntries);
     }
@@ -288,6 +561,15 @@ public class Context implements Serializable {
         return s;
     }
 
+    /**
+     * Returns true if bottom has been derived for this concept.
+     *
+     * @return
+     */
+    public boolean isBottom() {
+        return bottom;
+    }
+
     /**
      * Returns the data structure used to hold the concepts and roles that point to this concept.
      *
@@ -321,8 +603,13 @@ public class Context implements Serializable {
      * otherwise.
      */
     public void deactivate() {
+        // The local queues are released while this thread still owns the context
+        conceptQueue.release();
+        roleQueue.release();
         active.set(false);
-        if (!(conceptQueue.isEmpty() && roleQueue.isEmpty() && featureQueue.isEmpty())) {
+        // Entries added by other contexts before they failed to activate this
+        // context must not be lost
+        if (!(conceptQueue.isEmpty() && roleQueue.isEmpty() && featureQueue.isEmpty() && externalQueuesEmpty())) {
             if (activate()) {
                 parentTodo.add(this);
             }
@@ -335,21 +622,51 @@ public class Context implements Serializable {
      * @param entry
      */
     public void addConceptQueueEntry(IConjunctionQueueEntry entry) {
-        conceptQueue.add(entry);
+        addConceptQueueEntry(entry.getBi(), entry.getB());
+    }
+
+    /**
+     * Adds the entry (Bi, B) to this context's concept queue.
+     *
+     * @param bi
+     * @param b
+     */
+    public void addConceptQueueEntry(int bi, int b) {
+        synchronized (externalConceptQueue) {
+            externalConceptQueue.add(bi, b);
+        }
     }
 
     public void addConceptQueueEntries(
             Collection<IConjunctionQueueEntry> entries) {
-        conceptQueue.addAll(entries);
+        synchronized (externalConceptQueue) {
+            for (final IConjunctionQueueEntry entry : entries) {
+                externalConceptQueue.add(entry.getBi(), entry.getB());
+            }
+        }
     }
 
     /**
-     * Adds an entry to this context's role queue.
+     * Adds the entries (TOP, B) for the right hand sides B of the NF3 terms at position i of a block.
+     *
+     * @param block
+     * @param i
+     */
+    public void addConceptQueueEntries(NF3Index.Block block, int i) {
+        synchronized (externalConceptQueue) {
+            for (int j = block.fillerStart(i), end = block.fillerEnd(i); j < end; j++) {
+                externalConceptQueue.add(IFactory.TOP_CONCEPT, block.filler(j));
+            }
+        }
+    }
+
+    /**
+     * Adds an entry to this context's role queue. Should only be called while the context is not being processed.
      *
      * @param entry
      */
     public void addRoleQueueEntry(IRoleQueueEntry entry) {
-        roleQueue.add(entry);
+        roleQueue.add(entry.getR(), entry.getB());
     }
 
     /**
@@ -368,57 +685,144 @@ public class Context implements Serializable {
      * @param src
      */
     public void processExternalEdge(final int role, final int src) {
-        externalQueue.add(new IRoleQueueEntry() {
-            /**
-             * Serialisation version.
-             */
-            private static final long serialVersionUID = 1L;
-
-            @Override
-            public int getR() {
-                return role;
-            }
-
-            @Override
-            public int getB() {
-                return src;
-            }
-        });
+        synchronized (externalQueue) {
+            externalQueue.add(role, src);
+        }
     }
 
     /**
      * Starts the classification process.
      */
     public void processOntology() {
+        processOntology(new long[SaturationCounter.SIZE]);
+    }
+
+    /**
+     * Starts the classification process, counting the rules that are applied
+     * in the {@link SaturationCounter}s of the calling worker.
+     *
+     * @param counters
+     */
+    public void processOntology(long[] counters) {
+        this.counters = counters;
+        counters[ACTIVATIONS]++;
+        if (processed) {
+            counters[REACTIVATIONS]++;
+        }
+        processed = true;
+        final Object event = ReasonerEvents.beginContext();
+        final long entries = processedConceptEntries;
+
         // This code is duplicated for performance reasons. When not running in
         // incremental mode the evaluation of the track flag is only done once
         // for each time the context is activated.
-        if (track.get()) {
-            processOntologyTracking();
-        } else {
-            processOntologyInternal();
+        try {
+            if (bottom) {
+                clearQueues();
+            } else if (track.get()) {
+                processOntologyTracking();
+            } else {
+                processOntologyInternal();
+            }
+        } finally {
+            // Another worker can process the context once it is deactivated
+            this.counters = null;
+            ReasonerEvents.endContext(event, concept, processedConceptEntries - entries);
         }
 
         deactivate();
     }
 
+    /**
+     * Discards the work left for this context, including the entries added
+     * by other contexts.
+     */
+    private void clearQueues() {
+        conceptQueue.clear();
+        roleQueue.clear();
+        while (!featureQueue.isEmpty()) {
+            featureQueue.remove();
+        }
+        synchronized (externalConceptQueue) {
+            externalConceptQueue.clear();
+        }
+        synchronized (externalQueue) {
+            externalQueue.clear();
+        }
+    }
+
+    /**
+     * Called when bottom is added to s. Since r.BOTTOM [ BOTTOM, bottom is
+     * added to every predecessor of this context instead of applying the
+     * rules for the new subsumption.
+     */
+    private void processBottom() {
+        bottom = true;
+        clearQueues();
+        for (final int r : pred.getRoles()) {
+            for (final IntIterator itr = pred.lookupConcept(r).iterator(); itr.hasNext();) {
+                final int aa = itr.next();
+                if (aa != concept) {
+                    Context oc = contextIndex.get(aa);
+                    oc.addConceptQueueEntry(IFactory.TOP_CONCEPT, IFactory.BOTTOM_CONCEPT);
+                    if (oc.activate())
+                        parentTodo.add(oc);
+                }
+            }
+        }
+    }
+
+    private void processBottomTracking() {
+        bottom = true;
+        clearQueues();
+        for (final int r : pred.getRoles()) {
+            for (final IntIterator itr = pred.lookupConcept(r).iterator(); itr.hasNext();) {
+                final int aa = itr.next();
+                if (aa != concept) {
+                    Context oc = contextIndex.get(aa);
+                    oc.addConceptQueueEntry(IFactory.TOP_CONCEPT, IFactory.BOTTOM_CONCEPT);
+                    affectedContexts.add(oc);
+                    oc.startTracking();
+                    if (oc.activate())
+                        parentTodo.add(oc);
+                }
+            }
+        }
+    }
+
     private void processOntologyInternal() {
         boolean done;
 
         do {
             done = true;
 
+            pollExternalConceptQueue();
+            final int queueSize = conceptQueue.size();
+            if (queueSize > counters[CONCEPT_QUEUE_HIGH_WATER]) {
+                counters[CONCEPT_QUEUE_HIGH_WATER] = queueSize;
+            }
+
             // Process concept queue
             if (!conceptQueue.isEmpty()) {
                 do {
                     done = false;
-                    final IConjunctionQueueEntry entry = conceptQueue.remove();
-                    final int b = entry.getB();
+                    final long entry = conceptQueue.remove();
+                    processedConceptEntries++;
+                    counters[CONCEPT_ENTRIES]++;
+                    final int b = LongQueue.second(entry);
 
                     if (!s.contains(b)) {
-                        final int bi = entry.getBi();
+                        final int bi = LongQueue.first(entry);
                         if (s.contains(bi)) {
                             s.add(b);
+                            counters[SUBSUMPTIONS]++;
+                            if (bi != IFactory.TOP_CONCEPT) {
+                                counters[NF1_CONJUNCTIONS]++;
+                            }
+                            if (b == IFactory.BOTTOM_CONCEPT) {
+                                processBottom();
+                                return;
+                            }
                             processNewSubsumption(b);
                         }
                     }
@@ -430,6 +834,7 @@ public class Context implements Serializable {
                 do {
                     done = false;
                     final IFeatureQueueEntry entry = featureQueue.remove();
+                    counters[NF7_FEATURES]++;
 
                     Datatype d = entry.getD();
 
@@ -437,101 +842,104 @@ public class Context implements Serializable {
                     checkFunctionalFeatures(d);
 
                     // Get right hand sides from NF8 expressions that
-                    // match d on their left hand side
-                    MonotonicCollection<NF8> entries = ontologyNF8.get(d.getFeature());
-
-                    if (entries == null)
-                        continue;
-
-                    // Evaluate to determine the ones that match
-                    MonotonicCollection<IConjunctionQueueEntry> res =
-                            new MonotonicCollection<IConjunctionQueueEntry>(2);
-                    for (final NF8 e : entries) {
-                        Datatype d2 = e.lhsD;
-
-                        // If they match add a conjunction queue entry
-                        // to queueA
-                        if (datatypeMatches(d, d2)) {
-                            res.add(new IConjunctionQueueEntry() {
-                                /**
-                                 * Serialisation version.
-                                 */
-                                private static final long serialVersionUID = 1L;
-
-                                @Override
-                                public int getBi() {
-                                    return CoreFactory.TOP_CONCEPT;
-                                }
-
-                                @Override
-                                public int getB() {
-                                    return e.rhsB;
-                                }
-                            });
-                        }
+                    // match d on their left hand side and add a
+                    // conjunction queue entry to queueA
+                    for (final IntIterator itr = ontologyNF8.match(d); itr.hasNext();) {
+                        counters[NF8_MATCHES]++;
+                        conceptQueue.add(CoreFactory.TOP_CONCEPT, itr.next());
                     }
-
-                    addToConceptQueue(res);
                 } while (!featureQueue.isEmpty());
             }
 
             // Process role queue
             if (!roleQueue.isEmpty()) {
                 done = false;
-                final IRoleQueueEntry entry = roleQueue.remove();
+                final long entry = roleQueue.remove();
+                final int r = LongQueue.first(entry);
+                final int b = LongQueue.second(entry);
 
-                if (!succ.lookupConcept(entry.getR()).contains(entry.getB())) {
-                    processNewEdge(entry.getR(), entry.getB());
+                if (!succ.lookupConcept(r).contains(b)) {
+                    counters[NF2_EDGES]++;
+                    processNewEdge(r, b);
                 }
             }
 
-            if (!externalQueue.isEmpty()) {
+            final long edge = pollExternalQueue();
+            if (edge != NO_ENTRY) {
                 done = false;
-                final IRoleQueueEntry entry = externalQueue.remove();
-                processNewEdge(entry.getR(), entry.getB());
+                counters[EXTERNAL_EDGES]++;
+                processNewEdge(LongQueue.first(edge), LongQueue.second(edge));
             }
 
         } while (!done);
     }
 
+    /**
+     * The datatypes asserted for a functional feature in a context. Two
+     * equalities are compatible only if their literals are equal, so while
+     * there is no clash all the equalities are represented by the first one
+     * and only the other datatypes have to be checked one by one.
+     */
+    private static final class FeatureValues {
+        private final Set<Datatype> datatypes = new HashSet<>();
+        private final List<Datatype> ranges = new ArrayList<>();
+        private Datatype equality = null;
+        private boolean clash = false;
+    }
+
     private void checkFunctionalFeatures(Datatype d) {
         int f = d.getFeature();
         if (functionalFeatures.contains(f)) {
-            Set<Datatype> datatypes = functionalFeatureValues.get(f);
-            if (null == datatypes) {
-                datatypes = new HashSet<>();
-                functionalFeatureValues.put(f, datatypes);
-            } else {
-                for (Datatype dt: datatypes) {
-                    // Check if d and dt are incompatible
-                    if (!datatypeMatches(d, dt) && !datatypeMatches(dt, d)) {
-                        System.err.println("Functional data property " + f + " has multiple distinct value constraints: " + dt + " and " + d);       // FIXME delete
-                        final MonotonicCollection<IConjunctionQueueEntry> entries =
-                                new MonotonicCollection<IConjunctionQueueEntry>(1);
-                        entries.add(new IConjunctionQueueEntry() {
-                            /**
-                             * Serialisation version.
-                             */
-                            private static final long serialVersionUID = 1L;
-
-                            @Override
-                            public int getBi() {
-                                return CoreFactory.TOP_CONCEPT;
-                            }
+            FeatureValues values = functionalFeatureValues.get(f);
+            if (null == values) {
+                values = new FeatureValues();
+                functionalFeatureValues.put(f, values);
+            }
 
-                            @Override
-                            public int getB() {
-                                return CoreFactory.BOTTOM_CONCEPT;
-                            }
-                        });
-                        addToConceptQueue(entries);
-                    }
+            // A datatype that has already been checked cannot cause a new
+            // clash and, after a clash, bottom is already in the queue
+            if (!values.datatypes.add(d) || values.clash) {
+                return;
+            }
+
+            Datatype dt = null;
+            if (d.getOperator() == Operator.EQUALS) {
+                if (null == values.equality) {
+                    values.equality = d;
+                    dt = findIncompatible(d, values.ranges);
+                } else if (!d.getLiteral().equals(values.equality.getLiteral())) {
+                    dt = values.equality;
                 }
+            } else {
+                if (null != values.equality && !compatible(d, values.equality)) {
+                    dt = values.equality;
+                } else {
+                    dt = findIncompatible(d, values.ranges);
+                }
+                values.ranges.add(d);
+            }
+
+            if (null != dt) {
+                System.err.println("Functional data property " + f + " has multiple distinct value constraints: " + dt + " and " + d);       // FIXME delete
+                conceptQueue.add(CoreFactory.TOP_CONCEPT, CoreFactory.BOTTOM_CONCEPT);
+                values.clash = true;
             }
-            datatypes.add(d);
         }
     }
 
+    private static boolean compatible(Datatype d1, Datatype d2) {
+        return NF8Index.matches(d1, d2) || NF8Index.matches(d2, d1);
+    }
+
+    private static Datatype findIncompatible(Datatype d, List<Datatype> datatypes) {
+        for (Datatype dt : datatypes) {
+            if (!compatible(d, dt)) {
+                return dt;
+            }
+        }
+        return null;
+    }
+
     private void processNewSubsumption(final int b) {
         // Get the set of parent concepts of (b n x) in the ontology
         final MonotonicCollection<IConjunctionQueueEntry> bConceptEntries = ontologyNF1.get(b);
@@ -541,33 +949,31 @@ public class Context implements Serializable {
         }
         final MonotonicCollection<NF2> bRoleEntries = ontologyNF2.get(b);
         if (null != bRoleEntries) {
-            roleQueue.addAll(bRoleEntries);
+            addToRoleQueue(bRoleEntries);
         }
 
         // inlined ontHat(conceptQueues.get(pairA(p)), r, b) in following
         // to move test and fetch outside innermost loop
         //
-        final ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>> map = ontologyNF3.get(b);
-        if (null != map) {
-            for (Entry<Integer, Collection<IConjunctionQueueEntry>> entrySet : map.entrySet()) {
-                int r = entrySet.getKey();
-                final Collection<IConjunctionQueueEntry> entries = entrySet.getValue();
-
-                if (null != entries) {
-                    final IConceptSet aPrimes = pred.lookupConcept(r);
-                    for (final IntIterator itr = aPrimes.iterator(); itr.hasNext();) {
-                        final int aa = itr.next();
-                        // Add to queue aa
-                        if (concept == aa) {
-                            conceptQueue.addAll(entries);
-                        } else {
-                            // Add to external context concept queue and
-                            // activate
-                            Context oc = contextIndex.get(aa);
-                            oc.addConceptQueueEntries(entries);
-                            if (oc.activate())
-                                parentTodo.add(oc);
-                        }
+        for (final NF3Index.Block block : ontologyNF3.getBlocks()) {
+            for (int i = block.start(b), end = block.end(b); i < end; i++) {
+                final int r = block.role(i);
+                // Must be visible before the predecessors are read, like s
+                nf3Subsumers.add(r, b);
+                final IConceptSet aPrimes = pred.lookupConcept(r);
+                for (final IntIterator itr = aPrimes.iterator(); itr.hasNext();) {
+                    final int aa = itr.next();
+                    counters[NF3_PROPAGATIONS]++;
+                    // Add to queue aa
+                    if (concept == aa) {
+                        addToConceptQueue(block, i);
+                    } else {
+                        // Add to external context concept queue and
+                        // activate
+                        Context oc = contextIndex.get(aa);
+                        oc.addConceptQueueEntries(block, i);
+                        if (oc.activate())
+                            parentTodo.add(oc);
                     }
                 }
             }
@@ -579,143 +985,6 @@ public class Context implements Serializable {
         }
     }
 
-    /**
-     * Evaluates the equivalence of two {@link Datatype}s. This method assumes that the literals both have the same
-     * matching literal types.
-     *
-     * @param d1
-     *            Data type from an NF7 entry.
-     * @param d2
-     *            Data type from an NF8 entry.
-     * @return boolean
-     */
-    private boolean datatypeMatches(Datatype d1, Datatype d2) {
-        assert (d1.getFeature() == d2.getFeature());
-
-        AbstractLiteral lhsLit = d1.getLiteral();
-        AbstractLiteral rhsLit = d2.getLiteral();
-
-        Operator lhsOp = d1.getOperator();
-        Operator rhsOp = d2.getOperator();
-
-        if (rhsOp == Operator.EQUALS) {
-            // If the rhs operator is =, then the expression will only match
-            // if the lhs operator is also = and the literal values are the
-            // same.
-            if(lhsOp != Operator.EQUALS) {
-                return false;
-            } else {
-                return d1.getLiteral().equals(d2.getLiteral());
-            }
-        } else if (rhsOp == Operator.GREATER_THAN) {
-            if (lhsOp == Operator.LESS_THAN
-                    || lhsOp == Operator.LESS_THAN_EQUALS) {
-                return false;
-            } else if (lhsOp == Operator.EQUALS) {
-                if (compareLiterals(lhsLit, rhsLit) > 0) {
-                    return true;
-                } else {
-                    return false;
-                }
-            } else if (lhsOp == Operator.GREATER_THAN) {
-                if (compareLiterals(lhsLit, rhsLit) >= 0) {
-                    return true;
-                } else {
-                    return false;
-                }
-            } else if (lhsOp == Operator.GREATER_THAN_EQUALS) {
-                if (compareLiterals(lhsLit, rhsLit) > 0) {
-                    return true;
-                } else {
-                    return false;
-                }
-            }
-        } else if (rhsOp == Operator.GREATER_THAN_EQUALS) {
-            if (lhsOp == Operator.LESS_THAN
-                    || lhsOp == Operator.LESS_THAN_EQUALS) {
-                return false;
-            } else if (lhsOp == Operator.EQUALS) {
-                if (compareLiterals(lhsLit, rhsLit) >= 0) {
-                    return true;
-                } else {
-                    return false;
-                }
-            } else if (lhsOp == Operator.GREATER_THAN) {
-                if (compareLiterals(lhsLit, rhsLit) >= -1) {
-                    return true;
-                } else {
-                    return false;
-                }
-            } else if (lhsOp == Operator.GREATER_THAN_EQUALS) {
-                if (compareLiterals(lhsLit, rhsLit) >= 0) {
-                    return true;
-                } else {
-                    return false;
-                }
-            }
-        } else if (rhsOp == Operator.LESS_THAN) {
-            if (lhsOp == Operator.GREATER_THAN
-                    || lhsOp == Operator.GREATER_THAN_EQUALS) {
-                return false;
-            } else if (lhsOp == Operator.EQUALS) {
-                if (compareLiterals(lhsLit, rhsLit) < 0) {
-                    return true;
-                } else {
-                    return false;
-                }
-            } else if (lhsOp == Operator.LESS_THAN) {
-                if (compareLiterals(lhsLit, rhsLit) <= 0) {
-                    return true;
-                } else {
-                    return false;
-                }
-            } else if (lhsOp == Operator.LESS_THAN_EQUALS) {
-                if (compareLiterals(lhsLit, rhsLit) < 0) {
-                    return true;
-                } else {
-                    return false;
-                }
-            }
-        } else if (rhsOp == Operator.LESS_THAN_EQUALS) {
-            if (lhsOp == Operator.GREATER_THAN
-                    || lhsOp == Operator.GREATER_THAN_EQUALS) {
-                return false;
-            } else if (lhsOp == Operator.EQUALS) {
-                if (compareLiterals(lhsLit, rhsLit) <= 0) {
-                    return true;
-                } else {
-                    return false;
-                }
-            } else if (lhsOp == Operator.LESS_THAN) {
-                if (compareLiterals(lhsLit, rhsLit) <= 1) {
-                    return true;
-                } else {
-                    return false;
-                }
-            } else if (lhsOp == Operator.LESS_THAN_EQUALS) {
-                if (compareLiterals(lhsLit, rhsLit) <= 0) {
-                    return true;
-                } else {
-                    return false;
-                }
-            }
-        }
-
-        return d1.getLiteral().equals(d2.getLiteral());
-    }
-
-    /**
-     * Return 0 if both literals are equals. Returns an int > 0 if l1 is greater than l2 and an int < 0 if l1 is less
-     * than l2.
-     *
-     * @param l1
-     * @param l2
-     * @return
-     */
-    private int compareLiterals(AbstractLiteral l1, AbstractLiteral l2) {
-        return l1.compareTo(l2);
-    }
-
     /**
      * Process new subsumption: a [ role.b
      *
@@ -724,11 +993,12 @@ public class Context implements Serializable {
      * @param b
      */
     private void processNewEdge(int role, int b) {
-        final RoleSet roleClosure = getRoleClosure(role);
+        final RoleSet roleClosure = ontology.getRoleClosure(role);
         processRole(role, b);
         for (int s = roleClosure.first(); s >= 0; s = roleClosure.next(s + 1)) {
             if (s == role)
                 continue;
+            counters[NF4_ROLE_CLOSURE]++;
             processRole(s, b);
         }
     }
@@ -737,38 +1007,52 @@ public class Context implements Serializable {
         // R(s) := R(s) u {(A,B)}
         succ.store(s, b);
 
-        // Add the predecessor to the the corresponding context
-        // Is this necessary?
-        Context bContext = contextIndex.get(b);
+        // Add the predecessor to the the corresponding context, which might
+        // not exist yet if contexts are created lazily
+        Context bContext = ontology.getContext(b);
 
         bContext.getPred().store(s, concept);
 
+        // If B is unsatisfiable so is this concept, and the rest of the
+        // rules do not matter. A context that becomes unsatisfiable after
+        // this point finds this concept among its predecessors.
+        if (bContext.isBottom()) {
+            conceptQueue.add(IFactory.TOP_CONCEPT, IFactory.BOTTOM_CONCEPT);
+            return;
+        }
+
         // queue(A) := queue(A) u U{B'|B' in S(B)}.O^(s.B')
-        final IConceptSet sb = contextIndex.get(b).getS();
+        // Only the B' that appear in NF3 terms with role s are looked at
+        final int sbSize = bContext.getS().size();
+        int lookups = 0;
 
         // Computes the minimal set of QueueEntries from s.a [ bb is in O
-        for (IntIterator itr = sb.iterator(); itr.hasNext();) {
+        final NF3Index.Block[] blocks = ontologyNF3.getBlocks();
+        for (IntIterator itr = bContext.getNF3Subsumers(s); itr.hasNext();) {
             final int bb = itr.next();
-            final ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>> map = ontologyNF3.get(bb);
-
-            if (null != map) {
-                final Collection<IConjunctionQueueEntry> entries = map.get(s);
-                if (null != entries) {
-                    conceptQueue.addAll(entries);
+            lookups++;
+            for (final NF3Index.Block block : blocks) {
+                final int i = block.indexOf(bb, s);
+                if (i >= 0) {
+                    counters[NF3_PROPAGATIONS]++;
+                    addToConceptQueue(block, i);
                 }
             }
         }
+        skippedNF3Lookups += Math.max(0, sbSize - lookups) * (long) blocks.length;
 
         // Handle reflexive roles
         if (reflexiveRoles.contains(s)) {
             // check for (a,a) in R(s)
             if (!pred.lookupConcept(s).contains(concept)) {
+                counters[NF6_REFLEXIVE_EDGES]++;
                 processNewEdge(s, concept);
             }
 
             // check for (b,b) in R(s)
             Context tc = contextIndex.get(b);
             if (!tc.getPred().lookupConcept(s).contains(b)) {
+                counters[NF6_REFLEXIVE_EDGES]++;
                 tc.processExternalEdge(s, b);
                 if (tc.activate()) {
                     parentTodo.add(tc);
@@ -776,9 +1060,10 @@ public class Context implements Serializable {
             }
         }
 
-        final List<int[]> work = new ArrayList<int[]>();
-        for (final NF5 nf5 : ontologyNF5) {
-            if (s == nf5.getS()) {
+        final int workStart = workSize;
+        final MonotonicCollection<NF5> nf5sByS = ontologyNF5ByS.get(s);
+        if (null != nf5sByS) {
+            for (final NF5 nf5 : nf5sByS) {
                 final int t = nf5.getR();
                 final int u = nf5.getT();
                 final IConceptSet aTPrimes = pred.lookupConcept(t);
@@ -792,28 +1077,34 @@ public class Context implements Serializable {
                     final int aa = itr.next();
 
                     if (!bUPrimes.contains(aa)) {
-                        work.add(new int[] { aa, u });
+                        pushWork(aa, u);
                     }
 
                 }
             }
         }
 
-        for (final int[] pair : work) {
-            if (pair[0] == concept) {
-                processNewEdge(pair[1], b);
+        // Recursive calls add their pairs after workEnd and remove them
+        // before returning
+        int workEnd = workSize;
+        for (int i = workStart; i < workEnd; i++) {
+            final int aa = LongQueue.first(work[i]);
+            final int u = LongQueue.second(work[i]);
+            if (aa == concept) {
+                processNewEdge(u, b);
             } else {
-                Context tc = contextIndex.get(pair[0]);
-                tc.processExternalEdge(pair[1], b);
+                Context tc = contextIndex.get(aa);
+                tc.processExternalEdge(u, b);
                 if (tc.activate()) {
                     parentTodo.add(tc);
                 }
             }
         }
 
-        work.clear();
-        for (final NF5 nf5 : ontologyNF5) {
-            if (s == nf5.getR()) {
+        workSize = workStart;
+        final MonotonicCollection<NF5> nf5sByR = ontologyNF5ByR.get(s);
+        if (null != nf5sByR) {
+            for (final NF5 nf5 : nf5sByR) {
                 final int t = nf5.getS();
                 final int u = nf5.getT();
                 // In this case there is a dependency with the
@@ -826,32 +1117,17 @@ public class Context implements Serializable {
                     final int bb = itr.next();
 
                     if (!aUPrimes.contains(bb)) {
-                        work.add(new int[] { u, bb });
+                        pushWork(u, bb);
                     }
 
                 }
             }
         }
-        for (final int[] pair : work) {
-            processNewEdge(pair[0], pair[1]);
+        workEnd = workSize;
+        for (int i = workStart; i < workEnd; i++) {
+            processNewEdge(LongQueue.first(work[i]), LongQueue.second(work[i]));
         }
-    }
-
-    private RoleSet getRoleClosure(final int r) {
-        RoleSet result = roleClosureCache.get(r);
-        if (null == result) {
-            result = new RoleSet();
-            result.add(r);
-            for (final NF4 nf4 : ontologyNF4) {
-                if (r == nf4.getR()) {
-                    result.addAll(getRoleClosure(nf4.getS()));
-                }
-            }
-            // We do this after the above recursive call to trigger a stack
-            // overflow in case there's a role-inclusion cycle
-            roleClosureCache.put(r, result);
-        }
-        return result;
+        workSize = workStart;
     }
 
     /**
@@ -889,18 +1165,34 @@ public class Context implements Serializable {
         do {
             done = true;
 
+            pollExternalConceptQueue();
+            final int queueSize = conceptQueue.size();
+            if (queueSize > counters[CONCEPT_QUEUE_HIGH_WATER]) {
+                counters[CONCEPT_QUEUE_HIGH_WATER] = queueSize;
+            }
+
             // Process concept queue
             if (!conceptQueue.isEmpty()) {
                 do {
                     done = false;
-                    final IConjunctionQueueEntry entry = conceptQueue.remove();
-                    final int b = entry.getB();
+                    final long entry = conceptQueue.remove();
+                    processedConceptEntries++;
+                    counters[CONCEPT_ENTRIES]++;
+                    final int b = LongQueue.second(entry);
 
                     if (!s.contains(b)) {
-                        final int bi = entry.getBi();
+                        final int bi = LongQueue.first(entry);
                         if (s.contains(bi)) {
                             s.add(b);
+                            counters[SUBSUMPTIONS]++;
+                            if (bi != IFactory.TOP_CONCEPT) {
+                                counters[NF1_CONJUNCTIONS]++;
+                            }
                             changed = true;
+                            if (b == IFactory.BOTTOM_CONCEPT) {
+                                processBottomTracking();
+                                return;
+                            }
                             processNewSubsumptionTracking(b);
                         }
                     }
@@ -912,6 +1204,7 @@ public class Context implements Serializable {
                 do {
                     done = false;
                     final IFeatureQueueEntry entry = featureQueue.remove();
+                    counters[NF7_FEATURES]++;
 
                     Datatype d = entry.getD();
 
@@ -919,59 +1212,33 @@ public class Context implements Serializable {
                     checkFunctionalFeatures(d);
 
                     // Get right hand sides from NF8 expressions that
-                    // match d on their left hand side
-                    MonotonicCollection<NF8> entries =
-                            ontologyNF8.get(d.getFeature());
-
-                    if (entries == null)
-                        continue;
-
-                    // Evaluate to determine the ones that match
-                    MonotonicCollection<IConjunctionQueueEntry> res =
-                            new MonotonicCollection<IConjunctionQueueEntry>(2);
-                    for (final NF8 e : entries) {
-                        Datatype d2 = e.lhsD;
-
-                        // If they match add a conjunction queue entry
-                        // to queueA
-                        if (datatypeMatches(d, d2)) {
-                            res.add(new IConjunctionQueueEntry() {
-                                /**
-                                 * Serialisation version.
-                                 */
-                                private static final long serialVersionUID = 1L;
-
-                                @Override
-                                public int getBi() {
-                                    return CoreFactory.TOP_CONCEPT;
-                                }
-
-                                @Override
-                                public int getB() {
-                                    return e.rhsB;
-                                }
-                            });
-                        }
+                    // match d on their left hand side and add a
+                    // conjunction queue entry to queueA
+                    for (final IntIterator itr = ontologyNF8.match(d); itr.hasNext();) {
+                        counters[NF8_MATCHES]++;
+                        conceptQueue.add(CoreFactory.TOP_CONCEPT, itr.next());
                     }
-
-                    addToConceptQueue(res);
                 } while (!featureQueue.isEmpty());
             }
 
             // Process role queue
             if (!roleQueue.isEmpty()) {
                 done = false;
-                final IRoleQueueEntry entry = roleQueue.remove();
+                final long entry = roleQueue.remove();
+                final int r = LongQueue.first(entry);
+                final int b = LongQueue.second(entry);
 
-                if (!succ.lookupConcept(entry.getR()).contains(entry.getB())) {
-                    processNewEdgeTracking(entry.getR(), entry.getB());
+                if (!succ.lookupConcept(r).contains(b)) {
+                    counters[NF2_EDGES]++;
+                    processNewEdgeTracking(r, b);
                 }
             }
 
-            if (!externalQueue.isEmpty()) {
+            final long edge = pollExternalQueue();
+            if (edge != NO_ENTRY) {
                 done = false;
-                final IRoleQueueEntry entry = externalQueue.remove();
-                processNewEdgeTracking(entry.getR(), entry.getB());
+                counters[EXTERNAL_EDGES]++;
+                processNewEdgeTracking(LongQueue.first(edge), LongQueue.second(edge));
             }
 
         } while (!done);
@@ -986,36 +1253,33 @@ public class Context implements Serializable {
         }
         final MonotonicCollection<NF2> bRoleEntries = ontologyNF2.get(b);
         if (null != bRoleEntries) {
-            roleQueue.addAll(bRoleEntries);
+            addToRoleQueue(bRoleEntries);
         }
 
         // inlined ontHat(conceptQueues.get(pairA(p)), r, b) in following
         // to move test and fetch outside innermost loop
         //
-        final ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>> map = ontologyNF3
-                .get(b);
-        if (null != map) {
-            for (Entry<Integer, Collection<IConjunctionQueueEntry>> entrySet: map.entrySet()) {
-                int r = entrySet.getKey();
-                final Collection<IConjunctionQueueEntry> entries = entrySet.getValue();
-
-                if (null != entries) {
-                    final IConceptSet aPrimes = pred.lookupConcept(r);
-                    for (final IntIterator itr = aPrimes.iterator(); itr.hasNext();) {
-                        final int aa = itr.next();
-                        // Add to queue aa
-                        if (concept == aa) {
-                            conceptQueue.addAll(entries);
-                        } else {
-                            // Add to external context concept queue and
-                            // activate
-                            Context oc = contextIndex.get(aa);
-                            oc.addConceptQueueEntries(entries);
-                            affectedContexts.add(oc);
-                            oc.startTracking();
-                            if (oc.activate())
-                                parentTodo.add(oc);
-                        }
+        for (final NF3Index.Block block : ontologyNF3.getBlocks()) {
+            for (int i = block.start(b), end = block.end(b); i < end; i++) {
+                final int r = block.role(i);
+                // Must be visible before the predecessors are read, like s
+                nf3Subsumers.add(r, b);
+                final IConceptSet aPrimes = pred.lookupConcept(r);
+                for (final IntIterator itr = aPrimes.iterator(); itr.hasNext();) {
+                    final int aa = itr.next();
+                    counters[NF3_PROPAGATIONS]++;
+                    // Add to queue aa
+                    if (concept == aa) {
+                        addToConceptQueue(block, i);
+                    } else {
+                        // Add to external context concept queue and
+                        // activate
+                        Context oc = contextIndex.get(aa);
+                        oc.addConceptQueueEntries(block, i);
+                        affectedContexts.add(oc);
+                        oc.startTracking();
+                        if (oc.activate())
+                            parentTodo.add(oc);
                     }
                 }
             }
@@ -1028,11 +1292,12 @@ public class Context implements Serializable {
     }
 
     private void processNewEdgeTracking(int role, int b) {
-        final RoleSet roleClosure = getRoleClosure(role);
+        final RoleSet roleClosure = ontology.getRoleClosure(role);
         processRoleTracking(role, b);
         for (int s = roleClosure.first(); s >= 0; s = roleClosure.next(s + 1)) {
             if (s == role)
                 continue;
+            counters[NF4_ROLE_CLOSURE]++;
             processRoleTracking(s, b);
         }
     }
@@ -1041,38 +1306,52 @@ public class Context implements Serializable {
         // R(s) := R(s) u {(A,B)}
         succ.store(s, b);
 
-        // Add the predecessor to the the corresponding context
-        // Is this necessary?
-        Context bContext = contextIndex.get(b);
+        // Add the predecessor to the the corresponding context, which might
+        // not exist yet if contexts are created lazily
+        Context bContext = ontology.getContext(b);
 
         bContext.getPred().store(s, concept);
 
+        // If B is unsatisfiable so is this concept, and the rest of the
+        // rules do not matter. A context that becomes unsatisfiable after
+        // this point finds this concept among its predecessors.
+        if (bContext.isBottom()) {
+            conceptQueue.add(IFactory.TOP_CONCEPT, IFactory.BOTTOM_CONCEPT);
+            return;
+        }
+
         // queue(A) := queue(A) u U{B'|B' in S(B)}.O^(s.B')
-        final IConceptSet sb = contextIndex.get(b).getS();
+        // Only the B' that appear in NF3 terms with role s are looked at
+        final int sbSize = bContext.getS().size();
+        int lookups = 0;
 
         // Computes the minimal set of QueueEntries from s.a [ bb is in O
-        for (IntIterator itr = sb.iterator(); itr.hasNext();) {
+        final NF3Index.Block[] blocks = ontologyNF3.getBlocks();
+        for (IntIterator itr = bContext.getNF3Subsumers(s); itr.hasNext();) {
             final int bb = itr.next();
-            final ConcurrentMap<Integer, Collection<IConjunctionQueueEntry>> map = ontologyNF3.get(bb);
-
-            if (null != map) {
-                final Collection<IConjunctionQueueEntry> entries = map.get(s);
-                if (null != entries) {
-                    conceptQueue.addAll(entries);
+            lookups++;
+            for (final NF3Index.Block block : blocks) {
+                final int i = block.indexOf(bb, s);
+                if (i >= 0) {
+                    counters[NF3_PROPAGATIONS]++;
+                    addToConceptQueue(block, i);
                 }
             }
         }
+        skippedNF3Lookups += Math.max(0, sbSize - lookups) * (long) blocks.length;
 
         // Handle reflexive roles
         if (reflexiveRoles.contains(s)) {
             // check for (a,a) in R(s)
             if (!pred.lookupConcept(s).contains(concept)) {
+                counters[NF6_REFLEXIVE_EDGES]++;
                 processNewEdgeTracking(s, concept);
             }
 
             // check for (b,b) in R(s)
             Context tc = contextIndex.get(b);
             if (!tc.getPred().lookupConcept(s).contains(b)) {
+                counters[NF6_REFLEXIVE_EDGES]++;
                 tc.processExternalEdge(s, b);
                 affectedContexts.add(tc);
                 tc.startTracking();
@@ -1082,9 +1361,10 @@ public class Context implements Serializable {
             }
         }
 
-        final List<int[]> work = new ArrayList<int[]>();
-        for (final NF5 nf5 : ontologyNF5) {
-            if (s == nf5.getS()) {
+        final int workStart = workSize;
+        final MonotonicCollection<NF5> nf5sByS = ontologyNF5ByS.get(s);
+        if (null != nf5sByS) {
+            for (final NF5 nf5 : nf5sByS) {
                 final int t = nf5.getR();
                 final int u = nf5.getT();
                 final IConceptSet aTPrimes = pred.lookupConcept(t);
@@ -1099,19 +1379,24 @@ public class Context implements Serializable {
                     final int aa = itr.next();
 
                     if (!bUPrimes.contains(aa)) {
-                        work.add(new int[] { aa, u });
+                        pushWork(aa, u);
                     }
 
                 }
             }
         }
 
-        for (final int[] pair : work) {
-            if (pair[0] == concept) {
-                processNewEdgeTracking(pair[1], b);
+        // Recursive calls add their pairs after workEnd and remove them
+        // before returning
+        int workEnd = workSize;
+        for (int i = workStart; i < workEnd; i++) {
+            final int aa = LongQueue.first(work[i]);
+            final int u = LongQueue.second(work[i]);
+            if (aa == concept) {
+                processNewEdgeTracking(u, b);
             } else {
-                Context tc = contextIndex.get(pair[0]);
-                tc.processExternalEdge(pair[1], b);
+                Context tc = contextIndex.get(aa);
+                tc.processExternalEdge(u, b);
                 affectedContexts.add(tc);
                 tc.startTracking();
                 if (tc.activate()) {
@@ -1120,9 +1405,10 @@ public class Context implements Serializable {
             }
         }
 
-        work.clear();
-        for (final NF5 nf5 : ontologyNF5) {
-            if (s == nf5.getR()) {
+        workSize = workStart;
+        final MonotonicCollection<NF5> nf5sByR = ontologyNF5ByR.get(s);
+        if (null != nf5sByR) {
+            for (final NF5 nf5 : nf5sByR) {
                 final int t = nf5.getS();
                 final int u = nf5.getT();
                 // In this case there is a dependency with the
@@ -1136,15 +1422,17 @@ public class Context implements Serializable {
                     final int bb = itr.next();
 
                     if (!aUPrimes.contains(bb)) {
-                        work.add(new int[] { u, bb });
+                        pushWork(u, bb);
                     }
 
                 }
             }
         }
-        for (final int[] pair : work) {
-            processNewEdgeTracking(pair[0], pair[1]);
+        workEnd = workSize;
+        for (int i = workStart; i < workEnd; i++) {
+            processNewEdgeTracking(LongQueue.first(work[i]), LongQueue.second(work[i]));
         }
+        workSize = workStart;
     }
 
 }
@@ -0,0 +1,158 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import au.csiro.snorocket.core.util.IConceptMap;
+import au.csiro.snorocket.core.util.IntIterator;
+
+/**
+ * Map of contexts indexed by concept id. Concept ids are dense, so the
+ * contexts are stored in an array. Lookups and {@link #putIfAbsent(int, Context)}
+ * are safe to use while the contexts are being saturated, which allows
+ * contexts to be created on demand by the saturation workers.
+ *
+ * <p>
+ * Growing the map is not thread safe. All the concept ids are allocated
+ * before the saturation starts, so the map is grown to the number of
+ * concepts before every saturation, full or incremental (see
+ * {@link #grow(int)}), and must not grow while the contexts are saturated
+ * (see {@link #setSaturating(boolean)}).
+ * </p>
+ */
+public final class ContextMap implements IConceptMap<Context> {
+
+    /**
+     * Serialisation version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private volatile AtomicReferenceArray<Context> contexts;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * True while the contexts are saturated.
+     */
+    private transient volatile boolean saturating = false;
+
+    public ContextMap(int capacity) {
+        contexts = new AtomicReferenceArray<Context>(Math.max(capacity, 2));
+    }
+
+    public boolean containsKey(int key) {
+        return null != get(key);
+    }
+
+    public Context get(int key) {
+        final AtomicReferenceArray<Context> c = contexts;
+        return key < c.length() ? c.get(key) : null;
+    }
+
+    /**
+     * Adds a context if there is none for the key.
+     *
+     * @param key
+     * @param value
+     * @return the context that was already in the map or null if value was
+     *         added
+     */
+    public Context putIfAbsent(int key, Context value) {
+        assert !saturating || key < contexts.length() : "Context map grown during the saturation: " + key;
+        ensureCapacity(key + 1);
+        final AtomicReferenceArray<Context> c = contexts;
+        while (!c.compareAndSet(key, null, value)) {
+            final Context current = c.get(key);
+            if (current != null) {
+                return current;
+            }
+        }
+        size.incrementAndGet();
+        return null;
+    }
+
+    public IntIterator keyIterator() {
+        final AtomicReferenceArray<Context> c = contexts;
+        return new IntIterator() {
+
+            int next = 0;
+
+            public boolean hasNext() {
+                while (next < c.length() && c.get(next) == null) {
+                    next++;
+                }
+                return next < c.length();
+            }
+
+            public int next() {
+                return hasNext() ? next++ : -1;
+            }
+
+        };
+    }
+
+    public void put(int key, Context value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        ensureCapacity(key + 1);
+        if (contexts.getAndSet(key, value) == null) {
+            size.incrementAndGet();
+        }
+    }
+
+    public void remove(int key) {
+        final AtomicReferenceArray<Context> c = contexts;
+        if (key < c.length() && c.getAndSet(key, null) != null) {
+            size.decrementAndGet();
+        }
+    }
+
+    public synchronized void clear() {
+        contexts = new AtomicReferenceArray<Context>(contexts.length());
+        size.set(0);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Records whether the contexts are being saturated. While they are, the
+     * map must already have room for every context that is added.
+     * 
+     * @param saturating
+     */
+    public void setSaturating(boolean saturating) {
+        this.saturating = saturating;
+    }
+
+    /**
+     * Makes room for the concept ids below newSize. Must not be called while
+     * other threads are adding contexts.
+     */
+    public synchronized void grow(int newSize) {
+        final AtomicReferenceArray<Context> c = contexts;
+        if (newSize <= c.length()) {
+            return;
+        }
+        final AtomicReferenceArray<Context> res = new AtomicReferenceArray<Context>(newSize);
+        for (int i = 0; i < c.length(); i++) {
+            res.set(i, c.get(i));
+        }
+        contexts = res;
+    }
+
+    private void ensureCapacity(int capacity) {
+        final int len = contexts.length();
+        if (capacity > len) {
+            grow(Math.max(capacity, len * 2));
+        }
+    }
+
+}
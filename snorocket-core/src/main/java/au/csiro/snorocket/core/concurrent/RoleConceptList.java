@@ -0,0 +1,139 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.concurrent;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import au.csiro.snorocket.core.util.IntIterator;
+
+/**
+ * Append-only lists of concepts indexed by role. Only one thread can add
+ * concepts, but any number of threads can read the lists while they are
+ * being modified.
+ *
+ * <p>
+ * The concepts of all the roles are kept in a single array. Every entry
+ * packs a concept with the position of the previous entry of the same role,
+ * so the list of a role is a chain that starts at the last entry added for
+ * the role. Adding a concept does not allocate anything unless the array
+ * has to grow, which makes this much cheaper than a set per role when most
+ * roles only have a few concepts. The lists do not check for duplicates.
+ * </p>
+ */
+public final class RoleConceptList implements Serializable {
+
+    /**
+     * Serialisation version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private static final long[] EMPTY = {};
+
+    /**
+     * The position + 1 of the last entry of every role, or 0 if the role has
+     * no entries. Allocated when the first concept is added.
+     */
+    private volatile AtomicIntegerArray heads;
+
+    /**
+     * The entries. The low 32 bits hold the concept and the high 32 bits the
+     * position + 1 of the previous entry of the same role.
+     */
+    private volatile long[] entries = EMPTY;
+
+    /**
+     * The number of entries. Only used by the writer.
+     */
+    private int size = 0;
+
+    private final int numRoles;
+
+    /**
+     *
+     * @param numRoles
+     *            the expected number of roles
+     */
+    public RoleConceptList(int numRoles) {
+        this.numRoles = numRoles;
+    }
+
+    /**
+     * Adds a concept to the list of role r. Must only be called by one
+     * thread at a time.
+     *
+     * @param r
+     * @param concept
+     */
+    public void add(int r, int concept) {
+        AtomicIntegerArray h = heads;
+        if (null == h || r >= h.length()) {
+            h = growRoles(r + 1);
+        }
+        long[] e = entries;
+        if (size == e.length) {
+            // The new array is published before it is referenced by a head,
+            // so readers that see the head see all the entries
+            e = Arrays.copyOf(e, Math.max(8, size + (size >> 1)));
+            entries = e;
+        }
+        e[size] = ((long) h.get(r) << 32) | (concept & 0xffffffffL);
+        // Publishes the new entry
+        h.set(r, ++size);
+    }
+
+    private AtomicIntegerArray growRoles(int minRoles) {
+        final AtomicIntegerArray old = heads;
+        final int len = null == old ? 0 : old.length();
+        final AtomicIntegerArray h = new AtomicIntegerArray(Math.max(Math.max(numRoles, minRoles), len));
+        for (int i = 0; i < len; i++) {
+            h.set(i, old.get(i));
+        }
+        heads = h;
+        return h;
+    }
+
+    /**
+     * Returns true if there are no concepts for role r.
+     *
+     * @param r
+     * @return
+     */
+    public boolean isEmpty(int r) {
+        final AtomicIntegerArray h = heads;
+        return null == h || r >= h.length() || h.get(r) == 0;
+    }
+
+    /**
+     * Iterates over the concepts of role r, starting with the last one added.
+     * The iterator does not see the concepts added after it was created.
+     *
+     * @param r
+     * @return
+     */
+    public IntIterator iterator(int r) {
+        final AtomicIntegerArray h = heads;
+        final int head = (null == h || r >= h.length()) ? 0 : h.get(r);
+        // Read after the head, so it contains the entry
+        final long[] e = entries;
+        return new IntIterator() {
+
+            int next = head;
+
+            public boolean hasNext() {
+                return next != 0;
+            }
+
+            public int next() {
+                final long entry = e[next - 1];
+                next = (int) (entry >>> 32);
+                return (int) entry;
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.concurrent;
+
+/**
+ * The events counted by the workers of the saturation (see
+ * {@link SaturationStatistics}). Most counters are totals. The high-water
+ * marks are the maximum over the workers instead.
+ */
+public enum SaturationCounter {
+
+    /**
+     * The number of times a context was processed.
+     */
+    ACTIVATIONS(false),
+
+    /**
+     * The number of times a context was processed after the first time.
+     */
+    REACTIVATIONS(false),
+
+    /**
+     * The number of entries taken from the concept queues.
+     */
+    CONCEPT_ENTRIES(false),
+
+    /**
+     * The number of new subsumers added to the contexts.
+     */
+    SUBSUMPTIONS(false),
+
+    /**
+     * The number of NF1 terms A1 n A2 [ B whose conjunction was satisfied and
+     * added a new subsumer.
+     */
+    NF1_CONJUNCTIONS(false),
+
+    /**
+     * The number of new edges added by NF2 terms A [ r.B.
+     */
+    NF2_EDGES(false),
+
+    /**
+     * The number of NF3 terms r.A [ B matched by an edge, either when the
+     * edge is added or when A is added to the subsumers of its target.
+     */
+    NF3_PROPAGATIONS(false),
+
+    /**
+     * The number of edges added for the super roles of the role of a new
+     * edge, following the NF4 terms r [ s.
+     */
+    NF4_ROLE_CLOSURE(false),
+
+    /**
+     * The number of edges derived from the NF5 terms r o s [ t.
+     */
+    NF5_CHAIN_EDGES(false),
+
+    /**
+     * The number of edges derived from the NF6 terms for reflexive roles.
+     */
+    NF6_REFLEXIVE_EDGES(false),
+
+    /**
+     * The number of NF7 terms A [ f.(o, v) processed.
+     */
+    NF7_FEATURES(false),
+
+    /**
+     * The number of NF8 terms f.(o, v) [ B matched by a datatype.
+     */
+    NF8_MATCHES(false),
+
+    /**
+     * The number of edges added to a context by other contexts.
+     */
+    EXTERNAL_EDGES(false),
+
+    /**
+     * The largest number of entries found in a concept queue.
+     */
+    CONCEPT_QUEUE_HIGH_WATER(true),
+
+    /**
+     * The largest number of contexts waiting to be processed or being
+     * processed.
+     */
+    SCHEDULER_HIGH_WATER(true);
+
+    /**
+     * The number of counters.
+     */
+    public static final int SIZE = values().length;
+
+    private final boolean highWater;
+
+    private SaturationCounter(boolean highWater) {
+        this.highWater = highWater;
+    }
+
+    /**
+     * Returns true if the counter is a maximum rather than a total.
+     *
+     * @return
+     */
+    public boolean isHighWater() {
+        return highWater;
+    }
+
+    /**
+     * Merges the counts of a worker into a set of totals.
+     *
+     * @param totals
+     * @param counts
+     */
+    static void merge(long[] totals, long[] counts) {
+        for (SaturationCounter counter : values()) {
+            final int i = counter.ordinal();
+            if (counter.highWater) {
+                totals[i] = Math.max(totals[i], counts[i]);
+            } else {
+                totals[i] += counts[i];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.concurrent;
+
+import java.io.Serializable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import au.csiro.snorocket.core.CancellationToken;
+
+/**
+ * Schedules active {@link Context}s for saturation. Each {@link Worker} has its
+ * own deque of contexts: contexts activated by a worker are pushed onto its
+ * deque, and idle workers steal from the deques of the others. Contexts
+ * activated outside of a worker (e.g. when priming the contexts before a
+ * classification) go into a shared queue.
+ *
+ * <p>
+ * The scheduler keeps a count of the contexts that are either queued or being
+ * processed. A context can only be activated while another one is being
+ * processed (or before the workers are started), so when the count drops to
+ * zero no more work can appear and the workers stop. Workers that run out of
+ * work before that back off and keep looking for contexts to steal.
+ * </p>
+ */
+public class SaturationScheduler implements Serializable {
+
+    /**
+     * Serialisation version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The worker running in the current thread, if any.
+     */
+    private static final ThreadLocal<Worker> CURRENT = new ThreadLocal<Worker>();
+
+    /**
+     * Contexts activated outside of the workers.
+     */
+    private final Queue<Context> shared = new ConcurrentLinkedQueue<Context>();
+
+    /**
+     * The number of contexts that are queued or being processed.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * The workers of the current (or last) saturation.
+     */
+    private transient volatile Worker[] workers = new Worker[0];
+
+    /**
+     * The counters of the workers of the previous saturation runs.
+     */
+    private final long[] counters = new long[SaturationCounter.SIZE];
+
+    /**
+     * The largest number of pending contexts after adding a context outside
+     * of the workers.
+     */
+    private int sharedHighWater = 0;
+
+    /**
+     * Schedules an active context for processing.
+     *
+     * @param ctx
+     */
+    public void add(Context ctx) {
+        // The count is incremented before the context is visible to other
+        // workers so it can never be zero while there is work left
+        final int p = pending.incrementAndGet();
+        final Worker worker = CURRENT.get();
+        if (worker != null && worker.getScheduler() == this) {
+            worker.pendingContexts(p);
+            worker.push(ctx);
+        } else {
+            if (p > sharedHighWater) {
+                sharedHighWater = p;
+            }
+            shared.add(ctx);
+        }
+    }
+
+    /**
+     * Returns true if there are no contexts queued or being processed.
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return pending.get() == 0;
+    }
+
+    /**
+     * Returns the number of contexts that are queued or being processed.
+     *
+     * @return
+     */
+    public int size() {
+        return pending.get();
+    }
+
+    /**
+     * Returns the number of contexts processed so far by the workers of the
+     * current or last saturation run.
+     *
+     * @return
+     */
+    public int getProcessed() {
+        int res = 0;
+        for (Worker worker : getWorkers()) {
+            res += worker.getProcessed();
+        }
+        return res;
+    }
+
+    /**
+     * Creates a new set of workers for a saturation run. The workers stop when
+     * there are no contexts left to process.
+     *
+     * @param numThreads
+     * @return
+     */
+    public Worker[] createWorkers(int numThreads) {
+        return createWorkers(numThreads, null);
+    }
+
+    /**
+     * Creates a new set of workers for a saturation run that also stop when
+     * the token is cancelled.
+     *
+     * @param numThreads
+     * @param cancellationToken
+     *            can be null
+     * @return
+     */
+    public synchronized Worker[] createWorkers(int numThreads, CancellationToken cancellationToken) {
+        for (Worker worker : getWorkers()) {
+            SaturationCounter.merge(counters, worker.getCounters());
+        }
+        final Worker[] res = new Worker[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            res[i] = new Worker(this, i, cancellationToken);
+        }
+        workers = res;
+        return res;
+    }
+
+    /**
+     * Returns the workers of the current or last saturation run.
+     *
+     * @return
+     */
+    public Worker[] getWorkers() {
+        final Worker[] ws = workers;
+        return ws != null ? ws : new Worker[0];
+    }
+
+    /**
+     * Returns the counters of all the saturation runs, including the one in
+     * progress.
+     *
+     * @return
+     */
+    public synchronized SaturationStatistics getStatistics() {
+        final long[] res = counters.clone();
+        for (Worker worker : getWorkers()) {
+            SaturationCounter.merge(res, worker.getCounters());
+        }
+        final int i = SaturationCounter.SCHEDULER_HIGH_WATER.ordinal();
+        res[i] = Math.max(res[i], sharedHighWater);
+        return new SaturationStatistics(res);
+    }
+
+    /**
+     * Discards the queued contexts, e.g. after a cancelled saturation. Must
+     * not be called while the workers are running.
+     */
+    public void clear() {
+        shared.clear();
+        for (Worker worker : getWorkers()) {
+            worker.clear();
+        }
+        pending.set(0);
+    }
+
+    /**
+     * Returns the next context for a worker: its own most recently added
+     * context, then a context from the shared queue and finally a context
+     * stolen from another worker. Returns null if no context was found.
+     *
+     * @param worker
+     * @return
+     */
+    Context poll(Worker worker) {
+        Context ctx = worker.pop();
+        if (ctx != null)
+            return ctx;
+
+        ctx = shared.poll();
+        if (ctx != null)
+            return ctx;
+
+        final Worker[] ws = workers;
+        final int n = ws.length;
+        for (int i = 1; i < n; i++) {
+            final Worker victim = ws[(worker.getIndex() + i) % n];
+            ctx = victim.steal();
+            if (ctx != null) {
+                worker.stolen();
+                return ctx;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indicates that a context returned by {@link #poll(Worker)} has been
+     * processed.
+     */
+    void done() {
+        pending.decrementAndGet();
+    }
+
+    /**
+     * Binds a worker to the current thread.
+     *
+     * @param worker
+     */
+    static void bind(Worker worker) {
+        if (worker == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(worker);
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.concurrent;
+
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A snapshot of the {@link SaturationCounter}s of all the saturations run on
+ * an ontology. Each worker keeps its own counters, which are only added up
+ * when the snapshot is taken, so the values taken while a saturation runs are
+ * approximate.
+ */
+public final class SaturationStatistics implements Serializable {
+
+    /**
+     * Serialisation version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private final long[] values;
+
+    SaturationStatistics(long[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Returns the value of a counter.
+     *
+     * @param counter
+     * @return
+     */
+    public long get(SaturationCounter counter) {
+        return values[counter.ordinal()];
+    }
+
+    /**
+     * Returns the values of all the counters.
+     *
+     * @return
+     */
+    public Map<SaturationCounter, Long> toMap() {
+        final Map<SaturationCounter, Long> res = new EnumMap<SaturationCounter, Long>(SaturationCounter.class);
+        for (SaturationCounter counter : SaturationCounter.values()) {
+            res.put(counter, values[counter.ordinal()]);
+        }
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+}
@@ -7,6 +7,7 @@ package au.csiro.snorocket.core.concurrent;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentMap;
 
+import au.csiro.snorocket.core.CancellationToken;
 import au.csiro.snorocket.core.IFactory;
 import au.csiro.snorocket.core.util.FastConceptHashSet;
 import au.csiro.snorocket.core.util.IConceptMap;
@@ -32,6 +33,8 @@ public class TaxonomyWorker1 implements Runnable {
     
     private final Queue<Integer> todo;
     
+    private final CancellationToken cancellationToken;
+    
     /**
      * 
      */
@@ -39,15 +42,28 @@ public class TaxonomyWorker1 implements Runnable {
             ConcurrentMap<Integer, IConceptSet> equiv, 
             ConcurrentMap<Integer, IConceptSet> direc, IFactory factory,
             Queue<Integer> todo) {
+        this(contextIndex, equiv, direc, factory, todo, null);
+    }
+    
+    /**
+     * 
+     * @param cancellationToken stops the worker when cancelled, can be null
+     */
+    public TaxonomyWorker1(IConceptMap<Context> contextIndex, 
+            ConcurrentMap<Integer, IConceptSet> equiv, 
+            ConcurrentMap<Integer, IConceptSet> direc, IFactory factory,
+            Queue<Integer> todo, CancellationToken cancellationToken) {
         this.contextIndex = contextIndex;
         this.equiv = equiv;
         this.direc = direc;
         this.factory = factory;
         this.todo = todo;
+        this.cancellationToken = cancellationToken;
     }
     
     public void run() {
         while(true) {
+            if(cancellationToken != null && cancellationToken.isCancelled()) break;
             Integer aInt = todo.poll();
             if(aInt == null) break;
             
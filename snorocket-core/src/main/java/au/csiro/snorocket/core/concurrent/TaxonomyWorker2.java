@@ -11,6 +11,7 @@ import java.util.concurrent.ConcurrentMap;
 
 import au.csiro.ontology.Node;
 import au.csiro.ontology.model.NamedConcept;
+import au.csiro.snorocket.core.CancellationToken;
 import au.csiro.snorocket.core.IFactory;
 import au.csiro.snorocket.core.util.IConceptSet;
 import au.csiro.snorocket.core.util.IntIterator;
@@ -28,6 +29,7 @@ public class TaxonomyWorker2 implements Runnable {
     private final ConcurrentMap<Integer, IConceptSet> direc;
     private final Queue<Node> todo;
     private final Set<Node> nodeSet;
+    private final CancellationToken cancellationToken;
     
     /**
      * 
@@ -36,15 +38,28 @@ public class TaxonomyWorker2 implements Runnable {
             Map<String, Node> conceptNodeIndex, 
             ConcurrentMap<Integer, IConceptSet> direc, Queue<Node> todo, 
             Set<Node> nodeSet) {
+        this(factory, conceptNodeIndex, direc, todo, nodeSet, null);
+    }
+    
+    /**
+     * 
+     * @param cancellationToken stops the worker when cancelled, can be null
+     */
+    public TaxonomyWorker2(IFactory factory, 
+            Map<String, Node> conceptNodeIndex, 
+            ConcurrentMap<Integer, IConceptSet> direc, Queue<Node> todo, 
+            Set<Node> nodeSet, CancellationToken cancellationToken) {
         this.factory = factory;
         this.conceptNodeIndex = conceptNodeIndex;
         this.direc = direc;
         this.todo = todo;
         this.nodeSet = nodeSet;
+        this.cancellationToken = cancellationToken;
     }
 
     public void run() {
         while(true) {
+            if(cancellationToken != null && cancellationToken.isCancelled()) break;
             Node node = todo.poll();
             if(node == null) break;
             if(node.getEquivalentConcepts().contains(NamedConcept.BOTTOM)) continue;
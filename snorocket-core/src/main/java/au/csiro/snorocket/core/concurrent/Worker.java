@@ -1,40 +1,224 @@
 /**
  * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
- * All rights reserved. Use is subject to license terms and conditions. 
+ * All rights reserved. Use is subject to license terms and conditions.
  */
 package au.csiro.snorocket.core.concurrent;
 
-import java.util.Queue;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.locks.LockSupport;
+
+import au.csiro.snorocket.core.CancellationToken;
 
 /**
- * Represents a worker in charge of deriving axioms in a {@link Context}.
- * 
+ * Represents a worker in charge of deriving axioms in a {@link Context}. Each
+ * worker has its own deque of contexts and steals contexts from the other
+ * workers of the same {@link SaturationScheduler} when it runs out of work.
+ *
  * @author Alejandro Metke
- * 
+ *
  */
 public class Worker implements Runnable {
 
-    private final Queue<Context> todo;
+    /**
+     * Number of times an idle worker yields before it starts parking.
+     */
+    private static final int MAX_SPINS = 64;
+
+    /**
+     * Time an idle worker parks for between attempts to find work.
+     */
+    private static final long PARK_NANOS = 50000L;
+
+    private final SaturationScheduler scheduler;
+
+    private final int index;
+
+    /**
+     * Stops the worker when cancelled. Can be null.
+     */
+    private final CancellationToken cancellationToken;
+
+    /**
+     * The contexts activated by this worker. The owner takes contexts from the
+     * tail and other workers steal them from the head.
+     */
+    private final Deque<Context> deque = new ConcurrentLinkedDeque<Context>();
+
+    private volatile long busyNanos = 0;
+
+    private volatile long totalNanos = 0;
+
+    private volatile int processed = 0;
+
+    private volatile int steals = 0;
 
     /**
-     * 
-     * @param todo
+     * The {@link SaturationCounter}s of the contexts processed by this worker.
+     * Only written by the thread running the worker.
      */
-    public Worker(Queue<Context> todo) {
-        this.todo = todo;
+    private final long[] counters = new long[SaturationCounter.SIZE];
+
+    /**
+     *
+     * @param scheduler
+     * @param index
+     */
+    public Worker(SaturationScheduler scheduler, int index) {
+        this(scheduler, index, null);
+    }
+
+    /**
+     *
+     * @param scheduler
+     * @param index
+     * @param cancellationToken
+     *            checked before processing each context, can be null
+     */
+    public Worker(SaturationScheduler scheduler, int index, CancellationToken cancellationToken) {
+        this.scheduler = scheduler;
+        this.index = index;
+        this.cancellationToken = cancellationToken;
     }
 
     /**
      * @see java.lang.Runnable#run()
      */
     public void run() {
-        // Process contexts until there are no more left in the queue
-        while (true) {
-            Context ctx = todo.poll();
-            if (ctx == null)
-                break;
-            ctx.processOntology();
+        final long start = System.nanoTime();
+        long busy = 0;
+        int count = 0;
+        int spins = 0;
+
+        SaturationScheduler.bind(this);
+        try {
+            // Process contexts until no context is queued or being processed
+            // by any worker, or the saturation is cancelled. The contexts
+            // left in the scheduler are then discarded.
+            while (true) {
+                if (cancellationToken != null && cancellationToken.isCancelled()) {
+                    break;
+                }
+                final Context ctx = scheduler.poll(this);
+                if (ctx != null) {
+                    final long ctxStart = System.nanoTime();
+                    try {
+                        ctx.processOntology(counters);
+                    } finally {
+                        scheduler.done();
+                    }
+                    busy += System.nanoTime() - ctxStart;
+                    processed = ++count;
+                    spins = 0;
+                } else if (scheduler.isEmpty()) {
+                    break;
+                } else if (spins < MAX_SPINS) {
+                    // Other workers are still busy and might activate more
+                    // contexts
+                    spins++;
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+        } finally {
+            SaturationScheduler.bind(null);
+            busyNanos = busy;
+            totalNanos = System.nanoTime() - start;
         }
     }
 
+    SaturationScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Returns the index of this worker in its scheduler.
+     *
+     * @return
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    void push(Context ctx) {
+        deque.addLast(ctx);
+    }
+
+    Context pop() {
+        return deque.pollLast();
+    }
+
+    Context steal() {
+        return deque.pollFirst();
+    }
+
+    /**
+     * Records the number of contexts pending after this worker scheduled a
+     * context.
+     *
+     * @param pending
+     */
+    void pendingContexts(int pending) {
+        final int i = SaturationCounter.SCHEDULER_HIGH_WATER.ordinal();
+        if (pending > counters[i]) {
+            counters[i] = pending;
+        }
+    }
+
+    /**
+     * Returns the counters of this worker. They are only up to date once the
+     * worker has finished.
+     *
+     * @return
+     */
+    long[] getCounters() {
+        return counters;
+    }
+
+    void clear() {
+        deque.clear();
+    }
+
+    void stolen() {
+        steals++;
+    }
+
+    /**
+     * Returns the time this worker spent processing contexts, in nanoseconds.
+     *
+     * @return
+     */
+    public long getBusyTime() {
+        return busyNanos;
+    }
+
+    /**
+     * Returns the time this worker spent looking for work, in nanoseconds.
+     *
+     * @return
+     */
+    public long getIdleTime() {
+        return totalNanos - busyNanos;
+    }
+
+    /**
+     * Returns the number of contexts processed by this worker. The count is
+     * updated as the contexts are processed.
+     *
+     * @return
+     */
+    public int getProcessed() {
+        return processed;
+    }
+
+    /**
+     * Returns the number of contexts this worker stole from other workers.
+     *
+     * @return
+     */
+    public int getSteals() {
+        return steals;
+    }
+
 }
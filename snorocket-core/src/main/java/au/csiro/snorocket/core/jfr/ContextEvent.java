@@ -0,0 +1,36 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Recorded when a worker processes a context. Only the contexts that take
+ * longer than the threshold are recorded, which is 1 ms unless the recording
+ * sets a different one.
+ */
+@Name("au.csiro.snorocket.Context")
+@Label("Context")
+@Description("Processing of the queues of a context in the saturation")
+@Category({ "Snorocket", "Saturation" })
+@Threshold("1 ms")
+@StackTrace(false)
+class ContextEvent extends Event {
+
+    @Label("Concept")
+    @Description("The internal id of the concept of the context")
+    int concept;
+
+    @Label("Concept Entries")
+    @Description("The number of entries taken from the concept queue")
+    long entries;
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.jfr;
+
+import jdk.jfr.EventType;
+
+/**
+ * Creates and commits the events. Only loaded if the JVM supports JFR.
+ */
+final class FlightRecorderEvents {
+
+    private static final EventType CONTEXT = EventType.getEventType(ContextEvent.class);
+
+    private static final EventType PHASE = EventType.getEventType(PhaseEvent.class);
+
+    private FlightRecorderEvents() {
+    }
+
+    static Object beginContext() {
+        if (!CONTEXT.isEnabled()) {
+            return null;
+        }
+        final ContextEvent event = new ContextEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endContext(Object event, int concept, long entries) {
+        final ContextEvent e = (ContextEvent) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.concept = concept;
+            e.entries = entries;
+            e.commit();
+        }
+    }
+
+    static Object beginPhase() {
+        if (!PHASE.isEnabled()) {
+            return null;
+        }
+        final PhaseEvent event = new PhaseEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endPhase(Object event, String phase, boolean completed) {
+        final PhaseEvent e = (PhaseEvent) event;
+        e.phase = phase;
+        e.completed = completed;
+        e.commit();
+    }
+
+}
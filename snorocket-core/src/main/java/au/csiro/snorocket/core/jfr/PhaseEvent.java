@@ -0,0 +1,32 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Recorded for every phase of the reasoning, e.g. the normalisation, the
+ * classification or a step of the construction of the taxonomy.
+ */
+@Name("au.csiro.snorocket.Phase")
+@Label("Reasoning Phase")
+@Description("A phase of the reasoning")
+@Category({ "Snorocket" })
+@StackTrace(false)
+class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Completed")
+    @Description("False if the phase was cancelled or failed")
+    boolean completed;
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.jfr;
+
+/**
+ * Emits Java Flight Recorder events for the processing of the contexts and
+ * the phases of the reasoning, so a run can be profiled with JFR, e.g. with
+ * -XX:StartFlightRecording or jcmd JFR.start. The events are:
+ * <ul>
+ * <li>au.csiro.snorocket.Context: a context that took longer than the
+ * threshold to process, with its concept id and the number of concept queue
+ * entries it processed. The threshold defaults to 1 ms and can be changed in
+ * the recording settings.</li>
+ * <li>au.csiro.snorocket.Phase: a phase of the reasoning, with the same names
+ * as the phases of the {@link au.csiro.snorocket.core.ReasonerMetrics}, and
+ * whether it completed or was cancelled or failed.</li>
+ * </ul>
+ *
+ * <p>
+ * The events are only created while a recording has them enabled, so they
+ * cost a check of a flag otherwise. On JVMs without JFR, like older Java 8
+ * releases, no events are emitted. Compiling this package needs the jdk.jfr
+ * API, which JDK 8 has since 8u262.
+ * </p>
+ */
+public final class ReasonerEvents {
+
+    /**
+     * True if the JVM supports JFR. The classes that use the JFR API are only
+     * loaded in that case.
+     */
+    private static final boolean AVAILABLE = isAvailable();
+
+    private ReasonerEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts the event of a context. Returns null if the event is not enabled.
+     *
+     * @return
+     */
+    public static Object beginContext() {
+        return AVAILABLE ? FlightRecorderEvents.beginContext() : null;
+    }
+
+    /**
+     * Ends the event of a context and commits it if it took longer than the
+     * threshold.
+     *
+     * @param event
+     *            the value returned by {@link #beginContext()}, can be null
+     * @param concept
+     * @param entries
+     *            the number of concept queue entries processed
+     */
+    public static void endContext(Object event, int concept, long entries) {
+        if (event != null) {
+            FlightRecorderEvents.endContext(event, concept, entries);
+        }
+    }
+
+    /**
+     * Starts the event of a phase. Returns null if the event is not enabled.
+     *
+     * @return
+     */
+    public static Object beginPhase() {
+        return AVAILABLE ? FlightRecorderEvents.beginPhase() : null;
+    }
+
+    /**
+     * Ends and commits the event of a phase.
+     *
+     * @param event
+     *            the value returned by {@link #beginPhase()}, can be null
+     * @param phase
+     * @param completed
+     *            false if the phase was cancelled or failed
+     */
+    public static void endPhase(Object event, String phase, boolean completed) {
+        if (event != null) {
+            FlightRecorderEvents.endPhase(event, phase, completed);
+        }
+    }
+
+}
@@ -4,6 +4,8 @@
  */
 package au.csiro.snorocket.core.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.math.BigInteger;
 
 /**
@@ -13,6 +15,13 @@ import java.math.BigInteger;
 public class BigIntegerLiteral extends AbstractLiteral {
     private final BigInteger value;
 
+    /**
+     * The value as a long, if it fits in one.
+     */
+    private transient long longValue;
+
+    private transient boolean isLong;
+
     /**
      * Constructor.
      * 
@@ -20,6 +29,19 @@ public class BigIntegerLiteral extends AbstractLiteral {
      */
     public BigIntegerLiteral(BigInteger value) {
         this.value = value;
+        initKey();
+    }
+
+    private void initKey() {
+        if (value != null && value.bitLength() < 64) {
+            longValue = value.longValue();
+            isLong = true;
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initKey();
     }
 
     /**
@@ -60,6 +82,11 @@ public class BigIntegerLiteral extends AbstractLiteral {
     }
 
     public int compareTo(AbstractLiteral o) {
-        return value.compareTo(((BigIntegerLiteral) o).value);
+        final BigIntegerLiteral other = (BigIntegerLiteral) o;
+        if (isLong && other.isLong) {
+            return (longValue < other.longValue ? -1 : (longValue == other.longValue ? 0 : 1));
+        } else {
+            return value.compareTo(other.value);
+        }
     }
 }
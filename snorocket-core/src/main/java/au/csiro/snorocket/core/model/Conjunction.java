@@ -23,8 +23,6 @@ package au.csiro.snorocket.core.model;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -39,24 +37,56 @@ public class Conjunction extends AbstractConcept {
     final private int hashCode;
 
     public Conjunction(final AbstractConcept[] concepts) {
-        final SortedSet<AbstractConcept> sorted = new TreeSet<AbstractConcept>();
-        for (AbstractConcept concept : concepts) {
-            sorted.add(concept);
-        }
-        this.concepts = sorted.toArray(new AbstractConcept[sorted.size()]);
-        hashCode = sorted.hashCode();
-    }
-
-    public Conjunction(final Collection<? extends AbstractConcept> concepts) {
         // store the concepts in hashCode order so that equals() is order
         // independent
         // i.e. Conjunctions are reflexive (should also be transitive, but Agile
         // says STTCPW)
+        this.concepts = sort(concepts);
+        int h = 0;
+        for (AbstractConcept concept : this.concepts) {
+            h += concept.hashCode();
+        }
+        hashCode = h;
+    }
 
-        final SortedSet<AbstractConcept> sorted = new TreeSet<AbstractConcept>(
-                concepts);
-        this.concepts = sorted.toArray(new AbstractConcept[sorted.size()]);
-        hashCode = sorted.hashCode();
+    public Conjunction(final Collection<? extends AbstractConcept> concepts) {
+        this(concepts.toArray(new AbstractConcept[concepts.size()]));
+    }
+
+    /**
+     * Sorts the concepts and removes the duplicates, like a TreeSet would,
+     * by inserting them one at a time into a sorted array. Conjunctions are
+     * small, so this is cheaper than building a tree.
+     * 
+     * @param concepts
+     * @return
+     */
+    private static AbstractConcept[] sort(final AbstractConcept[] concepts) {
+        final AbstractConcept[] res = new AbstractConcept[concepts.length];
+        int size = 0;
+        for (AbstractConcept concept : concepts) {
+            int low = 0;
+            int high = size;
+            boolean found = false;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                final int cmp = res[mid].compareTo(concept);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid;
+                } else {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                System.arraycopy(res, low, res, low + 1, size - low);
+                res[low] = concept;
+                size++;
+            }
+        }
+        return size == res.length ? res : Arrays.copyOf(res, size);
     }
 
     @SuppressFBWarnings("EI_EXPOSE_REP")
@@ -21,9 +21,15 @@ public class Datatype extends AbstractConcept {
      */
     private static final long serialVersionUID = 1L;
     
-    private int feature;
-    private Operator operator;
-    private AbstractLiteral literal;
+    private final int feature;
+    private final Operator operator;
+    private final AbstractLiteral literal;
+
+    /**
+     * The hash code, computed when first needed. Not serialised, so old
+     * serialised instances compute it too.
+     */
+    private transient int hashCode;
 
     /**
          * 
@@ -53,12 +59,18 @@ public class Datatype extends AbstractConcept {
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + feature;
-        result = prime * result + ((literal == null) ? 0 : literal.hashCode());
-        result = prime * result
-                + ((operator == null) ? 0 : operator.hashCode());
+        int result = hashCode;
+        if (0 == result) {
+            final int prime = 31;
+            result = 1;
+            result = prime * result + feature;
+            result = prime * result + ((literal == null) ? 0 : literal.hashCode());
+            // Unlike the identity hash code of the enum, the ordinal is the
+            // same in every JVM
+            result = prime * result
+                    + ((operator == null) ? 0 : operator.ordinal() + 1);
+            hashCode = result;
+        }
         return result;
     }
 
@@ -71,6 +83,8 @@ public class Datatype extends AbstractConcept {
         if (getClass() != obj.getClass())
             return false;
         Datatype other = (Datatype) obj;
+        if (hashCode() != other.hashCode())
+            return false;
         if (feature != other.feature)
             return false;
         if (literal == null) {
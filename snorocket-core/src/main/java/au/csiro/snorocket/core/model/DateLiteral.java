@@ -4,6 +4,8 @@
  */
 package au.csiro.snorocket.core.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 
@@ -16,8 +18,23 @@ public class DateLiteral extends AbstractLiteral {
     private final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
     private final Calendar value;
 
+    /**
+     * The time of the value in milliseconds, used to compare literals.
+     */
+    private transient long millis;
+
     public DateLiteral(Calendar value) {
         this.value = value;
+        initKey();
+    }
+
+    private void initKey() {
+        millis = value.getTimeInMillis();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initKey();
     }
 
     /**
@@ -58,9 +75,8 @@ public class DateLiteral extends AbstractLiteral {
     }
 
     public int compareTo(AbstractLiteral o) {
-        DateLiteral dl = (DateLiteral) o;
-        Calendar otherValue = dl.value;
-        return value.compareTo(otherValue);
+        final long otherMillis = ((DateLiteral) o).millis;
+        return (millis < otherMillis ? -1 : (millis == otherMillis ? 0 : 1));
     }
 
 }
@@ -4,6 +4,8 @@
  */
 package au.csiro.snorocket.core.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.math.BigDecimal;
 
 /**
@@ -16,6 +18,17 @@ public class DecimalLiteral extends AbstractLiteral {
 
     private final BigDecimal value;
 
+    /**
+     * The closest double to the value, used to compare literals without
+     * BigDecimal arithmetic.
+     */
+    private transient double approx;
+
+    /**
+     * True if approx is exactly the value.
+     */
+    private transient boolean exact;
+
     /**
      * Constructor.
      * 
@@ -23,6 +36,19 @@ public class DecimalLiteral extends AbstractLiteral {
      */
     public DecimalLiteral(BigDecimal value) {
         this.value = value;
+        initKey();
+    }
+
+    private void initKey() {
+        if (value != null) {
+            approx = value.doubleValue();
+            exact = !Double.isInfinite(approx) && new BigDecimal(approx).compareTo(value) == 0;
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initKey();
     }
 
     /**
@@ -63,7 +89,18 @@ public class DecimalLiteral extends AbstractLiteral {
     }
 
     public int compareTo(AbstractLiteral o) {
-        return value.compareTo(((DecimalLiteral) o).value);
+        final DecimalLiteral other = (DecimalLiteral) o;
+        // doubleValue() never reverses the order of two values, so different
+        // approximations are ordered like the values themselves
+        if (approx < other.approx) {
+            return -1;
+        } else if (approx > other.approx) {
+            return 1;
+        } else if (exact && other.exact) {
+            return 0;
+        } else {
+            return value.compareTo(other.value);
+        }
     }
     
 }
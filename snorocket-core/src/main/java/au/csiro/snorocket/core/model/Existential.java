@@ -28,8 +28,14 @@ public class Existential extends AbstractConcept {
      */
     private static final long serialVersionUID = 1L;
     
-    private int role;
-    private AbstractConcept concept;
+    private final int role;
+    private final AbstractConcept concept;
+
+    /**
+     * The hash code, computed when first needed. Not serialised, so old
+     * serialised instances compute it too.
+     */
+    private transient int hashCode;
 
     public Existential(int role, AbstractConcept concept) {
         this.role = role;
@@ -57,10 +63,14 @@ public class Existential extends AbstractConcept {
      */
     @Override
     public int hashCode() {
-        final int PRIME = 31;
-        int result = 1;
-        result = PRIME * result + ((concept == null) ? 0 : concept.hashCode());
-        result = PRIME * result + role;
+        int result = hashCode;
+        if (0 == result) {
+            final int PRIME = 31;
+            result = 1;
+            result = PRIME * result + ((concept == null) ? 0 : concept.hashCode());
+            result = PRIME * result + role;
+            hashCode = result;
+        }
         return result;
     }
 
@@ -78,13 +88,15 @@ public class Existential extends AbstractConcept {
         if (getClass() != obj.getClass())
             return false;
         final Existential other = (Existential) obj;
+        if (role != other.role || hashCode() != other.hashCode())
+            return false;
+        if (concept == other.concept)
+            return true;
         if (concept == null) {
             if (other.concept != null)
                 return false;
         } else if (!concept.equals(other.concept))
             return false;
-        if (role != other.role)
-            return false;
         return true;
     }
 
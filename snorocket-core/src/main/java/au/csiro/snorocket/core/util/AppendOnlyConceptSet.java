@@ -0,0 +1,235 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.util;
+
+import java.util.Arrays;
+
+/**
+ * Implementation of the IConceptSet API that does not support clear() or
+ * remove()/removeAll(), designed to be read concurrently while it is being
+ * written to.
+ *
+ * <p>
+ * Concepts are appended to an array in insertion order. Once a set grows past
+ * a few elements an open addressing hash table is also kept to answer
+ * contains() in constant time. Writers are serialised with a lock, but readers
+ * never lock: the arrays are always published before the size, so a reader
+ * that reads the size sees at least that many elements. Iterators are
+ * snapshots of the elements added before they were created and do not copy
+ * anything.
+ * </p>
+ */
+final public class AppendOnlyConceptSet implements IConceptSet {
+
+    /**
+     * Serialisation version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Sets with more elements than this also keep a hash table.
+     */
+    private static final int HASH_THRESHOLD = 8;
+
+    private static final int[] EMPTY = {};
+
+    /**
+     * The concepts in insertion order.
+     */
+    private volatile int[] elements;
+
+    /**
+     * Hash table of concepts + 1 (so 0 means empty) or null if the set is
+     * small.
+     */
+    private volatile int[] table;
+
+    private volatile int size;
+
+    /**
+     *
+     * @param capacity
+     *            initial size of underlying array
+     */
+    public AppendOnlyConceptSet(final int capacity) {
+        elements = capacity > 0 ? new int[capacity] : EMPTY;
+    }
+
+    public AppendOnlyConceptSet() {
+        this(4);
+    }
+
+    public synchronized void add(final int concept) {
+        final int n = size;
+        if (contains(concept, n)) {
+            return;
+        }
+
+        int[] items = elements;
+        if (n == items.length) {
+            items = Arrays.copyOf(items, Math.max(4, n + (n >> 1)));
+            elements = items;
+        }
+        items[n] = concept;
+
+        if (n + 1 > HASH_THRESHOLD) {
+            int[] t = table;
+            if (null == t || (n + 1) * 2 > t.length) {
+                // Build the new table completely before publishing it
+                t = new int[Integer.highestOneBit((n + 1) * 4 - 1) << 1];
+                for (int i = 0; i <= n; i++) {
+                    insert(t, items[i]);
+                }
+                table = t;
+            } else {
+                insert(t, concept);
+            }
+        }
+
+        // Publishes the new element
+        size = n + 1;
+    }
+
+    private static int hash(int concept) {
+        final int h = concept * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static void insert(int[] t, int concept) {
+        final int mask = t.length - 1;
+        int i = hash(concept) & mask;
+        while (t[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        t[i] = concept + 1;
+    }
+
+    public void addAll(final IConceptSet set) {
+        for (final IntIterator itr = set.iterator(); itr.hasNext();) {
+            add(itr.next());
+        }
+    }
+
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    public boolean contains(final int concept) {
+        return contains(concept, size);
+    }
+
+    /**
+     * Looks for a concept among the first n elements.
+     *
+     * @param concept
+     * @param n
+     * @return
+     */
+    private boolean contains(final int concept, final int n) {
+        if (n > HASH_THRESHOLD) {
+            final int[] t = table;
+            final int mask = t.length - 1;
+            final int key = concept + 1;
+            int i = hash(concept) & mask;
+            int k;
+            while ((k = t[i]) != 0) {
+                if (k == key) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+            return false;
+        } else {
+            final int[] items = elements;
+            for (int i = 0; i < n; i++) {
+                if (items[i] == concept) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public boolean containsAll(IConceptSet concepts) {
+        for (final IntIterator itr = concepts.iterator(); itr.hasNext();) {
+            if (!contains(itr.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    public IntIterator iterator() {
+        final int n = size;
+        final int[] items = elements;
+        return new IntIterator() {
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < n;
+            }
+
+            public int next() {
+                return hasNext() ? items[next++] : -1;
+            }
+        };
+    }
+
+    public void remove(int concept) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void removeAll(IConceptSet set) {
+        throw new UnsupportedOperationException();
+    }
+
+    public String toString() {
+        final int n = size;
+        final int[] items = elements;
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        for (int i = 0; i < n; i++) {
+            sb.append(items[i]);
+            if (i + 1 < n) {
+                sb.append(", ");
+            }
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public synchronized void grow(int newSize) {
+        assert newSize >= size;
+
+        if (newSize > elements.length) {
+            elements = Arrays.copyOf(elements, newSize);
+        }
+    }
+
+    /**
+     * Returns the concepts in descending order, the same order used by
+     * {@link SparseConceptSet}.
+     */
+    public int[] toArray() {
+        final int n = size;
+        final int[] res = Arrays.copyOf(elements, n);
+        Arrays.sort(res);
+        for (int i = 0, j = n - 1; i < j; i++, j--) {
+            final int tmp = res[i];
+            res[i] = res[j];
+            res[j] = tmp;
+        }
+        return res;
+    }
+
+}
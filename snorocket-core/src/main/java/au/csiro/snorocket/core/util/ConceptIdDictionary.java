@@ -0,0 +1,424 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.util;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A dictionary from the ids of the named concepts to the internal concept ids.
+ * Most concept ids are numeric, e.g. SNOMED CT identifiers, so ids that are
+ * decimal numbers without leading zeros are stored as longs in an open
+ * addressing table. Other ids are encoded in UTF-8 and appended to a single
+ * byte array. No object is kept per id, so a dictionary of a few hundred
+ * thousand ids is several times smaller than a {@link java.util.HashMap} of
+ * {@link String}s. {@link #lookup(int)} creates a new String on every call.
+ *
+ * <p>
+ * {@link #get(String)} and {@link #lookup(int)} do not take a lock unless the
+ * key or the id is not found. The slots of the tables, the bytes in the arena
+ * and the key of a concept id are only written once, and the arrays and
+ * tables are only replaced, through volatile fields, by complete copies. A new
+ * numeric key is published by writing {@code size} after its slot and its
+ * key, and any other key by writing {@code numStrings} after its bytes, its
+ * slot and its key. Both counters are volatile and the readers read them
+ * before the arrays, so every key published before is visible. A key that is
+ * being added at the same time might not be visible yet: its slot looks empty
+ * or does not match, or, for a key in the arena, its position is not below
+ * {@code numStrings}. The search then fails and is repeated while holding the
+ * lock. The other methods are synchronized.
+ * </p>
+ */
+final public class ConceptIdDictionary implements Serializable {
+
+    /**
+     * Serialisation version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The maximum number of digits of a numeric id. Every number with 18
+     * digits fits in a long.
+     */
+    private static final int MAX_DIGITS = 18;
+
+    /**
+     * The numeric ids.
+     */
+    private volatile LongTable numbers = new LongTable(64);
+
+    /**
+     * The other ids, stored as the position of the id in {@link #starts}
+     * plus one.
+     */
+    private volatile IntTable strings = new IntTable(64);
+
+    /**
+     * The UTF-8 bytes of the ids that are not numeric.
+     */
+    private volatile byte[] arena = new byte[1024];
+
+    /**
+     * The start of every id in the arena, followed by the end of the last
+     * one.
+     */
+    private volatile int[] starts = new int[64];
+
+    /**
+     * The number of ids in the arena. Written after a new id has been added
+     * to the arena and to the table, so the ids below it can be compared
+     * without the lock.
+     */
+    private volatile int numStrings = 0;
+
+    /**
+     * The key of every concept id: a numeric id plus one, the position of
+     * another id in the arena plus one negated, or zero if the concept is
+     * not in the dictionary.
+     */
+    private volatile long[] keys = new long[64];
+
+    /**
+     * The number of keys. Written after a new key has been added.
+     */
+    private volatile int size = 0;
+
+    /**
+     * Returns the concept id of a key, or -1 if the key is not in the
+     * dictionary.
+     *
+     * @param key
+     * @return
+     */
+    public int get(String key) {
+        final long number = toNumber(key);
+        int res = number >= 0 ? getNumber(number) : getString(key);
+        if (res < 0) {
+            // The key might have been added by another thread
+            synchronized (this) {
+                res = number >= 0 ? getNumber(number) : getString(key);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Adds a key that is not in the dictionary.
+     *
+     * @param key
+     * @param id
+     *            the concept id, a non-negative number
+     */
+    public synchronized void put(String key, int id) {
+        assert get(key) < 0;
+        if (id >= keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(keys.length * 2, id + 1));
+        }
+
+        final long number = toNumber(key);
+        if (number >= 0) {
+            if (!numbers.add(number, id)) {
+                numbers = numbers.grow();
+                numbers.add(number, id);
+            }
+            keys[id] = number + 1;
+        } else {
+            final int n = numStrings;
+            final byte[] bytes = key.getBytes(UTF8);
+            final int start = starts[n];
+            if (start + bytes.length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, start + bytes.length));
+            }
+            System.arraycopy(bytes, 0, arena, start, bytes.length);
+            if (n + 1 == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[n + 1] = start + bytes.length;
+            if (!strings.add(key.hashCode(), n, id)) {
+                strings = strings.grow();
+                strings.add(key.hashCode(), n, id);
+            }
+            keys[id] = -(n + 1);
+            numStrings = n + 1;
+        }
+        size++;
+    }
+
+    /**
+     * Returns the key of a concept id, or null if the concept is not in the
+     * dictionary.
+     *
+     * @param id
+     * @return
+     */
+    public String lookup(int id) {
+        String res = find(id);
+        if (null == res) {
+            // The key might have been added by another thread
+            synchronized (this) {
+                res = find(id);
+            }
+        }
+        return res;
+    }
+
+    private String find(int id) {
+        // Read the counters before the arrays: the numeric keys are published
+        // by size and the others by numStrings
+        if (size == 0) {
+            return null;
+        }
+        final int n = numStrings;
+        final long[] k = keys;
+        final long key = id < k.length ? k[id] : 0;
+        if (key > 0) {
+            return Long.toString(key - 1);
+        } else if (key < 0 && -key <= n) {
+            final int s = (int) -key - 1;
+            final int[] offsets = starts;
+            return new String(arena, offsets[s], offsets[s + 1] - offsets[s], UTF8);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of keys.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Changes the concept ids of the keys.
+     *
+     * @param newIds
+     *            the new id of every concept id
+     */
+    public synchronized void renumber(int[] newIds) {
+        final long[] newKeys = new long[Math.max(keys.length, newIds.length)];
+        for (int id = 0; id < keys.length; id++) {
+            if (keys[id] != 0) {
+                newKeys[newIds[id]] = keys[id];
+            }
+        }
+        numbers = numbers.renumber(newIds);
+        strings = strings.renumber(newIds);
+        keys = newKeys;
+    }
+
+    private int getNumber(long number) {
+        // Read the number of keys before the table
+        if (size == 0) {
+            return -1;
+        }
+        return numbers.get(number);
+    }
+
+    private int getString(String key) {
+        // Read the number of ids before the tables
+        final int n = numStrings;
+        final IntTable table = strings;
+        final byte[] bytes = arena;
+        final int[] offsets = starts;
+        final int hash = key.hashCode();
+        for (int i = table.slot(hash);; i = (i + 1) & table.mask) {
+            final int s = table.strings[i];
+            if (s == 0) {
+                return -1;
+            } else if (s <= n && table.hashes[i] == hash && equals(key, bytes, offsets[s - 1], offsets[s])) {
+                return table.ids[i];
+            }
+        }
+    }
+
+    /**
+     * Compares a key with the UTF-8 bytes of an id. Keys in ASCII are compared
+     * without encoding them.
+     */
+    private static boolean equals(String key, byte[] bytes, int start, int end) {
+        final int length = key.length();
+        if (length > end - start) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = key.charAt(i);
+            if (c >= 0x80) {
+                final byte[] encoded = key.getBytes(UTF8);
+                return encoded.length == end - start &&
+                        Arrays.equals(encoded, Arrays.copyOfRange(bytes, start, end));
+            } else if (bytes[start + i] != c) {
+                return false;
+            }
+        }
+        return length == end - start;
+    }
+
+    /**
+     * Returns the value of a key that is a decimal number with up to
+     * {@link #MAX_DIGITS} digits and no leading zeros, or -1 for any other
+     * key. The number converts back to the same key.
+     *
+     * @param key
+     * @return
+     */
+    static long toNumber(String key) {
+        final int length = key.length();
+        if (length == 0 || length > MAX_DIGITS || (key.charAt(0) == '0' && length > 1)) {
+            return -1;
+        }
+        long res = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            res = res * 10 + (c - '0');
+        }
+        return res;
+    }
+
+    private static int mix(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * An open addressing table with linear probing from longs to concept ids.
+     * A slot is empty while its id is zero. The keys and the ids are stored
+     * plus one, so a slot that is read before its key is visible does not
+     * match any key.
+     */
+    private static final class LongTable implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final long[] keys;
+        final int[] ids;
+        final int mask;
+        int size = 0;
+
+        LongTable(int capacity) {
+            keys = new long[capacity];
+            ids = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        int get(long key) {
+            for (int i = mix(key) & mask;; i = (i + 1) & mask) {
+                final int id = ids[i];
+                if (id == 0) {
+                    return -1;
+                } else if (keys[i] == key + 1) {
+                    return id - 1;
+                }
+            }
+        }
+
+        /**
+         * Adds a key, unless the table is three quarters full.
+         */
+        boolean add(long key, int id) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                return false;
+            }
+            int i = mix(key) & mask;
+            while (ids[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key + 1;
+            ids[i] = id + 1;
+            size++;
+            return true;
+        }
+
+        LongTable grow() {
+            return copy(keys.length * 2, null);
+        }
+
+        LongTable renumber(int[] newIds) {
+            return copy(keys.length, newIds);
+        }
+
+        private LongTable copy(int capacity, int[] newIds) {
+            final LongTable res = new LongTable(capacity);
+            for (int i = 0; i < keys.length; i++) {
+                if (ids[i] != 0) {
+                    res.add(keys[i] - 1, null == newIds ? ids[i] - 1 : newIds[ids[i] - 1]);
+                }
+            }
+            return res;
+        }
+    }
+
+    /**
+     * An open addressing table with linear probing from the ids in the arena
+     * to concept ids. A slot is empty while the position of its id is zero;
+     * the positions are stored plus one.
+     */
+    private static final class IntTable implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final int[] hashes;
+        final int[] strings;
+        final int[] ids;
+        final int mask;
+        int size = 0;
+
+        IntTable(int capacity) {
+            hashes = new int[capacity];
+            strings = new int[capacity];
+            ids = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        int slot(int hash) {
+            return mix(hash) & mask;
+        }
+
+        /**
+         * Adds an id, unless the table is three quarters full.
+         */
+        boolean add(int hash, int string, int id) {
+            if ((size + 1) * 4 > strings.length * 3) {
+                return false;
+            }
+            int i = slot(hash);
+            while (strings[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            ids[i] = id;
+            strings[i] = string + 1;
+            size++;
+            return true;
+        }
+
+        IntTable grow() {
+            return copy(strings.length * 2, null);
+        }
+
+        IntTable renumber(int[] newIds) {
+            return copy(strings.length, newIds);
+        }
+
+        private IntTable copy(int capacity, int[] newIds) {
+            final IntTable res = new IntTable(capacity);
+            for (int i = 0; i < strings.length; i++) {
+                if (strings[i] != 0) {
+                    res.add(hashes[i], strings[i] - 1, null == newIds ? ids[i] : newIds[ids[i]]);
+                }
+            }
+            return res;
+        }
+    }
+
+}
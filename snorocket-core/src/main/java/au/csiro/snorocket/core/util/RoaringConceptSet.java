@@ -0,0 +1,1029 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Implementation of the IConceptSet API based on compressed bitmaps, in the
+ * style of Roaring bitmaps. Concepts are split by their 16 high bits into
+ * chunks, and each chunk is stored in the smallest of three containers:
+ * <ul>
+ * <li>an array container, a sorted array of up to 4096 16-bit values,</li>
+ * <li>a bitmap container, a fixed 8KB bitmap, and</li>
+ * <li>a run container, a sorted array of [start, length] runs, used for
+ * chunks made of long sequences of consecutive concepts.</li>
+ * </ul>
+ * Sets of related concepts (e.g. the subsumers of a concept) are much smaller
+ * than with a hash based set, and set operations between two
+ * RoaringConceptSets work a chunk at a time, using word level operations
+ * between bitmaps. Iteration is in ascending order.
+ *
+ * <p>
+ * Like {@link SparseConceptSet}, all the operations are synchronized, so a set
+ * can be read while it is being modified by another thread. Iterators read the
+ * containers in place, a few concepts at a time while holding the lock, and
+ * continue after the last concept they returned. Concepts added or removed
+ * while iterating, also by the iterating thread, might or might not be
+ * returned; {@link #toArray()} returns a snapshot. Bulk operations with
+ * another RoaringConceptSet copy the other set first so the two locks are
+ * never held at the same time.
+ * </p>
+ */
+final public class RoaringConceptSet implements IConceptSet {
+
+    /**
+     * Serialisation version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Maximum number of values in an array container.
+     */
+    static final int ARRAY_MAX = 4096;
+
+    /**
+     * Number of 64-bit words in a bitmap container.
+     */
+    static final int BITMAP_WORDS = 1024;
+
+    /**
+     * Maximum number of runs in a run container. A run container with more
+     * runs would be larger than a bitmap container.
+     */
+    static final int RUNS_MAX = 2048;
+
+    /**
+     * Maximum number of concepts an iterator reads at a time.
+     */
+    static final int ITERATOR_BATCH = 256;
+
+    /**
+     * The 16 high bits of the concepts in each container, sorted.
+     */
+    private char[] keys;
+
+    private Container[] containers;
+
+    private int numContainers;
+
+    private int size;
+
+    public RoaringConceptSet() {
+        this(4);
+    }
+
+    /**
+     *
+     * @param capacity
+     *            initial number of containers
+     */
+    public RoaringConceptSet(final int capacity) {
+        final int n = Math.max(1, capacity);
+        keys = new char[n];
+        containers = new Container[n];
+    }
+
+    private static char high(int concept) {
+        return (char) (concept >>> 16);
+    }
+
+    private static char low(int concept) {
+        return (char) concept;
+    }
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, numContainers, key);
+    }
+
+    private void insertContainer(int i, char key, Container c) {
+        if (numContainers == keys.length) {
+            final int newLength = Math.max(4, numContainers * 2);
+            keys = Arrays.copyOf(keys, newLength);
+            containers = Arrays.copyOf(containers, newLength);
+        }
+        System.arraycopy(keys, i, keys, i + 1, numContainers - i);
+        System.arraycopy(containers, i, containers, i + 1, numContainers - i);
+        keys[i] = key;
+        containers[i] = c;
+        numContainers++;
+    }
+
+    private void removeContainer(int i) {
+        System.arraycopy(keys, i + 1, keys, i, numContainers - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, numContainers - i - 1);
+        numContainers--;
+        containers[numContainers] = null;
+    }
+
+    public synchronized void add(final int concept) {
+        final char key = high(concept);
+        final int i = indexOf(key);
+        if (i >= 0) {
+            final Container c = containers[i];
+            final int before = c.cardinality();
+            final Container res = c.add(low(concept));
+            containers[i] = res;
+            size += res.cardinality() - before;
+        } else {
+            final ArrayContainer c = new ArrayContainer(4);
+            c.add(low(concept));
+            insertContainer(-i - 1, key, c);
+            size++;
+        }
+    }
+
+    public void addAll(final IConceptSet set) {
+        if (set instanceof RoaringConceptSet) {
+            if (set != this) {
+                or(((RoaringConceptSet) set).copy());
+            }
+        } else {
+            for (final IntIterator itr = set.iterator(); itr.hasNext();) {
+                add(itr.next());
+            }
+        }
+    }
+
+    /**
+     * Adds all the concepts in a set, chunk by chunk. The set must not be
+     * shared, since its containers are reused.
+     *
+     * @param other
+     */
+    private synchronized void or(RoaringConceptSet other) {
+        for (int j = 0; j < other.numContainers; j++) {
+            final char key = other.keys[j];
+            final int i = indexOf(key);
+            if (i >= 0) {
+                final Container c = containers[i];
+                final int before = c.cardinality();
+                final Container res = c.or(other.containers[j]);
+                containers[i] = res;
+                size += res.cardinality() - before;
+            } else {
+                insertContainer(-i - 1, key, other.containers[j]);
+                size += other.containers[j].cardinality();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(containers, 0, numContainers, null);
+        numContainers = 0;
+        size = 0;
+    }
+
+    public synchronized boolean contains(final int concept) {
+        final int i = indexOf(high(concept));
+        return i >= 0 && containers[i].contains(low(concept));
+    }
+
+    public boolean containsAll(IConceptSet concepts) {
+        if (concepts == this || concepts.isEmpty()) {
+            return true;
+        }
+        if (concepts instanceof RoaringConceptSet) {
+            return containsAll(((RoaringConceptSet) concepts).copy());
+        }
+        for (final IntIterator itr = concepts.iterator(); itr.hasNext();) {
+            if (!contains(itr.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized boolean containsAll(RoaringConceptSet other) {
+        if (other.size > size) {
+            return false;
+        }
+        for (int j = 0; j < other.numContainers; j++) {
+            final int i = indexOf(other.keys[j]);
+            if (i < 0 || !other.containers[j].isSubsetOf(containers[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized void remove(int concept) {
+        final int i = indexOf(high(concept));
+        if (i >= 0) {
+            final Container c = containers[i];
+            final int before = c.cardinality();
+            final Container res = c.remove(low(concept));
+            size += res.cardinality() - before;
+            if (res.cardinality() == 0) {
+                removeContainer(i);
+            } else {
+                containers[i] = res;
+            }
+        }
+    }
+
+    public void removeAll(IConceptSet set) {
+        if (set == this) {
+            clear();
+        } else if (set instanceof RoaringConceptSet) {
+            andNot(((RoaringConceptSet) set).copy());
+        } else {
+            for (final IntIterator itr = set.iterator(); itr.hasNext();) {
+                remove(itr.next());
+            }
+        }
+    }
+
+    private synchronized void andNot(RoaringConceptSet other) {
+        for (int j = 0; j < other.numContainers; j++) {
+            final int i = indexOf(other.keys[j]);
+            if (i >= 0) {
+                final Container c = containers[i];
+                final int before = c.cardinality();
+                final Container res = c.andNot(other.containers[j]);
+                size += res.cardinality() - before;
+                if (res.cardinality() == 0) {
+                    removeContainer(i);
+                } else {
+                    containers[i] = res;
+                }
+            }
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return 0 == size;
+    }
+
+    public synchronized IntIterator iterator() {
+        final int[] batch = new int[Math.min(size, ITERATOR_BATCH)];
+        final int first = fill(batch, 0);
+        return new IntIterator() {
+            private int length = first;
+
+            private int next = 0;
+
+            /**
+             * The first concept of the next batch, or -1 if there are no more
+             * batches. A batch that is not full is the last one.
+             */
+            private int from = length < ITERATOR_BATCH ? -1 : batch[length - 1] + 1;
+
+            public boolean hasNext() {
+                if (next == length && from >= 0) {
+                    synchronized (RoaringConceptSet.this) {
+                        length = fill(batch, from);
+                    }
+                    next = 0;
+                    from = length < batch.length ? -1 : batch[length - 1] + 1;
+                }
+                return next < length;
+            }
+
+            public int next() {
+                return hasNext() ? batch[next++] : -1;
+            }
+        };
+    }
+
+    /**
+     * Writes the concepts from a concept on, in ascending order, to an array
+     * until it is full. Must be called while holding the lock.
+     *
+     * @param dest
+     * @param from
+     *            the first concept that can be written
+     * @return the number of concepts written
+     */
+    private int fill(int[] dest, int from) {
+        int i = 0 == from ? 0 : indexOf(high(from));
+        int low = low(from);
+        if (i < 0) {
+            i = -i - 1;
+            low = 0;
+        }
+        int pos = 0;
+        for (; i < numContainers && pos < dest.length; i++, low = 0) {
+            pos = containers[i].fill(dest, pos, keys[i] << 16, low);
+        }
+        return pos;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized String toString() {
+        final int[] items = toArray();
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        for (int i = 0; i < items.length; i++) {
+            sb.append(items[i]);
+            if (i + 1 < items.length) {
+                sb.append(", ");
+            }
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    /**
+     * Does nothing - the containers are sized by their contents.
+     */
+    public void grow(int newSize) {
+    }
+
+    /**
+     * Returns the concepts in ascending order.
+     */
+    public synchronized int[] toArray() {
+        final int[] res = new int[size];
+        int pos = 0;
+        for (int i = 0; i < numContainers; i++) {
+            pos = containers[i].fill(res, pos, keys[i] << 16, 0);
+        }
+        return res;
+    }
+
+    /**
+     * Converts every container to its smallest representation. Useful once a
+     * set is not expected to change any more, e.g. after a classification.
+     */
+    public synchronized void runOptimise() {
+        for (int i = 0; i < numContainers; i++) {
+            containers[i] = containers[i].optimise();
+        }
+    }
+
+    /**
+     * Returns an estimate of the memory used by the containers of this set, in
+     * bytes.
+     *
+     * @return
+     */
+    public synchronized long getSizeInBytes() {
+        long res = keys.length * 2L + containers.length * 4L;
+        for (int i = 0; i < numContainers; i++) {
+            res += containers[i].getSizeInBytes();
+        }
+        return res;
+    }
+
+    /**
+     * Returns a deep copy of this set.
+     *
+     * @return
+     */
+    private synchronized RoaringConceptSet copy() {
+        final RoaringConceptSet res = new RoaringConceptSet(numContainers);
+        System.arraycopy(keys, 0, res.keys, 0, numContainers);
+        for (int i = 0; i < numContainers; i++) {
+            res.containers[i] = containers[i].copy();
+        }
+        res.numContainers = numContainers;
+        res.size = size;
+        return res;
+    }
+
+    /**
+     * A set of 16-bit values. Operations that change the contents of a
+     * container might modify it in place or return a new container of a
+     * different type, so the result must always replace the original.
+     */
+    abstract static class Container implements Serializable {
+
+        /**
+         * Serialisation version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        abstract int cardinality();
+
+        abstract boolean contains(char x);
+
+        abstract Container add(char x);
+
+        abstract Container remove(char x);
+
+        /**
+         * Adds all the values of another container. The other container is
+         * not modified but it might be reused in the result.
+         *
+         * @param other
+         * @return
+         */
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        /**
+         * Returns true if all the values in this container are in another
+         * container.
+         *
+         * @param other
+         * @return
+         */
+        abstract boolean isSubsetOf(Container other);
+
+        /**
+         * Writes the values of this container from a value on, in ascending
+         * order, to an array until it is full.
+         *
+         * @param dest
+         * @param pos
+         *            the first position to write to
+         * @param high
+         *            the high bits added to each value
+         * @param from
+         *            the first value that can be written
+         * @return the position after the last value written
+         */
+        abstract int fill(int[] dest, int pos, int high, int from);
+
+        abstract BitmapContainer toBitmap();
+
+        abstract Container copy();
+
+        abstract int numRuns();
+
+        abstract long getSizeInBytes();
+
+        /**
+         * Returns the smallest representation of this container.
+         *
+         * @return
+         */
+        Container optimise() {
+            final int card = cardinality();
+            final int runs = numRuns();
+            final long arrayBytes = card <= ARRAY_MAX ? 2L * card : Long.MAX_VALUE;
+            final long runBytes = runs <= RUNS_MAX ? 4L * runs : Long.MAX_VALUE;
+            final long bitmapBytes = 8L * BITMAP_WORDS;
+            if (runBytes < arrayBytes && runBytes < bitmapBytes) {
+                return this instanceof RunContainer ? this : RunContainer.from(this);
+            } else if (arrayBytes <= bitmapBytes) {
+                return this instanceof ArrayContainer ? this : toBitmap().toArrayContainer();
+            } else {
+                return this instanceof BitmapContainer ? this : toBitmap();
+            }
+        }
+    }
+
+    /**
+     * A sorted array of up to {@link RoaringConceptSet#ARRAY_MAX} values.
+     */
+    static final class ArrayContainer extends Container {
+
+        private static final long serialVersionUID = 1L;
+
+        char[] content;
+
+        int card;
+
+        ArrayContainer(int capacity) {
+            content = new char[capacity];
+        }
+
+        ArrayContainer(char[] content, int card) {
+            this.content = content;
+            this.card = card;
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        boolean contains(char x) {
+            return Arrays.binarySearch(content, 0, card, x) >= 0;
+        }
+
+        Container add(char x) {
+            final int i = Arrays.binarySearch(content, 0, card, x);
+            if (i >= 0) {
+                return this;
+            }
+            if (card == ARRAY_MAX) {
+                return toBitmap().add(x).optimise();
+            }
+            final int pos = -i - 1;
+            if (card == content.length) {
+                content = Arrays.copyOf(content, Math.min(ARRAY_MAX, Math.max(4, card * 2)));
+            }
+            System.arraycopy(content, pos, content, pos + 1, card - pos);
+            content[pos] = x;
+            card++;
+            return this;
+        }
+
+        Container remove(char x) {
+            final int i = Arrays.binarySearch(content, 0, card, x);
+            if (i >= 0) {
+                System.arraycopy(content, i + 1, content, i, card - i - 1);
+                card--;
+            }
+            return this;
+        }
+
+        Container or(Container other) {
+            if (other instanceof ArrayContainer) {
+                final ArrayContainer o = (ArrayContainer) other;
+                final char[] merged = new char[card + o.card];
+                int i = 0, j = 0, k = 0;
+                while (i < card && j < o.card) {
+                    final char a = content[i];
+                    final char b = o.content[j];
+                    if (a < b) {
+                        merged[k++] = a;
+                        i++;
+                    } else if (a > b) {
+                        merged[k++] = b;
+                        j++;
+                    } else {
+                        merged[k++] = a;
+                        i++;
+                        j++;
+                    }
+                }
+                while (i < card) {
+                    merged[k++] = content[i++];
+                }
+                while (j < o.card) {
+                    merged[k++] = o.content[j++];
+                }
+                if (k > ARRAY_MAX) {
+                    return new ArrayContainer(merged, k).toBitmap().optimise();
+                }
+                content = merged;
+                card = k;
+                return this;
+            }
+            return toBitmap().or(other).optimise();
+        }
+
+        Container andNot(Container other) {
+            int k = 0;
+            for (int i = 0; i < card; i++) {
+                final char x = content[i];
+                if (!other.contains(x)) {
+                    content[k++] = x;
+                }
+            }
+            card = k;
+            return this;
+        }
+
+        boolean isSubsetOf(Container other) {
+            if (card > other.cardinality()) {
+                return false;
+            }
+            for (int i = 0; i < card; i++) {
+                if (!other.contains(content[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int fill(int[] dest, int pos, int high, int from) {
+            int i = 0 == from ? 0 : Arrays.binarySearch(content, 0, card, (char) from);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            for (; i < card && pos < dest.length; i++) {
+                dest[pos++] = high | content[i];
+            }
+            return pos;
+        }
+
+        BitmapContainer toBitmap() {
+            final BitmapContainer res = new BitmapContainer();
+            for (int i = 0; i < card; i++) {
+                final char x = content[i];
+                res.words[x >>> 6] |= 1L << x;
+            }
+            res.card = card;
+            return res;
+        }
+
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(content, card), card);
+        }
+
+        int numRuns() {
+            int runs = 0;
+            for (int i = 0; i < card; i++) {
+                if (i == 0 || content[i] != content[i - 1] + 1) {
+                    runs++;
+                }
+            }
+            return runs;
+        }
+
+        long getSizeInBytes() {
+            return 16 + 2L * content.length;
+        }
+    }
+
+    /**
+     * A bitmap of 2^16 bits.
+     */
+    static final class BitmapContainer extends Container {
+
+        private static final long serialVersionUID = 1L;
+
+        final long[] words;
+
+        int card;
+
+        BitmapContainer() {
+            words = new long[BITMAP_WORDS];
+        }
+
+        private BitmapContainer(long[] words, int card) {
+            this.words = words;
+            this.card = card;
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        boolean contains(char x) {
+            return (words[x >>> 6] & (1L << x)) != 0;
+        }
+
+        Container add(char x) {
+            final long before = words[x >>> 6];
+            final long after = before | (1L << x);
+            if (before != after) {
+                words[x >>> 6] = after;
+                card++;
+            }
+            return this;
+        }
+
+        Container remove(char x) {
+            final long before = words[x >>> 6];
+            final long after = before & ~(1L << x);
+            if (before != after) {
+                words[x >>> 6] = after;
+                card--;
+            }
+            return card <= ARRAY_MAX ? toArrayContainer() : this;
+        }
+
+        /**
+         * Sets the bits in [start, end].
+         */
+        private void setRange(int start, int end) {
+            final int firstWord = start >>> 6;
+            final int lastWord = end >>> 6;
+            final long firstMask = -1L << start;
+            final long lastMask = -1L >>> (63 - (end & 63));
+            if (firstWord == lastWord) {
+                words[firstWord] |= firstMask & lastMask;
+            } else {
+                words[firstWord] |= firstMask;
+                for (int w = firstWord + 1; w < lastWord; w++) {
+                    words[w] = -1L;
+                }
+                words[lastWord] |= lastMask;
+            }
+        }
+
+        /**
+         * Clears the bits in [start, end].
+         */
+        private void clearRange(int start, int end) {
+            final int firstWord = start >>> 6;
+            final int lastWord = end >>> 6;
+            final long firstMask = -1L << start;
+            final long lastMask = -1L >>> (63 - (end & 63));
+            if (firstWord == lastWord) {
+                words[firstWord] &= ~(firstMask & lastMask);
+            } else {
+                words[firstWord] &= ~firstMask;
+                for (int w = firstWord + 1; w < lastWord; w++) {
+                    words[w] = 0;
+                }
+                words[lastWord] &= ~lastMask;
+            }
+        }
+
+        private void recount() {
+            int c = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                c += Long.bitCount(words[w]);
+            }
+            card = c;
+        }
+
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                final long[] o = ((BitmapContainer) other).words;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    words[w] |= o[w];
+                }
+                recount();
+            } else if (other instanceof ArrayContainer) {
+                final ArrayContainer o = (ArrayContainer) other;
+                for (int i = 0; i < o.card; i++) {
+                    add(o.content[i]);
+                }
+            } else {
+                final RunContainer o = (RunContainer) other;
+                for (int i = 0; i < o.numRuns; i++) {
+                    setRange(o.start(i), o.end(i));
+                }
+                recount();
+            }
+            return this;
+        }
+
+        Container andNot(Container other) {
+            if (other instanceof BitmapContainer) {
+                final long[] o = ((BitmapContainer) other).words;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    words[w] &= ~o[w];
+                }
+                recount();
+            } else if (other instanceof ArrayContainer) {
+                final ArrayContainer o = (ArrayContainer) other;
+                for (int i = 0; i < o.card; i++) {
+                    final char x = o.content[i];
+                    final long before = words[x >>> 6];
+                    final long after = before & ~(1L << x);
+                    if (before != after) {
+                        words[x >>> 6] = after;
+                        card--;
+                    }
+                }
+            } else {
+                final RunContainer o = (RunContainer) other;
+                for (int i = 0; i < o.numRuns; i++) {
+                    clearRange(o.start(i), o.end(i));
+                }
+                recount();
+            }
+            return card <= ARRAY_MAX ? toArrayContainer() : this;
+        }
+
+        boolean isSubsetOf(Container other) {
+            if (card > other.cardinality()) {
+                return false;
+            }
+            if (other instanceof BitmapContainer) {
+                final long[] o = ((BitmapContainer) other).words;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    if ((words[w] & ~o[w]) != 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    final int x = (w << 6) + Long.numberOfTrailingZeros(word);
+                    if (!other.contains((char) x)) {
+                        return false;
+                    }
+                    word &= word - 1;
+                }
+            }
+            return true;
+        }
+
+        int fill(int[] dest, int pos, int high, int from) {
+            // The shift only uses the low 6 bits of from
+            long word = words[from >>> 6] & (-1L << from);
+            for (int w = from >>> 6;;) {
+                while (word != 0) {
+                    if (pos == dest.length) {
+                        return pos;
+                    }
+                    dest[pos++] = high | ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+                if (++w == BITMAP_WORDS) {
+                    return pos;
+                }
+                word = words[w];
+            }
+        }
+
+        BitmapContainer toBitmap() {
+            return this;
+        }
+
+        ArrayContainer toArrayContainer() {
+            final char[] content = new char[card];
+            int k = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    content[k++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(content, card);
+        }
+
+        Container copy() {
+            return new BitmapContainer(words.clone(), card);
+        }
+
+        int numRuns() {
+            int runs = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                final long word = words[w];
+                // A run starts at every set bit whose previous bit is not set
+                final long prev = (word << 1) | (w > 0 ? words[w - 1] >>> 63 : 0);
+                runs += Long.bitCount(word & ~prev);
+            }
+            return runs;
+        }
+
+        long getSizeInBytes() {
+            return 16 + 8L * BITMAP_WORDS;
+        }
+    }
+
+    /**
+     * A sorted array of runs of consecutive values, stored as [start, length -
+     * 1] pairs.
+     */
+    static final class RunContainer extends Container {
+
+        private static final long serialVersionUID = 1L;
+
+        char[] runs;
+
+        int numRuns;
+
+        int card;
+
+        private RunContainer(char[] runs, int numRuns, int card) {
+            this.runs = runs;
+            this.numRuns = numRuns;
+            this.card = card;
+        }
+
+        static RunContainer from(Container c) {
+            final int n = c.numRuns();
+            final char[] runs = new char[2 * n];
+            final int[] values = new int[c.cardinality()];
+            c.fill(values, 0, 0, 0);
+            int k = -1;
+            for (int i = 0; i < values.length; i++) {
+                if (i == 0 || values[i] != values[i - 1] + 1) {
+                    k++;
+                    runs[2 * k] = (char) values[i];
+                    runs[2 * k + 1] = 0;
+                } else {
+                    runs[2 * k + 1]++;
+                }
+            }
+            return new RunContainer(runs, n, values.length);
+        }
+
+        int start(int i) {
+            return runs[2 * i];
+        }
+
+        int end(int i) {
+            return runs[2 * i] + runs[2 * i + 1];
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        /**
+         * Returns the index of the last run that starts at or before x, or -1.
+         */
+        private int find(char x) {
+            int low = 0;
+            int high = numRuns - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (runs[2 * mid] <= x) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+
+        boolean contains(char x) {
+            final int i = find(x);
+            return i >= 0 && x <= end(i);
+        }
+
+        Container add(char x) {
+            final int i = find(x);
+            if (i >= 0 && x <= end(i)) {
+                return this;
+            }
+            card++;
+            final boolean extendsPrev = i >= 0 && end(i) + 1 == x;
+            final boolean extendsNext = i + 1 < numRuns && start(i + 1) == x + 1;
+            if (extendsPrev && extendsNext) {
+                // Merge runs i and i + 1
+                runs[2 * i + 1] = (char) (end(i + 1) - start(i));
+                System.arraycopy(runs, 2 * (i + 2), runs, 2 * (i + 1), 2 * (numRuns - i - 2));
+                numRuns--;
+            } else if (extendsPrev) {
+                runs[2 * i + 1]++;
+            } else if (extendsNext) {
+                runs[2 * (i + 1)] = x;
+                runs[2 * (i + 1) + 1]++;
+            } else {
+                if (numRuns == RUNS_MAX) {
+                    card--;
+                    return toBitmap().add(x);
+                }
+                if (2 * (numRuns + 1) > runs.length) {
+                    runs = Arrays.copyOf(runs, Math.max(4, runs.length * 2));
+                }
+                final int pos = i + 1;
+                System.arraycopy(runs, 2 * pos, runs, 2 * (pos + 1), 2 * (numRuns - pos));
+                runs[2 * pos] = x;
+                runs[2 * pos + 1] = 0;
+                numRuns++;
+            }
+            return this;
+        }
+
+        Container remove(char x) {
+            if (!contains(x)) {
+                return this;
+            }
+            return toBitmap().remove(x).optimise();
+        }
+
+        Container or(Container other) {
+            return toBitmap().or(other).optimise();
+        }
+
+        Container andNot(Container other) {
+            return toBitmap().andNot(other).optimise();
+        }
+
+        boolean isSubsetOf(Container other) {
+            if (card > other.cardinality()) {
+                return false;
+            }
+            for (int i = 0; i < numRuns; i++) {
+                for (int x = start(i); x <= end(i); x++) {
+                    if (!other.contains((char) x)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        int fill(int[] dest, int pos, int high, int from) {
+            int i = find((char) from);
+            if (i < 0 || end(i) < from) {
+                i++;
+            }
+            for (; i < numRuns; i++) {
+                for (int x = Math.max(start(i), from), end = end(i); x <= end; x++) {
+                    if (pos == dest.length) {
+                        return pos;
+                    }
+                    dest[pos++] = high | x;
+                }
+            }
+            return pos;
+        }
+
+        BitmapContainer toBitmap() {
+            final BitmapContainer res = new BitmapContainer();
+            for (int i = 0; i < numRuns; i++) {
+                res.setRange(start(i), end(i));
+            }
+            res.card = card;
+            return res;
+        }
+
+        Container copy() {
+            return new RunContainer(Arrays.copyOf(runs, 2 * numRuns), numRuns, card);
+        }
+
+        int numRuns() {
+            return numRuns;
+        }
+
+        long getSizeInBytes() {
+            return 16 + 2L * runs.length;
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import au.csiro.snorocket.core.util.AppendOnlyConceptSet;
+import au.csiro.snorocket.core.util.IConceptSet;
+import au.csiro.snorocket.core.util.IntIterator;
+
+public class TestAppendOnlyConceptSet extends TestIConceptSet {
+
+    @Override
+    IConceptSet createSet(int capacity) {
+        return new AppendOnlyConceptSet(capacity);
+    }
+
+    @Override
+    boolean supportsRemove() {
+        return false;
+    }
+
+    @Test
+    public void testInsertionOrder() {
+        final AppendOnlyConceptSet set = new AppendOnlyConceptSet();
+        final int[] values = { 5, 100, 3, 42, 5, 0, 77, 100, 12, 9, 1000, 13 };
+        for (int value : values) {
+            set.add(value);
+        }
+        assertEquals(10, set.size());
+
+        final IntIterator itr = set.iterator();
+        for (int expected : new int[] { 5, 100, 3, 42, 0, 77, 12, 9, 1000, 13 }) {
+            assertTrue(itr.hasNext());
+            assertEquals(expected, itr.next());
+        }
+        assertFalse(itr.hasNext());
+
+        assertArrayEquals(new int[] { 1000, 100, 77, 42, 13, 12, 9, 5, 3, 0 }, set.toArray());
+        assertFalse(set.contains(4));
+    }
+
+    @Test
+    public void testSnapshotIterator() {
+        final AppendOnlyConceptSet set = new AppendOnlyConceptSet();
+        set.add(1);
+        set.add(2);
+        final IntIterator itr = set.iterator();
+        set.add(3);
+
+        int count = 0;
+        while (itr.hasNext()) {
+            itr.next();
+            count++;
+        }
+        assertEquals(2, count);
+        assertTrue(set.contains(3));
+    }
+
+    /**
+     * Readers check that every element they can see through the iterator is
+     * also found by contains() while a writer keeps adding elements.
+     */
+    @Test
+    public void testConcurrentReaders() throws InterruptedException {
+        final AppendOnlyConceptSet set = new AppendOnlyConceptSet();
+        final int limit = 20000;
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final AtomicBoolean done = new AtomicBoolean(false);
+
+        final Thread[] readers = new Thread[3];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                public void run() {
+                    while (!done.get() && !failed.get()) {
+                        final int size = set.size();
+                        int count = 0;
+                        for (final IntIterator itr = set.iterator(); itr.hasNext();) {
+                            if (!set.contains(itr.next())) {
+                                failed.set(true);
+                            }
+                            count++;
+                        }
+                        if (count < size) {
+                            failed.set(true);
+                        }
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        for (int i = 0; i < limit; i++) {
+            set.add((i * 7919) % limit);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertFalse(failed.get());
+        assertEquals(limit, set.size());
+    }
+
+}
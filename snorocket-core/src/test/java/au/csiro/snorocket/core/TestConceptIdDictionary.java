@@ -0,0 +1,154 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import au.csiro.ontology.model.NamedConcept;
+import au.csiro.snorocket.core.model.Existential;
+import au.csiro.snorocket.core.util.ConceptIdDictionary;
+
+public class TestConceptIdDictionary {
+
+    private static final String[] KEYS = { "0", "7", "007", "138875005", "900000000000441003",
+        "1234567890123456789", "-1", "", "http://snomed.info/id/138875005", "K\u00f6rper", "\u75c5\u6c17", "_top_" };
+
+    @Test
+    public void testKeys() {
+        final ConceptIdDictionary dict = new ConceptIdDictionary();
+        for (int i = 0; i < KEYS.length; i++) {
+            assertEquals(-1, dict.get(KEYS[i]));
+            dict.put(KEYS[i], i * 3);
+        }
+        assertEquals(KEYS.length, dict.size());
+        for (int i = 0; i < KEYS.length; i++) {
+            assertEquals(i * 3, dict.get(KEYS[i]));
+            assertEquals(KEYS[i], dict.lookup(i * 3));
+        }
+        assertNull(dict.lookup(1));
+        assertNull(dict.lookup(1000));
+        assertEquals(-1, dict.get("00"));
+        assertEquals(-1, dict.get("Korper"));
+        assertEquals(-1, dict.get("138875006"));
+    }
+
+    @Test
+    public void testRandom() {
+        final Random rnd = new Random(42);
+        final ConceptIdDictionary dict = new ConceptIdDictionary();
+        final Map<String, Integer> expected = new HashMap<String, Integer>();
+        final List<String> keys = new ArrayList<String>();
+        while (keys.size() < 50000) {
+            final long sctid = (long) (rnd.nextDouble() * 1e15);
+            final String key = rnd.nextInt(4) == 0 ? "http://snomed.info/id/" + sctid : Long.toString(sctid);
+            if (!expected.containsKey(key)) {
+                expected.put(key, keys.size());
+                dict.put(key, keys.size());
+                keys.add(key);
+            }
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i, dict.get(keys.get(i)));
+            assertEquals(keys.get(i), dict.lookup(i));
+        }
+
+        // Reverse the ids
+        final int[] newIds = new int[keys.size()];
+        for (int i = 0; i < newIds.length; i++) {
+            newIds[i] = newIds.length - 1 - i;
+        }
+        dict.renumber(newIds);
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(newIds[i], dict.get(keys.get(i)));
+            assertEquals(keys.get(i), dict.lookup(newIds[i]));
+        }
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final ConceptIdDictionary dict = new ConceptIdDictionary();
+        final int numKeys = 20000;
+        final Thread[] readers = new Thread[2];
+        final boolean[] failed = new boolean[readers.length];
+        for (int t = 0; t < readers.length; t++) {
+            final int reader = t;
+            readers[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < numKeys; i++) {
+                        // Wait until the key has been added
+                        int id;
+                        while ((id = dict.get(key(i))) < 0) {
+                            Thread.yield();
+                        }
+                        if (id != i || !key(i).equals(dict.lookup(i))) {
+                            failed[reader] = true;
+                        }
+                    }
+                }
+            };
+            readers[t].start();
+        }
+        for (int i = 0; i < numKeys; i++) {
+            dict.put(key(i), i);
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        for (boolean f : failed) {
+            assertFalse(f);
+        }
+    }
+
+    private static String key(int i) {
+        return (i % 2 == 0) ? Integer.toString(100000000 + i) : "C" + i;
+    }
+
+    @Test
+    public void testFactory() {
+        final CoreFactory factory = new CoreFactory();
+        assertEquals(IFactory.TOP_CONCEPT, factory.getConcept(NamedConcept.TOP));
+        assertEquals(NamedConcept.BOTTOM, factory.lookupConceptId(IFactory.BOTTOM_CONCEPT));
+
+        final int a = factory.getConcept("138875005");
+        final int b = factory.getConcept("http://snomed.info/id/404684003");
+        final Existential e = new Existential(factory.getRole("r"), new au.csiro.snorocket.core.model.Concept(a));
+        final int v = factory.getConcept(e);
+        factory.setVirtualConcept(v, true);
+        assertTrue(factory.conceptExists("138875005"));
+        assertFalse(factory.conceptExists("138875006"));
+        assertTrue(factory.conceptExists(e));
+        assertEquals(a, factory.getConcept("138875005"));
+        assertEquals("138875005", factory.lookupConceptId(a));
+        assertEquals("http://snomed.info/id/404684003", factory.lookupConceptId(b));
+        assertEquals(e, factory.lookupConceptId(v));
+
+        // Swap the concepts
+        final int[] newIds = new int[factory.getTotalConcepts()];
+        for (int i = 0; i < newIds.length; i++) {
+            newIds[i] = i;
+        }
+        newIds[a] = v;
+        newIds[v] = a;
+        factory.renumberConcepts(newIds);
+        assertEquals(v, factory.getConcept("138875005"));
+        assertEquals("138875005", factory.lookupConceptId(v));
+        assertEquals(new Existential(factory.getRole("r"), new au.csiro.snorocket.core.model.Concept(v)),
+                factory.lookupConceptId(a));
+        assertTrue(factory.isVirtualConcept(a));
+        assertEquals(b, factory.getConcept("http://snomed.info/id/404684003"));
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+
+import org.junit.Test;
+
+import au.csiro.ontology.model.Operator;
+import au.csiro.snorocket.core.model.AbstractLiteral;
+import au.csiro.snorocket.core.model.BigIntegerLiteral;
+import au.csiro.snorocket.core.model.Datatype;
+import au.csiro.snorocket.core.model.DateLiteral;
+import au.csiro.snorocket.core.model.DecimalLiteral;
+
+public class TestLiterals {
+
+    private static BigDecimal randomDecimal(Random rnd) {
+        switch (rnd.nextInt(4)) {
+        case 0:
+            // Values that are exact doubles
+            return new BigDecimal(rnd.nextInt(100) / 4.0);
+        case 1:
+            return new BigDecimal(rnd.nextInt(100)).movePointLeft(rnd.nextInt(3));
+        case 2:
+            // Values that differ beyond the precision of a double
+            return new BigDecimal("0.1").add(new BigDecimal(rnd.nextInt(3)).movePointLeft(30));
+        default:
+            return new BigDecimal(new BigInteger(80, rnd)).movePointLeft(rnd.nextInt(40));
+        }
+    }
+
+    @Test
+    public void testDecimalCompare() {
+        final Random rnd = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            final BigDecimal v1 = randomDecimal(rnd);
+            final BigDecimal v2 = randomDecimal(rnd);
+            assertEquals(v1 + " " + v2, v1.compareTo(v2), new DecimalLiteral(v1).compareTo(new DecimalLiteral(v2)));
+        }
+    }
+
+    @Test
+    public void testBigIntegerCompare() {
+        final Random rnd = new Random(2);
+        for (int i = 0; i < 20000; i++) {
+            final BigInteger v1 = new BigInteger(1 + rnd.nextInt(100), rnd).subtract(BigInteger.valueOf(1000));
+            final BigInteger v2 = new BigInteger(1 + rnd.nextInt(100), rnd).subtract(BigInteger.valueOf(1000));
+            assertEquals(v1 + " " + v2, v1.compareTo(v2),
+                    new BigIntegerLiteral(v1).compareTo(new BigIntegerLiteral(v2)));
+        }
+    }
+
+    @Test
+    public void testDateCompare() {
+        final Calendar c1 = new GregorianCalendar(2013, 1, 2);
+        final Calendar c2 = new GregorianCalendar(2013, 1, 3);
+        assertEquals(-1, new DateLiteral(c1).compareTo(new DateLiteral(c2)));
+        assertEquals(1, new DateLiteral(c2).compareTo(new DateLiteral(c1)));
+        assertEquals(0, new DateLiteral(c1).compareTo(new DateLiteral(new GregorianCalendar(2013, 1, 2))));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T o) throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(o);
+        oos.close();
+        final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        return (T) ois.readObject();
+    }
+
+    /**
+     * The comparison keys are not serialised and have to be restored.
+     */
+    @Test
+    public void testSerialisation() throws Exception {
+        final AbstractLiteral d1 = copy(new DecimalLiteral(new BigDecimal("2.5")));
+        assertEquals(1, d1.compareTo(new DecimalLiteral(new BigDecimal("1.5"))));
+        assertEquals(0, d1.compareTo(new DecimalLiteral(new BigDecimal("2.50"))));
+
+        final AbstractLiteral i1 = copy(new BigIntegerLiteral(BigInteger.TEN));
+        assertEquals(-1, i1.compareTo(new BigIntegerLiteral(BigInteger.valueOf(11))));
+
+        final AbstractLiteral t1 = copy(new DateLiteral(new GregorianCalendar(2013, 1, 2)));
+        assertEquals(-1, t1.compareTo(new DateLiteral(new GregorianCalendar(2013, 1, 3))));
+
+        final Datatype dt = new Datatype(3, Operator.GREATER_THAN, new DecimalLiteral(BigDecimal.ONE));
+        final Datatype dtCopy = copy(dt);
+        assertEquals(dt.hashCode(), dtCopy.hashCode());
+        assertTrue(dt.equals(dtCopy));
+        assertTrue(dtCopy.equals(new Datatype(3, Operator.GREATER_THAN, new DecimalLiteral(BigDecimal.ONE))));
+
+        // The cached hash code is not part of the serialised form, so
+        // instances written before it was added are read correctly
+        assertTrue(Modifier.isTransient(Datatype.class.getDeclaredField("hashCode").getModifiers()));
+    }
+
+}
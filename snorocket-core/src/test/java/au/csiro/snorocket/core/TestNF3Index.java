@@ -0,0 +1,108 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestNF3Index {
+
+    /**
+     * Collects the terms visible through the blocks of the index as strings.
+     *
+     * @param index
+     * @return
+     */
+    private Set<String> frozenTerms(NF3Index index) {
+        final Set<String> res = new HashSet<String>();
+        for (NF3Index.Block block : index.getBlocks()) {
+            for (int a = 0; a < 1000; a++) {
+                for (int i = block.start(a); i < block.end(a); i++) {
+                    final int r = block.role(i);
+                    assertEquals(i, block.indexOf(a, r));
+                    for (int j = block.fillerStart(i); j < block.fillerEnd(i); j++) {
+                        res.add(r + "." + a + " [ " + block.filler(j));
+                    }
+                }
+            }
+        }
+        return res;
+    }
+
+    @Test
+    public void testFreeze() {
+        final NF3Index index = new NF3Index();
+        index.add(1, 10, 20);
+        index.add(2, 10, 21);
+        index.add(1, 10, 22);
+        index.add(1, 11, 20);
+        index.add(1, 10, 20);
+
+        // Nothing is visible until the index is frozen
+        assertTrue(frozenTerms(index).isEmpty());
+        assertTrue(index.contains(1, 10, 22));
+
+        index.freeze();
+        final Set<String> terms = frozenTerms(index);
+        assertEquals(4, terms.size());
+        assertTrue(terms.contains("1.10 [ 20"));
+        assertTrue(terms.contains("2.10 [ 21"));
+        assertTrue(terms.contains("1.10 [ 22"));
+        assertTrue(terms.contains("1.11 [ 20"));
+
+        assertTrue(index.contains(2, 10, 21));
+        assertFalse(index.contains(2, 10, 20));
+        assertFalse(index.contains(1, 12, 20));
+        assertEquals(-1, index.getBlocks()[0].indexOf(10, 3));
+        assertEquals(-1, index.getBlocks()[0].indexOf(5, 1));
+        assertEquals(-1, index.getBlocks()[0].indexOf(500, 1));
+    }
+
+    @Test
+    public void testOverlay() {
+        final NF3Index index = new NF3Index();
+        final Set<String> expected = new HashSet<String>();
+        final Random rnd = new Random(7);
+        for (int k = 0; k < 500; k++) {
+            final int r = rnd.nextInt(5);
+            final int a = rnd.nextInt(100);
+            final int b = rnd.nextInt(100);
+            index.add(r, a, b);
+            expected.add(r + "." + a + " [ " + b);
+        }
+        index.freeze();
+        assertEquals(1, index.getBlocks().length);
+
+        // A few new terms go into an overlay
+        index.add(7, 3, 4);
+        index.add(7, 150, 4);
+        expected.add("7.3 [ 4");
+        expected.add("7.150 [ 4");
+        index.freeze();
+        assertEquals(2, index.getBlocks().length);
+        assertEquals(expected, frozenTerms(index));
+
+        // Many new terms cause the overlay to be merged
+        for (int k = 0; k < 200; k++) {
+            final int r = rnd.nextInt(10);
+            final int a = rnd.nextInt(200);
+            final int b = rnd.nextInt(200);
+            index.add(r, a, b);
+            expected.add(r + "." + a + " [ " + b);
+        }
+        index.freeze();
+        assertEquals(1, index.getBlocks().length);
+        assertEquals(expected, frozenTerms(index));
+        assertEquals(expected.size(), index.getTerms().size());
+    }
+
+}
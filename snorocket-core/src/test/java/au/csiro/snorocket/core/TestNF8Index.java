@@ -0,0 +1,146 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import au.csiro.ontology.model.Operator;
+import au.csiro.snorocket.core.axioms.NF8;
+import au.csiro.snorocket.core.model.AbstractLiteral;
+import au.csiro.snorocket.core.model.Datatype;
+import au.csiro.snorocket.core.model.DecimalLiteral;
+import au.csiro.snorocket.core.model.FloatLiteral;
+import au.csiro.snorocket.core.model.IntegerLiteral;
+import au.csiro.snorocket.core.model.StringLiteral;
+import au.csiro.snorocket.core.util.IntIterator;
+
+public class TestNF8Index {
+
+    private static final Operator[] OPERATORS = Operator.values();
+
+    private static AbstractLiteral randomLiteral(Random rnd, int type) {
+        switch (type) {
+        case 0:
+            return new IntegerLiteral(rnd.nextInt(20));
+        case 1:
+            return new FloatLiteral(rnd.nextInt(20) / 2.0f);
+        case 2:
+            // Equal values with different scales
+            return new DecimalLiteral(new BigDecimal(rnd.nextInt(20)).setScale(rnd.nextInt(2)));
+        default:
+            return new StringLiteral(Character.toString((char) ('a' + rnd.nextInt(20))));
+        }
+    }
+
+    private static Datatype randomDatatype(Random rnd, int feature, int type) {
+        return new Datatype(feature, OPERATORS[rnd.nextInt(OPERATORS.length)], randomLiteral(rnd, type));
+    }
+
+    private static List<Integer> match(NF8Index index, Datatype d) {
+        final List<Integer> res = new ArrayList<Integer>();
+        for (final IntIterator itr = index.match(d); itr.hasNext();) {
+            res.add(itr.next());
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    /**
+     * The loop over all the terms of a feature that the index replaces.
+     */
+    private static List<Integer> scan(List<NF8> terms, Datatype d) {
+        final List<Integer> res = new ArrayList<Integer>();
+        for (NF8 nf8 : terms) {
+            if (nf8.lhsD.getFeature() == d.getFeature()
+                    && nf8.lhsD.getLiteral().getClass() == d.getLiteral().getClass()
+                    && NF8Index.matches(d, nf8.lhsD)) {
+                res.add(nf8.rhsB);
+            }
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    @Test
+    public void testSameResultsAsScan() {
+        final Random rnd = new Random(1);
+        final NF8Index index = new NF8Index();
+        final List<NF8> terms = new ArrayList<NF8>();
+
+        // Feature f uses literals of type f % 4; feature 3 mixes all of them
+        for (int i = 0; i < 2000; i++) {
+            final int f = rnd.nextInt(4);
+            final int type = f == 3 ? rnd.nextInt(4) : f;
+            final NF8 nf8 = new NF8(randomDatatype(rnd, f, type), i);
+            terms.add(nf8);
+            index.add(nf8);
+            // Some queries are answered with pending terms
+            if (i % 500 == 0) {
+                final Datatype d = randomDatatype(rnd, f, type);
+                assertEquals(scan(terms, d), match(index, d));
+            }
+            if (i == 1000) {
+                index.freeze();
+            }
+        }
+        index.freeze();
+        assertEquals(terms.size(), index.size());
+
+        for (int i = 0; i < 5000; i++) {
+            final int f = rnd.nextInt(5);
+            final Datatype d = randomDatatype(rnd, f, f == 3 ? rnd.nextInt(4) : f % 4);
+            assertEquals(scan(terms, d), match(index, d));
+        }
+    }
+
+    @Test
+    public void testRanges() {
+        final NF8Index index = new NF8Index();
+        for (int v = 0; v < 10; v++) {
+            index.add(new NF8(new Datatype(0, Operator.GREATER_THAN, new IntegerLiteral(v)), v));
+            index.add(new NF8(new Datatype(0, Operator.LESS_THAN_EQUALS, new IntegerLiteral(v)), 100 + v));
+        }
+        index.freeze();
+
+        // 5 > v for v < 5 and 5 <= v for v >= 5
+        final List<Integer> res = match(index, new Datatype(0, Operator.EQUALS, new IntegerLiteral(5)));
+        assertEquals(10, res.size());
+        for (int v = 0; v < 5; v++) {
+            assertTrue(res.contains(v));
+            assertFalse(res.contains(100 + v));
+        }
+        for (int v = 5; v < 10; v++) {
+            assertTrue(res.contains(100 + v));
+        }
+
+        // Other features and literal types do not match anything
+        assertTrue(match(index, new Datatype(1, Operator.EQUALS, new IntegerLiteral(5))).isEmpty());
+        assertTrue(match(index, new Datatype(0, Operator.EQUALS, new FloatLiteral(5))).isEmpty());
+    }
+
+    @Test
+    public void testEqualsUsesEquality() {
+        final NF8Index index = new NF8Index();
+        index.add(new NF8(new Datatype(0, Operator.EQUALS, new DecimalLiteral(new BigDecimal("1.0"))), 1));
+        index.add(new NF8(new Datatype(0, Operator.EQUALS, new DecimalLiteral(new BigDecimal("1.00"))), 2));
+        index.freeze();
+
+        final List<Integer> res = match(index, new Datatype(0, Operator.EQUALS,
+                new DecimalLiteral(new BigDecimal("1.0"))));
+        assertEquals(1, res.size());
+        assertEquals(1, res.get(0).intValue());
+    }
+
+}
@@ -5,9 +5,12 @@
 package au.csiro.snorocket.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Test;
@@ -27,6 +30,7 @@ import au.csiro.ontology.model.Operator;
 import au.csiro.ontology.model.Role;
 import au.csiro.ontology.model.RoleInclusion;
 import au.csiro.snorocket.core.axioms.Inclusion;
+import au.csiro.snorocket.core.model.AbstractConcept;
 
 /**
  * Main unit tests for Snorocket.
@@ -444,5 +448,235 @@ public class TestNormalisedOntology {
         assertTrue(criticalDiseaseRes.size() == 1);
         assertTrue(criticalDiseaseRes.contains(o.getTopNode()));
     }
-    
+
+    /**
+     * Tests that an NF3 term added incrementally is found through the
+     * subsumers of an existing context when a new edge to it is added.
+     */
+    @Test
+    public void testIncrementalNF3() {
+        IFactory factory = new CoreFactory();
+
+        NamedRole r = new NamedRole("r");
+        NamedConcept a = new NamedConcept("A");
+        NamedConcept b = new NamedConcept("B");
+        NamedConcept c = new NamedConcept("C");
+        NamedConcept d = new NamedConcept("D");
+        NamedConcept e = new NamedConcept("E");
+
+        Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(a, new Existential(r, b)));
+        axioms.add(new ConceptInclusion(b, c));
+
+        NormalisedOntology o = new NormalisedOntology(factory, axioms);
+        o.classify();
+
+        // C is already a subsumer of B, and E gets a new edge to B
+        Set<Axiom> incAxioms = new HashSet<Axiom>();
+        incAxioms.add(new ConceptInclusion(new Existential(r, c), d));
+        incAxioms.add(new ConceptInclusion(e, new Existential(r, b)));
+        o.loadIncremental(incAxioms);
+        o.classifyIncremental();
+
+        final int dId = factory.getConcept(d.getId());
+        assertTrue(o.getContextIndex().get(factory.getConcept(a.getId())).getS().contains(dId));
+        assertTrue(o.getContextIndex().get(factory.getConcept(e.getId())).getS().contains(dId));
+    }
+
+    /**
+     * Tests that cycles in the role hierarchy are handled when computing the
+     * role closures, both when loading and when adding role inclusions
+     * incrementally.
+     */
+    @Test
+    public void testRoleHierarchyCycle() {
+        IFactory factory = new CoreFactory();
+
+        NamedRole r = new NamedRole("r");
+        NamedRole s = new NamedRole("s");
+        NamedRole t = new NamedRole("t");
+        NamedRole u = new NamedRole("u");
+        NamedConcept a = new NamedConcept("A");
+        NamedConcept b = new NamedConcept("B");
+        NamedConcept c = new NamedConcept("C");
+        NamedConcept d = new NamedConcept("D");
+
+        Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new RoleInclusion(r, s));
+        axioms.add(new RoleInclusion(s, r));
+        axioms.add(new RoleInclusion(s, t));
+        axioms.add(new ConceptInclusion(a, new Existential(r, b)));
+        axioms.add(new ConceptInclusion(new Existential(t, b), c));
+        axioms.add(new ConceptInclusion(new Existential(u, b), d));
+
+        NormalisedOntology o = new NormalisedOntology(factory, axioms);
+
+        final int rId = factory.getRole(r.getId());
+        final int sId = factory.getRole(s.getId());
+        final int tId = factory.getRole(t.getId());
+        final int uId = factory.getRole(u.getId());
+        assertTrue(o.getRoleClosure(rId).contains(sId));
+        assertTrue(o.getRoleClosure(rId).contains(tId));
+        assertTrue(o.getRoleClosure(sId).contains(rId));
+        assertFalse(o.getRoleClosure(tId).contains(rId));
+
+        o.classify();
+        o.buildTaxonomy();
+
+        assertTrue(o.getEquivalents(a.getId()).getParents().contains(o.getEquivalents(c.getId())));
+        assertFalse(o.getEquivalents(a.getId()).getParents().contains(o.getEquivalents(d.getId())));
+
+        // Close the cycle through t and add a new super role
+        Set<Axiom> incAxioms = new HashSet<Axiom>();
+        incAxioms.add(new RoleInclusion(t, r));
+        incAxioms.add(new RoleInclusion(t, u));
+        o.loadIncremental(incAxioms);
+
+        assertTrue(o.getRoleClosure(rId).contains(uId));
+        assertTrue(o.getRoleClosure(sId).contains(uId));
+        assertTrue(o.getRoleClosure(tId).contains(rId));
+        assertFalse(o.getRoleClosure(uId).contains(rId));
+    }
+
+    /**
+     * Tests that normalising in parallel creates the same concepts and
+     * results in the same taxonomy as the sequential normalisation.
+     */
+    @Test
+    public void testParallelNormalisation() {
+        final NamedRole r = new NamedRole("r");
+        final NamedRole s = new NamedRole("s");
+        final Set<Axiom> axioms = new HashSet<Axiom>();
+        for (int i = 0; i < 5000; i++) {
+            final NamedConcept c = new NamedConcept("C" + i);
+            final NamedConcept parent = new NamedConcept("C" + (i / 2));
+            final NamedConcept filler = new NamedConcept("C" + (i / 3));
+            axioms.add(new ConceptInclusion(c, new Conjunction(new Concept[] { parent,
+                new Existential(r, new Conjunction(new Concept[] { filler, new Existential(s, parent) })) })));
+            axioms.add(new ConceptInclusion(new Conjunction(new Concept[] { new NamedConcept("C" + (i % 50)),
+                new Existential(r, new NamedConcept("C" + (i % 7))) }), new NamedConcept("D" + (i % 100))));
+        }
+        axioms.add(new RoleInclusion(new Role[] { r, s, r }, s));
+
+        final NormalisedOntology[] ontologies = new NormalisedOntology[2];
+        for (int i = 0; i < ontologies.length; i++) {
+            ontologies[i] = new NormalisedOntology(new CoreFactory());
+            ontologies[i].setNumThreads(4);
+            ontologies[i].setParallelNormalisation(i == 1);
+            ontologies[i].loadAxioms(axioms);
+            ontologies[i].classify();
+            ontologies[i].buildTaxonomy();
+        }
+
+        final IFactory seq = ontologies[0].getFactory();
+        final IFactory par = ontologies[1].getFactory();
+        assertEquals(seq.getTotalConcepts(), par.getTotalConcepts());
+        assertEquals(seq.getTotalRoles(), par.getTotalRoles());
+        for (int i = 0; i < 5000; i++) {
+            final String id = "C" + i;
+            assertEquals(getIds(ontologies[0].getEquivalents(id).getParents()),
+                    getIds(ontologies[1].getEquivalents(id).getParents()));
+        }
+    }
+
+    /**
+     * Tests that the complex concepts created by the normalisation are
+     * interned in the factory, so the keys of the virtual concepts share
+     * their parts, also after the concepts are renumbered, and that the
+     * table is dropped once the axioms are loaded.
+     */
+    @Test
+    public void testInternedConcepts() {
+        final CoreFactory factory = new CoreFactory();
+        final int r = factory.getRole("r");
+        final au.csiro.snorocket.core.model.Concept a = new au.csiro.snorocket.core.model.Concept(
+                factory.getConcept("A"));
+        final au.csiro.snorocket.core.model.Concept b = new au.csiro.snorocket.core.model.Concept(
+                factory.getConcept("B"));
+        assertTrue(factory.intern(a) == a);
+
+        final au.csiro.snorocket.core.model.Existential e1 = factory.intern(
+                new au.csiro.snorocket.core.model.Existential(r, a));
+        final au.csiro.snorocket.core.model.Existential e2 = factory.intern(
+                new au.csiro.snorocket.core.model.Existential(r, new au.csiro.snorocket.core.model.Concept(
+                        a.hashCode())));
+        assertTrue(e1 == e2);
+        final au.csiro.snorocket.core.model.Conjunction c1 = factory.intern(
+                new au.csiro.snorocket.core.model.Conjunction(new AbstractConcept[] { b, e1 }));
+        final au.csiro.snorocket.core.model.Conjunction c2 = factory.intern(
+                new au.csiro.snorocket.core.model.Conjunction(new AbstractConcept[] { e2, b }));
+        assertTrue(c1 == c2);
+
+        final NamedRole s = new NamedRole("s");
+        final NamedConcept c = new NamedConcept("C");
+        final NamedConcept d = new NamedConcept("D");
+        final Concept filler = new Conjunction(new Concept[] { c, new Existential(s, d) });
+        final Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(new NamedConcept("E"), new Existential(s, filler)));
+        axioms.add(new ConceptInclusion(new NamedConcept("F"), new Existential(s, filler)));
+        axioms.add(new ConceptInclusion(new Existential(s, filler), new NamedConcept("G")));
+        final NormalisedOntology o = new NormalisedOntology(factory);
+        o.loadAxioms(axioms);
+        assertVirtualConceptsShareParts(factory);
+
+        // The table was dropped
+        assertFalse(factory.intern(new au.csiro.snorocket.core.model.Existential(r, a)) == e1);
+
+        // Swap two concepts
+        final int[] newIds = new int[factory.getTotalConcepts()];
+        for (int i = 0; i < newIds.length; i++) {
+            newIds[i] = i;
+        }
+        newIds[a.hashCode()] = b.hashCode();
+        newIds[b.hashCode()] = a.hashCode();
+        factory.renumberConcepts(newIds);
+        assertVirtualConceptsShareParts(factory);
+    }
+
+    private static void assertVirtualConceptsShareParts(IFactory factory) {
+        final Map<AbstractConcept, AbstractConcept> parts = new HashMap<AbstractConcept, AbstractConcept>();
+        int numShared = 0;
+        for (int i = 0; i < factory.getTotalConcepts(); i++) {
+            if (factory.isVirtualConcept(i)) {
+                numShared += addParts((AbstractConcept) factory.lookupConceptId(i), parts);
+            }
+        }
+        assertTrue(numShared > 0);
+    }
+
+    /**
+     * Adds a concept and its complex parts, checking that the parts seen
+     * before are the same instances.
+     * 
+     * @return the number of parts seen before
+     */
+    private static int addParts(AbstractConcept concept, Map<AbstractConcept, AbstractConcept> parts) {
+        if (concept instanceof au.csiro.snorocket.core.model.Concept) {
+            return 0;
+        }
+        final AbstractConcept seen = parts.get(concept);
+        if (null != seen) {
+            assertTrue(seen == concept);
+            return 1;
+        }
+        parts.put(concept, concept);
+        int res = 0;
+        if (concept instanceof au.csiro.snorocket.core.model.Existential) {
+            res += addParts(((au.csiro.snorocket.core.model.Existential) concept).getConcept(), parts);
+        } else if (concept instanceof au.csiro.snorocket.core.model.Conjunction) {
+            for (AbstractConcept conjunct : ((au.csiro.snorocket.core.model.Conjunction) concept).getConcepts()) {
+                res += addParts(conjunct, parts);
+            }
+        }
+        return res;
+    }
+
+    private static Set<String> getIds(Set<Node> nodes) {
+        final Set<String> res = new HashSet<String>();
+        for (Node node : nodes) {
+            res.addAll(node.getEquivalentConcepts());
+        }
+        return res;
+    }
+
 }
@@ -0,0 +1,218 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import au.csiro.snorocket.core.util.IConceptSet;
+import au.csiro.snorocket.core.util.IntIterator;
+import au.csiro.snorocket.core.util.RoaringConceptSet;
+import au.csiro.snorocket.core.util.SparseConceptHashSet;
+
+public class TestRoaringConceptSet extends TestIConceptSet {
+
+    @Override
+    IConceptSet createSet(int capacity) {
+        return new RoaringConceptSet(capacity);
+    }
+
+    @Override
+    boolean supportsRemove() {
+        return true;
+    }
+
+    private static int[] toArray(TreeSet<Integer> set) {
+        final int[] res = new int[set.size()];
+        int i = 0;
+        for (Integer value : set) {
+            res[i++] = value;
+        }
+        return res;
+    }
+
+    private static void assertSameContents(TreeSet<Integer> expected, RoaringConceptSet set) {
+        assertEquals(expected.size(), set.size());
+        final int[] values = toArray(expected);
+        assertArrayEquals(values, set.toArray());
+
+        // The iterator returns the concepts in ascending order
+        int i = 0;
+        for (final IntIterator itr = set.iterator(); itr.hasNext();) {
+            assertEquals(values[i++], itr.next());
+        }
+        assertEquals(values.length, i);
+    }
+
+    /**
+     * Adds concepts with different densities so all the container types are
+     * used.
+     *
+     * @param set
+     * @param expected
+     * @param rnd
+     * @param base
+     */
+    private static void fill(RoaringConceptSet set, TreeSet<Integer> expected, Random rnd, int base) {
+        // Sparse chunk - array container
+        for (int i = 0; i < 100; i++) {
+            final int value = base + rnd.nextInt(1 << 16);
+            set.add(value);
+            expected.add(value);
+        }
+        // Dense chunk - bitmap container
+        for (int i = 0; i < 10000; i++) {
+            final int value = base + (1 << 16) + rnd.nextInt(1 << 16);
+            set.add(value);
+            expected.add(value);
+        }
+        // Consecutive concepts - run container
+        final int start = base + (2 << 16) + rnd.nextInt(1000);
+        for (int value = start; value < start + 20000; value++) {
+            set.add(value);
+            expected.add(value);
+        }
+    }
+
+    @Test
+    public void testContainers() {
+        final Random rnd = new Random(1);
+        final RoaringConceptSet set = new RoaringConceptSet();
+        final TreeSet<Integer> expected = new TreeSet<Integer>();
+        fill(set, expected, rnd, 0);
+        assertSameContents(expected, set);
+
+        final long before = set.getSizeInBytes();
+        set.runOptimise();
+        assertTrue(set.getSizeInBytes() <= before);
+        assertSameContents(expected, set);
+
+        for (Integer value : expected) {
+            assertTrue(set.contains(value));
+        }
+        assertFalse(set.contains(3 << 16));
+
+        // Removing concepts converts the containers back
+        for (int i = 0; i < 15000; i++) {
+            final int value = rnd.nextInt(3 << 16);
+            set.remove(value);
+            expected.remove(value);
+        }
+        assertSameContents(expected, set);
+
+        // Adding to a run container
+        set.runOptimise();
+        for (int i = 0; i < 5000; i++) {
+            final int value = (2 << 16) + rnd.nextInt(1 << 16);
+            set.add(value);
+            expected.add(value);
+        }
+        assertSameContents(expected, set);
+    }
+
+    /**
+     * The iterators read the containers in place, so the set can be modified
+     * while it is iterated.
+     */
+    @Test
+    public void testIteratorWhileModifying() {
+        final Random rnd = new Random(3);
+        final RoaringConceptSet set = new RoaringConceptSet();
+        final TreeSet<Integer> expected = new TreeSet<Integer>();
+        fill(set, expected, rnd, 0);
+        set.runOptimise();
+
+        // Removing the concepts already returned and adding concepts before
+        // the current one does not change what is returned
+        int i = 0;
+        final int[] values = toArray(expected);
+        for (final IntIterator itr = set.iterator(); itr.hasNext();) {
+            final int value = itr.next();
+            assertEquals(values[i++], value);
+            set.remove(value);
+            if (value > 0 && !expected.contains(value - 1)) {
+                set.add(value - 1);
+            }
+        }
+        assertEquals(values.length, i);
+
+        // Once a set is larger than a batch, the concepts added after the
+        // current one are returned
+        set.clear();
+        for (int value = 10; value < 1010; value++) {
+            set.add(value);
+        }
+        final IntIterator itr = set.iterator();
+        assertEquals(10, itr.next());
+        set.add(5);
+        set.add(1 << 16);
+        for (int value = 11; value < 1010; value++) {
+            assertEquals(value, itr.next());
+        }
+        assertEquals(1 << 16, itr.next());
+        assertFalse(itr.hasNext());
+        assertEquals(-1, itr.next());
+    }
+
+    @Test
+    public void testBulkOperations() {
+        final Random rnd = new Random(2);
+        final RoaringConceptSet a = new RoaringConceptSet();
+        final TreeSet<Integer> expectedA = new TreeSet<Integer>();
+        fill(a, expectedA, rnd, 0);
+
+        final RoaringConceptSet b = new RoaringConceptSet();
+        final TreeSet<Integer> expectedB = new TreeSet<Integer>();
+        fill(b, expectedB, rnd, 1 << 15);
+        b.runOptimise();
+
+        assertFalse(a.containsAll(b));
+
+        final RoaringConceptSet union = new RoaringConceptSet();
+        union.addAll(a);
+        union.addAll(b);
+        final TreeSet<Integer> expectedUnion = new TreeSet<Integer>(expectedA);
+        expectedUnion.addAll(expectedB);
+        assertSameContents(expectedUnion, union);
+        assertTrue(union.containsAll(a));
+        assertTrue(union.containsAll(b));
+
+        union.removeAll(b);
+        expectedUnion.removeAll(expectedB);
+        assertSameContents(expectedUnion, union);
+        assertTrue(a.containsAll(union));
+
+        // Bulk operations with other implementations
+        final IConceptSet other = new SparseConceptHashSet();
+        for (int i = 0; i < 1000; i++) {
+            other.add(rnd.nextInt(3 << 16));
+        }
+        a.addAll(other);
+        assertTrue(a.containsAll(other));
+        a.removeAll(other);
+        for (final IntIterator itr = other.iterator(); itr.hasNext();) {
+            assertFalse(a.contains(itr.next()));
+        }
+    }
+
+    @Test
+    public void testFactory() {
+        final IConceptSet initial = new SparseConceptHashSet();
+        initial.add(10);
+        initial.add(100000);
+        final IConceptSet set = ConceptSetFactory.ROARING.createConceptSet(initial);
+        assertTrue(set instanceof RoaringConceptSet);
+        assertEquals(2, set.size());
+        assertTrue(set.contains(100000));
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import au.csiro.snorocket.core.concurrent.RoleConceptList;
+import au.csiro.snorocket.core.util.IntIterator;
+
+public class TestRoleConceptList {
+
+    private static List<Integer> toList(IntIterator itr) {
+        final List<Integer> res = new ArrayList<Integer>();
+        while (itr.hasNext()) {
+            res.add(itr.next());
+        }
+        return res;
+    }
+
+    @Test
+    public void testRoles() {
+        final RoleConceptList list = new RoleConceptList(4);
+        assertTrue(list.isEmpty(0));
+        assertFalse(list.iterator(0).hasNext());
+
+        list.add(1, 10);
+        list.add(3, 30);
+        list.add(1, 11);
+        // Roles beyond the expected number are also supported
+        list.add(9, 90);
+        list.add(1, 12);
+
+        assertEquals(Arrays.asList(12, 11, 10), toList(list.iterator(1)));
+        assertEquals(Arrays.asList(30), toList(list.iterator(3)));
+        assertEquals(Arrays.asList(90), toList(list.iterator(9)));
+        assertTrue(list.isEmpty(0));
+        assertTrue(list.isEmpty(2));
+        assertTrue(list.isEmpty(100));
+    }
+
+    @Test
+    public void testSnapshotIterator() {
+        final RoleConceptList list = new RoleConceptList(1);
+        list.add(0, 1);
+        list.add(0, 2);
+        final IntIterator itr = list.iterator(0);
+        list.add(0, 3);
+        assertEquals(Arrays.asList(2, 1), toList(itr));
+    }
+
+    /**
+     * Readers check that the list of a role always contains the concepts
+     * that had been added before they started iterating, in order, while a
+     * writer keeps adding concepts.
+     */
+    @Test
+    public void testConcurrentReaders() throws InterruptedException {
+        final int numRoles = 5;
+        final int limit = 50000;
+        final RoleConceptList list = new RoleConceptList(1);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final AtomicBoolean done = new AtomicBoolean(false);
+
+        final Thread[] readers = new Thread[3];
+        for (int i = 0; i < readers.length; i++) {
+            final int r = i % numRoles;
+            readers[i] = new Thread(new Runnable() {
+                public void run() {
+                    while (!done.get() && !failed.get()) {
+                        // Concepts of role r are r, r + numRoles, ...
+                        int expected = -1;
+                        for (final IntIterator itr = list.iterator(r); itr.hasNext();) {
+                            final int c = itr.next();
+                            if (c % numRoles != r || (expected >= 0 && c != expected)) {
+                                failed.set(true);
+                            }
+                            expected = c - numRoles;
+                        }
+                        if (expected >= numRoles) {
+                            failed.set(true);
+                        }
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        for (int c = 0; c < limit; c++) {
+            list.add(c % numRoles, c);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertFalse(failed.get());
+        assertEquals(limit / numRoles, toList(list.iterator(0)).size());
+    }
+
+}
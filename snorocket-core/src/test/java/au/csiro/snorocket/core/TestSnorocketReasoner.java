@@ -5,15 +5,36 @@
 package au.csiro.snorocket.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import junit.framework.Assert;
 
 import org.junit.Test;
@@ -25,11 +46,17 @@ import au.csiro.ontology.model.Axiom;
 import au.csiro.ontology.model.Concept;
 import au.csiro.ontology.model.ConceptInclusion;
 import au.csiro.ontology.model.Conjunction;
+import au.csiro.ontology.model.Datatype;
 import au.csiro.ontology.model.Existential;
+import au.csiro.ontology.model.IntegerLiteral;
 import au.csiro.ontology.model.NamedConcept;
+import au.csiro.ontology.model.NamedFeature;
 import au.csiro.ontology.model.NamedRole;
+import au.csiro.ontology.model.Operator;
 import au.csiro.ontology.model.Role;
 import au.csiro.ontology.model.RoleInclusion;
+import au.csiro.snorocket.core.concurrent.SaturationCounter;
+import au.csiro.snorocket.core.concurrent.SaturationStatistics;
 import au.csiro.snorocket.core.util.Utils;
 
 /**
@@ -621,6 +648,690 @@ public class TestSnorocketReasoner {
         assertTrue(bottomParents.contains(o.getEquivalents(b.getId())));
     }
 
+    /**
+     * Bottom propagates to the predecessors of an unsatisfiable concept
+     * (r.BOTTOM [ BOTTOM).
+     */
+    @Test
+    public void testBottomPropagation() {
+        IFactory factory = new CoreFactory();
+
+        // Add concepts
+        NamedConcept a = new NamedConcept("A");
+        NamedConcept b = new NamedConcept("B");
+        NamedConcept c = new NamedConcept("C");
+        NamedConcept d = new NamedConcept("D");
+        NamedConcept e = new NamedConcept("E");
+        NamedConcept f = new NamedConcept("F");
+        NamedRole r = new NamedRole("r");
+        NamedRole s = new NamedRole("s");
+
+        // Add axioms
+        Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(a, new Existential(r, b)));
+        axioms.add(new ConceptInclusion(c, new Existential(s, a)));
+        axioms.add(new ConceptInclusion(b, NamedConcept.BOTTOM_CONCEPT));
+        axioms.add(new ConceptInclusion(d, new Existential(r, NamedConcept.BOTTOM_CONCEPT)));
+        axioms.add(new ConceptInclusion(e, new Existential(r, f)));
+        axioms.add(new ConceptInclusion(e, c));
+
+        // Classify
+        NormalisedOntology o = new NormalisedOntology(factory, axioms);
+        o.classify();
+
+        // Build taxonomy
+        o.buildTaxonomy();
+
+        // Test results
+        Node bottomNode = o.getBottomNode();
+        Set<String> unsatisfiable = bottomNode.getEquivalentConcepts();
+        assertEquals(6, unsatisfiable.size());
+        assertTrue(unsatisfiable.contains(a.getId()));
+        assertTrue(unsatisfiable.contains(b.getId()));
+        assertTrue(unsatisfiable.contains(c.getId()));
+        assertTrue(unsatisfiable.contains(d.getId()));
+        assertTrue(unsatisfiable.contains(e.getId()));
+
+        Node fNode = o.getEquivalents(f.getId());
+        assertTrue(fNode.getParents().contains(o.getTopNode()));
+    }
+
+    private static NormalisedOntology classify(Set<Axiom> axioms, boolean lazyContexts) {
+        return classify(axioms, lazyContexts, false);
+    }
+
+    private static NormalisedOntology classify(Set<Axiom> axioms, boolean lazyContexts, boolean toldSeeding) {
+        NormalisedOntology o = new NormalisedOntology(new CoreFactory(), axioms);
+        o.setLazyContexts(lazyContexts);
+        o.setToldSeeding(toldSeeding);
+        o.classify();
+        o.buildTaxonomy();
+        return o;
+    }
+
+    private static Set<String> getParentIds(NormalisedOntology o, String id) {
+        Set<String> res = new HashSet<String>();
+        for (Node parent : o.getEquivalents(id).getParents()) {
+            res.addAll(parent.getEquivalentConcepts());
+        }
+        return res;
+    }
+
+    @Test
+    public void testLazyContexts() {
+        NamedConcept a = new NamedConcept("A");
+        NamedConcept b = new NamedConcept("B");
+        NamedConcept c = new NamedConcept("C");
+        NamedConcept d = new NamedConcept("D");
+        NamedConcept e = new NamedConcept("E");
+        NamedConcept f = new NamedConcept("F");
+        NamedConcept g = new NamedConcept("G");
+        NamedConcept h = new NamedConcept("H");
+        NamedConcept i = new NamedConcept("I");
+        NamedRole r = new NamedRole("r");
+        NamedRole s = new NamedRole("s");
+
+        // The filler of the first existential is a virtual concept that is
+        // only reached from A, and the conjunction in the last axiom is a
+        // virtual concept that is never reached
+        Concept bsc = new Conjunction(new Concept[] { b, new Existential(s, c) });
+        Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(a, new Existential(r, bsc)));
+        axioms.add(new ConceptInclusion(new Existential(r, b), d));
+        axioms.add(new ConceptInclusion(new Existential(r, new Existential(s, g)), e));
+        axioms.add(new ConceptInclusion(c, g));
+        axioms.add(new ConceptInclusion(bsc, f));
+        axioms.add(new ConceptInclusion(new Conjunction(new Concept[] { h, new Existential(s, g) }), i));
+
+        NormalisedOntology eager = classify(axioms, false);
+        NormalisedOntology lazy = classify(axioms, true);
+
+        assertTrue(lazy.getContextIndex().size() < eager.getContextIndex().size());
+        for (NamedConcept nc : new NamedConcept[] { a, b, c, d, e, f, g, h, i }) {
+            assertEquals(getParentIds(eager, nc.getId()), getParentIds(lazy, nc.getId()));
+        }
+        Set<String> aParents = getParentIds(lazy, a.getId());
+        assertEquals(2, aParents.size());
+        assertTrue(aParents.contains(d.getId()));
+        assertTrue(aParents.contains(e.getId()));
+    }
+
+    /**
+     * Classifies incrementally with lazy contexts. The new NF8 axiom matches
+     * an NF7 axiom with a virtual left hand side, which has no context, and
+     * the new axioms create virtual concepts that are only reached during the
+     * saturation.
+     */
+    @Test
+    public void testLazyIncrementalClassification() {
+        NamedConcept a = new NamedConcept("A");
+        NamedConcept b = new NamedConcept("B");
+        NamedConcept c = new NamedConcept("C");
+        NamedConcept d = new NamedConcept("D");
+        NamedConcept e = new NamedConcept("E");
+        NamedConcept g = new NamedConcept("G");
+        NamedConcept h = new NamedConcept("H");
+        NamedConcept i = new NamedConcept("I");
+        NamedRole r = new NamedRole("r");
+        NamedRole s = new NamedRole("s");
+        NamedFeature f = new NamedFeature("f");
+        Datatype one = new Datatype(f, Operator.EQUALS, new IntegerLiteral(1));
+
+        Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(new Conjunction(new Concept[] { a, b }), one));
+        axioms.add(new ConceptInclusion(c, a));
+        axioms.add(new ConceptInclusion(e, new Conjunction(new Concept[] { a, b })));
+        axioms.add(new ConceptInclusion(new Existential(r, new Existential(s, c)), i));
+
+        Set<Axiom> incAxioms = new HashSet<Axiom>();
+        incAxioms.add(new ConceptInclusion(one, d));
+        incAxioms.add(new ConceptInclusion(g, new Existential(r, new Conjunction(new Concept[] { h,
+                new Existential(s, c) }))));
+
+        for (boolean lazyContexts : new boolean[] { false, true }) {
+            SnorocketReasoner sr = new SnorocketReasoner();
+            sr.setLazyContexts(lazyContexts);
+            sr.loadAxioms(axioms);
+            sr.classify();
+            sr.getClassifiedOntology();
+
+            sr.loadAxioms(incAxioms);
+            sr.classify();
+            Ontology ont = sr.getClassifiedOntology();
+            assertEquals(new HashSet<String>(Arrays.asList(a.getId(), b.getId(), d.getId())),
+                    getIds(ont.getNode(e.getId()).getParents()));
+            assertEquals(Collections.singleton(a.getId()), getIds(ont.getNode(c.getId()).getParents()));
+            assertEquals(Collections.singleton(i.getId()), getIds(ont.getNode(g.getId()).getParents()));
+        }
+    }
+
+    @Test
+    public void testConceptOrdering() {
+        NamedRole rg = new NamedRole("RoleGroup");
+        NamedRole fs = new NamedRole("site");
+        NamedRole am = new NamedRole("morph");
+        NamedRole lat = new NamedRole("lat");
+        NamedConcept finding = new NamedConcept("Finding");
+        NamedConcept fracfind = new NamedConcept("FractureFinding");
+        NamedConcept armfind = new NamedConcept("ArmFinding");
+        NamedConcept limb = new NamedConcept("Limb");
+        NamedConcept arm = new NamedConcept("Arm");
+        NamedConcept left = new NamedConcept("Left");
+        NamedConcept fracture = new NamedConcept("Fracture");
+        NamedConcept right = new NamedConcept("Right");
+        NamedConcept side = new NamedConcept("Side");
+        NamedConcept multi = new NamedConcept("Multiple");
+
+        Concept fracGroup = new Existential(rg, new Existential(am, fracture));
+        Concept armGroup = new Existential(rg, new Existential(fs, limb));
+        Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(multi, new Conjunction(new Concept[] { finding,
+                new Existential(rg, new Conjunction(new Concept[] { new Existential(am, fracture),
+                        new Existential(fs, new Conjunction(new Concept[] { arm, new Existential(lat, left) })) })),
+                new Existential(rg, new Existential(fs, new Conjunction(new Concept[] { arm,
+                        new Existential(lat, right) }))) })));
+        axioms.add(new ConceptInclusion(arm, limb));
+        axioms.add(new ConceptInclusion(left, side));
+        axioms.add(new ConceptInclusion(right, side));
+        axioms.add(new ConceptInclusion(fracfind, new Conjunction(new Concept[] { finding, fracGroup })));
+        axioms.add(new ConceptInclusion(new Conjunction(new Concept[] { finding, fracGroup }), fracfind));
+        axioms.add(new ConceptInclusion(armfind, new Conjunction(new Concept[] { finding, armGroup })));
+        axioms.add(new ConceptInclusion(new Conjunction(new Concept[] { finding, armGroup }), armfind));
+
+        SnorocketReasoner expected = new SnorocketReasoner();
+        expected.loadAxioms(axioms);
+        expected.classify();
+        Set<Axiom> expectedInferred = new HashSet<Axiom>(expected.getInferredAxioms());
+        Ontology expectedOnt = expected.getClassifiedOntology();
+        assertEquals(new HashSet<String>(Arrays.asList(fracfind.getId(), armfind.getId())),
+                getIds(expectedOnt.getNode(multi.getId()).getParents()));
+
+        NamedConcept[] named = { finding, fracfind, armfind, limb, arm, left, fracture, right, side, multi };
+        for (ConceptOrdering ordering : new ConceptOrdering[] { ConceptOrdering.TOLD_BFS,
+                ConceptOrdering.TOLD_DFS, ConceptOrdering.RCM }) {
+            SnorocketReasoner sr = new SnorocketReasoner();
+            sr.setConceptOrdering(ordering);
+            sr.loadAxioms(axioms);
+            sr.classify();
+            Ontology ont = sr.getClassifiedOntology();
+            for (NamedConcept nc : named) {
+                assertEquals(getIds(expectedOnt.getNode(nc.getId()).getParents()),
+                        getIds(ont.getNode(nc.getId()).getParents()));
+            }
+            assertEquals(expectedInferred, new HashSet<Axiom>(sr.getInferredAxioms()));
+        }
+    }
+
+    @Test
+    public void testToldSeeding() {
+        NamedRole r = new NamedRole("r");
+        NamedConcept[] chain = new NamedConcept[10];
+        Set<Axiom> axioms = new HashSet<Axiom>();
+        for (int i = 0; i < chain.length; i++) {
+            chain[i] = new NamedConcept("C" + i);
+            if (i > 0) {
+                axioms.add(new ConceptInclusion(chain[i], chain[i - 1]));
+            }
+        }
+        NamedConcept a = new NamedConcept("A");
+        NamedConcept b = new NamedConcept("B");
+        NamedConcept c = new NamedConcept("C");
+        NamedConcept d = new NamedConcept("D");
+        NamedConcept e = new NamedConcept("E");
+        NamedConcept f = new NamedConcept("F");
+        NamedConcept g = new NamedConcept("G");
+        NamedConcept h = new NamedConcept("H");
+
+        // A definition over a told ancestor, an existential on the left hand
+        // side, a told cycle and an unsatisfiable concept
+        Concept def = new Conjunction(new Concept[] { chain[2], new Existential(r, chain[5]) });
+        axioms.add(new ConceptInclusion(a, new Conjunction(new Concept[] { chain[9], new Existential(r, chain[9]) })));
+        axioms.add(new ConceptInclusion(def, b));
+        axioms.add(new ConceptInclusion(b, def));
+        axioms.add(new ConceptInclusion(new Existential(r, chain[7]), c));
+        axioms.add(new ConceptInclusion(d, e));
+        axioms.add(new ConceptInclusion(e, d));
+        axioms.add(new ConceptInclusion(f, d));
+        axioms.add(new ConceptInclusion(g, chain[4]));
+        axioms.add(new ConceptInclusion(g, h));
+        axioms.add(new ConceptInclusion(h, new Conjunction(new Concept[] { f, NamedConcept.BOTTOM_CONCEPT })));
+
+        NormalisedOntology expected = classify(axioms, false, false);
+        NormalisedOntology seeded = classify(axioms, false, true);
+        for (Axiom axiom : axioms) {
+            for (Concept concept : new Concept[] { ((ConceptInclusion) axiom).getLhs(),
+                    ((ConceptInclusion) axiom).getRhs() }) {
+                if (concept instanceof NamedConcept) {
+                    String id = ((NamedConcept) concept).getId();
+                    assertEquals(getParentIds(expected, id), getParentIds(seeded, id));
+                }
+            }
+        }
+        Set<String> aParents = getParentIds(seeded, a.getId());
+        assertTrue(aParents.contains(b.getId()));
+        assertTrue(aParents.contains(c.getId()));
+        assertTrue(seeded.getBottomNode().getEquivalentConcepts().contains(g.getId()));
+        assertTrue(seeded.getProcessedConceptEntries() < expected.getProcessedConceptEntries());
+    }
+
+    /**
+     * Streams the axioms, with duplicates and nulls, before and after the
+     * classification and compares the result with loading them as sets.
+     */
+    @Test
+    public void testLoadAxiomsIterator() {
+        final NamedRole r = new NamedRole("r");
+        final NamedConcept a = new NamedConcept("A");
+        final NamedConcept b = new NamedConcept("B");
+        final NamedConcept c = new NamedConcept("C");
+        final NamedConcept d = new NamedConcept("D");
+        final NamedConcept e = new NamedConcept("E");
+
+        final List<Axiom> axioms = new ArrayList<Axiom>();
+        axioms.add(new ConceptInclusion(a, new Conjunction(new Concept[] { b, new Existential(r, c) })));
+        axioms.add(null);
+        axioms.add(new ConceptInclusion(new Existential(r, c), d));
+        axioms.add(new ConceptInclusion(a, new Conjunction(new Concept[] { b, new Existential(r, c) })));
+        axioms.add(new RoleInclusion(new Role[] { r, r }, r));
+        final List<Axiom> incAxioms = new ArrayList<Axiom>();
+        incAxioms.add(new ConceptInclusion(d, e));
+        incAxioms.add(null);
+        incAxioms.add(new ConceptInclusion(d, e));
+
+        final SnorocketReasoner streamed = new SnorocketReasoner();
+        streamed.loadAxioms(axioms.iterator());
+        streamed.classify();
+        final SnorocketReasoner expected = new SnorocketReasoner();
+        final Set<Axiom> axiomSet = new HashSet<Axiom>(axioms);
+        axiomSet.remove(null);
+        expected.loadAxioms(axiomSet);
+        expected.classify();
+
+        assertEquals(new HashSet<Axiom>(expected.getInferredAxioms()),
+                new HashSet<Axiom>(streamed.getInferredAxioms()));
+        assertEquals(new HashSet<String>(Arrays.asList(b.getId(), d.getId())),
+                getIds(streamed.getClassifiedOntology().getNode(a.getId()).getParents()));
+
+        streamed.loadAxioms(incAxioms.iterator());
+        streamed.classify();
+        assertEquals(Collections.singleton(e.getId()),
+                getIds(streamed.getClassifiedOntology().getNode(d.getId()).getParents()));
+    }
+
+    /**
+     * Classifies with a pool of a single thread, starting the classification
+     * from a task of the same pool, and then reuses the pool in an
+     * incremental classification.
+     */
+    @Test
+    public void testSharedExecutor() throws Exception {
+        final NamedRole r = new NamedRole("r");
+        final NamedConcept a = new NamedConcept("A");
+        final NamedConcept b = new NamedConcept("B");
+        final NamedConcept c = new NamedConcept("C");
+        final NamedConcept d = new NamedConcept("D");
+        final NamedConcept e = new NamedConcept("E");
+
+        final Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(a, new Existential(r, b)));
+        axioms.add(new ConceptInclusion(b, c));
+        axioms.add(new ConceptInclusion(new Existential(r, c), d));
+
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            final SnorocketReasoner sr = new SnorocketReasoner();
+            sr.setNumThreads(4);
+            sr.setExecutor(pool);
+            sr.loadAxioms(axioms);
+            pool.submit(new Callable<Void>() {
+                public Void call() {
+                    sr.classify();
+                    return null;
+                }
+            }).get(30, TimeUnit.SECONDS);
+
+            Ontology ont = sr.getClassifiedOntology();
+            assertEquals(Collections.singleton(d.getId()), getIds(ont.getNode(a.getId()).getParents()));
+
+            sr.loadAxioms(Collections.<Axiom>singleton(new ConceptInclusion(d, e)));
+            sr.classify();
+            ont = sr.getClassifiedOntology();
+            assertEquals(Collections.singleton(e.getId()), getIds(ont.getNode(d.getId()).getParents()));
+            assertFalse(pool.isShutdown());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncClassification() throws Exception {
+        final NamedRole r = new NamedRole("r");
+        final NamedConcept a = new NamedConcept("A");
+        final NamedConcept b = new NamedConcept("B");
+        final NamedConcept c = new NamedConcept("C");
+        final NamedConcept d = new NamedConcept("D");
+
+        final Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(a, new Existential(r, b)));
+        axioms.add(new ConceptInclusion(b, c));
+        axioms.add(new ConceptInclusion(new Existential(r, c), d));
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final SnorocketReasoner sr = new SnorocketReasoner();
+        sr.setListener(new ReasonerListener() {
+            public void phaseStarted(String phase) {
+                events.add("start " + phase);
+            }
+
+            public void phaseFinished(String phase, long time) {
+                assertTrue(time >= 0);
+                events.add("end " + phase);
+            }
+
+            public void saturationProgress(int processedContexts, int pendingContexts) {
+                assertTrue(processedContexts >= 0 && pendingContexts >= 0);
+            }
+        });
+        sr.loadAxioms(axioms);
+
+        // The taxonomy is requested before the classification has finished
+        sr.classifyAsync();
+        final Ontology ont = sr.getClassifiedOntologyAsync().get(30, TimeUnit.SECONDS);
+        assertEquals(Collections.singleton(d.getId()), getIds(ont.getNode(a.getId()).getParents()));
+
+        assertTrue(events.contains("end normalisation"));
+        assertTrue(events.contains("start classification"));
+        assertTrue(events.contains("end taxonomy connect top"));
+        assertTrue(events.indexOf("end classification") < events.indexOf("start taxonomy 1"));
+    }
+
+    @Test
+    public void testAsyncClassificationInSingleThreadPool() throws Exception {
+        final NamedRole r = new NamedRole("r");
+        final NamedConcept a = new NamedConcept("A");
+        final NamedConcept b = new NamedConcept("B");
+        final NamedConcept c = new NamedConcept("C");
+        final NamedConcept d = new NamedConcept("D");
+
+        final Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(a, new Existential(r, b)));
+        axioms.add(new ConceptInclusion(b, c));
+        axioms.add(new ConceptInclusion(new Existential(r, c), d));
+
+        // The classification and its workers share the only thread
+        final ExecutorService pool = Executors.newFixedThreadPool(1);
+        try {
+            final SnorocketReasoner sr = new SnorocketReasoner();
+            sr.setNumThreads(4);
+            sr.setExecutor(pool);
+            sr.loadAxioms(axioms);
+            sr.classifyAsync();
+            final Ontology ont = sr.getClassifiedOntologyAsync().get(30, TimeUnit.SECONDS);
+            assertEquals(Collections.singleton(d.getId()), getIds(ont.getNode(a.getId()).getParents()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancellation() {
+        final NamedRole r = new NamedRole("r");
+        final NamedConcept a = new NamedConcept("A");
+        final NamedConcept b = new NamedConcept("B");
+        final NamedConcept c = new NamedConcept("C");
+        final NamedConcept d = new NamedConcept("D");
+        final NamedConcept e = new NamedConcept("E");
+
+        final Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(a, new Existential(r, b)));
+        axioms.add(new ConceptInclusion(b, c));
+        axioms.add(new ConceptInclusion(new Existential(r, c), d));
+
+        // Every phase that starts either finishes or fails
+        final List<String> events = new ArrayList<String>();
+        final SnorocketReasoner sr = new SnorocketReasoner();
+        sr.setListener(new ReasonerListener() {
+            public void phaseStarted(String phase) {
+                events.add("start " + phase);
+            }
+
+            public void phaseFinished(String phase, long time) {
+                events.add("end " + phase);
+            }
+
+            public void phaseFailed(String phase, long time) {
+                assertTrue(time >= 0);
+                events.add("fail " + phase);
+            }
+
+            public void saturationProgress(int processedContexts, int pendingContexts) {
+            }
+        });
+        sr.loadAxioms(axioms);
+
+        // A cancelled classification leaves the reasoner unclassified
+        final CancellationToken cancelled = new CancellationToken();
+        cancelled.cancel();
+        sr.setCancellationToken(cancelled);
+        try {
+            sr.classify();
+            Assert.fail("Expected the classification to be cancelled");
+        } catch (ClassificationCancelledException ex) {
+            assertFalse(ex.isTimedOut());
+        }
+        assertFalse(sr.isClassified());
+        assertEquals(Arrays.asList("start classification", "fail classification"),
+                events.subList(events.size() - 2, events.size()));
+
+        sr.setCancellationToken(null);
+        sr.classify();
+        Ontology ont = sr.getClassifiedOntology();
+        assertEquals(Collections.singleton(d.getId()), getIds(ont.getNode(a.getId()).getParents()));
+
+        // A cancelled construction of the taxonomy can be retried
+        sr.setCancellationToken(cancelled);
+        try {
+            sr.getClassifiedOntology();
+            Assert.fail("Expected the taxonomy to be cancelled");
+        } catch (ClassificationCancelledException ex) {
+            assertTrue(sr.isClassified());
+        }
+        assertEquals(Arrays.asList("start taxonomy 1", "fail taxonomy 1"),
+                events.subList(events.size() - 2, events.size()));
+        sr.setCancellationToken(null);
+        ont = sr.getClassifiedOntology();
+        assertEquals(Collections.singleton(d.getId()), getIds(ont.getNode(a.getId()).getParents()));
+
+        // A timed out incremental classification is followed by a full one
+        sr.loadAxioms(Collections.<Axiom>singleton(new ConceptInclusion(d, e)));
+        sr.setCancellationToken(CancellationToken.withTimeout(0, TimeUnit.MILLISECONDS));
+        try {
+            sr.classify();
+            Assert.fail("Expected the classification to time out");
+        } catch (ClassificationCancelledException ex) {
+            assertTrue(ex.isTimedOut());
+        }
+        assertFalse(sr.isClassified());
+        assertEquals("fail incremental classification", events.get(events.size() - 1));
+
+        sr.setCancellationToken(null);
+        sr.classify();
+        ont = sr.getClassifiedOntology();
+        assertEquals(Collections.singleton(d.getId()), getIds(ont.getNode(a.getId()).getParents()));
+        assertEquals(Collections.singleton(e.getId()), getIds(ont.getNode(d.getId()).getParents()));
+
+        int open = 0;
+        for (String event : events) {
+            open += event.startsWith("start ") ? 1 : -1;
+            assertTrue(open == 0 || open == 1);
+        }
+        assertEquals(0, open);
+    }
+
+    @Test
+    public void testSaturationStatistics() throws Exception {
+        final NamedRole r = new NamedRole("r");
+        final NamedRole s = new NamedRole("s");
+        final NamedRole t = new NamedRole("t");
+        final NamedRole u = new NamedRole("u");
+        final NamedRole v = new NamedRole("v");
+        final NamedConcept a = new NamedConcept("A");
+        final NamedConcept b = new NamedConcept("B");
+        final NamedConcept c = new NamedConcept("C");
+        final NamedConcept d = new NamedConcept("D");
+        final NamedConcept e = new NamedConcept("E");
+        final NamedConcept f = new NamedConcept("F");
+        final NamedConcept h = new NamedConcept("H");
+
+        final Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(a, new Existential(r, b)));
+        axioms.add(new ConceptInclusion(b, new Existential(t, c)));
+        axioms.add(new ConceptInclusion(new Existential(u, c), d));
+        axioms.add(new ConceptInclusion(a, new Conjunction(new Concept[] { e, f })));
+        axioms.add(new ConceptInclusion(new Conjunction(new Concept[] { e, f }), h));
+        axioms.add(new RoleInclusion(r, s));
+        axioms.add(new RoleInclusion(new Role[] { s, t }, u));
+        axioms.add(new RoleInclusion(new Role[] {}, v));
+        axioms.add(new ConceptInclusion(c, new Existential(v, h)));
+
+        final SnorocketReasoner sr = new SnorocketReasoner();
+        sr.loadAxioms(axioms);
+        sr.classify();
+        final Ontology ont = sr.getClassifiedOntology();
+        assertEquals(new HashSet<String>(Arrays.asList("D", "E", "F", "H")),
+                getIds(ont.getNode(a.getId()).getParents()));
+
+        final SaturationStatistics stats = sr.getSaturationStatistics();
+        for (SaturationCounter counter : new SaturationCounter[] { SaturationCounter.ACTIVATIONS,
+            SaturationCounter.CONCEPT_ENTRIES, SaturationCounter.SUBSUMPTIONS, SaturationCounter.NF1_CONJUNCTIONS,
+            SaturationCounter.NF2_EDGES, SaturationCounter.NF3_PROPAGATIONS, SaturationCounter.NF4_ROLE_CLOSURE,
+            SaturationCounter.NF5_CHAIN_EDGES, SaturationCounter.NF6_REFLEXIVE_EDGES,
+            SaturationCounter.CONCEPT_QUEUE_HIGH_WATER, SaturationCounter.SCHEDULER_HIGH_WATER }) {
+            assertTrue(counter.name(), stats.get(counter) > 0);
+        }
+        assertEquals(0, stats.get(SaturationCounter.NF7_FEATURES));
+
+        final ObjectName name = sr.registerMBean("au.csiro.snorocket:type=Reasoner,name=test");
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(Boolean.FALSE, server.getAttribute(name, "Saturating"));
+            final TabularData counters = (TabularData) server.getAttribute(name, "SaturationCounters");
+            assertEquals(SaturationCounter.SIZE, counters.size());
+            final CompositeData row = counters.get(new Object[] { "NF5_CHAIN_EDGES" });
+            assertEquals(stats.get(SaturationCounter.NF5_CHAIN_EDGES), row.get("value"));
+        } finally {
+            sr.unregisterMBean();
+        }
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+        final NamedRole r = new NamedRole("r");
+        final NamedConcept a = new NamedConcept("A");
+        final NamedConcept b = new NamedConcept("B");
+        final NamedConcept c = new NamedConcept("C");
+
+        final Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(a, new Existential(r, b)));
+        axioms.add(new ConceptInclusion(new Existential(r, b), c));
+
+        final Recording recording = new Recording();
+        recording.enable("au.csiro.snorocket.Context").withThreshold(Duration.ZERO);
+        recording.enable("au.csiro.snorocket.Phase");
+        final File file = File.createTempFile("snorocket", ".jfr");
+        try {
+            recording.start();
+            final SnorocketReasoner sr = new SnorocketReasoner();
+            sr.loadAxioms(axioms);
+            sr.classify();
+            sr.getClassifiedOntology();
+
+            // A cancelled phase is recorded too
+            final SnorocketReasoner cancelled = new SnorocketReasoner();
+            cancelled.loadAxioms(axioms);
+            final CancellationToken token = new CancellationToken();
+            token.cancel();
+            cancelled.setCancellationToken(token);
+            try {
+                cancelled.classify();
+                Assert.fail("Expected the classification to be cancelled");
+            } catch (ClassificationCancelledException ex) {
+                // Expected
+            }
+            recording.stop();
+            recording.dump(file.toPath());
+
+            int contexts = 0;
+            final Set<String> phases = new HashSet<String>();
+            int failed = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                final String name = event.getEventType().getName();
+                if ("au.csiro.snorocket.Context".equals(name)) {
+                    contexts++;
+                } else if ("au.csiro.snorocket.Phase".equals(name)) {
+                    phases.add(event.getString("phase"));
+                    if (!event.getBoolean("completed")) {
+                        assertEquals("classification", event.getString("phase"));
+                        failed++;
+                    }
+                }
+            }
+            assertTrue(contexts > 0);
+            assertTrue(phases.toString(), phases.contains("classification"));
+            assertEquals(1, failed);
+        } finally {
+            recording.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+        final NamedRole r = new NamedRole("r");
+        final NamedConcept a = new NamedConcept("A");
+        final NamedConcept b = new NamedConcept("B");
+        final NamedConcept c = new NamedConcept("C");
+
+        final Set<Axiom> axioms = new HashSet<Axiom>();
+        axioms.add(new ConceptInclusion(a, new Existential(r, b)));
+        axioms.add(new ConceptInclusion(new Existential(r, b), c));
+
+        final SnorocketReasoner sr = new SnorocketReasoner();
+        sr.setNumThreads(2);
+        sr.loadAxioms(axioms);
+        sr.classify();
+        sr.getClassifiedOntology();
+
+        final ReasonerMetrics metrics = sr.getMetrics();
+        final ReasonerMetrics.PhaseMetrics classification = metrics.getPhase("classification");
+        assertNotNull(classification);
+        assertEquals(1, classification.getRuns());
+        assertEquals(2, classification.getThreads());
+        assertNotNull(metrics.getPhase("taxonomy 1"));
+        assertTrue(metrics.getTotalTime() >= classification.getTime());
+        assertTrue(metrics.getSaturationStatistics().get(SaturationCounter.NF2_EDGES) > 0);
+
+        final String json = metrics.toJson();
+        assertTrue(json, json.startsWith("{\"phases\":[{\"name\":\"normalisation\""));
+        assertTrue(json, json.contains("\"NF2_EDGES\":" + metrics.getSaturationStatistics().get(
+                SaturationCounter.NF2_EDGES)));
+
+        // Another reasoner keeps its own metrics
+        final SnorocketReasoner other = new SnorocketReasoner();
+        other.loadAxioms(axioms);
+        other.classify();
+        assertEquals(1, metrics.getPhase("classification").getRuns());
+        assertEquals(1, other.getMetrics().getPhase("classification").getRuns());
+    }
+
+    private static Set<String> getIds(Set<Node> nodes) {
+        Set<String> res = new HashSet<String>();
+        for (Node node : nodes) {
+            res.addAll(node.getEquivalentConcepts());
+        }
+        return res;
+    }
+
     //@Test
     public void testBottomIncremental() {
         IFactory factory = new CoreFactory();
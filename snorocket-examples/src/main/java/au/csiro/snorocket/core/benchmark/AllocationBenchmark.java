@@ -0,0 +1,186 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import au.csiro.ontology.model.Axiom;
+import au.csiro.snorocket.core.CoreFactory;
+import au.csiro.snorocket.core.IFactory;
+import au.csiro.snorocket.core.NormalisedOntology;
+
+/**
+ * Measures the garbage generated while saturating a synthetic ontology. Reports
+ * the number of collections, the time spent in the collector and, when the JVM
+ * supports it, the number of bytes allocated by the saturation threads. Used to
+ * evaluate the cost of the queues in
+ * {@link au.csiro.snorocket.core.concurrent.Context}.
+ *
+ * <p>
+ * Usage: AllocationBenchmark [concepts] [roles] [chains] [runs] [threads]
+ * </p>
+ */
+public class AllocationBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        final int numConcepts = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final int numRoles = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final int numChains = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        final int numRuns = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        final int numThreads = args.length > 4 ? Integer.parseInt(args[4]) :
+            Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Generating ontology with " + numConcepts + " concepts, " + numRoles + " roles and " +
+                numChains + " role chains");
+        final Set<Axiom> axioms = SyntheticOntology.createChainHeavy(numConcepts, numRoles, numChains, 42);
+
+        // The first run is a warm up and is not included in the results
+        long totalTime = 0;
+        long totalGcs = 0;
+        long totalGcTime = 0;
+        long totalBytes = 0;
+        for (int i = 0; i <= numRuns; i++) {
+            IFactory factory = new CoreFactory();
+            NormalisedOntology no = new NormalisedOntology(factory);
+            no.setNumThreads(numThreads);
+            no.loadAxioms(axioms);
+            System.gc();
+
+            final long gcs = getCollectionCount();
+            final long gcTime = getCollectionTime();
+            final AllocationSampler sampler = createSampler();
+            if (sampler != null) {
+                sampler.start();
+            }
+            final long start = System.currentTimeMillis();
+            no.classify();
+            final long time = System.currentTimeMillis() - start;
+            final long runGcs = getCollectionCount() - gcs;
+            final long runGcTime = getCollectionTime() - gcTime;
+            final long runBytes = sampler != null ? sampler.finish() : -1;
+
+            final String label = i == 0 ? "Warm up" : "Run " + i;
+            System.out.println(label + ": " + time + "ms, " + runGcs + " GCs (" + runGcTime + "ms), " +
+                    (runBytes < 0 ? "allocation not supported" : (runBytes >> 20) + "MB allocated (" +
+                    rate(runBytes, time) + "MB/s)"));
+            if (i > 0) {
+                totalTime += time;
+                totalGcs += runGcs;
+                totalGcTime += runGcTime;
+                totalBytes += runBytes;
+            }
+        }
+        if (numRuns > 0) {
+            System.out.println("Average classification time: " + (totalTime / numRuns) + "ms");
+            System.out.println("Average GCs: " + (totalGcs / (double) numRuns) + " (" + (totalGcTime / numRuns) +
+                    "ms)");
+            if (totalBytes >= 0) {
+                System.out.println("Average allocation: " + ((totalBytes / numRuns) >> 20) + "MB (" +
+                        rate(totalBytes, totalTime) + "MB/s)");
+            }
+        }
+    }
+
+    private static long rate(long bytes, long millis) {
+        return millis == 0 ? 0 : (bytes >> 20) * 1000 / millis;
+    }
+
+    private static long getCollectionCount() {
+        long res = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            res += Math.max(0, gc.getCollectionCount());
+        }
+        return res;
+    }
+
+    private static long getCollectionTime() {
+        long res = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            res += Math.max(0, gc.getCollectionTime());
+        }
+        return res;
+    }
+
+    /**
+     * Tracks the bytes allocated by every thread of the JVM while a
+     * classification runs. The saturation threads terminate before the
+     * classification returns, so their counters are sampled periodically and
+     * the last value seen for each thread is kept. Allocations made by a thread
+     * between its last sample and its termination are not counted.
+     */
+    private static class AllocationSampler extends Thread {
+
+        private final com.sun.management.ThreadMXBean bean;
+        private final Map<Long, Long> start = new HashMap<Long, Long>();
+        private final Map<Long, Long> last = new HashMap<Long, Long>();
+        private volatile boolean running = true;
+
+        AllocationSampler(com.sun.management.ThreadMXBean bean) {
+            this.bean = bean;
+            setDaemon(true);
+            sample(start);
+            last.putAll(start);
+        }
+
+        private void sample(Map<Long, Long> values) {
+            for (long id : bean.getAllThreadIds()) {
+                final long bytes = bean.getThreadAllocatedBytes(id);
+                if (bytes >= 0) {
+                    values.put(id, bytes);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                synchronized (last) {
+                    sample(last);
+                }
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        long finish() throws InterruptedException {
+            running = false;
+            join();
+            long res = 0;
+            synchronized (last) {
+                sample(last);
+                for (Map.Entry<Long, Long> entry : last.entrySet()) {
+                    final Long initial = start.get(entry.getKey());
+                    res += entry.getValue() - (initial != null ? initial : 0);
+                }
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Creates a sampler that tracks the bytes allocated by all threads, or
+     * returns null if the JVM does not support it.
+     *
+     * @return
+     */
+    private static AllocationSampler createSampler() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return null;
+        final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled())
+            return null;
+        return new AllocationSampler(sunBean);
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import au.csiro.ontology.Factory;
+import au.csiro.ontology.model.Axiom;
+import au.csiro.ontology.model.NamedConcept;
+import au.csiro.snorocket.core.CoreFactory;
+import au.csiro.snorocket.core.IFactory;
+import au.csiro.snorocket.core.NormalisedOntology;
+import au.csiro.snorocket.core.concurrent.CR;
+import au.csiro.snorocket.core.concurrent.Context;
+import au.csiro.snorocket.core.util.IConceptMap;
+import au.csiro.snorocket.core.util.IntIterator;
+
+/**
+ * Measures the work saved by not saturating unsatisfiable concepts. Takes the
+ * ontology of {@link DefinitionBenchmark} and makes some of its concepts
+ * unsatisfiable, which also makes unsatisfiable every concept that is
+ * subsumed by them or has an existential restriction on them.
+ *
+ * <p>
+ * Every subsumption and every edge in the saturated contexts is the result of
+ * a rule application, so their number is reported together with the time.
+ * </p>
+ *
+ * <p>
+ * Usage: BottomBenchmark [concepts] [roles] [unsatisfiable] [runs] [threads]
+ * </p>
+ */
+public class BottomBenchmark {
+
+    public static void main(String[] args) {
+        final int numConcepts = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int numRoles = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        final int numUnsatisfiable = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        final int numRuns = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        final int numThreads = args.length > 4 ? Integer.parseInt(args[4]) :
+            Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Generating ontology with " + numConcepts + " concepts, " + numRoles + " roles and " +
+                numUnsatisfiable + " concepts subsumed by bottom");
+        final Set<Axiom> axioms = new HashSet<Axiom>(SyntheticOntology.createDefinitionHeavy(numConcepts, numRoles,
+                42));
+        final Random rnd = new Random(42);
+        for (int i = 0; i < numUnsatisfiable; i++) {
+            // The concepts are named as in SyntheticOntology; the ones with
+            // small ids are close to the top of the hierarchy
+            axioms.add(Factory.createConceptInclusion(Factory.createNamedConcept("C" + rnd.nextInt(numConcepts)),
+                    NamedConcept.BOTTOM_CONCEPT));
+        }
+
+        // The first run is a warm up and is not included in the results
+        long total = 0;
+        for (int i = 0; i <= numRuns; i++) {
+            IFactory factory = new CoreFactory();
+            NormalisedOntology no = new NormalisedOntology(factory);
+            no.setNumThreads(numThreads);
+            no.loadAxioms(axioms);
+
+            long start = System.currentTimeMillis();
+            no.classify();
+            long time = System.currentTimeMillis() - start;
+
+            if (i == 0) {
+                long subsumptions = 0;
+                long edges = 0;
+                int unsatisfiable = 0;
+                final IConceptMap<Context> contexts = no.getContextIndex();
+                for (IntIterator itr = contexts.keyIterator(); itr.hasNext();) {
+                    final Context ctx = contexts.get(itr.next());
+                    subsumptions += ctx.getS().size();
+                    if (ctx.getS().contains(IFactory.BOTTOM_CONCEPT)) {
+                        unsatisfiable++;
+                    }
+                    final CR succ = ctx.getSucc();
+                    for (int r : succ.getRoles()) {
+                        edges += succ.lookupConcept(r).size();
+                    }
+                }
+                System.out.println("Unsatisfiable concepts: " + unsatisfiable + ", subsumptions: " + subsumptions +
+                        ", edges: " + edges);
+                System.out.println("Warm up: " + time + "ms");
+            } else {
+                System.out.println("Run " + i + ": " + time + "ms");
+                total += time;
+            }
+        }
+        if (numRuns > 0) {
+            System.out.println("Average classification time: " + (total / numRuns) + "ms");
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.Random;
+
+import au.csiro.snorocket.core.ConceptSetFactory;
+import au.csiro.snorocket.core.util.FastConceptHashSet;
+import au.csiro.snorocket.core.util.IConceptSet;
+import au.csiro.snorocket.core.util.IntIterator;
+import au.csiro.snorocket.core.util.RoaringConceptSet;
+import au.csiro.snorocket.core.util.SparseConceptHashSet;
+import au.csiro.snorocket.core.util.SparseConceptSet;
+
+/**
+ * Compares the memory footprint and throughput of the {@link IConceptSet}
+ * implementations on a workload shaped like the subsumer sets built while
+ * classifying SNOMED CT: a large polyhierarchy where every concept has one or
+ * two parents and its set of subsumers is the union of its parents' sets.
+ *
+ * <p>
+ * For each implementation the benchmark builds the subsumer set of every
+ * concept (add() and addAll()), then measures the retained heap, random
+ * contains() probes, iteration and containsAll() between each concept and its
+ * parents.
+ * </p>
+ *
+ * <p>
+ * Usage: ConceptSetBenchmark [concepts] [probes] [seed]
+ * </p>
+ */
+public class ConceptSetBenchmark {
+
+    private static final String[] NAMES = { "SparseConceptSet", "SparseConceptHashSet", "FastConceptHashSet",
+        "RoaringConceptSet" };
+
+    private static final ConceptSetFactory[] FACTORIES = { ConceptSetFactory.SPARSE, new ConceptSetFactory() {
+        public IConceptSet createConceptSet() {
+            return new SparseConceptHashSet();
+        }
+
+        public IConceptSet createConceptSet(int size) {
+            return new SparseConceptHashSet();
+        }
+
+        public IConceptSet createConceptSet(IConceptSet initial) {
+            final IConceptSet result = new SparseConceptHashSet();
+            result.addAll(initial);
+            return result;
+        }
+    }, new ConceptSetFactory() {
+        public IConceptSet createConceptSet() {
+            return new FastConceptHashSet();
+        }
+
+        public IConceptSet createConceptSet(int size) {
+            return new FastConceptHashSet();
+        }
+
+        public IConceptSet createConceptSet(IConceptSet initial) {
+            final IConceptSet result = new FastConceptHashSet();
+            result.addAll(initial);
+            return result;
+        }
+    }, ConceptSetFactory.ROARING };
+
+    /**
+     * Creates the parents of each concept. Concept 0 is the root and every
+     * other concept has a parent with a smaller id, so the ids are a
+     * topological order of the hierarchy. A random recursive tree gives a
+     * depth close to SNOMED's; about a third of the concepts get a second
+     * parent.
+     *
+     * @param numConcepts
+     * @param rnd
+     * @return
+     */
+    private static int[][] createParents(int numConcepts, Random rnd) {
+        final int[][] parents = new int[numConcepts][];
+        parents[0] = new int[0];
+        for (int i = 1; i < numConcepts; i++) {
+            final int first = rnd.nextInt(i);
+            if (i > 1 && rnd.nextInt(3) == 0) {
+                int second = rnd.nextInt(i);
+                if (second == first) {
+                    second = (first + 1) % i;
+                }
+                parents[i] = new int[] { first, second };
+            } else {
+                parents[i] = new int[] { first };
+            }
+        }
+        return parents;
+    }
+
+    private static long usedMemory() {
+        final Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void run(ConceptSetFactory factory, String name, int[][] parents, int numProbes, long seed,
+            boolean print) {
+        final int numConcepts = parents.length;
+        final long baseline = usedMemory();
+
+        // The subsumers of each concept include the concept itself
+        long time = System.nanoTime();
+        final IConceptSet[] subsumers = new IConceptSet[numConcepts];
+        long totalSize = 0;
+        for (int i = 0; i < numConcepts; i++) {
+            final IConceptSet set = factory.createConceptSet();
+            set.add(i);
+            for (int parent : parents[i]) {
+                set.addAll(subsumers[parent]);
+            }
+            subsumers[i] = set;
+            totalSize += set.size();
+        }
+        final long buildTime = System.nanoTime() - time;
+        final long memory = usedMemory() - baseline;
+
+        final Random rnd = new Random(seed);
+        time = System.nanoTime();
+        int hits = 0;
+        for (int i = 0; i < numProbes; i++) {
+            if (subsumers[rnd.nextInt(numConcepts)].contains(rnd.nextInt(numConcepts))) {
+                hits++;
+            }
+        }
+        final long containsTime = System.nanoTime() - time;
+
+        time = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < numConcepts; i++) {
+            for (final IntIterator itr = subsumers[i].iterator(); itr.hasNext();) {
+                checksum += itr.next();
+            }
+        }
+        final long iterateTime = System.nanoTime() - time;
+
+        // Not every implementation supports containsAll()
+        time = System.nanoTime();
+        int subsets = 0;
+        String containsAllTime;
+        try {
+            for (int i = 0; i < numConcepts; i++) {
+                for (int parent : parents[i]) {
+                    if (subsumers[i].containsAll(subsumers[parent])) {
+                        subsets++;
+                    }
+                }
+            }
+            containsAllTime = Long.toString((System.nanoTime() - time) / 1000000);
+        } catch (UnsupportedOperationException e) {
+            containsAllTime = "n/a";
+        }
+
+        if (print) {
+            System.out.println(name + "\t" + (memory / 1024 / 1024) + "\t" +
+                    String.format("%.1f", (double) memory / totalSize) + "\t" + (buildTime / 1000000) + "\t" +
+                    String.format("%.1f", (double) containsTime / numProbes) + "\t" + (iterateTime / 1000000) + "\t" +
+                    containsAllTime + "\t" + (hits + checksum + subsets) % 10);
+        }
+    }
+
+    public static void main(String[] args) {
+        final int numConcepts = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+        final int numProbes = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+        final long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+
+        final int[][] parents = createParents(numConcepts, new Random(seed));
+        System.out.println("Concepts: " + numConcepts + ", probes: " + numProbes);
+        System.out.println("implementation\tMB\tbytes/subsumer\tbuild (ms)\tcontains (ns/probe)\titerate (ms)\t" +
+                "containsAll (ms)\tchecksum");
+        for (int impl = 0; impl < FACTORIES.length; impl++) {
+            // The first run is a warm up
+            run(FACTORIES[impl], NAMES[impl], parents, numProbes, seed, false);
+            run(FACTORIES[impl], NAMES[impl], parents, numProbes, seed, true);
+        }
+    }
+
+}
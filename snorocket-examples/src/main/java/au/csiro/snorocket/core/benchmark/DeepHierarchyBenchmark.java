@@ -0,0 +1,63 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.Set;
+
+import au.csiro.ontology.model.Axiom;
+import au.csiro.snorocket.core.CoreFactory;
+import au.csiro.snorocket.core.IFactory;
+import au.csiro.snorocket.core.NormalisedOntology;
+
+/**
+ * Measures the saturation time of a synthetic ontology where the successors
+ * of the concepts have many subsumers, few of which appear in NF3 axioms
+ * (see {@link SyntheticOntology#createDeepHierarchy}). Most of the work is
+ * done processing the new edges.
+ *
+ * <p>
+ * Usage: DeepHierarchyBenchmark [concepts] [values] [depth] [runs] [threads]
+ * </p>
+ */
+public class DeepHierarchyBenchmark {
+
+    public static void main(String[] args) {
+        final int numConcepts = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int numValues = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        final int depth = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        final int numRuns = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        final int numThreads = args.length > 4 ? Integer.parseInt(args[4]) :
+            Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Generating ontology with " + numConcepts + " concepts and " + numValues +
+                " values in branches of depth " + depth);
+        final Set<Axiom> axioms = SyntheticOntology.createDeepHierarchy(numConcepts, numValues, depth, 20, 42);
+
+        // The first run is a warm up and is not included in the results
+        long total = 0;
+        for (int i = 0; i <= numRuns; i++) {
+            IFactory factory = new CoreFactory();
+            NormalisedOntology no = new NormalisedOntology(factory);
+            no.setNumThreads(numThreads);
+            no.loadAxioms(axioms);
+
+            long start = System.currentTimeMillis();
+            no.classify();
+            long time = System.currentTimeMillis() - start;
+
+            if (i == 0) {
+                System.out.println("Warm up: " + time + "ms");
+                System.out.println("Skipped NF3 lookups: " + no.getSkippedNF3Lookups());
+            } else {
+                System.out.println("Run " + i + ": " + time + "ms");
+                total += time;
+            }
+        }
+        if (numRuns > 0) {
+            System.out.println("Average classification time: " + (total / numRuns) + "ms");
+        }
+    }
+
+}
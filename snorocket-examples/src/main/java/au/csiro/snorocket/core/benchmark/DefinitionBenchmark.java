@@ -0,0 +1,60 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.Set;
+
+import au.csiro.ontology.model.Axiom;
+import au.csiro.snorocket.core.CoreFactory;
+import au.csiro.snorocket.core.IFactory;
+import au.csiro.snorocket.core.NormalisedOntology;
+
+/**
+ * Measures the saturation time of a synthetic ontology with a large number of
+ * fully defined concepts (see {@link SyntheticOntology#createDefinitionHeavy}).
+ * Most of the work is done processing conjunctions (NF1) and existentials on
+ * the left hand side of axioms (NF3).
+ *
+ * <p>
+ * Usage: DefinitionBenchmark [concepts] [roles] [runs] [threads]
+ * </p>
+ */
+public class DefinitionBenchmark {
+
+    public static void main(String[] args) {
+        final int numConcepts = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int numRoles = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        final int numRuns = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        final int numThreads = args.length > 3 ? Integer.parseInt(args[3]) :
+            Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Generating ontology with " + numConcepts + " concepts and " + numRoles + " roles");
+        final Set<Axiom> axioms = SyntheticOntology.createDefinitionHeavy(numConcepts, numRoles, 42);
+
+        // The first run is a warm up and is not included in the results
+        long total = 0;
+        for (int i = 0; i <= numRuns; i++) {
+            IFactory factory = new CoreFactory();
+            NormalisedOntology no = new NormalisedOntology(factory);
+            no.setNumThreads(numThreads);
+            no.loadAxioms(axioms);
+
+            long start = System.currentTimeMillis();
+            no.classify();
+            long time = System.currentTimeMillis() - start;
+
+            if (i == 0) {
+                System.out.println("Warm up: " + time + "ms");
+            } else {
+                System.out.println("Run " + i + ": " + time + "ms");
+                total += time;
+            }
+        }
+        if (numRuns > 0) {
+            System.out.println("Average classification time: " + (total / numRuns) + "ms");
+        }
+    }
+
+}
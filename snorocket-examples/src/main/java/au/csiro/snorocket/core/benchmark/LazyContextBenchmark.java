@@ -0,0 +1,68 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.Set;
+
+import au.csiro.ontology.model.Axiom;
+import au.csiro.snorocket.core.CoreFactory;
+import au.csiro.snorocket.core.IFactory;
+import au.csiro.snorocket.core.NormalisedOntology;
+
+/**
+ * Compares the classification of the ontology of {@link DefinitionBenchmark}
+ * creating a context for every concept with creating the contexts of the
+ * virtual concepts only when they are reached (see
+ * {@link NormalisedOntology#setLazyContexts(boolean)}). The definitions
+ * produce a virtual concept for every conjunction on the left hand side, and
+ * these are never reached.
+ *
+ * <p>
+ * Usage: LazyContextBenchmark [concepts] [roles] [runs] [threads]
+ * </p>
+ */
+public class LazyContextBenchmark {
+
+    private static long usedMemory() {
+        final Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    public static void main(String[] args) {
+        final int numConcepts = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int numRoles = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        final int numRuns = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        final int numThreads = args.length > 3 ? Integer.parseInt(args[3]) :
+            Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Generating ontology with " + numConcepts + " concepts and " + numRoles + " roles");
+        final Set<Axiom> axioms = SyntheticOntology.createDefinitionHeavy(numConcepts, numRoles, 42);
+
+        System.out.println("mode\trun\tcontexts\ttime (ms)\tmemory (MB)");
+        // The first run of each mode is a warm up
+        for (int i = 0; i <= numRuns; i++) {
+            for (boolean lazy : new boolean[] { false, true }) {
+                IFactory factory = new CoreFactory();
+                NormalisedOntology no = new NormalisedOntology(factory);
+                no.setNumThreads(numThreads);
+                no.setLazyContexts(lazy);
+                no.loadAxioms(axioms);
+
+                final long before = usedMemory();
+                long start = System.currentTimeMillis();
+                no.classify();
+                long time = System.currentTimeMillis() - start;
+                final long memory = usedMemory() - before;
+
+                System.out.println((lazy ? "lazy" : "eager") + "\t" + (i == 0 ? "warm up" : Integer.toString(i)) +
+                        "\t" + no.getContextIndex().size() + "\t" + time + "\t" + (memory >> 20));
+            }
+        }
+    }
+
+}
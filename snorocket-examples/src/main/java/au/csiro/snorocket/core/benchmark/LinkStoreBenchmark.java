@@ -0,0 +1,172 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import au.csiro.snorocket.core.util.AppendOnlyConceptSet;
+import au.csiro.snorocket.core.util.IConceptSet;
+import au.csiro.snorocket.core.util.IntIterator;
+import au.csiro.snorocket.core.util.ReadonlyConceptSet;
+import au.csiro.snorocket.core.util.SparseConceptSet;
+
+/**
+ * Measures the throughput of the predecessor / successor link stores used by
+ * {@link au.csiro.snorocket.core.concurrent.Context} under contention. A
+ * number of threads store links into, and look up links from, a shared set of
+ * stores, in the same way contexts update the pred / succ of other contexts
+ * during saturation. Compares the previous design (synchronized stores of
+ * {@link SparseConceptSet}s wrapped in a {@link ReadonlyConceptSet} on every
+ * lookup) with the current one, which is based on
+ * {@link AppendOnlyConceptSet}.
+ *
+ * <p>
+ * Usage: LinkStoreBenchmark [stores] [roles] [opsPerThread] [writePercent]
+ * [maxThreads]
+ * </p>
+ */
+public class LinkStoreBenchmark {
+
+    /**
+     * The operations of a link store used during saturation.
+     */
+    private interface LinkStore {
+        void store(int r, int b);
+
+        IConceptSet lookupConcept(int r);
+    }
+
+    /**
+     * The previous implementation of CR.
+     */
+    private static class SynchronizedLinkStore implements LinkStore {
+        private final IConceptSet[] data;
+
+        SynchronizedLinkStore(int roles) {
+            data = new IConceptSet[roles];
+        }
+
+        public synchronized void store(int r, int b) {
+            if (null == data[r]) {
+                data[r] = new SparseConceptSet();
+            }
+            data[r].add(b);
+        }
+
+        public IConceptSet lookupConcept(int r) {
+            return null == data[r] ? IConceptSet.EMPTY_SET : new ReadonlyConceptSet(data[r]);
+        }
+    }
+
+    /**
+     * The current implementation of CR.
+     */
+    private static class AppendOnlyLinkStore implements LinkStore {
+        private final AtomicReferenceArray<AppendOnlyConceptSet> data;
+
+        AppendOnlyLinkStore(int roles) {
+            data = new AtomicReferenceArray<AppendOnlyConceptSet>(roles);
+        }
+
+        public void store(int r, int b) {
+            AppendOnlyConceptSet set = data.get(r);
+            if (null == set) {
+                synchronized (this) {
+                    set = data.get(r);
+                    if (null == set) {
+                        set = new AppendOnlyConceptSet();
+                        data.set(r, set);
+                    }
+                }
+            }
+            set.add(b);
+        }
+
+        public IConceptSet lookupConcept(int r) {
+            final IConceptSet set = data.get(r);
+            return null == set ? IConceptSet.EMPTY_SET : set;
+        }
+    }
+
+    private static long run(final LinkStore[] stores, final int numRoles, final int numConcepts,
+            final int opsPerThread, final int writePercent, int numThreads) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[numThreads];
+        final long[] checksums = new long[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            final int index = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    final Random rnd = new Random(index);
+                    long checksum = 0;
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < opsPerThread; i++) {
+                        final LinkStore store = stores[rnd.nextInt(stores.length)];
+                        final int r = rnd.nextInt(numRoles);
+                        if (rnd.nextInt(100) < writePercent) {
+                            store.store(r, rnd.nextInt(numConcepts));
+                        } else {
+                            // The typical reads in Context.processRole: a
+                            // membership test and an iteration
+                            final IConceptSet set = store.lookupConcept(r);
+                            if (set.contains(rnd.nextInt(numConcepts))) {
+                                checksum++;
+                            }
+                            for (final IntIterator itr = set.iterator(); itr.hasNext();) {
+                                checksum += itr.next();
+                            }
+                        }
+                    }
+                    checksums[index] = checksum;
+                }
+            });
+            threads[t].start();
+        }
+
+        final long time = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - time;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final int numStores = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        final int numRoles = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final int opsPerThread = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+        final int writePercent = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        final int maxThreads = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+        final int numConcepts = 100000;
+
+        System.out.println("Stores: " + numStores + ", roles: " + numRoles + ", operations per thread: " +
+                opsPerThread + ", writes: " + writePercent + "%");
+        System.out.println("threads\tsynchronized (ops/ms)\tappend-only (ops/ms)");
+        for (int numThreads = 1; numThreads <= maxThreads; numThreads <<= 1) {
+            final long[] times = new long[2];
+            // The first round is a warm up
+            for (int round = 0; round < 2; round++) {
+                for (int impl = 0; impl < 2; impl++) {
+                    final LinkStore[] stores = new LinkStore[numStores];
+                    for (int i = 0; i < numStores; i++) {
+                        stores[i] = impl == 0 ? new SynchronizedLinkStore(numRoles) :
+                            new AppendOnlyLinkStore(numRoles);
+                    }
+                    times[impl] = run(stores, numRoles, numConcepts, opsPerThread, writePercent, numThreads);
+                }
+            }
+            final long ops = (long) opsPerThread * numThreads;
+            System.out.println(numThreads + "\t" + (ops * 1000000 / times[0]) + "\t" +
+                    (ops * 1000000 / times[1]));
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.Random;
+
+import au.csiro.ontology.model.Operator;
+import au.csiro.snorocket.core.NF8Index;
+import au.csiro.snorocket.core.axioms.NF8;
+import au.csiro.snorocket.core.model.Datatype;
+import au.csiro.snorocket.core.model.FloatLiteral;
+import au.csiro.snorocket.core.model.IntegerLiteral;
+import au.csiro.snorocket.core.util.FeatureMap;
+import au.csiro.snorocket.core.util.IntIterator;
+import au.csiro.snorocket.core.util.MonotonicCollection;
+
+/**
+ * Compares the lookup of the NF8 terms matched by the datatype of an NF7 term
+ * using {@link NF8Index} with the previous approach, which evaluated
+ * {@link NF8Index#matches(Datatype, Datatype)} against every NF8 term of the
+ * feature.
+ *
+ * <p>
+ * The terms are shaped like the concrete domains of medication ontologies
+ * such as AMT: a few features (strength, pack size, ...) with thousands of
+ * numeric thresholds each, most of them equalities and the rest ranges.
+ * </p>
+ *
+ * <p>
+ * Usage: NF8MatchBenchmark [features] [termsPerFeature] [queries] [seed]
+ * </p>
+ */
+public class NF8MatchBenchmark {
+
+    private static final Operator[] RANGE_OPERATORS = { Operator.GREATER_THAN, Operator.GREATER_THAN_EQUALS,
+        Operator.LESS_THAN, Operator.LESS_THAN_EQUALS };
+
+    private static Datatype createDatatype(Random rnd, int feature, Operator op) {
+        // Even features are integers (e.g. pack sizes) and odd features are
+        // floats (e.g. strengths)
+        if (feature % 2 == 0) {
+            return new Datatype(feature, op, new IntegerLiteral(rnd.nextInt(5000)));
+        } else {
+            return new Datatype(feature, op, new FloatLiteral(rnd.nextInt(20000) / 4.0f));
+        }
+    }
+
+    private static Operator randomOperator(Random rnd) {
+        return rnd.nextInt(10) < 7 ? Operator.EQUALS : RANGE_OPERATORS[rnd.nextInt(RANGE_OPERATORS.length)];
+    }
+
+    public static void main(String[] args) {
+        final int numFeatures = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final int termsPerFeature = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        final int numQueries = args.length > 2 ? Integer.parseInt(args[2]) : 50000;
+        final long seed = args.length > 3 ? Long.parseLong(args[3]) : 1L;
+
+        final Random rnd = new Random(seed);
+        final FeatureMap<MonotonicCollection<NF8>> byFeature = new FeatureMap<MonotonicCollection<NF8>>(numFeatures);
+        final NF8Index index = new NF8Index();
+        int concept = 0;
+        for (int f = 0; f < numFeatures; f++) {
+            final MonotonicCollection<NF8> terms = new MonotonicCollection<NF8>(termsPerFeature);
+            for (int i = 0; i < termsPerFeature; i++) {
+                final NF8 nf8 = new NF8(createDatatype(rnd, f, randomOperator(rnd)), concept++);
+                terms.add(nf8);
+                index.add(nf8);
+            }
+            byFeature.put(f, terms);
+        }
+        index.freeze();
+
+        // Most NF7 terms in these ontologies are equalities
+        final Datatype[] queries = new Datatype[numQueries];
+        for (int i = 0; i < numQueries; i++) {
+            queries[i] = createDatatype(rnd, rnd.nextInt(numFeatures), randomOperator(rnd));
+        }
+
+        System.out.println("Features: " + numFeatures + ", terms per feature: " + termsPerFeature + ", queries: " +
+                numQueries);
+        System.out.println("round\tscan (ms)\tindex (ms)\tmatches\tspeedup");
+        for (int round = 0; round < 5; round++) {
+            long time = System.nanoTime();
+            long scanMatches = 0;
+            for (Datatype d : queries) {
+                final MonotonicCollection<NF8> terms = byFeature.get(d.getFeature());
+                for (final NF8 nf8 : terms) {
+                    if (NF8Index.matches(d, nf8.lhsD)) {
+                        scanMatches += nf8.rhsB & 1;
+                        scanMatches += 2;
+                    }
+                }
+            }
+            final long scanTime = System.nanoTime() - time;
+
+            time = System.nanoTime();
+            long indexMatches = 0;
+            for (Datatype d : queries) {
+                for (final IntIterator itr = index.match(d); itr.hasNext();) {
+                    indexMatches += itr.next() & 1;
+                    indexMatches += 2;
+                }
+            }
+            final long indexTime = System.nanoTime() - time;
+
+            if (scanMatches != indexMatches) {
+                throw new IllegalStateException("Different results: " + scanMatches + " != " + indexMatches);
+            }
+            System.out.println(round + "\t" + (scanTime / 1000000) + "\t" + (indexTime / 1000000) + "\t" +
+                    (indexMatches / 2) + "\t" + String.format("%.1f", (double) scanTime / indexTime));
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.Set;
+
+import au.csiro.ontology.model.Axiom;
+import au.csiro.snorocket.core.CoreFactory;
+import au.csiro.snorocket.core.NormalisedOntology;
+import au.csiro.snorocket.core.ReasonerMetrics;
+
+/**
+ * Compares loading the ontology of {@link DefinitionBenchmark} with the
+ * sequential and the parallel normalisation (see
+ * {@link NormalisedOntology#setParallelNormalisation(boolean)}). Reports the
+ * times of the normalisation and the indexing.
+ *
+ * <p>
+ * Usage: NormalisationBenchmark [concepts] [roles] [runs] [threads]
+ * </p>
+ */
+public class NormalisationBenchmark {
+
+    public static void main(String[] args) {
+        final int numConcepts = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int numRoles = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        final int numRuns = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        final int numThreads = args.length > 3 ? Integer.parseInt(args[3]) :
+            Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Generating ontology with " + numConcepts + " concepts and " + numRoles + " roles");
+        final Set<Axiom> axioms = SyntheticOntology.createDefinitionHeavy(numConcepts, numRoles, 42);
+
+        System.out.println("normalisation\trun\tnormalisation (ms)\tindexing (ms)\tconcepts");
+        // The first run of each mode is a warm up
+        for (int i = 0; i <= numRuns; i++) {
+            for (boolean parallel : new boolean[] { false, true }) {
+                NormalisedOntology no = new NormalisedOntology(new CoreFactory());
+                no.setNumThreads(numThreads);
+                no.setParallelNormalisation(parallel);
+                no.loadAxioms(axioms);
+
+                final ReasonerMetrics metrics = no.getMetrics();
+                System.out.println((parallel ? "parallel" : "sequential") + "\t" +
+                        (i == 0 ? "warm up" : Integer.toString(i)) + "\t" +
+                        metrics.getPhase("normalisation").getTime() + "\t" +
+                        metrics.getPhase("indexing").getTime() + "\t" +
+                        no.getFactory().getTotalConcepts());
+            }
+        }
+    }
+
+}
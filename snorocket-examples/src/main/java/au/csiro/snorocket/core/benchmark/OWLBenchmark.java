@@ -14,7 +14,8 @@ import org.semanticweb.owlapi.reasoner.InferenceType;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 
-import au.csiro.ontology.util.Statistics;
+import au.csiro.snorocket.core.ReasonerMetrics;
+import au.csiro.snorocket.owlapi.SnorocketOWLReasoner;
 import au.csiro.snorocket.owlapi.SnorocketReasonerFactory;
 
 /**
@@ -52,10 +53,11 @@ public class OWLBenchmark {
         OWLReasonerFactory reasonerFactory = new SnorocketReasonerFactory();
         OWLReasoner reasoner = reasonerFactory.createNonBufferingReasoner(root);
         reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+        ReasonerMetrics metrics = ((SnorocketOWLReasoner) reasoner).getMetrics();
         reasoner.dispose();
         
-        System.out.println(Statistics.INSTANCE.getStatistics());
-        System.out.println("Total time: "+Statistics.INSTANCE.getTotalTime());
+        System.out.println(metrics);
+        System.out.println("Total time: "+metrics.getTotalTime());
     }
 
 }
@@ -0,0 +1,79 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import au.csiro.ontology.Factory;
+import au.csiro.ontology.model.Axiom;
+import au.csiro.snorocket.core.SnorocketReasoner;
+
+/**
+ * Measures a server-like workload where an ontology is classified once and
+ * then reclassified incrementally after every small batch of edits. Compares
+ * creating new threads for every phase of the reasoning with running all the
+ * phases in a long-lived pool (see
+ * {@link SnorocketReasoner#setExecutor(java.util.concurrent.Executor)}).
+ *
+ * <p>
+ * Usage: ReclassificationBenchmark [concepts] [batches] [threads]
+ * </p>
+ */
+public class ReclassificationBenchmark {
+
+    public static void main(String[] args) {
+        final int numConcepts = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final int numBatches = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final int numThreads = args.length > 2 ? Integer.parseInt(args[2]) :
+            Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Generating ontology with " + numConcepts + " concepts");
+        final Set<Axiom> axioms = SyntheticOntology.createDefinitionHeavy(numConcepts, 20, 42);
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+        System.out.println("executor\trun\tbatches (ms)\tthreads started");
+        try {
+            // The first run of each mode is a warm up
+            for (int i = 0; i <= 2; i++) {
+                for (boolean shared : new boolean[] { false, true }) {
+                    final SnorocketReasoner sr = new SnorocketReasoner();
+                    sr.setNumThreads(numThreads);
+                    if (shared) {
+                        sr.setExecutor(pool);
+                    }
+                    sr.loadAxioms(axioms);
+                    sr.classify();
+                    sr.getClassifiedOntology();
+
+                    final Random rnd = new Random(42);
+                    final long startThreads = threads.getTotalStartedThreadCount();
+                    final long start = System.currentTimeMillis();
+                    for (int j = 0; j < numBatches; j++) {
+                        final Set<Axiom> batch = new HashSet<Axiom>();
+                        batch.add(Factory.createConceptInclusion(Factory.createNamedConcept("N" + j),
+                                Factory.createNamedConcept("C" + rnd.nextInt(numConcepts))));
+                        sr.loadAxioms(batch);
+                        sr.classify();
+                        sr.getClassifiedOntology();
+                    }
+                    final long time = System.currentTimeMillis() - start;
+
+                    System.out.println((shared ? "shared" : "per phase") + "\t" +
+                            (i == 0 ? "warm up" : Integer.toString(i)) + "\t" + time + "\t" +
+                            (threads.getTotalStartedThreadCount() - startThreads));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
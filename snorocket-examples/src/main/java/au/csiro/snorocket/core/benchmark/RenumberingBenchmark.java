@@ -0,0 +1,77 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.Set;
+
+import au.csiro.ontology.model.Axiom;
+import au.csiro.snorocket.core.ConceptOrdering;
+import au.csiro.snorocket.core.ConceptSetFactory;
+import au.csiro.snorocket.core.CoreFactory;
+import au.csiro.snorocket.core.IFactory;
+import au.csiro.snorocket.core.NormalisedOntology;
+
+/**
+ * Compares the classification time of the ontology of
+ * {@link DefinitionBenchmark} with the concept ids assigned when loading the
+ * axioms and with the ids computed by each {@link ConceptOrdering}, using
+ * sorted array and bitmap sets of subsumers. The time to compute the new ids
+ * and renumber the concepts is reported separately.
+ *
+ * <p>
+ * Usage: RenumberingBenchmark [concepts] [roles] [runs] [threads]
+ * </p>
+ */
+public class RenumberingBenchmark {
+
+    private static final String[] ORDERING_NAMES = { "none", "told-bfs", "told-dfs", "rcm" };
+
+    private static final ConceptOrdering[] ORDERINGS = { null, ConceptOrdering.TOLD_BFS,
+        ConceptOrdering.TOLD_DFS, ConceptOrdering.RCM };
+
+    private static final String[] SET_NAMES = { "sparse", "roaring" };
+
+    private static final ConceptSetFactory[] SET_FACTORIES = { ConceptSetFactory.SPARSE,
+        ConceptSetFactory.ROARING };
+
+    public static void main(String[] args) {
+        final int numConcepts = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int numRoles = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        final int numRuns = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        final int numThreads = args.length > 3 ? Integer.parseInt(args[3]) :
+            Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Generating ontology with " + numConcepts + " concepts and " + numRoles + " roles");
+        final Set<Axiom> axioms = SyntheticOntology.createDefinitionHeavy(numConcepts, numRoles, 42);
+
+        System.out.println("sets\tordering\trun\trenumbering (ms)\tclassification (ms)");
+        for (int s = 0; s < SET_FACTORIES.length; s++) {
+            // The first run of each combination is a warm up
+            for (int i = 0; i <= numRuns; i++) {
+                for (int o = 0; o < ORDERINGS.length; o++) {
+                    IFactory factory = new CoreFactory();
+                    NormalisedOntology no = new NormalisedOntology(factory);
+                    no.setNumThreads(numThreads);
+                    no.setConceptSetFactory(SET_FACTORIES[s]);
+                    no.loadAxioms(axioms);
+
+                    long start = System.currentTimeMillis();
+                    if (null != ORDERINGS[o]) {
+                        no.renumberConcepts(ORDERINGS[o].computeIds(no));
+                    }
+                    long renumbering = System.currentTimeMillis() - start;
+
+                    start = System.currentTimeMillis();
+                    no.classify();
+                    long time = System.currentTimeMillis() - start;
+
+                    System.out.println(SET_NAMES[s] + "\t" + ORDERING_NAMES[o] + "\t" +
+                            (i == 0 ? "warm up" : Integer.toString(i)) + "\t" + renumbering + "\t" + time);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.Set;
+
+import au.csiro.ontology.model.Axiom;
+import au.csiro.snorocket.core.CoreFactory;
+import au.csiro.snorocket.core.IFactory;
+import au.csiro.snorocket.core.NormalisedOntology;
+
+/**
+ * Measures the saturation time of a synthetic ontology with a large number of
+ * role chains (r o s [ t). Used to evaluate the cost of processing NF5 axioms
+ * in {@link au.csiro.snorocket.core.concurrent.Context}.
+ *
+ * <p>
+ * Usage: RoleChainBenchmark [concepts] [roles] [chains] [runs] [threads]
+ * </p>
+ */
+public class RoleChainBenchmark {
+
+    public static void main(String[] args) {
+        final int numConcepts = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final int numRoles = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final int numChains = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        final int numRuns = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        final int numThreads = args.length > 4 ? Integer.parseInt(args[4]) :
+            Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Generating ontology with " + numConcepts + " concepts, " + numRoles + " roles and " +
+                numChains + " role chains");
+        final Set<Axiom> axioms = SyntheticOntology.createChainHeavy(numConcepts, numRoles, numChains, 42);
+
+        // The first run is a warm up and is not included in the results
+        long total = 0;
+        for (int i = 0; i <= numRuns; i++) {
+            IFactory factory = new CoreFactory();
+            NormalisedOntology no = new NormalisedOntology(factory);
+            no.setNumThreads(numThreads);
+            no.loadAxioms(axioms);
+
+            long start = System.currentTimeMillis();
+            no.classify();
+            long time = System.currentTimeMillis() - start;
+
+            if (i == 0) {
+                System.out.println("Warm up: " + time + "ms");
+            } else {
+                System.out.println("Run " + i + ": " + time + "ms");
+                total += time;
+            }
+        }
+        if (numRuns > 0) {
+            System.out.println("Average classification time: " + (total / numRuns) + "ms");
+        }
+    }
+
+}
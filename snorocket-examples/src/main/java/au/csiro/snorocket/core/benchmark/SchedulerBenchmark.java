@@ -0,0 +1,62 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.Set;
+
+import au.csiro.ontology.model.Axiom;
+import au.csiro.snorocket.core.CoreFactory;
+import au.csiro.snorocket.core.IFactory;
+import au.csiro.snorocket.core.NormalisedOntology;
+import au.csiro.snorocket.core.concurrent.Worker;
+
+/**
+ * Measures how well the saturation work is balanced between threads. For each
+ * number of threads the benchmark reports the classification time and the
+ * time each worker spent processing contexts (busy) and looking for work
+ * (idle).
+ *
+ * <p>
+ * Usage: SchedulerBenchmark [concepts] [roles] [chains] [max threads]
+ * </p>
+ */
+public class SchedulerBenchmark {
+
+    public static void main(String[] args) {
+        final int numConcepts = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final int numRoles = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final int numChains = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        final int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) :
+            Runtime.getRuntime().availableProcessors();
+
+        final Set<Axiom> axioms = SyntheticOntology.createChainHeavy(numConcepts, numRoles, numChains, 42);
+
+        // Warm up
+        classify(axioms, maxThreads);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            final long start = System.currentTimeMillis();
+            final NormalisedOntology no = classify(axioms, threads);
+            final long time = System.currentTimeMillis() - start;
+
+            System.out.println(threads + " threads: " + time + "ms");
+            for (Worker worker : no.getTodo().getWorkers()) {
+                System.out.println("  worker " + worker.getIndex() + ": " + worker.getProcessed() + " contexts, " +
+                        worker.getSteals() + " stolen, busy " + (worker.getBusyTime() / 1000000) + "ms, idle " +
+                        (worker.getIdleTime() / 1000000) + "ms");
+            }
+        }
+    }
+
+    private static NormalisedOntology classify(Set<Axiom> axioms, int threads) {
+        IFactory factory = new CoreFactory();
+        NormalisedOntology no = new NormalisedOntology(factory);
+        no.setNumThreads(threads);
+        no.loadAxioms(axioms);
+        no.classify();
+        return no;
+    }
+
+}
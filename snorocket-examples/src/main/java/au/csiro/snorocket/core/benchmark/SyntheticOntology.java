@@ -0,0 +1,186 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import au.csiro.ontology.Factory;
+import au.csiro.ontology.model.Axiom;
+import au.csiro.ontology.model.Concept;
+import au.csiro.ontology.model.Role;
+
+/**
+ * Generates synthetic ontologies with a known shape, used by the benchmarks
+ * that do not need a copy of SNOMED CT. All generators are deterministic for a
+ * given seed.
+ */
+public class SyntheticOntology {
+
+    /**
+     * Creates an ontology dominated by role chains. The ontology contains a
+     * random tree of concepts, an existential restriction from every concept
+     * to a concept defined earlier, a set of role inclusions of the form r o s
+     * [ t and a set of axioms of the form t.A [ B so that the edges inferred
+     * through the chains produce new subsumptions.
+     *
+     * @param numConcepts
+     *            The number of named concepts.
+     * @param numRoles
+     *            The number of named roles.
+     * @param numChains
+     *            The number of role chains (r o s [ t).
+     * @param seed
+     *            The random seed.
+     * @return The set of axioms.
+     */
+    public static Set<Axiom> createChainHeavy(int numConcepts, int numRoles, int numChains, long seed) {
+        final Random rnd = new Random(seed);
+        final Set<Axiom> axioms = new HashSet<Axiom>();
+
+        final Concept[] concepts = createConcepts(numConcepts);
+        final Role[] roles = new Role[numRoles];
+        for (int i = 0; i < numRoles; i++) {
+            roles[i] = Factory.createNamedRole("r" + i);
+        }
+
+        for (int i = 1; i < numConcepts; i++) {
+            axioms.add(Factory.createConceptInclusion(concepts[i], concepts[rnd.nextInt(i)]));
+            // Only link to earlier concepts so the existential graph is acyclic
+            final Role r = roles[rnd.nextInt(numRoles)];
+            axioms.add(Factory.createConceptInclusion(concepts[i],
+                    Factory.createExistential(r, concepts[rnd.nextInt(i)])));
+        }
+
+        for (int i = 0; i < numChains; i++) {
+            final Role r = roles[rnd.nextInt(numRoles)];
+            final Role s = roles[rnd.nextInt(numRoles)];
+            final Role t = roles[rnd.nextInt(numRoles)];
+            axioms.add(Factory.createRoleInclusion(new Role[] { r, s }, t));
+        }
+
+        // t.A [ B axioms so that chained edges have something to trigger
+        for (int i = 0; i < numConcepts / 10; i++) {
+            final Role t = roles[rnd.nextInt(numRoles)];
+            final Concept a = concepts[rnd.nextInt(numConcepts)];
+            final Concept b = Factory.createNamedConcept("D" + i);
+            axioms.add(Factory.createConceptInclusion(Factory.createExistential(t, a), b));
+        }
+
+        return axioms;
+    }
+
+    /**
+     * Creates a synthetic ontology where half of the concepts are fully
+     * defined, in the style of SNOMED CT: C = P and r1.A1 and r2.A2. The
+     * existentials on the left hand side of the definitions produce a large
+     * number of NF3 axioms (r.A [ B).
+     *
+     * @param numConcepts
+     *            The number of named concepts.
+     * @param numRoles
+     *            The number of named roles.
+     * @param seed
+     *            The random seed.
+     * @return The set of axioms.
+     */
+    public static Set<Axiom> createDefinitionHeavy(int numConcepts, int numRoles, long seed) {
+        final Random rnd = new Random(seed);
+        final Set<Axiom> axioms = new HashSet<Axiom>();
+
+        final Concept[] concepts = createConcepts(numConcepts);
+        final Role[] roles = new Role[numRoles];
+        for (int i = 0; i < numRoles; i++) {
+            roles[i] = Factory.createNamedRole("r" + i);
+        }
+
+        for (int i = 1; i < numConcepts; i++) {
+            final Concept parent = concepts[rnd.nextInt(i)];
+            if (rnd.nextBoolean()) {
+                axioms.add(Factory.createConceptInclusion(concepts[i], parent));
+            } else {
+                final Concept definition = Factory.createConjunction(parent,
+                        Factory.createExistential(roles[rnd.nextInt(numRoles)], concepts[rnd.nextInt(i)]),
+                        Factory.createExistential(roles[rnd.nextInt(numRoles)], concepts[rnd.nextInt(i)]));
+                axioms.add(Factory.createConceptInclusion(concepts[i], definition));
+                axioms.add(Factory.createConceptInclusion(definition, concepts[i]));
+            }
+        }
+
+        return axioms;
+    }
+
+    /**
+     * Creates an ontology with a deep hierarchy of values, in the style of the
+     * body structure hierarchy of SNOMED CT. The values are made of branches
+     * of depth values attached to a random value, and every concept has an
+     * existential on a random value. Only the values at the start of a branch
+     * are used in the existentials on the left hand side of the axioms, so
+     * most of the subsumers of a value do not appear in NF3 axioms (r.A [ B).
+     *
+     * @param numConcepts
+     *            The number of named concepts.
+     * @param numValues
+     *            The number of values.
+     * @param depth
+     *            The length of the branches of the value hierarchy.
+     * @param numRoles
+     *            The number of named roles.
+     * @param seed
+     *            The random seed.
+     * @return The set of axioms.
+     */
+    public static Set<Axiom> createDeepHierarchy(int numConcepts, int numValues, int depth, int numRoles,
+            long seed) {
+        final Random rnd = new Random(seed);
+        final Set<Axiom> axioms = new HashSet<Axiom>();
+
+        final Concept[] concepts = createConcepts(numConcepts);
+        final Role[] roles = new Role[numRoles];
+        for (int i = 0; i < numRoles; i++) {
+            roles[i] = Factory.createNamedRole("r" + i);
+        }
+        final Concept[] values = new Concept[numValues];
+        for (int i = 0; i < numValues; i++) {
+            values[i] = Factory.createNamedConcept("V" + i);
+        }
+
+        for (int i = 1; i < numValues; i++) {
+            final int parent = i % depth == 0 ? rnd.nextInt(i) : i - 1;
+            axioms.add(Factory.createConceptInclusion(values[i], values[parent]));
+        }
+
+        for (int i = 1; i < numConcepts; i++) {
+            axioms.add(Factory.createConceptInclusion(concepts[i], concepts[rnd.nextInt(i)]));
+            axioms.add(Factory.createConceptInclusion(concepts[i],
+                    Factory.createExistential(roles[rnd.nextInt(numRoles)], values[rnd.nextInt(numValues)])));
+        }
+
+        for (int i = 0; i < numConcepts / 10; i++) {
+            final Role r = roles[rnd.nextInt(numRoles)];
+            final Concept value = values[rnd.nextInt(numValues / depth) * depth];
+            axioms.add(Factory.createConceptInclusion(Factory.createExistential(r, value),
+                    Factory.createNamedConcept("D" + i)));
+        }
+
+        return axioms;
+    }
+
+    /**
+     * Creates the named concepts C0 ... Cn-1.
+     *
+     * @param numConcepts
+     * @return
+     */
+    protected static Concept[] createConcepts(int numConcepts) {
+        final Concept[] concepts = new Concept[numConcepts];
+        for (int i = 0; i < numConcepts; i++) {
+            concepts[i] = Factory.createNamedConcept("C" + i);
+        }
+        return concepts;
+    }
+
+}
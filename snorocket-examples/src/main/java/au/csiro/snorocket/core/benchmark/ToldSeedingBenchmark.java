@@ -0,0 +1,70 @@
+/**
+ * Copyright CSIRO Australian e-Health Research Centre (http://aehrc.com).
+ * All rights reserved. Use is subject to license terms and conditions.
+ */
+package au.csiro.snorocket.core.benchmark;
+
+import java.util.Set;
+
+import au.csiro.ontology.model.Axiom;
+import au.csiro.snorocket.core.ConceptSetFactory;
+import au.csiro.snorocket.core.CoreFactory;
+import au.csiro.snorocket.core.IFactory;
+import au.csiro.snorocket.core.NormalisedOntology;
+
+/**
+ * Compares the classification of the ontology of
+ * {@link DeepHierarchyBenchmark} with and without initialising the subsumers
+ * of the contexts with their told ancestors (see
+ * {@link NormalisedOntology#setToldSeeding(boolean)}). Reports the number of
+ * concept queue entries processed by the contexts, which shows the work
+ * saved by the seeding.
+ *
+ * <p>
+ * Usage: ToldSeedingBenchmark [concepts] [values] [depth] [runs] [threads]
+ * </p>
+ */
+public class ToldSeedingBenchmark {
+
+    private static final String[] SET_NAMES = { "sparse", "roaring" };
+
+    private static final ConceptSetFactory[] SET_FACTORIES = { ConceptSetFactory.SPARSE,
+        ConceptSetFactory.ROARING };
+
+    public static void main(String[] args) {
+        final int numConcepts = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int numValues = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        final int depth = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        final int numRuns = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        final int numThreads = args.length > 4 ? Integer.parseInt(args[4]) :
+            Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Generating ontology with " + numConcepts + " concepts and " + numValues +
+                " values in branches of depth " + depth);
+        final Set<Axiom> axioms = SyntheticOntology.createDeepHierarchy(numConcepts, numValues, depth, 20, 42);
+
+        System.out.println("sets\tseeding\trun\ttime (ms)\tconcept entries");
+        for (int s = 0; s < SET_FACTORIES.length; s++) {
+            // The first run of each combination is a warm up
+            for (int i = 0; i <= numRuns; i++) {
+                for (boolean seeding : new boolean[] { false, true }) {
+                    IFactory factory = new CoreFactory();
+                    NormalisedOntology no = new NormalisedOntology(factory);
+                    no.setNumThreads(numThreads);
+                    no.setConceptSetFactory(SET_FACTORIES[s]);
+                    no.setToldSeeding(seeding);
+                    no.loadAxioms(axioms);
+
+                    long start = System.currentTimeMillis();
+                    no.classify();
+                    long time = System.currentTimeMillis() - start;
+
+                    System.out.println(SET_NAMES[s] + "\t" + (seeding ? "on" : "off") + "\t" +
+                            (i == 0 ? "warm up" : Integer.toString(i)) + "\t" + time + "\t" +
+                            no.getProcessedConceptEntries());
+                }
+            }
+        }
+    }
+
+}
@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Properties;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.semanticweb.owlapi.apibinding.OWLManager;
@@ -63,12 +64,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import au.csiro.ontology.Ontology;
-import au.csiro.ontology.classification.IReasoner;
 import au.csiro.ontology.importer.owl.OWLImporter;
 import au.csiro.ontology.model.Axiom;
 import au.csiro.ontology.model.NamedConcept;
 import au.csiro.ontology.util.IProgressMonitor;
+import au.csiro.snorocket.core.CancellationToken;
 import au.csiro.snorocket.core.ClassNode;
+import au.csiro.snorocket.core.ClassificationCancelledException;
+import au.csiro.snorocket.core.ReasonerMetrics;
 import au.csiro.snorocket.core.SnorocketReasoner;
 
 /**
@@ -115,7 +118,10 @@ public class SnorocketOWLReasoner implements OWLReasoner {
     private final List<OWLOntologyChange> rawChanges = new ArrayList<OWLOntologyChange>();
 
     // The reasoner
-    private IReasoner reasoner = new SnorocketReasoner();
+    private SnorocketReasoner reasoner = new SnorocketReasoner();
+
+    // The token of the reasoning operation in progress, cancelled by interrupt()
+    private volatile CancellationToken cancellationToken = null;
 
     // The taxonomy
     private Ontology taxonomy = null;
@@ -344,19 +350,56 @@ public class SnorocketOWLReasoner implements OWLReasoner {
         return canAxioms;
     }
 
+    /**
+     * Creates the cancellation token of a new reasoning operation. The token
+     * times out after {@link #getTimeOut()} milliseconds, if set, and is
+     * cancelled by {@link #interrupt()}.
+     */
+    private void startOperation() {
+        final long timeOut = getTimeOut();
+        final CancellationToken token = (timeOut > 0 && timeOut < Long.MAX_VALUE) ?
+                CancellationToken.withTimeout(timeOut, TimeUnit.MILLISECONDS) :
+                new CancellationToken();
+        cancellationToken = token;
+        reasoner.setCancellationToken(token);
+    }
+
+    /**
+     * Translates a cancelled classification into the corresponding OWL API
+     * exception. The taxonomy is discarded, so it is recomputed by the next
+     * query.
+     *
+     * @param e
+     * @return
+     */
+    private RuntimeException cancelled(ClassificationCancelledException e) {
+        taxonomy = null;
+        monitor.taskEnded();
+        if(e.isTimedOut()) {
+            return new TimeOutException(e);
+        } else {
+            return new ReasonerInterruptedException(e);
+        }
+    }
+
     /**
      * Performs a full classification on the current ontology.
      */
     private void classify() {
-        // Classify
-        monitor.taskStarted("Classifying");
-        monitor.taskBusy();
-        reasoner = reasoner.classify();
-        monitor.taskEnded();
-        monitor.taskStarted("Building taxonomy");
-        monitor.taskBusy();
-        taxonomy = reasoner.getClassifiedOntology();
-        monitor.taskEnded();
+        startOperation();
+        try {
+            // Classify
+            monitor.taskStarted("Classifying");
+            monitor.taskBusy();
+            reasoner.classify();
+            monitor.taskEnded();
+            monitor.taskStarted("Building taxonomy");
+            monitor.taskBusy();
+            taxonomy = reasoner.getClassifiedOntology();
+            monitor.taskEnded();
+        } catch(ClassificationCancelledException e) {
+            throw cancelled(e);
+        }
     }
 
     /**
@@ -366,12 +409,27 @@ public class SnorocketOWLReasoner implements OWLReasoner {
      */
     private Ontology getTaxonomy() {
         if(taxonomy == null) {
-            taxonomy = reasoner.getClassifiedOntology();
+            startOperation();
+            try {
+                taxonomy = reasoner.getClassifiedOntology();
+            } catch(ClassificationCancelledException e) {
+                throw cancelled(e);
+            }
         }
 
         return taxonomy;
     }
 
+    /**
+     * Returns the metrics of the reasoning done so far, e.g. the times of the
+     * phases of the last classification.
+     *
+     * @return
+     */
+    public ReasonerMetrics getMetrics() {
+        return reasoner.getMetrics();
+    }
+
     ////////////////////////////////////////////////////////////////////////////
     // OWLReasoner methods
     ////////////////////////////////////////////////////////////////////////////
@@ -443,19 +501,24 @@ public class SnorocketOWLReasoner implements OWLReasoner {
         // Transform the axioms into the canonical model
         Set<Axiom> canAxioms = getAxioms(newAxioms);
 
-        // Classify
-        monitor.taskStarted("Classifying incrementally");
-        monitor.taskBusy();
-        reasoner.loadAxioms(canAxioms);
-        reasoner = reasoner.classify();
-        monitor.taskEnded();
-
-        monitor.taskStarted("Calculating taxonomy incrementally");
-        monitor.taskBusy();
-        taxonomy = reasoner.getClassifiedOntology();
-        monitor.taskEnded();
+        // Classify. If the classification is cancelled the new axioms stay
+        // in the reasoner and are classified by the next query.
+        startOperation();
+        try {
+            monitor.taskStarted("Classifying incrementally");
+            monitor.taskBusy();
+            reasoner.loadAxioms(canAxioms);
+            rawChanges.clear();
+            reasoner.classify();
+            monitor.taskEnded();
 
-        rawChanges.clear();
+            monitor.taskStarted("Calculating taxonomy incrementally");
+            monitor.taskBusy();
+            taxonomy = reasoner.getClassifiedOntology();
+            monitor.taskEnded();
+        } catch(ClassificationCancelledException e) {
+            throw cancelled(e);
+        }
     }
 
     /**
@@ -550,7 +613,10 @@ public class SnorocketOWLReasoner implements OWLReasoner {
      */
     @Override
     public void interrupt() {
-        // TODO: implement
+        final CancellationToken token = cancellationToken;
+        if(token != null) {
+            token.cancel();
+        }
     }
 
     /**